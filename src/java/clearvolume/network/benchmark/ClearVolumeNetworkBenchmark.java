@@ -0,0 +1,519 @@
+package clearvolume.network.benchmark;
+
+import static java.lang.Math.toIntExact;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import clearvolume.network.client.ClearVolumeTCPClient;
+import clearvolume.network.serialization.ClearVolumeSerialization;
+import clearvolume.network.server.ClearVolumeTCPServerSink;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.NullVolumeSink;
+import coremem.enums.NativeTypeEnum;
+import coremem.util.Size;
+
+/**
+ * Self-contained loopback benchmark: a synthetic producer feeds a chain of
+ * {@link ClearVolumeTCPServerSink}, each server is read by one
+ * {@link ClearVolumeTCPClient} that delivers into a {@link NullVolumeSink}.
+ * Since a server sink serves one client at a time, N clients are benchmarked
+ * with N chained server sinks - which is how several clients are served
+ * in practice.
+ *
+ * The benchmark sweeps volume sizes, types, channel counts and client counts
+ * and writes one JSON document with volumes/s, GB/s, p50/p99 end-to-end
+ * latency and heap allocation rate per configuration.
+ *
+ * Arguments are optional key=value pairs, for example:
+ *
+ * <pre>
+ * sizes=64,128,256 types=UnsignedByte,UnsignedShort channels=1,2,4 clients=1,2
+ * volumes=200 warmup=20 window=4 port=9240 out=benchmark.json
+ * </pre>
+ */
+public class ClearVolumeNetworkBenchmark
+{
+	private static final long cStallTimeOutInMilliseconds = 10000;
+	private static final long cPollPeriodInNanoseconds = TimeUnit.MICROSECONDS.toNanos(100);
+	private static final int cProducerVolumePoolSize = 16;
+	private static final int cConsumerVolumePoolSize = 16;
+	private static final int cNumberOfPayloadVariants = 256;
+
+	private int[] mSizes = new int[]
+	{ 64, 128, 256 };
+	private NativeTypeEnum[] mTypes = new NativeTypeEnum[]
+	{ NativeTypeEnum.UnsignedByte, NativeTypeEnum.UnsignedShort };
+	private int[] mChannels = new int[]
+	{ 1, 2, 4 };
+	private int[] mClients = new int[]
+	{ 1, 2 };
+	private int mNumberOfMeasuredVolumes = 200;
+	private int mNumberOfWarmupVolumes = 20;
+	private int mInFlightWindow = 4;
+	private int mPort = ClearVolumeSerialization.cStandardTCPPort + 100;
+
+	public static void main(String[] args) throws Exception
+	{
+		final ClearVolumeNetworkBenchmark lBenchmark = new ClearVolumeNetworkBenchmark();
+		String lOutputFileName = null;
+		for (final String lArgument : args)
+		{
+			final int lSeparatorIndex = lArgument.indexOf('=');
+			if (lSeparatorIndex < 0)
+				throw new IllegalArgumentException("Arguments must be of the form key=value, got: " + lArgument);
+			final String lKey = lArgument.substring(0, lSeparatorIndex);
+			final String lValue = lArgument.substring(lSeparatorIndex + 1);
+
+			if (lKey.equals("out"))
+				lOutputFileName = lValue;
+			else
+				lBenchmark.set(lKey, lValue);
+		}
+
+		final String lJSON = lBenchmark.run();
+
+		if (lOutputFileName == null)
+			System.out.println(lJSON);
+		else
+			try (Writer lWriter = new OutputStreamWriter(	new FileOutputStream(new File(lOutputFileName)),
+															StandardCharsets.UTF_8))
+			{
+				lWriter.write(lJSON);
+			}
+	}
+
+	public void set(String pKey, String pValue)
+	{
+		if (pKey.equals("sizes"))
+			mSizes = parseIntList(pValue);
+		else if (pKey.equals("types"))
+		{
+			final String[] lTypeNames = pValue.split(",");
+			mTypes = new NativeTypeEnum[lTypeNames.length];
+			for (int i = 0; i < lTypeNames.length; i++)
+				mTypes[i] = NativeTypeEnum.valueOf(lTypeNames[i].trim());
+		}
+		else if (pKey.equals("channels"))
+			mChannels = parseIntList(pValue);
+		else if (pKey.equals("clients"))
+			mClients = parseIntList(pValue);
+		else if (pKey.equals("volumes"))
+			mNumberOfMeasuredVolumes = Integer.parseInt(pValue);
+		else if (pKey.equals("warmup"))
+			mNumberOfWarmupVolumes = Integer.parseInt(pValue);
+		else if (pKey.equals("window"))
+			mInFlightWindow = Integer.parseInt(pValue);
+		else if (pKey.equals("port"))
+			mPort = Integer.parseInt(pValue);
+		else
+			throw new IllegalArgumentException("Unknown benchmark parameter: " + pKey);
+	}
+
+	public String run() throws IOException, InterruptedException
+	{
+		final StringBuilder lJSON = new StringBuilder();
+		lJSON.append("{\n");
+		appendJSONField(lJSON,
+						1,
+						"benchmark",
+						ClearVolumeNetworkBenchmark.class.getSimpleName(),
+						true);
+		appendJSONField(lJSON,
+						1,
+						"java",
+						System.getProperty("java.version"),
+						true);
+		appendJSONField(lJSON,
+						1,
+						"processors",
+						Runtime.getRuntime().availableProcessors(),
+						true);
+		appendJSONField(lJSON,
+						1,
+						"measuredVolumes",
+						mNumberOfMeasuredVolumes,
+						true);
+		appendJSONField(lJSON, 1, "inFlightWindow", mInFlightWindow, true);
+		lJSON.append("\t\"runs\": [\n");
+
+		boolean lFirst = true;
+		for (final NativeTypeEnum lType : mTypes)
+			for (final int lSize : mSizes)
+				for (final int lNumberOfChannels : mChannels)
+					for (final int lNumberOfClients : mClients)
+					{
+						final Map<String, Object> lResult = runConfiguration(	lType,
+																				lSize,
+																				lNumberOfChannels,
+																				lNumberOfClients);
+						if (!lFirst)
+							lJSON.append(",\n");
+						appendJSONObject(lJSON, 2, lResult);
+						lFirst = false;
+						System.err.println(lResult);
+					}
+
+		lJSON.append("\n\t]\n}\n");
+		return lJSON.toString();
+	}
+
+	private Map<String, Object> runConfiguration(	NativeTypeEnum pType,
+													int pSize,
+													int pNumberOfChannels,
+													int pNumberOfClients) throws IOException,
+																			InterruptedException
+	{
+		final VolumeManager lProducerVolumeManager = new VolumeManager(cProducerVolumePoolSize);
+
+		final ClearVolumeTCPServerSink[] lServerSinks = new ClearVolumeTCPServerSink[pNumberOfClients];
+		final ClearVolumeTCPClient[] lClients = new ClearVolumeTCPClient[pNumberOfClients];
+		final LatencyRecordingSink[] lRecordingSinks = new LatencyRecordingSink[pNumberOfClients];
+
+		for (int i = pNumberOfClients - 1; i >= 0; i--)
+		{
+			lServerSinks[i] = new ClearVolumeTCPServerSink(mInFlightWindow + 1);
+			if (i == pNumberOfClients - 1)
+				lServerSinks[i].setRelaySink(new NullVolumeSink(lProducerVolumeManager));
+			else
+				lServerSinks[i].setRelaySink(lServerSinks[i + 1]);
+		}
+
+		for (int i = 0; i < pNumberOfClients; i++)
+		{
+			final int lPort = mPort++;
+			if (!lServerSinks[i].open(new InetSocketAddress(lPort)))
+				throw new IOException("Could not open server sink on port " + lPort);
+			lServerSinks[i].start();
+
+			lRecordingSinks[i] = new LatencyRecordingSink(new VolumeManager(cConsumerVolumePoolSize),
+															mNumberOfMeasuredVolumes);
+			lClients[i] = new ClearVolumeTCPClient(lRecordingSinks[i]);
+			lClients[i].open(new InetSocketAddress("localhost", lPort));
+			lClients[i].start();
+		}
+
+		// the synthetic content is generated once and copied in bulk into each
+		// volume, so that the timed section measures sending and receiving:
+		final byte[] lPayload = createPayload(pType, pSize);
+
+		try
+		{
+			long lSent = produce(	pType,
+									pSize,
+									pNumberOfChannels,
+									lPayload,
+									lServerSinks[0],
+									lRecordingSinks,
+									0,
+									mNumberOfWarmupVolumes);
+			waitForDelivery(lRecordingSinks, lSent);
+
+			for (final LatencyRecordingSink lRecordingSink : lRecordingSinks)
+				lRecordingSink.startRecording();
+
+			final long lAllocatedBytesBefore = getTotalAllocatedBytes();
+			final long lDirectMemoryBefore = getDirectMemoryUsed();
+			final long lStartNanos = System.nanoTime();
+
+			lSent = produce(pType,
+							pSize,
+							pNumberOfChannels,
+							lPayload,
+							lServerSinks[0],
+							lRecordingSinks,
+							lSent,
+							mNumberOfMeasuredVolumes);
+			final boolean lComplete = waitForDelivery(	lRecordingSinks,
+														lSent);
+
+			final long lStopNanos = System.nanoTime();
+			final long lAllocatedBytesAfter = getTotalAllocatedBytes();
+			final long lDirectMemoryAfter = getDirectMemoryUsed();
+
+			for (final LatencyRecordingSink lRecordingSink : lRecordingSinks)
+				lRecordingSink.stopRecording();
+
+			return collectResults(	pType,
+									pSize,
+									pNumberOfChannels,
+									pNumberOfClients,
+									lRecordingSinks,
+									lComplete,
+									lStopNanos - lStartNanos,
+									lAllocatedBytesAfter - lAllocatedBytesBefore,
+									lDirectMemoryAfter - lDirectMemoryBefore);
+		}
+		finally
+		{
+			for (int i = 0; i < pNumberOfClients; i++)
+			{
+				lClients[i].stop();
+				lClients[i].close();
+				lServerSinks[i].stop();
+				lServerSinks[i].close();
+			}
+			lProducerVolumeManager.close();
+		}
+	}
+
+	private long produce(	NativeTypeEnum pType,
+							int pSize,
+							int pNumberOfChannels,
+							byte[] pPayload,
+							ClearVolumeTCPServerSink pFirstServerSink,
+							LatencyRecordingSink[] pRecordingSinks,
+							long pAlreadySent,
+							int pNumberOfVolumes) throws InterruptedException
+	{
+		long lSent = pAlreadySent;
+		for (int i = 0; i < pNumberOfVolumes; i++)
+		{
+			// closed loop: never have more than the window in flight so that
+			// the server queues do not overflow and drop volumes:
+			final long lDeadline = System.currentTimeMillis() + cStallTimeOutInMilliseconds;
+			while (lSent - getMinimumReceived(pRecordingSinks) >= mInFlightWindow)
+			{
+				if (System.currentTimeMillis() > lDeadline)
+					return lSent;
+				// Thread.sleep rounds sub-millisecond waits up to a millisecond:
+				LockSupport.parkNanos(cPollPeriodInNanoseconds);
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+
+			final Volume lVolume = pFirstServerSink.getManager()
+													.requestAndWaitForVolume(	1,
+																				TimeUnit.MILLISECONDS,
+																				pType,
+																				1,
+																				pSize,
+																				pSize,
+																				pSize);
+			fill(lVolume, pPayload, lSent);
+			lVolume.setTimeIndex(lSent / pNumberOfChannels);
+			lVolume.setChannelID((int) (lSent % pNumberOfChannels));
+			lVolume.setChannelName("channel " + lVolume.getChannelID());
+			lVolume.setTimeInSeconds(System.nanoTime() * 1e-9);
+
+			pFirstServerSink.sendVolume(lVolume);
+			lSent++;
+		}
+		return lSent;
+	}
+
+	private static byte[] createPayload(NativeTypeEnum pType, int pSize)
+	{
+		final long lDataSizeInBytes = Size.of(pType) * pSize * pSize * pSize;
+		final byte[] lPayload = new byte[toIntExact(lDataSizeInBytes + cNumberOfPayloadVariants)];
+		for (int i = 0; i < lPayload.length; i++)
+			lPayload[i] = (byte) i;
+		return lPayload;
+	}
+
+	private static void fill(Volume pVolume, byte[] pPayload, long pSeed)
+	{
+		final ByteBuffer lDataBuffer = pVolume.getDataBuffer();
+		lDataBuffer.clear();
+		// consecutive volumes start at different offsets of the payload:
+		lDataBuffer.put(pPayload,
+						(int) (pSeed % cNumberOfPayloadVariants),
+						toIntExact(pVolume.getDataSizeInBytes()));
+		lDataBuffer.rewind();
+	}
+
+	private static boolean waitForDelivery(	LatencyRecordingSink[] pRecordingSinks,
+											long pNumberOfSentVolumes) throws InterruptedException
+	{
+		final long lDeadline = System.currentTimeMillis() + cStallTimeOutInMilliseconds;
+		while (getMinimumReceived(pRecordingSinks) < pNumberOfSentVolumes)
+		{
+			if (System.currentTimeMillis() > lDeadline)
+				return false;
+			Thread.sleep(1);
+		}
+		return true;
+	}
+
+	private static long getMinimumReceived(LatencyRecordingSink[] pRecordingSinks)
+	{
+		long lMinimum = Long.MAX_VALUE;
+		for (final LatencyRecordingSink lRecordingSink : pRecordingSinks)
+			lMinimum = Math.min(lMinimum,
+								lRecordingSink.getNumberOfReceivedVolumes());
+		return lMinimum;
+	}
+
+	private Map<String, Object> collectResults(	NativeTypeEnum pType,
+												int pSize,
+												int pNumberOfChannels,
+												int pNumberOfClients,
+												LatencyRecordingSink[] pRecordingSinks,
+												boolean pComplete,
+												long pElapsedNanos,
+												long pAllocatedBytes,
+												long pDirectMemoryDelta)
+	{
+		final List<long[]> lLatencyArrays = new ArrayList<>();
+		long lReceivedVolumes = 0;
+		long lReceivedBytes = 0;
+		int lTotalLatencies = 0;
+		for (final LatencyRecordingSink lRecordingSink : pRecordingSinks)
+		{
+			final long[] lLatencies = lRecordingSink.getRecordedLatenciesInNanoseconds();
+			lLatencyArrays.add(lLatencies);
+			lTotalLatencies += lLatencies.length;
+			lReceivedVolumes += lLatencies.length;
+			lReceivedBytes += lRecordingSink.getNumberOfReceivedBytes();
+		}
+
+		final long[] lAllLatencies = new long[lTotalLatencies];
+		int lOffset = 0;
+		for (final long[] lLatencies : lLatencyArrays)
+		{
+			System.arraycopy(	lLatencies,
+								0,
+								lAllLatencies,
+								lOffset,
+								lLatencies.length);
+			lOffset += lLatencies.length;
+		}
+		Arrays.sort(lAllLatencies);
+
+		final double lElapsedSeconds = pElapsedNanos * 1e-9;
+
+		final Map<String, Object> lResult = new LinkedHashMap<>();
+		lResult.put("type", pType.toString());
+		lResult.put("size", pSize);
+		lResult.put("channels", pNumberOfChannels);
+		lResult.put("clients", pNumberOfClients);
+		lResult.put("complete", pComplete);
+		lResult.put("receivedVolumes", lReceivedVolumes);
+		lResult.put("elapsedSeconds", lElapsedSeconds);
+		lResult.put("volumesPerSecond", lReceivedVolumes / lElapsedSeconds);
+		lResult.put("gigaBytesPerSecond", lReceivedBytes / lElapsedSeconds
+											* 1e-9);
+		lResult.put("latencyP50Milliseconds",
+					percentile(lAllLatencies, 0.50) * 1e-6);
+		lResult.put("latencyP99Milliseconds",
+					percentile(lAllLatencies, 0.99) * 1e-6);
+		lResult.put("latencyMaxMilliseconds",
+					percentile(lAllLatencies, 1.0) * 1e-6);
+		lResult.put("heapAllocationMegaBytesPerSecond",
+					pAllocatedBytes < 0	? -1
+										: pAllocatedBytes / lElapsedSeconds
+											* 1e-6);
+		lResult.put("heapAllocationBytesPerVolume",
+					pAllocatedBytes < 0 || lReceivedVolumes == 0	? -1
+																	: pAllocatedBytes / lReceivedVolumes);
+		lResult.put("directMemoryDeltaBytes", pDirectMemoryDelta);
+		return lResult;
+	}
+
+	private static double percentile(	long[] pSortedValues,
+										double pPercentile)
+	{
+		if (pSortedValues.length == 0)
+			return Double.NaN;
+		final int lIndex = (int) Math.ceil(pPercentile * pSortedValues.length) - 1;
+		return pSortedValues[Math.max(0,
+										Math.min(	pSortedValues.length - 1,
+													lIndex))];
+	}
+
+	private static long getTotalAllocatedBytes()
+	{
+		final ThreadMXBean lThreadMXBean = ManagementFactory.getThreadMXBean();
+		if (!(lThreadMXBean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		final com.sun.management.ThreadMXBean lSunThreadMXBean = (com.sun.management.ThreadMXBean) lThreadMXBean;
+		if (!lSunThreadMXBean.isThreadAllocatedMemorySupported() || !lSunThreadMXBean.isThreadAllocatedMemoryEnabled())
+			return -1;
+
+		long lTotal = 0;
+		for (final long lAllocatedBytes : lSunThreadMXBean.getThreadAllocatedBytes(lThreadMXBean.getAllThreadIds()))
+			if (lAllocatedBytes > 0)
+				lTotal += lAllocatedBytes;
+		return lTotal;
+	}
+
+	private static long getDirectMemoryUsed()
+	{
+		for (final BufferPoolMXBean lBufferPoolMXBean : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+			if (lBufferPoolMXBean.getName().equals("direct"))
+				return lBufferPoolMXBean.getMemoryUsed();
+		return -1;
+	}
+
+	private static int[] parseIntList(String pString)
+	{
+		final String[] lSplitString = pString.split(",");
+		final int[] lValues = new int[lSplitString.length];
+		for (int i = 0; i < lSplitString.length; i++)
+			lValues[i] = Integer.parseInt(lSplitString[i].trim());
+		return lValues;
+	}
+
+	private static void appendJSONObject(	StringBuilder pJSON,
+											int pIndentation,
+											Map<String, Object> pMap)
+	{
+		indent(pJSON, pIndentation);
+		pJSON.append("{\n");
+		int lCount = 0;
+		for (final Map.Entry<String, Object> lEntry : pMap.entrySet())
+			appendJSONField(pJSON,
+							pIndentation + 1,
+							lEntry.getKey(),
+							lEntry.getValue(),
+							++lCount < pMap.size());
+		indent(pJSON, pIndentation);
+		pJSON.append('}');
+	}
+
+	private static void appendJSONField(StringBuilder pJSON,
+										int pIndentation,
+										String pKey,
+										Object pValue,
+										boolean pAppendComma)
+	{
+		indent(pJSON, pIndentation);
+		pJSON.append('"').append(pKey).append("\": ");
+		if (pValue instanceof String)
+			pJSON.append('"')
+					.append(((String) pValue).replace("\\", "\\\\")
+												.replace("\"", "\\\""))
+					.append('"');
+		else if (pValue instanceof Double && (((Double) pValue).isNaN() || ((Double) pValue).isInfinite()))
+			pJSON.append("null");
+		else
+			pJSON.append(pValue);
+		if (pAppendComma)
+			pJSON.append(',');
+		pJSON.append('\n');
+	}
+
+	private static void indent(StringBuilder pJSON, int pIndentation)
+	{
+		for (int i = 0; i < pIndentation; i++)
+			pJSON.append('\t');
+	}
+
+}
@@ -0,0 +1,94 @@
+package clearvolume.network.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.NullVolumeSink;
+import clearvolume.volume.sink.VolumeSinkInterface;
+
+/**
+ * Consumer end of the loopback benchmark: records the end-to-end latency of
+ * every received volume and hands it over to a {@link NullVolumeSink} so that
+ * the client can reuse the buffer.
+ *
+ * The producer stamps each volume with {@link System#nanoTime()} (in seconds)
+ * as its time in seconds, this only makes sense when producer and consumer
+ * live in the same JVM.
+ */
+public class LatencyRecordingSink implements VolumeSinkInterface
+{
+	private final NullVolumeSink mNullVolumeSink;
+
+	private final long[] mLatenciesInNanoseconds;
+	private final AtomicLong mNumberOfReceivedVolumes = new AtomicLong();
+	private final AtomicLong mNumberOfReceivedBytes = new AtomicLong();
+	private volatile boolean mRecording = false;
+	private volatile int mNumberOfRecordedLatencies = 0;
+
+	public LatencyRecordingSink(VolumeManager pVolumeManager,
+								int pMaxNumberOfRecordedLatencies)
+	{
+		super();
+		mNullVolumeSink = new NullVolumeSink(pVolumeManager);
+		mLatenciesInNanoseconds = new long[pMaxNumberOfRecordedLatencies];
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		final long lNow = System.nanoTime();
+		final long lSentAt = (long) (pVolume.getTimeInSeconds() * 1e9);
+
+		mNumberOfReceivedVolumes.incrementAndGet();
+		if (mRecording)
+		{
+			mNumberOfReceivedBytes.addAndGet(pVolume.getDataSizeInBytes());
+			// only the client thread writes here:
+			final int lIndex = mNumberOfRecordedLatencies;
+			if (lIndex < mLatenciesInNanoseconds.length)
+			{
+				mLatenciesInNanoseconds[lIndex] = lNow - lSentAt;
+				mNumberOfRecordedLatencies = lIndex + 1;
+			}
+		}
+
+		mNullVolumeSink.sendVolume(pVolume);
+	}
+
+	public void startRecording()
+	{
+		mNumberOfReceivedBytes.set(0);
+		mNumberOfRecordedLatencies = 0;
+		mRecording = true;
+	}
+
+	public void stopRecording()
+	{
+		mRecording = false;
+	}
+
+	public long getNumberOfReceivedVolumes()
+	{
+		return mNumberOfReceivedVolumes.get();
+	}
+
+	public long getNumberOfReceivedBytes()
+	{
+		return mNumberOfReceivedBytes.get();
+	}
+
+	public long[] getRecordedLatenciesInNanoseconds()
+	{
+		return Arrays.copyOf(	mLatenciesInNanoseconds,
+								mNumberOfRecordedLatencies);
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		return mNullVolumeSink.getManager();
+	}
+
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.net.SocketAddress;
 import java.net.StandardSocketOptions;
 import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import clearvolume.network.client.ClearVolumeTCPClient;
@@ -35,6 +36,13 @@ public class ClearVolumeTCPServerSink extends RelaySinkAdapter	implements
 																		pBufferMaxCapacity);
 	}
 
+	public ClearVolumeTCPServerSink(BlockingQueue<Volume> pVolumeQueue)
+	{
+		super();
+		mSourceToSinkBufferedAdapter = new SourceToSinkBufferedAdapter(	getManager(),
+																		pVolumeQueue);
+	}
+
 	public boolean open(SocketAddress pSocketAddress) throws IOException
 	{
 		if (mServerSocketChannel != null && mServerSocketChannel.isOpen())
@@ -0,0 +1,211 @@
+package clearvolume.renderer.cleargl.overlay.o3d;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.jogamp.opengl.GL;
+
+import cleargl.ClearGeometryObject;
+import cleargl.GLFloatArray;
+import cleargl.GLIntArray;
+import cleargl.GLMatrix;
+import cleargl.GLProgram;
+import clearvolume.renderer.DisplayRequestInterface;
+import clearvolume.renderer.cleargl.ClearGLVolumeRenderer;
+import clearvolume.renderer.cleargl.overlay.Overlay3D;
+import clearvolume.renderer.cleargl.overlay.OverlayBase;
+import clearvolume.volume.processing.mesh.IsoSurfaceListenerInterface;
+import clearvolume.volume.processing.mesh.TriangleMesh;
+
+/**
+ * Mesh 3D Overlay - draws the iso-surfaces extracted by an iso-surface sink as
+ * shaded triangles. Register it as a listener of the sink; the last mesh of its
+ * channel replaces the previous one.
+ */
+public class MeshOverlay extends OverlayBase	implements
+												Overlay3D,
+												IsoSurfaceListenerInterface
+{
+	protected GLProgram mMeshGLProgram;
+	protected ClearGeometryObject mMesh;
+	protected DisplayRequestInterface mDisplayRequestInterface;
+
+	private final int mChannelID;
+	private volatile FloatBuffer mColor = FloatBuffer.wrap(new float[]
+	{ 0.8f, 0.8f, 0.8f, 1.0f });
+	private final AtomicReference<PendingMesh> mPendingMesh = new AtomicReference<PendingMesh>();
+	private volatile boolean mHasChanged = true;
+	private int mNumberOfIndices;
+
+	private static class PendingMesh
+	{
+		GLFloatArray mVertices, mNormals;
+		GLIntArray mIndices;
+	}
+
+	/**
+	 * @param pChannelID
+	 *            channel whose iso-surface is shown, or -1 for the iso-surface
+	 *            of any channel
+	 */
+	public MeshOverlay(int pChannelID)
+	{
+		super();
+		mChannelID = pChannelID;
+	}
+
+	public MeshOverlay()
+	{
+		this(-1);
+	}
+
+	/* (non-Javadoc)
+	 * @see clearvolume.renderer.cleargl.overlay.Overlay#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		return "mesh";
+	}
+
+	public void setColor(float[] pColor)
+	{
+		mColor = FloatBuffer.wrap(pColor);
+		mHasChanged = true;
+	}
+
+	/* (non-Javadoc)
+	 * @see clearvolume.volume.processing.mesh.IsoSurfaceListenerInterface#notifyIsoSurface(int, long, clearvolume.volume.processing.mesh.TriangleMesh)
+	 */
+	@Override
+	public void notifyIsoSurface(	int pChannelID,
+									long pTimeIndex,
+									TriangleMesh pMesh)
+	{
+		if (mChannelID >= 0 && pChannelID != mChannelID)
+			return;
+
+		// volume coordinates go from -1 to 1 along each axis:
+		final float[] lScale = new float[]
+		{ 2.0f / pMesh.getWidth(),
+			2.0f / pMesh.getHeight(),
+			2.0f / pMesh.getDepth() };
+
+		final float[] lVertices = pMesh.getVertices();
+		final float[] lNormals = pMesh.getNormals();
+		final GLFloatArray lVertexArray = new GLFloatArray(	pMesh.getNumberOfVertices(),
+															3);
+		final GLFloatArray lNormalArray = new GLFloatArray(	pMesh.getNumberOfVertices(),
+															3);
+		for (int v = 0; v < 3 * pMesh.getNumberOfVertices(); v += 3)
+		{
+			lVertexArray.add(	-1 + lScale[0] * (lVertices[v] + 0.5f),
+								-1 + lScale[1] * (lVertices[v + 1] + 0.5f),
+								-1 + lScale[2] * (lVertices[v + 2] + 0.5f));
+
+			// normals scale inversely to positions:
+			final float nx = lNormals[v] / lScale[0];
+			final float ny = lNormals[v + 1] / lScale[1];
+			final float nz = lNormals[v + 2] / lScale[2];
+			final float lLength = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+			if (lLength > 0)
+				lNormalArray.add(nx / lLength, ny / lLength, nz / lLength);
+			else
+				lNormalArray.add(0, 0, 0);
+		}
+
+		final int[] lIndices = pMesh.getIndices();
+		final GLIntArray lIndexArray = new GLIntArray(lIndices.length, 1);
+		lIndexArray.add(lIndices);
+
+		final PendingMesh lPendingMesh = new PendingMesh();
+		lPendingMesh.mVertices = lVertexArray;
+		lPendingMesh.mNormals = lNormalArray;
+		lPendingMesh.mIndices = lIndexArray;
+		mPendingMesh.set(lPendingMesh);
+		mHasChanged = true;
+
+		final DisplayRequestInterface lDisplayRequestInterface = mDisplayRequestInterface;
+		if (lDisplayRequestInterface != null)
+			lDisplayRequestInterface.requestDisplay();
+	}
+
+	/* (non-Javadoc)
+	 * @see clearvolume.renderer.cleargl.overlay.Overlay3D#hasChanged3D()
+	 */
+	@Override
+	public boolean hasChanged3D()
+	{
+		return mHasChanged;
+	}
+
+	/* (non-Javadoc)
+	 * @see clearvolume.renderer.cleargl.overlay.Overlay#init(javax.media.opengl.GL, clearvolume.renderer.DisplayRequestInterface)
+	 */
+	@Override
+	public void init(	GL pGL,
+						DisplayRequestInterface pDisplayRequestInterface)
+	{
+		mDisplayRequestInterface = pDisplayRequestInterface;
+		try
+		{
+			mMeshGLProgram = GLProgram.buildProgram(pGL,
+													MeshOverlay.class,
+													"shaders/mesh_vert.glsl",
+													"shaders/mesh_frag.glsl");
+
+			mMesh = new ClearGeometryObject(mMeshGLProgram,
+											3,
+											GL.GL_TRIANGLES);
+			mMesh.setDynamic(true);
+		}
+		catch (final Throwable e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see clearvolume.renderer.cleargl.overlay.Overlay3D#render3D(javax.media.opengl.GL, cleargl.GLMatrix, cleargl.GLMatrix)
+	 */
+	@Override
+	public void render3D(	ClearGLVolumeRenderer pClearGLVolumeRenderer,
+							GL pGL,
+							int pWidth,
+							int pHeight,
+							GLMatrix pProjectionMatrix,
+							GLMatrix pModelViewMatrix)
+	{
+		mHasChanged = false;
+		if (mMesh == null)
+			return;
+
+		final PendingMesh lPendingMesh = mPendingMesh.getAndSet(null);
+		if (lPendingMesh != null)
+		{
+			mMesh.setVerticesAndCreateBuffer(lPendingMesh.mVertices.getFloatBuffer());
+			mMesh.setNormalsAndCreateBuffer(lPendingMesh.mNormals.getFloatBuffer());
+			mMesh.setIndicesAndCreateBuffer(lPendingMesh.mIndices.getIntBuffer());
+			mNumberOfIndices = lPendingMesh.mIndices.getIntBuffer().capacity();
+		}
+
+		if (isDisplayed() && mNumberOfIndices > 0)
+		{
+			mMeshGLProgram.use(pGL);
+			mMeshGLProgram.getUniform("color").setFloatVector4(mColor);
+
+			mMesh.setModelView(pModelViewMatrix);
+			mMesh.setProjection(pProjectionMatrix);
+
+			pGL.glEnable(GL.GL_DEPTH_TEST);
+			pGL.glDisable(GL.GL_CULL_FACE);
+			pGL.glDisable(GL.GL_BLEND);
+
+			mMesh.draw();
+
+			pGL.glDisable(GL.GL_DEPTH_TEST);
+			pGL.glEnable(GL.GL_BLEND);
+		}
+	}
+
+}
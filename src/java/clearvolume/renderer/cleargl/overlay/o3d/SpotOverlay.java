@@ -0,0 +1,193 @@
+package clearvolume.renderer.cleargl.overlay.o3d;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.jogamp.opengl.GL;
+
+import cleargl.ClearGeometryObject;
+import cleargl.GLFloatArray;
+import cleargl.GLMatrix;
+import cleargl.GLProgram;
+import clearvolume.renderer.DisplayRequestInterface;
+import clearvolume.renderer.cleargl.ClearGLVolumeRenderer;
+import clearvolume.renderer.cleargl.overlay.Overlay3D;
+import clearvolume.renderer.cleargl.overlay.OverlayBase;
+import clearvolume.volume.processing.spots.Spot;
+import clearvolume.volume.processing.spots.SpotList;
+import clearvolume.volume.processing.spots.SpotListenerInterface;
+
+/**
+ * Spot 3D Overlay - draws the spots found by a spot detection sink as small
+ * three-axis crosses sized by their scale. Register it as a listener of the
+ * sink; the last spots of its channel replace the previous ones.
+ */
+public class SpotOverlay extends OverlayBase	implements
+												Overlay3D,
+												SpotListenerInterface
+{
+	protected GLProgram mSpotGLProgram;
+	protected ClearGeometryObject mSpots;
+	protected DisplayRequestInterface mDisplayRequestInterface;
+
+	private final int mChannelID;
+	private volatile FloatBuffer mColor = FloatBuffer.wrap(new float[]
+	{ 1.0f, 0.8f, 0.0f, 1.0f });
+	private final AtomicReference<GLFloatArray> mNewVertices = new AtomicReference<GLFloatArray>();
+	private volatile boolean mHasChanged = true;
+	private int mNumberOfVertices;
+
+	/**
+	 * @param pChannelID
+	 *            channel whose spots are shown, or -1 for the spots of any
+	 *            channel
+	 */
+	public SpotOverlay(int pChannelID)
+	{
+		super();
+		mChannelID = pChannelID;
+	}
+
+	public SpotOverlay()
+	{
+		this(-1);
+	}
+
+	/* (non-Javadoc)
+	 * @see clearvolume.renderer.cleargl.overlay.Overlay#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		return "spots";
+	}
+
+	public void setColor(float[] pColor)
+	{
+		mColor = FloatBuffer.wrap(pColor);
+		mHasChanged = true;
+	}
+
+	/* (non-Javadoc)
+	 * @see clearvolume.volume.processing.spots.SpotListenerInterface#notifySpots(clearvolume.volume.processing.spots.SpotList)
+	 */
+	@Override
+	public void notifySpots(SpotList pSpotList)
+	{
+		if (mChannelID >= 0 && pSpotList.getChannelID() != mChannelID)
+			return;
+
+		// volume coordinates go from -1 to 1 along each axis:
+		final float lScaleX = 2.0f / pSpotList.getWidth();
+		final float lScaleY = 2.0f / pSpotList.getHeight();
+		final float lScaleZ = 2.0f / pSpotList.getDepth();
+
+		final GLFloatArray lVertices = new GLFloatArray(6 * pSpotList.size(),
+														3);
+		for (final Spot lSpot : pSpotList.getSpots())
+		{
+			final float x = -1 + lScaleX * (lSpot.getX() + 0.5f);
+			final float y = -1 + lScaleY * (lSpot.getY() + 0.5f);
+			final float z = -1 + lScaleZ * (lSpot.getZ() + 0.5f);
+			final float lRadius = (float) Math.sqrt(3) * lSpot.getScale();
+			final float rx = lScaleX * lRadius;
+			final float ry = lScaleY * lRadius;
+			final float rz = lScaleZ * lRadius;
+
+			lVertices.add(x - rx, y, z);
+			lVertices.add(x + rx, y, z);
+			lVertices.add(x, y - ry, z);
+			lVertices.add(x, y + ry, z);
+			lVertices.add(x, y, z - rz);
+			lVertices.add(x, y, z + rz);
+		}
+		mNewVertices.set(lVertices);
+		mHasChanged = true;
+
+		final DisplayRequestInterface lDisplayRequestInterface = mDisplayRequestInterface;
+		if (lDisplayRequestInterface != null)
+			lDisplayRequestInterface.requestDisplay();
+	}
+
+	/* (non-Javadoc)
+	 * @see clearvolume.renderer.cleargl.overlay.Overlay3D#hasChanged3D()
+	 */
+	@Override
+	public boolean hasChanged3D()
+	{
+		return mHasChanged;
+	}
+
+	/* (non-Javadoc)
+	 * @see clearvolume.renderer.cleargl.overlay.Overlay#init(javax.media.opengl.GL, clearvolume.renderer.DisplayRequestInterface)
+	 */
+	@Override
+	public void init(	GL pGL,
+						DisplayRequestInterface pDisplayRequestInterface)
+	{
+		mDisplayRequestInterface = pDisplayRequestInterface;
+		try
+		{
+			mSpotGLProgram = GLProgram.buildProgram(pGL,
+													SpotOverlay.class,
+													"shaders/spot_vert.glsl",
+													"shaders/spot_frag.glsl");
+
+			mSpots = new ClearGeometryObject(	mSpotGLProgram,
+												3,
+												GL.GL_LINES);
+			mSpots.setDynamic(true);
+			mSpots.setVerticesAndCreateBuffer(new GLFloatArray(0, 3).getFloatBuffer());
+		}
+		catch (final Throwable e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see clearvolume.renderer.cleargl.overlay.Overlay3D#render3D(javax.media.opengl.GL, cleargl.GLMatrix, cleargl.GLMatrix)
+	 */
+	@Override
+	public void render3D(	ClearGLVolumeRenderer pClearGLVolumeRenderer,
+							GL pGL,
+							int pWidth,
+							int pHeight,
+							GLMatrix pProjectionMatrix,
+							GLMatrix pModelViewMatrix)
+	{
+		mHasChanged = false;
+		if (mSpots == null)
+			return;
+
+		final GLFloatArray lNewVertices = mNewVertices.getAndSet(null);
+		if (lNewVertices != null)
+		{
+			final FloatBuffer lFloatBuffer = lNewVertices.getFloatBuffer();
+			// the buffer is recreated only when the number of spots changes:
+			if (lFloatBuffer.capacity() / 3 != mNumberOfVertices)
+				mSpots.setVerticesAndCreateBuffer(lFloatBuffer);
+			else
+				mSpots.updateVertices(lFloatBuffer);
+			mNumberOfVertices = lFloatBuffer.capacity() / 3;
+		}
+
+		if (isDisplayed() && mNumberOfVertices > 0)
+		{
+			mSpotGLProgram.use(pGL);
+			mSpotGLProgram.getUniform("color").setFloatVector4(mColor);
+
+			mSpots.setModelView(pModelViewMatrix);
+			mSpots.setProjection(pProjectionMatrix);
+
+			pGL.glDisable(GL.GL_DEPTH_TEST);
+			pGL.glDisable(GL.GL_CULL_FACE);
+			pGL.glEnable(GL.GL_BLEND);
+			pGL.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
+			pGL.glBlendEquation(GL.GL_FUNC_ADD);
+
+			mSpots.draw();
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+#version 330 core
+
+in VertexData {
+    vec3 Position;
+    vec3 Normal;
+} VertexIn;
+
+uniform vec4 color = vec4(0.8, 0.8, 0.8, 1.0);
+out vec4 outColor;
+
+void main()
+{
+    // head light, both faces lit:
+    float diffuse = abs(dot(normalize(VertexIn.Normal), normalize(-VertexIn.Position)));
+    outColor = vec4(color.rgb*(0.3 + 0.7*diffuse), color.a);
+}
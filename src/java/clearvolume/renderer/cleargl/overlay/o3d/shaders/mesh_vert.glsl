@@ -0,0 +1,20 @@
+#version 330 core
+ 
+layout(location = 0) in vec3 vertexPosition;
+layout(location = 1) in vec3 vertexNormal;
+
+out VertexData {
+    vec3 Position;
+    vec3 Normal;
+} VertexOut;
+
+uniform mat4 modelview;
+uniform mat4 projection;
+
+void main()
+{
+   VertexOut.Normal = mat3(modelview)*vertexNormal;
+   VertexOut.Position = vec3(modelview*vec4(vertexPosition, 1.0));
+
+   gl_Position = (projection*modelview)*vec4(vertexPosition, 1.0); 
+}
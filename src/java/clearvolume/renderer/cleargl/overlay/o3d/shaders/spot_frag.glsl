@@ -0,0 +1,9 @@
+#version 330 core
+
+uniform vec4 color = vec4(1.0, 0.8, 0.0, 1.0);
+out vec4 outColor;
+
+void main()
+{
+    outColor = color;
+}
@@ -0,0 +1,11 @@
+#version 330 core
+ 
+layout(location = 0) in vec3 vertexPosition;
+
+uniform mat4 modelview;
+uniform mat4 projection;
+
+void main()
+{
+   gl_Position = (projection*modelview)*vec4(vertexPosition, 1.0); 
+}
@@ -0,0 +1,73 @@
+package clearvolume.utils.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocks on a lock and condition, no CPU is used while waiting. The lock is
+ * only touched when some thread is actually waiting, so hand-offs between busy
+ * threads stay lock-free. This relies on the ring publishing each hand-off
+ * with a volatile store before calling {@link #signalAll()}, so that the store
+ * and the read of the number of waiters cannot be reordered.
+ */
+public class BlockingWaitStrategy implements WaitStrategyInterface
+{
+	private final ReentrantLock mLock = new ReentrantLock();
+	private final Condition mCondition = mLock.newCondition();
+	private final AtomicInteger mNumberOfWaiters = new AtomicInteger();
+
+	@Override
+	public boolean waitFor(	WaitConditionInterface pCondition,
+							long pTimeOutInNanoseconds) throws InterruptedException
+	{
+		if (pCondition.isSatisfied())
+			return true;
+
+		long lRemaining = pTimeOutInNanoseconds;
+		mLock.lockInterruptibly();
+		try
+		{
+			mNumberOfWaiters.incrementAndGet();
+			try
+			{
+				// re-checking after registering as waiter and under the lock
+				// guarantees that no signal can be missed, provided the ring
+				// publishes with a volatile store before calling signalAll():
+				while (!pCondition.isSatisfied())
+				{
+					if (lRemaining <= 0)
+						return false;
+					lRemaining = mCondition.awaitNanos(lRemaining);
+				}
+				return true;
+			}
+			finally
+			{
+				mNumberOfWaiters.decrementAndGet();
+			}
+		}
+		finally
+		{
+			mLock.unlock();
+		}
+	}
+
+	@Override
+	public void signalAll()
+	{
+		if (mNumberOfWaiters.get() == 0)
+			return;
+
+		mLock.lock();
+		try
+		{
+			mCondition.signalAll();
+		}
+		finally
+		{
+			mLock.unlock();
+		}
+	}
+
+}
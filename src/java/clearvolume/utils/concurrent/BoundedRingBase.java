@@ -0,0 +1,256 @@
+package clearvolume.utils.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Common part of the preallocated lock-free bounded rings: the blocking
+ * operations of {@link BlockingQueue} are built on top of non-blocking
+ * tryOffer/tryPoll and a pluggable {@link WaitStrategyInterface}. Rings can
+ * therefore be used wherever an ArrayBlockingQueue was used before.
+ * 
+ * The capacity is rounded up to the next power of two. Iterators are weakly
+ * consistent: they walk a snapshot of the elements present when the iterator
+ * was created, never throw ConcurrentModificationException and do not support
+ * removal, so neither does remove(Object).
+ *
+ * @param <T>
+ *            element type
+ */
+public abstract class BoundedRingBase<T> extends AbstractQueue<T>	implements
+																	BlockingQueue<T>
+{
+	protected final int mCapacity;
+	protected final int mMask;
+	protected final WaitStrategyInterface mWaitStrategy;
+
+	private final WaitConditionInterface mNotEmptyCondition = new WaitConditionInterface()
+	{
+		@Override
+		public boolean isSatisfied()
+		{
+			return !isEmpty();
+		}
+	};
+
+	private final WaitConditionInterface mNotFullCondition = new WaitConditionInterface()
+	{
+		@Override
+		public boolean isSatisfied()
+		{
+			return size() < mCapacity;
+		}
+	};
+
+	public BoundedRingBase(	int pMinimalCapacity,
+							WaitStrategyInterface pWaitStrategy)
+	{
+		super();
+		if (pMinimalCapacity <= 0)
+			throw new IllegalArgumentException("Ring capacity must be strictly positive");
+		if (pMinimalCapacity > 1 << 30)
+			throw new IllegalArgumentException("Ring capacity too large");
+		mCapacity = nextPowerOfTwo(pMinimalCapacity);
+		mMask = mCapacity - 1;
+		mWaitStrategy = pWaitStrategy;
+	}
+
+	private static int nextPowerOfTwo(int pValue)
+	{
+		return pValue == 1 ? 1 : Integer.highestOneBit(pValue - 1) << 1;
+	}
+
+	protected abstract boolean tryOffer(T pElement);
+
+	protected abstract T tryPoll();
+
+	protected abstract long getHeadSequence();
+
+	protected abstract long getTailSequence();
+
+	/**
+	 * Returns the element with the given sequence number, or null if it has
+	 * already been taken from the ring.
+	 * 
+	 * @param pSequence
+	 *            sequence number of the element
+	 * @return element or null
+	 */
+	protected abstract T elementAt(long pSequence);
+
+	public int capacity()
+	{
+		return mCapacity;
+	}
+
+	public WaitStrategyInterface getWaitStrategy()
+	{
+		return mWaitStrategy;
+	}
+
+	@Override
+	public boolean offer(T pElement)
+	{
+		if (pElement == null)
+			throw new NullPointerException();
+		if (!tryOffer(pElement))
+			return false;
+		mWaitStrategy.signalAll();
+		return true;
+	}
+
+	@Override
+	public T poll()
+	{
+		final T lElement = tryPoll();
+		if (lElement != null)
+			mWaitStrategy.signalAll();
+		return lElement;
+	}
+
+	@Override
+	public boolean offer(	T pElement,
+							long pTimeOut,
+							TimeUnit pTimeUnit) throws InterruptedException
+	{
+		if (offer(pElement))
+			return true;
+
+		final long lDeadline = System.nanoTime() + pTimeUnit.toNanos(pTimeOut);
+		while (true)
+		{
+			final long lRemaining = lDeadline - System.nanoTime();
+			if (lRemaining <= 0)
+				return false;
+			mWaitStrategy.waitFor(mNotFullCondition, lRemaining);
+			if (offer(pElement))
+				return true;
+		}
+	}
+
+	@Override
+	public T poll(long pTimeOut, TimeUnit pTimeUnit) throws InterruptedException
+	{
+		T lElement = poll();
+		if (lElement != null)
+			return lElement;
+
+		final long lDeadline = System.nanoTime() + pTimeUnit.toNanos(pTimeOut);
+		while (true)
+		{
+			final long lRemaining = lDeadline - System.nanoTime();
+			if (lRemaining <= 0)
+				return null;
+			mWaitStrategy.waitFor(mNotEmptyCondition, lRemaining);
+			lElement = poll();
+			if (lElement != null)
+				return lElement;
+		}
+	}
+
+	@Override
+	public void put(T pElement) throws InterruptedException
+	{
+		while (!offer(pElement, Long.MAX_VALUE, TimeUnit.NANOSECONDS))
+			;
+	}
+
+	@Override
+	public T take() throws InterruptedException
+	{
+		T lElement;
+		while ((lElement = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) == null)
+			;
+		return lElement;
+	}
+
+	@Override
+	public int remainingCapacity()
+	{
+		return mCapacity - size();
+	}
+
+	@Override
+	public int drainTo(Collection<? super T> pCollection)
+	{
+		return drainTo(pCollection, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(	Collection<? super T> pCollection,
+						int pMaxElements)
+	{
+		if (pCollection == this)
+			throw new IllegalArgumentException();
+		int lCount = 0;
+		T lElement;
+		while (lCount < pMaxElements && (lElement = poll()) != null)
+		{
+			pCollection.add(lElement);
+			lCount++;
+		}
+		return lCount;
+	}
+
+	@Override
+	public void clear()
+	{
+		while (poll() != null)
+			;
+	}
+
+	@Override
+	public Iterator<T> iterator()
+	{
+		final ArrayList<T> lSnapshot = new ArrayList<T>(size());
+		final long lTail = getTailSequence();
+		final long lHead = Math.max(getHeadSequence(), lTail - mCapacity);
+		for (long lSequence = lHead; lSequence < lTail; lSequence++)
+		{
+			final T lElement = elementAt(lSequence);
+			if (lElement != null)
+				lSnapshot.add(lElement);
+		}
+
+		return new Iterator<T>()
+		{
+			private int mIndex = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return mIndex < lSnapshot.size();
+			}
+
+			@Override
+			public T next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return lSnapshot.get(mIndex++);
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException("Elements can only be removed from the head of lock-free rings");
+			}
+		};
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(	"%s [size=%d, capacity=%d, waitstrategy=%s]",
+								getClass().getSimpleName(),
+								size(),
+								mCapacity,
+								mWaitStrategy.getClass().getSimpleName());
+	}
+
+}
@@ -0,0 +1,140 @@
+package clearvolume.utils.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free bounded ring for any number of producers and consumers. Every slot
+ * carries a sequence number that tells producers and consumers whether the
+ * slot is free or filled for the current lap; head and tail are claimed by
+ * compare-and-set on padded sequences. The sequence numbers of a single slot
+ * could not tell a filled slot from a freed one, so at least two slots are
+ * allocated.
+ *
+ * @param <T>
+ *            element type
+ */
+public class MultiProducerRing<T> extends BoundedRingBase<T>
+{
+	private final Object[] mSlots;
+	private final AtomicLongArray mSlotSequences;
+
+	private final PaddedSequence mTail = new PaddedSequence(0);
+	private final PaddedSequence mHead = new PaddedSequence(0);
+
+	public MultiProducerRing(int pMinimalCapacity)
+	{
+		this(pMinimalCapacity, new BlockingWaitStrategy());
+	}
+
+	public MultiProducerRing(	int pMinimalCapacity,
+								WaitStrategyInterface pWaitStrategy)
+	{
+		super(Math.max(2, pMinimalCapacity), pWaitStrategy);
+		mSlots = new Object[mCapacity];
+		mSlotSequences = new AtomicLongArray(mCapacity);
+		for (int i = 0; i < mCapacity; i++)
+			mSlotSequences.set(i, i);
+	}
+
+	@Override
+	protected boolean tryOffer(T pElement)
+	{
+		while (true)
+		{
+			final long lTail = mTail.get();
+			final int lIndex = (int) lTail & mMask;
+			final long lDifference = mSlotSequences.get(lIndex) - lTail;
+			if (lDifference == 0)
+			{
+				if (mTail.compareAndSet(lTail, lTail + 1))
+				{
+					mSlots[lIndex] = pElement;
+					// volatile store, ordered before the waiter check in
+					// signalAll():
+					mSlotSequences.set(lIndex, lTail + 1);
+					return true;
+				}
+			}
+			else if (lDifference < 0)
+				return false;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected T tryPoll()
+	{
+		while (true)
+		{
+			final long lHead = mHead.get();
+			final int lIndex = (int) lHead & mMask;
+			final long lDifference = mSlotSequences.get(lIndex) - (lHead + 1);
+			if (lDifference == 0)
+			{
+				if (mHead.compareAndSet(lHead, lHead + 1))
+				{
+					final T lElement = (T) mSlots[lIndex];
+					mSlots[lIndex] = null;
+					mSlotSequences.set(lIndex, lHead + mCapacity);
+					return lElement;
+				}
+			}
+			else if (lDifference < 0)
+				return null;
+		}
+	}
+
+	/**
+	 * Best effort peek: with concurrent consumers the returned element may
+	 * already have been taken by the time the caller looks at it.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public T peek()
+	{
+		final long lHead = mHead.get();
+		final int lIndex = (int) lHead & mMask;
+		if (mSlotSequences.get(lIndex) != lHead + 1)
+			return null;
+		return (T) mSlots[lIndex];
+	}
+
+	@Override
+	protected long getHeadSequence()
+	{
+		return mHead.get();
+	}
+
+	@Override
+	protected long getTailSequence()
+	{
+		return mTail.get();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected T elementAt(long pSequence)
+	{
+		final int lIndex = (int) pSequence & mMask;
+		if (mSlotSequences.get(lIndex) != pSequence + 1)
+			return null;
+		final T lElement = (T) mSlots[lIndex];
+		// still the same lap, the element was not taken while reading it:
+		return mSlotSequences.get(lIndex) == pSequence + 1 ? lElement : null;
+	}
+
+	@Override
+	public int size()
+	{
+		final long lHead = mHead.get();
+		final long lTail = mTail.get();
+		return (int) Math.max(0, Math.min(mCapacity, lTail - lHead));
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return mHead.get() >= mTail.get();
+	}
+
+}
@@ -0,0 +1,44 @@
+package clearvolume.utils.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory for daemon threads named after their purpose, numbered from 1
+ * in order of creation: name-1, name-2, ...
+ */
+public class NamedThreadFactory implements ThreadFactory
+{
+	private final String mName;
+	private final int mPriority;
+	private final AtomicInteger mThreadCounter = new AtomicInteger();
+
+	public NamedThreadFactory(String pName)
+	{
+		this(pName, Thread.NORM_PRIORITY);
+	}
+
+	public NamedThreadFactory(String pName, int pPriority)
+	{
+		super();
+		mName = pName;
+		mPriority = pPriority;
+	}
+
+	@Override
+	public Thread newThread(Runnable pRunnable)
+	{
+		final Thread lThread = new Thread(	pRunnable,
+											mName + "-"
+													+ mThreadCounter.incrementAndGet());
+		lThread.setDaemon(true);
+		lThread.setPriority(mPriority);
+		return lThread;
+	}
+
+	public String getName()
+	{
+		return mName;
+	}
+
+}
@@ -0,0 +1,73 @@
+package clearvolume.utils.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+abstract class PaddedSequenceLeftPadding
+{
+	protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class PaddedSequenceValue extends PaddedSequenceLeftPadding
+{
+	protected volatile long mValue;
+
+	// plain field owned by the same thread that writes mValue, lives on the
+	// same cache line on purpose:
+	protected long mCache;
+}
+
+/**
+ * Sequence counter padded on both sides so that it sits alone on its cache
+ * line(s) and never false-shares with the other end of a ring.
+ */
+public class PaddedSequence extends PaddedSequenceValue
+{
+	protected long p9, p10, p11, p12, p13, p14, p15;
+
+	private static final AtomicLongFieldUpdater<PaddedSequenceValue> cUpdater = AtomicLongFieldUpdater.newUpdater(	PaddedSequenceValue.class,
+																													"mValue");
+
+	public PaddedSequence(long pInitialValue)
+	{
+		super();
+		mValue = pInitialValue;
+	}
+
+	public long get()
+	{
+		return mValue;
+	}
+
+	public void set(long pValue)
+	{
+		mValue = pValue;
+	}
+
+	/**
+	 * Ordered store: cheaper than a volatile write, still publishes all
+	 * preceding writes to a thread that subsequently reads this sequence.
+	 * 
+	 * @param pValue
+	 *            new value
+	 */
+	public void setOrdered(long pValue)
+	{
+		cUpdater.lazySet(this, pValue);
+	}
+
+	public boolean compareAndSet(long pExpectedValue, long pNewValue)
+	{
+		return cUpdater.compareAndSet(this, pExpectedValue, pNewValue);
+	}
+
+	long getCache()
+	{
+		return mCache;
+	}
+
+	void setCache(long pCache)
+	{
+		mCache = pCache;
+	}
+
+}
@@ -0,0 +1,61 @@
+package clearvolume.utils.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spins for a little while, then yields and finally parks for short periods of
+ * time. Nobody needs to be unparked, so hand-offs never pay for a wake-up.
+ */
+public class ParkingWaitStrategy implements WaitStrategyInterface
+{
+	private static final int cSpinTries = 100;
+	private static final int cYieldTries = 100;
+	private static final long cDefaultParkPeriodInNanoseconds = 50000;
+
+	private final long mParkPeriodInNanoseconds;
+
+	public ParkingWaitStrategy()
+	{
+		this(cDefaultParkPeriodInNanoseconds);
+	}
+
+	public ParkingWaitStrategy(long pParkPeriodInNanoseconds)
+	{
+		super();
+		mParkPeriodInNanoseconds = pParkPeriodInNanoseconds;
+	}
+
+	@Override
+	public boolean waitFor(	WaitConditionInterface pCondition,
+							long pTimeOutInNanoseconds) throws InterruptedException
+	{
+		final long lDeadline = System.nanoTime() + pTimeOutInNanoseconds;
+		int lCounter = 0;
+		while (!pCondition.isSatisfied())
+		{
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			final long lRemaining = lDeadline - System.nanoTime();
+			if (lRemaining <= 0)
+				return false;
+
+			if (lCounter < cSpinTries)
+				lCounter++;
+			else if (lCounter < cSpinTries + cYieldTries)
+			{
+				lCounter++;
+				Thread.yield();
+			}
+			else
+				LockSupport.parkNanos(Math.min(	lRemaining,
+												mParkPeriodInNanoseconds));
+		}
+		return true;
+	}
+
+	@Override
+	public void signalAll()
+	{
+	}
+
+}
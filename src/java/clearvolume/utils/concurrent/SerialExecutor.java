@@ -0,0 +1,91 @@
+package clearvolume.utils.concurrent;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time and in submission order on another executor, so
+ * that tasks which used to have a single-thread executor of their own can
+ * share a pool. Each task is submitted to the pool separately, so a long queue
+ * of tasks does not hold on to a pool thread.
+ */
+public class SerialExecutor implements Executor
+{
+	private final Executor mExecutor;
+	private final ConcurrentLinkedQueue<Runnable> mTaskQueue = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicBoolean mIsScheduled = new AtomicBoolean();
+
+	private final Runnable mRunNextRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			runNext();
+		}
+	};
+
+	public SerialExecutor(Executor pExecutor)
+	{
+		super();
+		mExecutor = pExecutor;
+	}
+
+	@Override
+	public void execute(Runnable pRunnable)
+	{
+		if (pRunnable == null)
+			throw new NullPointerException();
+		mTaskQueue.add(pRunnable);
+		schedule();
+	}
+
+	private void schedule()
+	{
+		if (mIsScheduled.compareAndSet(false, true))
+			try
+			{
+				mExecutor.execute(mRunNextRunnable);
+			}
+			catch (final RejectedExecutionException e)
+			{
+				mIsScheduled.set(false);
+				mTaskQueue.clear();
+				throw e;
+			}
+	}
+
+	private void runNext()
+	{
+		try
+		{
+			final Runnable lRunnable = mTaskQueue.poll();
+			if (lRunnable != null)
+				lRunnable.run();
+		}
+		catch (final Throwable e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			mIsScheduled.set(false);
+			if (!mTaskQueue.isEmpty())
+				try
+				{
+					schedule();
+				}
+				catch (final RejectedExecutionException e)
+				{
+					// executor shut down, remaining tasks are dropped
+				}
+		}
+	}
+
+	public int getNumberOfQueuedTasks()
+	{
+		return mTaskQueue.size();
+	}
+
+}
@@ -0,0 +1,116 @@
+package clearvolume.utils.concurrent;
+
+/**
+ * Lock-free bounded ring for exactly one producer thread and one consumer
+ * thread. Each side only writes its own padded sequence and keeps a cached
+ * copy of the other side's sequence, so in steady state an offer or poll
+ * touches no shared cache line besides the slot itself. Sequences are
+ * published with volatile stores: a blocked waiter registers itself before
+ * re-checking the ring, and only a volatile store guarantees that either the
+ * waiter sees the new element or the signalling side sees the waiter.
+ *
+ * @param <T>
+ *            element type
+ */
+public class SingleProducerSingleConsumerRing<T> extends BoundedRingBase<T>
+{
+	private final Object[] mSlots;
+
+	// written by producer only, cache holds last seen head:
+	private final PaddedSequence mTail = new PaddedSequence(0);
+
+	// written by consumer only, cache holds last seen tail:
+	private final PaddedSequence mHead = new PaddedSequence(0);
+
+	public SingleProducerSingleConsumerRing(int pMinimalCapacity)
+	{
+		this(pMinimalCapacity, new BlockingWaitStrategy());
+	}
+
+	public SingleProducerSingleConsumerRing(int pMinimalCapacity,
+											WaitStrategyInterface pWaitStrategy)
+	{
+		super(pMinimalCapacity, pWaitStrategy);
+		mSlots = new Object[mCapacity];
+	}
+
+	@Override
+	protected boolean tryOffer(T pElement)
+	{
+		final long lTail = mTail.get();
+		if (lTail - mTail.getCache() >= mCapacity)
+		{
+			mTail.setCache(mHead.get());
+			if (lTail - mTail.getCache() >= mCapacity)
+				return false;
+		}
+		mSlots[(int) lTail & mMask] = pElement;
+		// volatile store, ordered before the waiter check in signalAll():
+		mTail.set(lTail + 1);
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected T tryPoll()
+	{
+		final long lHead = mHead.get();
+		if (lHead >= mHead.getCache())
+		{
+			mHead.setCache(mTail.get());
+			if (lHead >= mHead.getCache())
+				return null;
+		}
+		final int lIndex = (int) lHead & mMask;
+		final T lElement = (T) mSlots[lIndex];
+		mSlots[lIndex] = null;
+		mHead.set(lHead + 1);
+		return lElement;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T peek()
+	{
+		final long lHead = mHead.get();
+		if (lHead >= mTail.get())
+			return null;
+		return (T) mSlots[(int) lHead & mMask];
+	}
+
+	@Override
+	protected long getHeadSequence()
+	{
+		return mHead.get();
+	}
+
+	@Override
+	protected long getTailSequence()
+	{
+		return mTail.get();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected T elementAt(long pSequence)
+	{
+		final T lElement = (T) mSlots[(int) pSequence & mMask];
+		// the slot is only reused once the consumer has moved past it:
+		return mHead.get() <= pSequence ? lElement : null;
+	}
+
+	@Override
+	public int size()
+	{
+		final long lHead = mHead.get();
+		final long lTail = mTail.get();
+		return (int) Math.max(0, Math.min(mCapacity, lTail - lHead));
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return mHead.get() >= mTail.get();
+	}
+
+}
@@ -0,0 +1,29 @@
+package clearvolume.utils.concurrent;
+
+/**
+ * Busy spins, lowest hand-off latency but burns one core per waiting thread.
+ */
+public class SpinningWaitStrategy implements WaitStrategyInterface
+{
+
+	@Override
+	public boolean waitFor(	WaitConditionInterface pCondition,
+							long pTimeOutInNanoseconds) throws InterruptedException
+	{
+		final long lDeadline = System.nanoTime() + pTimeOutInNanoseconds;
+		while (!pCondition.isSatisfied())
+		{
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (System.nanoTime() - lDeadline >= 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void signalAll()
+	{
+	}
+
+}
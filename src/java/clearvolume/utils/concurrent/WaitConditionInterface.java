@@ -0,0 +1,6 @@
+package clearvolume.utils.concurrent;
+
+public interface WaitConditionInterface
+{
+	public boolean isSatisfied();
+}
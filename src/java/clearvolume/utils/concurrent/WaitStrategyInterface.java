@@ -0,0 +1,30 @@
+package clearvolume.utils.concurrent;
+
+/**
+ * Wait strategies decide how a thread waits for a condition on a bounded ring
+ * to become true: by blocking on a lock, by spinning, or by parking.
+ */
+public interface WaitStrategyInterface
+{
+	/**
+	 * Waits until the given condition is satisfied or the time runs out.
+	 * Returning does not guarantee that the condition is still satisfied, the
+	 * caller has to re-check.
+	 * 
+	 * @param pCondition
+	 *            condition to wait for
+	 * @param pTimeOutInNanoseconds
+	 *            maximal wait time in nanoseconds
+	 * @return true if the condition was satisfied before the time ran out.
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	public boolean waitFor(	WaitConditionInterface pCondition,
+							long pTimeOutInNanoseconds) throws InterruptedException;
+
+	/**
+	 * Wakes up threads waiting in waitFor(...), called after every successful
+	 * hand-off. Must be cheap when nobody is waiting.
+	 */
+	public void signalAll();
+}
@@ -0,0 +1,167 @@
+package clearvolume.utils.concurrent.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import clearvolume.utils.concurrent.BlockingWaitStrategy;
+import clearvolume.utils.concurrent.MultiProducerRing;
+import clearvolume.utils.concurrent.ParkingWaitStrategy;
+import clearvolume.utils.concurrent.SingleProducerSingleConsumerRing;
+import clearvolume.utils.concurrent.SpinningWaitStrategy;
+
+public class BoundedRingTests
+{
+	private static final int cNumberOfElements = 20000;
+
+	@Test
+	public void testCapacityAndOrder() throws InterruptedException
+	{
+		final BlockingQueue<Integer> lRing = new SingleProducerSingleConsumerRing<Integer>(3);
+		assertEquals(4, lRing.remainingCapacity());
+
+		for (int i = 0; i < 4; i++)
+			assertTrue(lRing.offer(i));
+		assertFalse(lRing.offer(4));
+		assertFalse(lRing.offer(4, 1, TimeUnit.MILLISECONDS));
+
+		assertEquals(0, (int) lRing.peek());
+		for (int i = 0; i < 4; i++)
+			assertEquals(i, (int) lRing.poll());
+		assertNull(lRing.poll());
+		assertNull(lRing.poll(1, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testSnapshotIteration()
+	{
+		final BlockingQueue<Integer> lRing = new MultiProducerRing<Integer>(8);
+		for (int i = 0; i < 12; i++)
+		{
+			assertTrue(lRing.offer(i));
+			if (i >= 5)
+				lRing.poll();
+		}
+
+		// elements 7 to 11 are left, and the ring has wrapped around:
+		assertArrayEquals(new Object[]
+		{ 7, 8, 9, 10, 11 }, lRing.toArray());
+		assertTrue(lRing.contains(9));
+		assertFalse(lRing.contains(6));
+
+		final Iterator<Integer> lIterator = lRing.iterator();
+		assertEquals(7, (int) lRing.poll());
+		// the iterator walks the snapshot taken when it was created:
+		assertEquals(7, (int) lIterator.next());
+
+		final ArrayList<Integer> lDrained = new ArrayList<Integer>();
+		assertEquals(4, lRing.drainTo(lDrained));
+		assertEquals(Arrays.asList(8, 9, 10, 11), lDrained);
+		assertFalse(lRing.iterator().hasNext());
+	}
+
+	/**
+	 * With a single slot every hand-off makes the other side wait, so a wake-up
+	 * lost between publishing and checking for waiters hangs the test.
+	 */
+	@Test(timeout = 60000)
+	public void testOneSlotWakeUps() throws InterruptedException
+	{
+		transfer(new SingleProducerSingleConsumerRing<Long>(1,
+															new BlockingWaitStrategy()),
+					1,
+					200000);
+		transfer(	new MultiProducerRing<Long>(1, new BlockingWaitStrategy()),
+					2,
+					100000);
+	}
+
+	@Test
+	public void testSingleProducerSingleConsumer() throws InterruptedException
+	{
+		transfer(new SingleProducerSingleConsumerRing<Long>(16,
+															new SpinningWaitStrategy()),
+					1,
+					cNumberOfElements);
+		transfer(new SingleProducerSingleConsumerRing<Long>(16,
+															new ParkingWaitStrategy()),
+					1,
+					cNumberOfElements);
+		transfer(new SingleProducerSingleConsumerRing<Long>(16,
+															new BlockingWaitStrategy()),
+					1,
+					cNumberOfElements);
+	}
+
+	@Test
+	public void testMultiProducer() throws InterruptedException
+	{
+		transfer(new MultiProducerRing<Long>(16, new ParkingWaitStrategy()),
+					4,
+					cNumberOfElements);
+		transfer(	new MultiProducerRing<Long>(16,
+												new BlockingWaitStrategy()),
+					4,
+					cNumberOfElements);
+	}
+
+	private void transfer(	final BlockingQueue<Long> pRing,
+							int pNumberOfProducers,
+							final int pNumberOfElements) throws InterruptedException
+	{
+		final Thread[] lProducers = new Thread[pNumberOfProducers];
+		for (int p = 0; p < pNumberOfProducers; p++)
+		{
+			lProducers[p] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						for (long i = 1; i <= pNumberOfElements; i++)
+							pRing.put(i);
+					}
+					catch (final InterruptedException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			}, "BoundedRingTestsProducer" + p);
+			lProducers[p].start();
+		}
+
+		final AtomicLong lSum = new AtomicLong();
+		long lLast = 0;
+		for (long i = 0; i < (long) pNumberOfElements * pNumberOfProducers; i++)
+		{
+			final long lValue = pRing.take();
+			if (pNumberOfProducers == 1)
+			{
+				assertEquals(lLast + 1, lValue);
+				lLast = lValue;
+			}
+			lSum.addAndGet(lValue);
+		}
+
+		for (final Thread lProducer : lProducers)
+			lProducer.join();
+
+		assertTrue(pRing.isEmpty());
+		assertEquals((long) pNumberOfElements * (pNumberOfElements + 1)
+						/ 2
+						* pNumberOfProducers, lSum.get());
+	}
+
+}
@@ -5,6 +5,7 @@ import static java.lang.Math.toIntExact;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import clearvolume.ClearVolumeCloseable;
 import clearvolume.utils.ToIntExact;
@@ -29,6 +30,8 @@ public class Volume implements ClearVolumeCloseable
 	private volatile long mTimeIndex;
 	private volatile double mTimeInSeconds;
 
+	private final AtomicInteger mNumberOfExtraReferences = new AtomicInteger();
+
 	public Volume()
 	{
 	}
@@ -49,8 +52,34 @@ public class Volume implements ClearVolumeCloseable
 		mVolumeManager = pVolumeManager;
 	}
 
+	/**
+	 * Adds references held by additional consumers of this volume, for example
+	 * the branches of a broadcast. The volume is then made available to its
+	 * manager only after {@link #makeAvailableToManager()} has been called once
+	 * more per added reference.
+	 * 
+	 * @param pNumberOfReferences
+	 *            number of additional references
+	 */
+	public void addReferences(int pNumberOfReferences)
+	{
+		mNumberOfExtraReferences.addAndGet(pNumberOfReferences);
+	}
+
 	public void makeAvailableToManager()
 	{
+		int lNumberOfExtraReferences;
+		do
+		{
+			lNumberOfExtraReferences = mNumberOfExtraReferences.get();
+			if (lNumberOfExtraReferences == 0)
+				break;
+		}
+		while (!mNumberOfExtraReferences.compareAndSet(	lNumberOfExtraReferences,
+														lNumberOfExtraReferences - 1));
+		// other consumers still hold the volume:
+		if (lNumberOfExtraReferences > 0 || mVolumeManager == null)
+			return;
 		mVolumeManager.makeAvailable(this);
 	}
 
@@ -334,7 +363,7 @@ public class Volume implements ClearVolumeCloseable
 			mDimensionsInVoxels = Arrays.copyOf(pVolume.mDimensionsInVoxels,
 												pVolume.mDimensionsInVoxels.length);
 
-		if (mRealUnitName != null)
+		if (pVolume.mRealUnitName != null)
 			mRealUnitName = new String(pVolume.mRealUnitName);
 		mTimeIndex = pVolume.mTimeIndex;
 		mTimeInSeconds = pVolume.mTimeInSeconds;
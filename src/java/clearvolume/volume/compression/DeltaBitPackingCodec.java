@@ -0,0 +1,366 @@
+package clearvolume.volume.compression;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fast lossless codec for integer voxel data (8, 16 or 32 bits per voxel).
+ * Values are delta coded, the deltas are zig-zag mapped to unsigned integers
+ * and packed in blocks of 128 values. Each block uses the bit width that
+ * minimizes its size, values that do not fit are stored as patched exceptions
+ * (as in PFOR), so that a few large deltas, for example at row starts, do not
+ * widen the whole block. Data is split into independent chunks that are
+ * compressed and decompressed in parallel on the common fork-join pool.
+ *
+ * Layout: bytes per element, number of elements, chunk size, number of chunks,
+ * compressed length of each chunk, then the chunks. Each block in a chunk is
+ * byte aligned and made of: bit width, number of exceptions, packed low bits
+ * of all values, then for each exception its index in the block and its high
+ * bits as a variable length integer.
+ */
+public class DeltaBitPackingCodec
+{
+	private static final int cBlockSize = 128;
+	private static final int cDefaultChunkSizeInElements = 1 << 18;
+
+	/**
+	 * Compresses the data of a buffer, from position 0 to its limit.
+	 *
+	 * @param pBuffer
+	 *            buffer holding the data, in native byte order
+	 * @param pBytesPerElement
+	 *            1, 2 or 4
+	 * @return compressed data
+	 */
+	public static byte[] compress(ByteBuffer pBuffer, int pBytesPerElement)
+	{
+		return compress(pBuffer, pBytesPerElement, cDefaultChunkSizeInElements);
+	}
+
+	public static byte[] compress(	ByteBuffer pBuffer,
+									final int pBytesPerElement,
+									final int pChunkSizeInElements)
+	{
+		checkBytesPerElement(pBytesPerElement);
+		final ByteBuffer lBuffer = pBuffer.duplicate()
+											.order(ByteOrder.nativeOrder());
+		final long lNumberOfElements = lBuffer.limit() / pBytesPerElement;
+		final int lNumberOfChunks = (int) ((lNumberOfElements + pChunkSizeInElements - 1) / pChunkSizeInElements);
+		final byte[][] lCompressedChunks = new byte[lNumberOfChunks][];
+
+		final ArrayList<RecursiveAction> lTasks = new ArrayList<RecursiveAction>(lNumberOfChunks);
+		for (int c = 0; c < lNumberOfChunks; c++)
+		{
+			final int lChunk = c;
+			lTasks.add(new RecursiveAction()
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute()
+				{
+					final long lStart = (long) lChunk * pChunkSizeInElements;
+					final int lLength = (int) Math.min(	pChunkSizeInElements,
+														lNumberOfElements - lStart);
+					lCompressedChunks[lChunk] = compressChunk(	lBuffer,
+																pBytesPerElement,
+																(int) lStart,
+																lLength);
+				}
+			});
+		}
+		invokeAll(lTasks);
+
+		int lTotalLength = 4 + 8 + 4 + 4 + 4 * lNumberOfChunks;
+		for (final byte[] lCompressedChunk : lCompressedChunks)
+			lTotalLength += lCompressedChunk.length;
+
+		final byte[] lCompressed = new byte[lTotalLength];
+		final ByteBuffer lOutput = ByteBuffer.wrap(lCompressed);
+		lOutput.putInt(pBytesPerElement);
+		lOutput.putLong(lNumberOfElements);
+		lOutput.putInt(pChunkSizeInElements);
+		lOutput.putInt(lNumberOfChunks);
+		for (final byte[] lCompressedChunk : lCompressedChunks)
+			lOutput.putInt(lCompressedChunk.length);
+		for (final byte[] lCompressedChunk : lCompressedChunks)
+			lOutput.put(lCompressedChunk);
+		return lCompressed;
+	}
+
+	/**
+	 * Decompresses data into a buffer, starting at position 0.
+	 *
+	 * @param pCompressed
+	 *            compressed data
+	 * @param pBuffer
+	 *            buffer to write to, must be large enough
+	 */
+	public static void decompress(final byte[] pCompressed, ByteBuffer pBuffer)
+	{
+		final ByteBuffer lInput = ByteBuffer.wrap(pCompressed);
+		final int lBytesPerElement = lInput.getInt();
+		final long lNumberOfElements = lInput.getLong();
+		final int lChunkSizeInElements = lInput.getInt();
+		final int lNumberOfChunks = lInput.getInt();
+		checkBytesPerElement(lBytesPerElement);
+
+		final ByteBuffer lBuffer = pBuffer.duplicate()
+											.order(ByteOrder.nativeOrder());
+		if (lBuffer.capacity() < lNumberOfElements * lBytesPerElement)
+			throw new IllegalArgumentException("Buffer too small for decompressed data");
+
+		final ArrayList<RecursiveAction> lTasks = new ArrayList<RecursiveAction>(lNumberOfChunks);
+		int lOffset = lInput.position() + 4 * lNumberOfChunks;
+		for (int c = 0; c < lNumberOfChunks; c++)
+		{
+			final int lChunk = c;
+			final int lChunkOffset = lOffset;
+			lOffset += lInput.getInt();
+			lTasks.add(new RecursiveAction()
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute()
+				{
+					final long lStart = (long) lChunk * lChunkSizeInElements;
+					final int lLength = (int) Math.min(	lChunkSizeInElements,
+														lNumberOfElements - lStart);
+					decompressChunk(pCompressed,
+									lChunkOffset,
+									lBuffer,
+									lBytesPerElement,
+									(int) lStart,
+									lLength);
+				}
+			});
+		}
+		invokeAll(lTasks);
+	}
+
+	private static void invokeAll(final ArrayList<RecursiveAction> pTasks)
+	{
+		if (pTasks.size() == 1)
+		{
+			pTasks.get(0).invoke();
+			return;
+		}
+		ForkJoinPool.commonPool().invoke(new RecursiveAction()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute()
+			{
+				invokeAll(pTasks);
+			}
+		});
+	}
+
+	private static byte[] compressChunk(ByteBuffer pBuffer,
+										int pBytesPerElement,
+										int pStart,
+										int pLength)
+	{
+		final int lNumberOfBlocks = (pLength + cBlockSize - 1) / cBlockSize;
+		final byte[] lOutput = new byte[lNumberOfBlocks * (2 + 4 * cBlockSize + 6 * cBlockSize)];
+		final int[] lBlock = new int[cBlockSize];
+		final int[] lBitLengthHistogram = new int[33];
+		int lPosition = 0;
+		int lPrevious = 0;
+
+		for (int lBlockStart = 0; lBlockStart < pLength; lBlockStart += cBlockSize)
+		{
+			final int lBlockLength = Math.min(cBlockSize, pLength - lBlockStart);
+			Arrays.fill(lBitLengthHistogram, 0);
+			for (int i = 0; i < lBlockLength; i++)
+			{
+				final int lValue = get(	pBuffer,
+										pBytesPerElement,
+										pStart + lBlockStart + i);
+				final int lDelta = lValue - lPrevious;
+				lPrevious = lValue;
+				final int lZigZag = (lDelta << 1) ^ (lDelta >> 31);
+				lBlock[i] = lZigZag;
+				lBitLengthHistogram[32 - Integer.numberOfLeadingZeros(lZigZag)]++;
+			}
+
+			final int lBits = chooseBitWidth(	lBitLengthHistogram,
+												lBlockLength);
+			int lNumberOfExceptions = 0;
+			for (int b = lBits + 1; b <= 32; b++)
+				lNumberOfExceptions += lBitLengthHistogram[b];
+
+			lOutput[lPosition++] = (byte) lBits;
+			lOutput[lPosition++] = (byte) lNumberOfExceptions;
+
+			if (lBits > 0)
+			{
+				final long lMask = (1L << lBits) - 1;
+				long lAccumulator = 0;
+				int lAccumulatedBits = 0;
+				for (int i = 0; i < lBlockLength; i++)
+				{
+					lAccumulator |= (lBlock[i] & lMask) << lAccumulatedBits;
+					lAccumulatedBits += lBits;
+					while (lAccumulatedBits >= 8)
+					{
+						lOutput[lPosition++] = (byte) lAccumulator;
+						lAccumulator >>>= 8;
+						lAccumulatedBits -= 8;
+					}
+				}
+				if (lAccumulatedBits > 0)
+					lOutput[lPosition++] = (byte) lAccumulator;
+			}
+
+			if (lNumberOfExceptions > 0)
+				for (int i = 0; i < lBlockLength; i++)
+				{
+					int lHighBits = lBits == 32 ? 0 : lBlock[i] >>> lBits;
+					if (lHighBits == 0)
+						continue;
+					lOutput[lPosition++] = (byte) i;
+					while ((lHighBits & ~0x7F) != 0)
+					{
+						lOutput[lPosition++] = (byte) ((lHighBits & 0x7F) | 0x80);
+						lHighBits >>>= 7;
+					}
+					lOutput[lPosition++] = (byte) lHighBits;
+				}
+		}
+
+		final byte[] lCompressedChunk = new byte[lPosition];
+		System.arraycopy(lOutput, 0, lCompressedChunk, 0, lPosition);
+		return lCompressedChunk;
+	}
+
+	private static int chooseBitWidth(int[] pBitLengthHistogram, int pLength)
+	{
+		int lBestBits = 32;
+		long lBestCost = Long.MAX_VALUE;
+		int lNumberOfExceptions = 0;
+		for (int lBits = 32; lBits >= 0; lBits--)
+		{
+			// an exception costs its index and about three bytes of high bits:
+			final long lCost = (pLength * lBits + 7) / 8 + 4L * lNumberOfExceptions;
+			if (lCost < lBestCost && lNumberOfExceptions < cBlockSize)
+			{
+				lBestCost = lCost;
+				lBestBits = lBits;
+			}
+			lNumberOfExceptions += pBitLengthHistogram[lBits];
+		}
+		return lBestBits;
+	}
+
+	private static void decompressChunk(byte[] pInput,
+										int pOffset,
+										ByteBuffer pBuffer,
+										int pBytesPerElement,
+										int pStart,
+										int pLength)
+	{
+		final int[] lBlock = new int[cBlockSize];
+		int lPosition = pOffset;
+		int lPrevious = 0;
+
+		for (int lBlockStart = 0; lBlockStart < pLength; lBlockStart += cBlockSize)
+		{
+			final int lBlockLength = Math.min(cBlockSize, pLength - lBlockStart);
+			final int lBits = pInput[lPosition++];
+			final int lNumberOfExceptions = pInput[lPosition++] & 0xFF;
+
+			if (lBits == 0)
+				Arrays.fill(lBlock, 0);
+			else
+			{
+				final long lMask = (1L << lBits) - 1;
+				long lAccumulator = 0;
+				int lAccumulatedBits = 0;
+				for (int i = 0; i < lBlockLength; i++)
+				{
+					while (lAccumulatedBits < lBits)
+					{
+						lAccumulator |= (pInput[lPosition++] & 0xFFL) << lAccumulatedBits;
+						lAccumulatedBits += 8;
+					}
+					lBlock[i] = (int) (lAccumulator & lMask);
+					lAccumulator >>>= lBits;
+					lAccumulatedBits -= lBits;
+				}
+			}
+
+			for (int e = 0; e < lNumberOfExceptions; e++)
+			{
+				final int lIndex = pInput[lPosition++] & 0xFF;
+				int lHighBits = 0;
+				int lShift = 0;
+				int lByte;
+				do
+				{
+					lByte = pInput[lPosition++];
+					lHighBits |= (lByte & 0x7F) << lShift;
+					lShift += 7;
+				}
+				while ((lByte & 0x80) != 0);
+				lBlock[lIndex] |= lHighBits << lBits;
+			}
+
+			for (int i = 0; i < lBlockLength; i++)
+			{
+				final int lZigZag = lBlock[i];
+				final int lDelta = (lZigZag >>> 1) ^ -(lZigZag & 1);
+				lPrevious += lDelta;
+				put(pBuffer,
+					pBytesPerElement,
+					pStart + lBlockStart + i,
+					lPrevious);
+			}
+		}
+	}
+
+	private static int get(ByteBuffer pBuffer, int pBytesPerElement, int pIndex)
+	{
+		switch (pBytesPerElement)
+		{
+		case 1:
+			return pBuffer.get(pIndex) & 0xFF;
+		case 2:
+			return pBuffer.getShort(2 * pIndex) & 0xFFFF;
+		default:
+			return pBuffer.getInt(4 * pIndex);
+		}
+	}
+
+	private static void put(ByteBuffer pBuffer,
+							int pBytesPerElement,
+							int pIndex,
+							int pValue)
+	{
+		switch (pBytesPerElement)
+		{
+		case 1:
+			pBuffer.put(pIndex, (byte) pValue);
+			break;
+		case 2:
+			pBuffer.putShort(2 * pIndex, (short) pValue);
+			break;
+		default:
+			pBuffer.putInt(4 * pIndex, pValue);
+		}
+	}
+
+	private static void checkBytesPerElement(int pBytesPerElement)
+	{
+		if (pBytesPerElement != 1 && pBytesPerElement != 2
+			&& pBytesPerElement != 4)
+			throw new IllegalArgumentException("Unsupported number of bytes per element: " + pBytesPerElement);
+	}
+
+}
@@ -0,0 +1,68 @@
+package clearvolume.volume.compression.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import clearvolume.volume.compression.DeltaBitPackingCodec;
+
+public class DeltaBitPackingCodecTests
+{
+
+	@Test
+	public void testRoundTrip()
+	{
+		final Random lRandom = new Random(1);
+		for (final int lBytesPerElement : new int[]
+		{ 1, 2, 4 })
+		{
+			final int lNumberOfElements = 100003;
+			final ByteBuffer lBuffer = ByteBuffer.allocateDirect(lNumberOfElements * lBytesPerElement)
+													.order(ByteOrder.nativeOrder());
+			final byte[] lRandomBytes = new byte[lBuffer.capacity()];
+			lRandom.nextBytes(lRandomBytes);
+			lBuffer.put(lRandomBytes);
+			lBuffer.clear();
+
+			final byte[] lCompressed = DeltaBitPackingCodec.compress(	lBuffer,
+																		lBytesPerElement,
+																		4096);
+
+			final ByteBuffer lDecompressed = ByteBuffer.allocateDirect(lBuffer.capacity())
+														.order(ByteOrder.nativeOrder());
+			DeltaBitPackingCodec.decompress(lCompressed, lDecompressed);
+			assertEquals(lBuffer, lDecompressed);
+		}
+	}
+
+	@Test
+	public void testSmoothData()
+	{
+		// noisy 16-bit data with a smooth background, typical of microscopy:
+		final Random lRandom = new Random(1);
+		final int lWidth = 128, lHeight = 128, lDepth = 32;
+		final ByteBuffer lBuffer = ByteBuffer.allocateDirect(2 * lWidth
+																* lHeight
+																* lDepth)
+												.order(ByteOrder.nativeOrder());
+		for (int z = 0; z < lDepth; z++)
+			for (int y = 0; y < lHeight; y++)
+				for (int x = 0; x < lWidth; x++)
+					lBuffer.putShort((short) (100 + x + y + lRandom.nextInt(8)));
+		lBuffer.clear();
+
+		final byte[] lCompressed = DeltaBitPackingCodec.compress(lBuffer, 2);
+		assertTrue(lCompressed.length * 3 < lBuffer.capacity());
+
+		final ByteBuffer lDecompressed = ByteBuffer.allocateDirect(lBuffer.capacity())
+													.order(ByteOrder.nativeOrder());
+		DeltaBitPackingCodec.decompress(lCompressed, lDecompressed);
+		assertEquals(lBuffer, lDecompressed);
+	}
+
+}
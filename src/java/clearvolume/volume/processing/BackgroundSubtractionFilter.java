@@ -0,0 +1,59 @@
+package clearvolume.volume.processing;
+
+import java.util.Arrays;
+
+/**
+ * Subtracts a smooth background estimated by a wide Gaussian blur, negative
+ * values are set to zero. The standard deviation should be well above the size
+ * of the structures of interest.
+ */
+public class BackgroundSubtractionFilter extends SlabFilter
+{
+	private final GaussianFilter mGaussianFilter;
+
+	public BackgroundSubtractionFilter(double pSigma)
+	{
+		this(pSigma, pSigma, pSigma);
+	}
+
+	public BackgroundSubtractionFilter(	double pSigmaX,
+										double pSigmaY,
+										double pSigmaZ)
+	{
+		super();
+		mGaussianFilter = new GaussianFilter(pSigmaX, pSigmaY, pSigmaZ);
+	}
+
+	@Override
+	public int getHaloInSlices()
+	{
+		return mGaussianFilter.getHaloInSlices();
+	}
+
+	@Override
+	protected void filterSlab(	float[] pInput,
+								float[] pOutput,
+								int pElementSize,
+								int pWidth,
+								int pHeight,
+								int pNumberOfSlices)
+	{
+		final int lSliceLength = pElementSize * pWidth * pHeight;
+		final int lOffset = getHaloInSlices() * lSliceLength;
+		final float[] lOriginal = Arrays.copyOfRange(	pInput,
+														lOffset,
+														lOffset + pNumberOfSlices
+																* lSliceLength);
+
+		mGaussianFilter.filterSlab(	pInput,
+									pOutput,
+									pElementSize,
+									pWidth,
+									pHeight,
+									pNumberOfSlices);
+
+		for (int i = 0; i < lOriginal.length; i++)
+			pOutput[i] = Math.max(0, lOriginal[i] - pOutput[i]);
+	}
+
+}
@@ -0,0 +1,374 @@
+package clearvolume.volume.processing;
+
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.SlabRunner.SlabTaskInterface;
+import coremem.enums.NativeTypeEnum;
+
+/**
+ * Contrast-limited adaptive histogram equalization in 3D. The volume is divided
+ * into a grid of tiles, each tile gets a histogram whose bins are clipped at a
+ * multiple of the mean bin count, the clipped counts being spread over all
+ * bins, and the cumulative histogram becomes the mapping of the tile. Each
+ * voxel is mapped by trilinear interpolation between the mappings of the eight
+ * nearest tile centers, and scaled to the range of the output type, 0 to 1 for
+ * floating point types.
+ *
+ * Histograms are gathered over z-slabs in parallel and then summed, and the
+ * mapping pass runs over the same slabs. The mapping pass only writes the
+ * slices it has read, so the filter works in place, and the output can have
+ * another type than the input, UnsignedByte or UnsignedShort for instance.
+ * Volumes must have one element per voxel. Unless an input range is set, it is
+ * the range of the volume, found in an extra pass.
+ */
+public class CLAHEFilter implements VolumeFilterInterface
+{
+	private static final int cSlabsPerThread = 2;
+
+	private final int mTilesX, mTilesY, mTilesZ;
+	private final float mClipLimit;
+	private final int mNumberOfBins;
+	private volatile float[] mInputRange;
+
+	/**
+	 * @param pTilesX
+	 *            number of tiles along x
+	 * @param pTilesY
+	 *            number of tiles along y
+	 * @param pTilesZ
+	 *            number of tiles along z
+	 * @param pClipLimit
+	 *            maximal bin count as a multiple of the mean bin count, 1 gives
+	 *            no equalization and large values plain equalization
+	 */
+	public CLAHEFilter(int pTilesX, int pTilesY, int pTilesZ, float pClipLimit)
+	{
+		this(pTilesX, pTilesY, pTilesZ, pClipLimit, 1024);
+	}
+
+	/**
+	 * @param pTilesX
+	 *            number of tiles along x
+	 * @param pTilesY
+	 *            number of tiles along y
+	 * @param pTilesZ
+	 *            number of tiles along z
+	 * @param pClipLimit
+	 *            maximal bin count as a multiple of the mean bin count, 1 gives
+	 *            no equalization and large values plain equalization
+	 * @param pNumberOfBins
+	 *            number of histogram bins
+	 */
+	public CLAHEFilter(	int pTilesX,
+						int pTilesY,
+						int pTilesZ,
+						float pClipLimit,
+						int pNumberOfBins)
+	{
+		super();
+		if (pTilesX < 1 || pTilesY < 1 || pTilesZ < 1)
+			throw new IllegalArgumentException("At least one tile per axis is needed");
+		if (pClipLimit < 1)
+			throw new IllegalArgumentException("Clip limit must be at least 1");
+		if (pNumberOfBins < 2)
+			throw new IllegalArgumentException("At least two bins are needed");
+		mTilesX = pTilesX;
+		mTilesY = pTilesY;
+		mTilesZ = pTilesZ;
+		mClipLimit = pClipLimit;
+		mNumberOfBins = pNumberOfBins;
+	}
+
+	/**
+	 * Sets the range of input values spread over the histogram bins, values
+	 * outside go to the first or last bin. Saves a pass over the volume.
+	 *
+	 * @param pMin
+	 *            lowest value
+	 * @param pMax
+	 *            highest value
+	 */
+	public void setInputRange(float pMin, float pMax)
+	{
+		if (pMax <= pMin)
+			throw new IllegalArgumentException("Input range is empty");
+		mInputRange = new float[]
+		{ pMin, pMax };
+	}
+
+	/**
+	 * Makes the input range the range of each volume again.
+	 */
+	public void clearInputRange()
+	{
+		mInputRange = null;
+	}
+
+	@Override
+	public boolean isInPlace()
+	{
+		return true;
+	}
+
+	@Override
+	public void apply(	final Volume pInput,
+						final Volume pOutput,
+						ForkJoinPool pForkJoinPool)
+	{
+		if (pInput.getElementSize() != 1 || pOutput.getElementSize() != 1)
+			throw new IllegalArgumentException("CLAHE needs one element per voxel");
+
+		final int lWidth = (int) pInput.getWidthInVoxels();
+		final int lHeight = (int) pInput.getHeightInVoxels();
+		final int lDepth = VoxelAccess.getDepth(pInput);
+		final int lSliceLength = lWidth * lHeight;
+		final int lNumberOfSlabs = Math.min(lDepth,
+											cSlabsPerThread * pForkJoinPool.getParallelism());
+		final int[] lSlabStarts = new int[lNumberOfSlabs + 1];
+		for (int s = 0; s <= lNumberOfSlabs; s++)
+			lSlabStarts[s] = (int) ((long) s * lDepth / lNumberOfSlabs);
+
+		final int lTilesX = Math.min(mTilesX, lWidth);
+		final int lTilesY = Math.min(mTilesY, lHeight);
+		final int lTilesZ = Math.min(mTilesZ, lDepth);
+		final int lNumberOfTiles = lTilesX * lTilesY * lTilesZ;
+		final int lBins = mNumberOfBins;
+		final int[] lTileOfX = tileIndices(lWidth, lTilesX);
+		final int[] lTileOfY = tileIndices(lHeight, lTilesY);
+		final int[] lTileOfZ = tileIndices(lDepth, lTilesZ);
+
+		// 1) input range:
+		float[] lInputRange = mInputRange;
+		if (lInputRange == null)
+		{
+			final float[][] lSlabRanges = new float[lNumberOfSlabs][];
+			SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+			{
+				@Override
+				public void run(int pSlab)
+				{
+					final float[] lSlices = new float[(lSlabStarts[pSlab + 1] - lSlabStarts[pSlab]) * lSliceLength];
+					VoxelAccess.readSlices(	pInput,
+											lSlabStarts[pSlab],
+											lSlabStarts[pSlab + 1],
+											lSlices);
+					float lMin = Float.POSITIVE_INFINITY, lMax = Float.NEGATIVE_INFINITY;
+					for (final float lValue : lSlices)
+					{
+						lMin = Math.min(lMin, lValue);
+						lMax = Math.max(lMax, lValue);
+					}
+					lSlabRanges[pSlab] = new float[]
+					{ lMin, lMax };
+				}
+			});
+			lInputRange = new float[]
+			{ Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY };
+			for (final float[] lSlabRange : lSlabRanges)
+			{
+				lInputRange[0] = Math.min(lInputRange[0], lSlabRange[0]);
+				lInputRange[1] = Math.max(lInputRange[1], lSlabRange[1]);
+			}
+		}
+		final float lMin = lInputRange[0];
+		final float lBinScale = lInputRange[1] > lMin	? lBins / (lInputRange[1] - lMin)
+														: 0;
+
+		// 2) histograms of the tiles, per slab and then summed:
+		final int[][] lSlabHistograms = new int[lNumberOfSlabs][];
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				final int lZStart = lSlabStarts[pSlab];
+				final int lZEnd = lSlabStarts[pSlab + 1];
+				final float[] lSlices = new float[(lZEnd - lZStart) * lSliceLength];
+				VoxelAccess.readSlices(pInput, lZStart, lZEnd, lSlices);
+				final int[] lHistograms = new int[lNumberOfTiles * lBins];
+				for (int z = lZStart, i = 0; z < lZEnd; z++)
+					for (int y = 0; y < lHeight; y++)
+					{
+						final int lRowTile = (lTileOfZ[z] * lTilesY + lTileOfY[y])
+												* lTilesX;
+						for (int x = 0; x < lWidth; x++, i++)
+							lHistograms[(lRowTile + lTileOfX[x]) * lBins
+											+ bin(lSlices[i], lMin, lBinScale, lBins)]++;
+					}
+				lSlabHistograms[pSlab] = lHistograms;
+			}
+		});
+		final int[] lHistograms = lSlabHistograms[0];
+		for (int s = 1; s < lNumberOfSlabs; s++)
+			for (int i = 0; i < lHistograms.length; i++)
+				lHistograms[i] += lSlabHistograms[s][i];
+
+		// 3) clipped cumulative histograms:
+		final float[] lMappings = new float[lNumberOfTiles * lBins];
+		SlabRunner.run(pForkJoinPool, lNumberOfTiles, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pTile)
+			{
+				computeMapping(lHistograms, lMappings, pTile * lBins, lBins);
+			}
+		});
+
+		// 4) trilinear interpolation of the mappings of the nearest tiles:
+		final float lOutputMax = getMaximum(pOutput.getNativeType());
+		final int[][] lNeighboursX = interpolationTiles(lWidth, lTilesX);
+		final int[][] lNeighboursY = interpolationTiles(lHeight, lTilesY);
+		final int[][] lNeighboursZ = interpolationTiles(lDepth, lTilesZ);
+		final float[][] lWeightsX = interpolationWeights(lWidth, lTilesX);
+		final float[][] lWeightsY = interpolationWeights(lHeight, lTilesY);
+		final float[][] lWeightsZ = interpolationWeights(lDepth, lTilesZ);
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				final int lZStart = lSlabStarts[pSlab];
+				final int lZEnd = lSlabStarts[pSlab + 1];
+				final float[] lSlices = new float[(lZEnd - lZStart) * lSliceLength];
+				VoxelAccess.readSlices(pInput, lZStart, lZEnd, lSlices);
+				for (int z = lZStart, i = 0; z < lZEnd; z++)
+					for (int y = 0; y < lHeight; y++)
+						for (int x = 0; x < lWidth; x++, i++)
+						{
+							final int lBin = bin(lSlices[i], lMin, lBinScale, lBins);
+							float lValue = 0;
+							for (int c = 0; c < 8; c++)
+							{
+								final int dx = c & 1;
+								final int dy = (c >> 1) & 1;
+								final int dz = (c >> 2) & 1;
+								final int lTile = (lNeighboursZ[dz][z] * lTilesY + lNeighboursY[dy][y])
+													* lTilesX
+													+ lNeighboursX[dx][x];
+								lValue += lWeightsX[dx][x] * lWeightsY[dy][y]
+											* lWeightsZ[dz][z]
+											* lMappings[lTile * lBins + lBin];
+							}
+							lSlices[i] = lValue * lOutputMax;
+						}
+				VoxelAccess.writeSlices(pOutput, lZStart, lZEnd, lSlices);
+			}
+		});
+	}
+
+	private static int bin(float pValue, float pMin, float pBinScale, int pBins)
+	{
+		final int lBin = (int) ((pValue - pMin) * pBinScale);
+		return lBin < 0 ? 0 : lBin >= pBins ? pBins - 1 : lBin;
+	}
+
+	/**
+	 * Clips a histogram, spreads the clipped counts evenly over all bins, and
+	 * writes its cumulative histogram, normalized to 1, as the mapping.
+	 */
+	private void computeMapping(int[] pHistograms,
+								float[] pMappings,
+								int pOffset,
+								int pBins)
+	{
+		long lCount = 0;
+		for (int b = 0; b < pBins; b++)
+			lCount += pHistograms[pOffset + b];
+		if (lCount == 0)
+			return;
+
+		final double lLimit = (double) mClipLimit * lCount / pBins;
+		double lExcess = 0;
+		for (int b = 0; b < pBins; b++)
+			lExcess += Math.max(0, pHistograms[pOffset + b] - lLimit);
+		final double lSpread = lExcess / pBins;
+
+		double lCumulative = 0;
+		for (int b = 0; b < pBins; b++)
+		{
+			lCumulative += Math.min(pHistograms[pOffset + b], lLimit) + lSpread;
+			pMappings[pOffset + b] = (float) (lCumulative / lCount);
+		}
+	}
+
+	/**
+	 * Returns the tile of each coordinate, tiles having equal sizes give or take
+	 * one voxel.
+	 */
+	private static int[] tileIndices(int pLength, int pTiles)
+	{
+		final int[] lTiles = new int[pLength];
+		for (int t = 0; t < pTiles; t++)
+			for (int i = (int) ((long) t * pLength / pTiles); i < (long) (t + 1) * pLength
+																	/ pTiles; i++)
+				lTiles[i] = t;
+		return lTiles;
+	}
+
+	/**
+	 * Returns, for each coordinate, the tiles whose centers are just below and
+	 * just above it, the same tile twice before the first center and after the
+	 * last one.
+	 */
+	private static int[][] interpolationTiles(int pLength, int pTiles)
+	{
+		final int[][] lTiles = new int[2][pLength];
+		for (int i = 0; i < pLength; i++)
+		{
+			final double lPosition = centeredTilePosition(i, pLength, pTiles);
+			final int lLower = (int) Math.max(0, Math.min(	pTiles - 1,
+															Math.floor(lPosition)));
+			lTiles[0][i] = lLower;
+			lTiles[1][i] = Math.min(pTiles - 1, lLower + 1);
+		}
+		return lTiles;
+	}
+
+	private static float[][] interpolationWeights(int pLength, int pTiles)
+	{
+		final float[][] lWeights = new float[2][pLength];
+		for (int i = 0; i < pLength; i++)
+		{
+			final double lPosition = centeredTilePosition(i, pLength, pTiles);
+			final double lLower = Math.max(	0,
+											Math.min(pTiles - 1, Math.floor(lPosition)));
+			final float lFraction = (float) Math.max(0, Math.min(	1,
+																	lPosition - lLower));
+			lWeights[0][i] = 1 - lFraction;
+			lWeights[1][i] = lFraction;
+		}
+		return lWeights;
+	}
+
+	/**
+	 * Returns the position of a voxel center in tiles, tile centers being at
+	 * whole numbers.
+	 */
+	private static double centeredTilePosition(int pIndex, int pLength, int pTiles)
+	{
+		return (pIndex + 0.5) * pTiles / pLength - 0.5;
+	}
+
+	private static float getMaximum(NativeTypeEnum pType)
+	{
+		switch (pType)
+		{
+		case UnsignedByte:
+			return 255;
+		case Byte:
+			return Byte.MAX_VALUE;
+		case UnsignedShort:
+			return 65535;
+		case Short:
+			return Short.MAX_VALUE;
+		case UnsignedInt:
+			return 4294967295L;
+		case Int:
+			return Integer.MAX_VALUE;
+		default:
+			return 1;
+		}
+	}
+
+}
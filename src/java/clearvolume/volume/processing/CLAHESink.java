@@ -0,0 +1,63 @@
+package clearvolume.volume.processing;
+
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import coremem.enums.NativeTypeEnum;
+
+/**
+ * Equalizes each volume with a {@link CLAHEFilter} into an UnsignedByte or
+ * UnsignedShort volume requested from the manager of the relay sink, relays
+ * it with the metadata of the received volume, and makes the received volume
+ * available to its manager.
+ */
+public class CLAHESink extends ProcessingSinkAdapter
+{
+	private final CLAHEFilter mCLAHEFilter;
+	private final NativeTypeEnum mOutputType;
+	private final ForkJoinPool mForkJoinPool;
+
+	public CLAHESink(CLAHEFilter pCLAHEFilter, NativeTypeEnum pOutputType)
+	{
+		this(pCLAHEFilter, pOutputType, ForkJoinPool.commonPool());
+	}
+
+	public CLAHESink(	CLAHEFilter pCLAHEFilter,
+						NativeTypeEnum pOutputType,
+						ForkJoinPool pForkJoinPool)
+	{
+		super();
+		if (pOutputType != NativeTypeEnum.UnsignedByte && pOutputType != NativeTypeEnum.UnsignedShort)
+			throw new IllegalArgumentException("Output type must be UnsignedByte or UnsignedShort");
+		mCLAHEFilter = pCLAHEFilter;
+		mOutputType = pOutputType;
+		mForkJoinPool = pForkJoinPool;
+	}
+
+	public CLAHEFilter getCLAHEFilter()
+	{
+		return mCLAHEFilter;
+	}
+
+	public NativeTypeEnum getOutputType()
+	{
+		return mOutputType;
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		final Volume lOutput = requestVolume(	mOutputType,
+												pVolume.getDimensionsInVoxels());
+		mCLAHEFilter.apply(pVolume, lOutput, mForkJoinPool);
+		lOutput.copyMetaDataFrom(pVolume);
+		lOutput.setType(mOutputType);
+		pVolume.makeAvailableToManager();
+
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(lOutput);
+		else
+			lOutput.makeAvailableToManager();
+	}
+
+}
@@ -0,0 +1,69 @@
+package clearvolume.volume.processing;
+
+import java.util.Arrays;
+
+/**
+ * Difference of Gaussians, the blur with the smaller standard deviation minus
+ * the blur with the larger one, so that bright blobs of a size matching the
+ * standard deviations give positive values. The output should have a signed
+ * type, Float for instance.
+ */
+public class DifferenceOfGaussiansFilter extends SlabFilter
+{
+	private final GaussianFilter mInnerGaussianFilter, mOuterGaussianFilter;
+
+	/**
+	 * @param pInnerSigma
+	 *            smaller standard deviation, in voxels
+	 * @param pOuterSigma
+	 *            larger standard deviation, in voxels
+	 */
+	public DifferenceOfGaussiansFilter(double pInnerSigma, double pOuterSigma)
+	{
+		super();
+		if (pInnerSigma >= pOuterSigma)
+			throw new IllegalArgumentException("Inner standard deviation must be smaller than the outer one");
+		mInnerGaussianFilter = new GaussianFilter(pInnerSigma);
+		mOuterGaussianFilter = new GaussianFilter(pOuterSigma);
+	}
+
+	@Override
+	public int getHaloInSlices()
+	{
+		return mOuterGaussianFilter.getHaloInSlices();
+	}
+
+	@Override
+	protected void filterSlab(	float[] pInput,
+								float[] pOutput,
+								int pElementSize,
+								int pWidth,
+								int pHeight,
+								int pNumberOfSlices)
+	{
+		final int lSliceLength = pElementSize * pWidth * pHeight;
+		final int lInnerHalo = mInnerGaussianFilter.getHaloInSlices();
+		final int lOffset = (getHaloInSlices() - lInnerHalo) * lSliceLength;
+
+		final float[] lInnerInput = Arrays.copyOfRange(	pInput,
+														lOffset,
+														lOffset + (pNumberOfSlices + 2 * lInnerHalo)
+																* lSliceLength);
+		final float[] lInnerOutput = new float[pOutput.length];
+		mInnerGaussianFilter.filterSlab(lInnerInput,
+										lInnerOutput,
+										pElementSize,
+										pWidth,
+										pHeight,
+										pNumberOfSlices);
+		mOuterGaussianFilter.filterSlab(pInput,
+										pOutput,
+										pElementSize,
+										pWidth,
+										pHeight,
+										pNumberOfSlices);
+		for (int i = 0; i < pOutput.length; i++)
+			pOutput[i] = lInnerOutput[i] - pOutput[i];
+	}
+
+}
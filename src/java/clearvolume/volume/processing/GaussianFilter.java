@@ -0,0 +1,122 @@
+package clearvolume.volume.processing;
+
+/**
+ * Separable Gaussian blur with one standard deviation per axis, in voxels.
+ * Kernels are truncated at three standard deviations and edges are repeated.
+ * Each slab is blurred along x and y slice by slice, halo included, and then
+ * along z.
+ */
+public class GaussianFilter extends SlabFilter
+{
+	private final float[] mKernelX, mKernelY, mKernelZ;
+
+	public GaussianFilter(double pSigma)
+	{
+		this(pSigma, pSigma, pSigma);
+	}
+
+	public GaussianFilter(double pSigmaX, double pSigmaY, double pSigmaZ)
+	{
+		super();
+		mKernelX = createKernel(pSigmaX);
+		mKernelY = createKernel(pSigmaY);
+		mKernelZ = createKernel(pSigmaZ);
+	}
+
+	private static float[] createKernel(double pSigma)
+	{
+		if (pSigma < 0)
+			throw new IllegalArgumentException("Standard deviation must not be negative");
+		final int lRadius = (int) Math.ceil(3 * pSigma);
+		final float[] lKernel = new float[2 * lRadius + 1];
+		if (lRadius == 0)
+		{
+			lKernel[0] = 1;
+			return lKernel;
+		}
+		double lSum = 0;
+		for (int i = -lRadius; i <= lRadius; i++)
+			lSum += lKernel[i + lRadius] = (float) Math.exp(-i * i / (2 * pSigma * pSigma));
+		for (int i = 0; i < lKernel.length; i++)
+			lKernel[i] /= lSum;
+		return lKernel;
+	}
+
+	@Override
+	public int getHaloInSlices()
+	{
+		return mKernelZ.length / 2;
+	}
+
+	@Override
+	protected void filterSlab(	float[] pInput,
+								float[] pOutput,
+								int pElementSize,
+								int pWidth,
+								int pHeight,
+								int pNumberOfSlices)
+	{
+		final int lHalo = getHaloInSlices();
+		final int lRowLength = pElementSize * pWidth;
+		final int lSliceLength = lRowLength * pHeight;
+		final float[] lLine = new float[Math.max(pWidth, pHeight) + 2 * Math.max(	mKernelX.length,
+																					mKernelY.length)];
+
+		for (int z = 0; z < pNumberOfSlices + 2 * lHalo; z++)
+			for (int c = 0; c < pElementSize; c++)
+			{
+				if (mKernelX.length > 1)
+					for (int y = 0; y < pHeight; y++)
+						convolveLine(	pInput,
+										z * lSliceLength + y * lRowLength + c,
+										pElementSize,
+										pWidth,
+										mKernelX,
+										lLine);
+				if (mKernelY.length > 1)
+					for (int x = 0; x < pWidth; x++)
+						convolveLine(	pInput,
+										z * lSliceLength + x * pElementSize + c,
+										lRowLength,
+										pHeight,
+										mKernelY,
+										lLine);
+			}
+
+		for (int z = 0; z < pNumberOfSlices; z++)
+		{
+			final int lOutputOffset = z * lSliceLength;
+			for (int i = 0; i < lSliceLength; i++)
+			{
+				float lSum = 0;
+				for (int k = 0; k < mKernelZ.length; k++)
+					lSum += mKernelZ[k] * pInput[(z + k) * lSliceLength + i];
+				pOutput[lOutputOffset + i] = lSum;
+			}
+		}
+	}
+
+	/**
+	 * Convolves a strided line in place, repeating its edge values.
+	 */
+	static void convolveLine(	float[] pData,
+								int pOffset,
+								int pStride,
+								int pLength,
+								float[] pKernel,
+								float[] pLine)
+	{
+		final int lRadius = pKernel.length / 2;
+		for (int i = -lRadius; i < pLength + lRadius; i++)
+			pLine[i + lRadius] = pData[pOffset + Math.max(0, Math.min(pLength - 1, i))
+										* pStride];
+		for (int i = 0; i < pLength; i++)
+		{
+			float lSum = 0;
+			for (int k = 0; k < pKernel.length; k++)
+				lSum += pKernel[k] * pLine[i + k];
+			pData[pOffset + i * pStride] = lSum;
+		}
+	}
+
+}
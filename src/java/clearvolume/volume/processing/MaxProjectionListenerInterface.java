@@ -0,0 +1,15 @@
+package clearvolume.volume.processing;
+
+public interface MaxProjectionListenerInterface
+{
+
+	/**
+	 * Called on the thread of the sender once the projections of a volume are
+	 * computed.
+	 *
+	 * @param pMaxProjections
+	 *            projections
+	 */
+	public void notifyMaxProjections(MaxProjections pMaxProjections);
+
+}
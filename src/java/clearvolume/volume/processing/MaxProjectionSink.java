@@ -0,0 +1,107 @@
+package clearvolume.volume.processing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.relay.RelaySinkAdapter;
+import clearvolume.volume.sink.relay.RelaySinkInterface;
+
+/**
+ * Computes the XY, XZ and YZ maximum intensity projections of each volume,
+ * hands them to the listeners and keeps the latest ones per channel, then
+ * relays the volume unchanged. Without relay sink the volume is made available
+ * to its manager, so that the sink can end a pipeline used only for
+ * monitoring, at a fraction of the cost of rendering.
+ */
+public class MaxProjectionSink extends RelaySinkAdapter	implements
+														RelaySinkInterface,
+														ClearVolumeCloseable
+{
+	private final ForkJoinPool mForkJoinPool;
+	private final CopyOnWriteArrayList<MaxProjectionListenerInterface> mListeners = new CopyOnWriteArrayList<MaxProjectionListenerInterface>();
+	private final ConcurrentHashMap<Integer, MaxProjections> mChannelToLastProjectionsMap = new ConcurrentHashMap<Integer, MaxProjections>();
+
+	public MaxProjectionSink()
+	{
+		this(ForkJoinPool.commonPool());
+	}
+
+	public MaxProjectionSink(ForkJoinPool pForkJoinPool)
+	{
+		super();
+		mForkJoinPool = pForkJoinPool;
+	}
+
+	public MaxProjectionSink(VolumeSinkInterface pRelaySink)
+	{
+		super(pRelaySink);
+		mForkJoinPool = ForkJoinPool.commonPool();
+	}
+
+	public void addListener(MaxProjectionListenerInterface pListener)
+	{
+		mListeners.add(pListener);
+	}
+
+	public void removeListener(MaxProjectionListenerInterface pListener)
+	{
+		mListeners.remove(pListener);
+	}
+
+	/**
+	 * Returns the projections of the last volume received on a channel.
+	 *
+	 * @param pChannelID
+	 *            channel
+	 * @return projections, or null if no volume was received on the channel
+	 */
+	public MaxProjections getLastProjections(int pChannelID)
+	{
+		return mChannelToLastProjectionsMap.get(pChannelID);
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		try
+		{
+			final MaxProjections lMaxProjections = MaxProjections.compute(	pVolume,
+																			mForkJoinPool);
+			mChannelToLastProjectionsMap.put(	lMaxProjections.getChannelID(),
+												lMaxProjections);
+			for (final MaxProjectionListenerInterface lListener : mListeners)
+				lListener.notifyMaxProjections(lMaxProjections);
+		}
+		catch (final IllegalArgumentException e)
+		{
+			// unsupported voxel type, the volume is still relayed:
+			e.printStackTrace();
+		}
+
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(pVolume);
+		else
+			pVolume.makeAvailableToManager();
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		if (getRelaySink() != null)
+			return getRelaySink().getManager();
+		return null;
+	}
+
+	@Override
+	public void close()
+	{
+		mListeners.clear();
+		mChannelToLastProjectionsMap.clear();
+	}
+
+}
@@ -0,0 +1,224 @@
+package clearvolume.volume.processing;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.SlabRunner.SlabTaskInterface;
+
+/**
+ * XY, XZ and YZ maximum intensity projections of a volume, with the channel
+ * and time of the volume. Projections are float images that keep all elements
+ * of each voxel, interleaved like in the volume.
+ */
+public class MaxProjections
+{
+	private static final int cSlabsPerThread = 2;
+
+	private final int mChannelID;
+	private final String mChannelName;
+	private final long mTimeIndex;
+	private final double mTimeInSeconds;
+	private final int mElementSize;
+	private final int mWidth, mHeight, mDepth;
+	private final float[] mXY, mXZ, mYZ;
+
+	private MaxProjections(	Volume pVolume,
+							int pElementSize,
+							int pWidth,
+							int pHeight,
+							int pDepth)
+	{
+		super();
+		mChannelID = pVolume.getChannelID();
+		mChannelName = pVolume.getChannelName();
+		mTimeIndex = pVolume.getTimeIndex();
+		mTimeInSeconds = pVolume.getTimeInSeconds();
+		mElementSize = pElementSize;
+		mWidth = pWidth;
+		mHeight = pHeight;
+		mDepth = pDepth;
+		mXY = new float[pElementSize * pWidth * pHeight];
+		mXZ = new float[pElementSize * pWidth * pDepth];
+		mYZ = new float[pElementSize * pHeight * pDepth];
+	}
+
+	/**
+	 * Computes the three projections in a single pass over the volume. The
+	 * volume is split into z-slabs reduced in parallel: each slab owns its rows
+	 * of the XZ projection and its columns of the YZ projection, and the partial
+	 * XY projections of the slabs are merged at the end.
+	 *
+	 * @param pVolume
+	 *            volume
+	 * @param pForkJoinPool
+	 *            pool running the slabs
+	 * @return projections
+	 */
+	public static MaxProjections compute(	final Volume pVolume,
+											ForkJoinPool pForkJoinPool)
+	{
+		final int lElementSize = (int) pVolume.getElementSize();
+		final int lWidth = (int) pVolume.getWidthInVoxels();
+		final int lHeight = (int) pVolume.getHeightInVoxels();
+		final int lDepth = VoxelAccess.getDepth(pVolume);
+		final MaxProjections lMaxProjections = new MaxProjections(	pVolume,
+																	lElementSize,
+																	lWidth,
+																	lHeight,
+																	lDepth);
+
+		final int lNumberOfSlabs = cSlabsPerThread * pForkJoinPool.getParallelism();
+		final int lSlabDepth = Math.max(1, (lDepth + lNumberOfSlabs - 1)
+											/ lNumberOfSlabs);
+
+		final int lNumberOfProjectedSlabs = (lDepth + lSlabDepth - 1) / lSlabDepth;
+		final float[][] lPartialXYs = new float[lNumberOfProjectedSlabs][];
+		SlabRunner.run(	pForkJoinPool,
+						lNumberOfProjectedSlabs,
+						new SlabTaskInterface()
+						{
+							@Override
+							public void run(int pSlab)
+							{
+								final int lZStart = pSlab * lSlabDepth;
+								final int lZEnd = Math.min(lDepth, lZStart + lSlabDepth);
+								lPartialXYs[pSlab] = lMaxProjections.projectSlab(	pVolume,
+																					lZStart,
+																					lZEnd);
+							}
+						});
+
+		final float[] lXY = lMaxProjections.mXY;
+		Arrays.fill(lXY, Float.NEGATIVE_INFINITY);
+		for (final float[] lPartialXY : lPartialXYs)
+			for (int i = 0; i < lXY.length; i++)
+				lXY[i] = Math.max(lXY[i], lPartialXY[i]);
+
+		return lMaxProjections;
+	}
+
+	private float[] projectSlab(Volume pVolume, int pZStart, int pZEnd)
+	{
+		final int lRowLength = mElementSize * mWidth;
+		final float[] lSlice = new float[lRowLength * mHeight];
+		final float[] lPartialXY = new float[lSlice.length];
+		Arrays.fill(lPartialXY, Float.NEGATIVE_INFINITY);
+
+		for (int z = pZStart; z < pZEnd; z++)
+		{
+			VoxelAccess.readSlices(pVolume, z, z + 1, lSlice);
+
+			final int lXZRow = z * lRowLength;
+			Arrays.fill(mXZ, lXZRow, lXZRow + lRowLength, Float.NEGATIVE_INFINITY);
+			for (int y = 0; y < mHeight; y++)
+			{
+				final int lRow = y * lRowLength;
+				final int lYZIndex = (y * mDepth + z) * mElementSize;
+				for (int c = 0; c < mElementSize; c++)
+					mYZ[lYZIndex + c] = Float.NEGATIVE_INFINITY;
+
+				for (int x = 0; x < mWidth; x++)
+					for (int c = 0; c < mElementSize; c++)
+					{
+						final int lIndex = x * mElementSize + c;
+						final float lValue = lSlice[lRow + lIndex];
+						if (lValue > lPartialXY[lRow + lIndex])
+							lPartialXY[lRow + lIndex] = lValue;
+						if (lValue > mXZ[lXZRow + lIndex])
+							mXZ[lXZRow + lIndex] = lValue;
+						if (lValue > mYZ[lYZIndex + c])
+							mYZ[lYZIndex + c] = lValue;
+					}
+			}
+		}
+		return lPartialXY;
+	}
+
+	public int getChannelID()
+	{
+		return mChannelID;
+	}
+
+	public String getChannelName()
+	{
+		return mChannelName;
+	}
+
+	public long getTimeIndex()
+	{
+		return mTimeIndex;
+	}
+
+	public double getTimeInSeconds()
+	{
+		return mTimeInSeconds;
+	}
+
+	public int getElementSize()
+	{
+		return mElementSize;
+	}
+
+	public int getWidth(ProjectionPlane pPlane)
+	{
+		return pPlane == ProjectionPlane.YZ ? mDepth : mWidth;
+	}
+
+	public int getHeight(ProjectionPlane pPlane)
+	{
+		return pPlane == ProjectionPlane.XZ ? mDepth : mHeight;
+	}
+
+	/**
+	 * Returns a projection, row by row, with the elements of each pixel
+	 * interleaved.
+	 *
+	 * @param pPlane
+	 *            plane
+	 * @return projection
+	 */
+	public float[] getProjection(ProjectionPlane pPlane)
+	{
+		switch (pPlane)
+		{
+		case XY:
+			return mXY;
+		case XZ:
+			return mXZ;
+		default:
+			return mYZ;
+		}
+	}
+
+	/**
+	 * Returns a value of a projection.
+	 *
+	 * @param pPlane
+	 *            plane
+	 * @param pX
+	 *            column in the projection
+	 * @param pY
+	 *            row in the projection
+	 * @param pElement
+	 *            element of the voxel
+	 * @return value
+	 */
+	public float getValue(ProjectionPlane pPlane, int pX, int pY, int pElement)
+	{
+		return getProjection(pPlane)[(pY * getWidth(pPlane) + pX) * mElementSize
+										+ pElement];
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(	"MaxProjections [channel=%d, timeindex=%d, size=%dx%dx%d]",
+								mChannelID,
+								mTimeIndex,
+								mWidth,
+								mHeight,
+								mDepth);
+	}
+
+}
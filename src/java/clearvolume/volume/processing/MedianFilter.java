@@ -0,0 +1,77 @@
+package clearvolume.volume.processing;
+
+import java.util.Arrays;
+
+/**
+ * Median filter over a box of (2rx+1) x (2ry+1) x (2rz+1) voxels, edges are
+ * repeated. Removes salt and pepper noise while keeping edges.
+ */
+public class MedianFilter extends SlabFilter
+{
+	private final int mRadiusX, mRadiusY, mRadiusZ;
+
+	public MedianFilter(int pRadius)
+	{
+		this(pRadius, pRadius, pRadius);
+	}
+
+	public MedianFilter(int pRadiusX, int pRadiusY, int pRadiusZ)
+	{
+		super();
+		if (pRadiusX < 0 || pRadiusY < 0 || pRadiusZ < 0)
+			throw new IllegalArgumentException("Radius must not be negative");
+		mRadiusX = pRadiusX;
+		mRadiusY = pRadiusY;
+		mRadiusZ = pRadiusZ;
+	}
+
+	@Override
+	public int getHaloInSlices()
+	{
+		return mRadiusZ;
+	}
+
+	@Override
+	protected void filterSlab(	float[] pInput,
+								float[] pOutput,
+								int pElementSize,
+								int pWidth,
+								int pHeight,
+								int pNumberOfSlices)
+	{
+		final int lRowLength = pElementSize * pWidth;
+		final int lSliceLength = lRowLength * pHeight;
+		final float[] lWindow = new float[(2 * mRadiusX + 1) * (2 * mRadiusY + 1)
+											* (2 * mRadiusZ + 1)];
+		// without halo the input is the output, keep a copy to read from:
+		final float[] lInput = pInput == pOutput ? pInput.clone() : pInput;
+
+		for (int z = 0; z < pNumberOfSlices; z++)
+			for (int y = 0; y < pHeight; y++)
+				for (int x = 0; x < pWidth; x++)
+					for (int c = 0; c < pElementSize; c++)
+					{
+						int n = 0;
+						for (int dz = 0; dz <= 2 * mRadiusZ; dz++)
+							for (int dy = -mRadiusY; dy <= mRadiusY; dy++)
+							{
+								final int lY = Math.max(0,
+														Math.min(pHeight - 1, y + dy));
+								final int lRowOffset = (z + dz) * lSliceLength
+														+ lY
+														* lRowLength
+														+ c;
+								for (int dx = -mRadiusX; dx <= mRadiusX; dx++)
+								{
+									final int lX = Math.max(0,
+															Math.min(	pWidth - 1,
+																		x + dx));
+									lWindow[n++] = lInput[lRowOffset + lX * pElementSize];
+								}
+							}
+						Arrays.sort(lWindow);
+						pOutput[z * lSliceLength + y * lRowLength + x * pElementSize + c] = lWindow[lWindow.length / 2];
+					}
+	}
+
+}
@@ -0,0 +1,102 @@
+package clearvolume.volume.processing;
+
+import java.util.concurrent.TimeUnit;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.relay.RelaySinkAdapter;
+import clearvolume.volume.sink.relay.RelaySinkInterface;
+import coremem.enums.NativeTypeEnum;
+
+/**
+ * Base of the processing stages that write their results into new volumes,
+ * starting with {@link VolumeProcessingSink}; the later CLAHE, drift
+ * correction, fusion, deskew and segmentation stages extend it too. Volumes are
+ * requested from the manager of the relay sink, or from a manager of their own
+ * created on first use when there is no relay sink or it has no manager. That
+ * manager is closed with the sink; subclasses overriding {@link #close()} must
+ * call it.
+ */
+public abstract class ProcessingSinkAdapter extends RelaySinkAdapter	implements
+																		RelaySinkInterface,
+																		ClearVolumeCloseable
+{
+	private VolumeManager mVolumeManager;
+
+	public ProcessingSinkAdapter()
+	{
+		super();
+	}
+
+	public ProcessingSinkAdapter(VolumeSinkInterface pRelaySink)
+	{
+		super(pRelaySink);
+	}
+
+	/**
+	 * Requests a volume from the manager of the relay sink.
+	 *
+	 * @param pType
+	 *            voxel type
+	 * @param pDimensions
+	 *            dimensions in voxels, the first one being the number of
+	 *            elements per voxel
+	 * @return volume
+	 */
+	protected Volume requestVolume(NativeTypeEnum pType, long... pDimensions)
+	{
+		return requestVolume(getManager(), pType, pDimensions);
+	}
+
+	/**
+	 * Requests a volume from the given manager.
+	 *
+	 * @param pVolumeManager
+	 *            manager, or null to use the manager of this sink
+	 * @param pType
+	 *            voxel type
+	 * @param pDimensions
+	 *            dimensions in voxels, the first one being the number of
+	 *            elements per voxel
+	 * @return volume
+	 */
+	protected Volume requestVolume(	VolumeManager pVolumeManager,
+									NativeTypeEnum pType,
+									long... pDimensions)
+	{
+		VolumeManager lVolumeManager = pVolumeManager;
+		if (lVolumeManager == null)
+			synchronized (this)
+			{
+				if (mVolumeManager == null)
+					mVolumeManager = new VolumeManager(4);
+				lVolumeManager = mVolumeManager;
+			}
+		return lVolumeManager.requestAndWaitForVolume(	0,
+														TimeUnit.MILLISECONDS,
+														pType,
+														pDimensions);
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		if (getRelaySink() != null)
+			return getRelaySink().getManager();
+		return null;
+	}
+
+	@Override
+	public void close()
+	{
+		synchronized (this)
+		{
+			if (mVolumeManager != null)
+				mVolumeManager.close();
+			mVolumeManager = null;
+		}
+	}
+
+}
@@ -0,0 +1,12 @@
+package clearvolume.volume.processing;
+
+/**
+ * Plane of an axis-aligned projection. XY is projected along z, XZ along y and
+ * YZ along x. The YZ projection has z along its width so that it can be shown
+ * next to the XY projection, and the XZ projection has z along its height so
+ * that it can be shown below.
+ */
+public enum ProjectionPlane
+{
+	XY, XZ, YZ
+}
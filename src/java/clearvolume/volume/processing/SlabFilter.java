@@ -0,0 +1,142 @@
+package clearvolume.volume.processing;
+
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.SlabRunner.SlabTaskInterface;
+
+/**
+ * Base class of filters that work on z-slabs in parallel. The volume is split
+ * into slabs of consecutive slices, each slab is read as floats together with a
+ * halo of neighbouring slices on both sides, filtered, and written back. Slabs
+ * are independent tasks on a fork-join pool. Filters without halo read and
+ * write only their own slices and can work in place.
+ */
+public abstract class SlabFilter implements VolumeFilterInterface
+{
+	private static final long cMaxSlabSizeInBytes = 32L * 1024 * 1024;
+	private static final int cSlabsPerThread = 2;
+
+	/**
+	 * Returns the number of slices needed on each side of a slab.
+	 *
+	 * @return halo in slices
+	 */
+	public abstract int getHaloInSlices();
+
+	/**
+	 * Filters a slab. For filters without halo, input and output are the same
+	 * array. The input array can be used as scratch space.
+	 *
+	 * @param pInput
+	 *            input slices, including the halo on both sides
+	 * @param pOutput
+	 *            output slices, without halo
+	 * @param pElementSize
+	 *            number of elements per voxel
+	 * @param pWidth
+	 *            width in voxels
+	 * @param pHeight
+	 *            height in voxels
+	 * @param pNumberOfSlices
+	 *            number of output slices
+	 */
+	protected abstract void filterSlab(	float[] pInput,
+										float[] pOutput,
+										int pElementSize,
+										int pWidth,
+										int pHeight,
+										int pNumberOfSlices);
+
+	@Override
+	public boolean isInPlace()
+	{
+		return getHaloInSlices() == 0;
+	}
+
+	@Override
+	public void apply(	final Volume pInput,
+						final Volume pOutput,
+						ForkJoinPool pForkJoinPool)
+	{
+		if (pInput == pOutput && !isInPlace())
+			throw new IllegalArgumentException(getClass().getSimpleName() + " cannot work in place");
+		apply(pInput, pOutput, false, pForkJoinPool);
+	}
+
+	/**
+	 * Filters the first element of each voxel into a volume with one element
+	 * per voxel, the other elements are not filtered.
+	 *
+	 * @param pInput
+	 *            input volume
+	 * @param pOutput
+	 *            output volume, one element per voxel
+	 * @param pForkJoinPool
+	 *            pool running the slabs
+	 */
+	public void applyToFirstElement(final Volume pInput,
+									final Volume pOutput,
+									ForkJoinPool pForkJoinPool)
+	{
+		if (pOutput.getElementSize() != 1)
+			throw new IllegalArgumentException("Output must have one element per voxel");
+		if (pInput == pOutput && !isInPlace())
+			throw new IllegalArgumentException(getClass().getSimpleName() + " cannot work in place");
+		apply(pInput, pOutput, pInput.getElementSize() > 1, pForkJoinPool);
+	}
+
+	private void apply(	final Volume pInput,
+						final Volume pOutput,
+						final boolean pFirstElementOnly,
+						ForkJoinPool pForkJoinPool)
+	{
+		final int lInputElementSize = (int) pInput.getElementSize();
+		final int lElementSize = pFirstElementOnly ? 1 : lInputElementSize;
+		final int lWidth = (int) pInput.getWidthInVoxels();
+		final int lHeight = (int) pInput.getHeightInVoxels();
+		final int lDepth = VoxelAccess.getDepth(pInput);
+		final int lInputSliceLength = VoxelAccess.getSliceLength(pInput);
+		final int lSliceLength = lElementSize * lWidth * lHeight;
+		final int lHalo = getHaloInSlices();
+
+		final int lMaxSlabDepth = (int) Math.max(	1,
+													cMaxSlabSizeInBytes / (4L * lInputSliceLength)
+															- 2
+															* lHalo);
+		final int lSlabDepth = Math.max(1,
+										Math.min(	lMaxSlabDepth,
+													(lDepth + cSlabsPerThread * pForkJoinPool.getParallelism() - 1) / (cSlabsPerThread * pForkJoinPool.getParallelism())));
+
+		final int lNumberOfSlabs = (lDepth + lSlabDepth - 1) / lSlabDepth;
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				final int lZStart = pSlab * lSlabDepth;
+				final int lZEnd = Math.min(lDepth, lZStart + lSlabDepth);
+				final int lNumberOfSlices = lZEnd - lZStart;
+				final float[] lInput = new float[(lNumberOfSlices + 2 * lHalo) * lInputSliceLength];
+				final float[] lOutput = lHalo == 0	? lInput
+													: new float[lNumberOfSlices * lSliceLength];
+				VoxelAccess.readSlices(	pInput,
+										lZStart - lHalo,
+										lZEnd + lHalo,
+										lInput);
+				// keeps the first elements at the start of the array:
+				if (pFirstElementOnly)
+					for (int i = 0, j = 0; j < lInput.length; i++, j += lInputElementSize)
+						lInput[i] = lInput[j];
+				filterSlab(	lInput,
+							lOutput,
+							lElementSize,
+							lWidth,
+							lHeight,
+							lNumberOfSlices);
+				VoxelAccess.writeSlices(pOutput, lZStart, lZEnd, lOutput);
+			}
+		});
+	}
+
+}
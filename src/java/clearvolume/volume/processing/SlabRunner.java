@@ -0,0 +1,98 @@
+package clearvolume.volume.processing;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs independent slabs of work as tasks on a fork-join pool and returns once
+ * all of them are done. A slab is either given by its index, or by a range of
+ * items when a number of items is split into slabs.
+ */
+public class SlabRunner
+{
+
+	public interface SlabTaskInterface
+	{
+		void run(int pSlab);
+	}
+
+	public interface RangeTaskInterface
+	{
+		void run(int pStart, int pEnd);
+	}
+
+	/**
+	 * Runs slabs 0 to number of slabs - 1.
+	 *
+	 * @param pForkJoinPool
+	 *            pool
+	 * @param pNumberOfSlabs
+	 *            number of slabs
+	 * @param pSlabTask
+	 *            work for one slab
+	 */
+	public static void run(	ForkJoinPool pForkJoinPool,
+							int pNumberOfSlabs,
+							final SlabTaskInterface pSlabTask)
+	{
+		final ArrayList<RecursiveAction> lTasks = new ArrayList<RecursiveAction>();
+		for (int s = 0; s < pNumberOfSlabs; s++)
+		{
+			final int lSlab = s;
+			lTasks.add(new RecursiveAction()
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute()
+				{
+					pSlabTask.run(lSlab);
+				}
+			});
+		}
+		pForkJoinPool.invoke(new RecursiveAction()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute()
+			{
+				invokeAll(lTasks);
+			}
+		});
+	}
+
+	/**
+	 * Splits items 0 to count - 1 into contiguous ranges of nearly equal size,
+	 * no more ranges than items, and runs each range as a slab.
+	 *
+	 * @param pForkJoinPool
+	 *            pool
+	 * @param pCount
+	 *            number of items
+	 * @param pNumberOfSlabs
+	 *            number of ranges
+	 * @param pRangeTask
+	 *            work for a range of items
+	 */
+	public static void runRanges(	ForkJoinPool pForkJoinPool,
+									final int pCount,
+									int pNumberOfSlabs,
+									final RangeTaskInterface pRangeTask)
+	{
+		final int lNumberOfSlabs = Math.max(1, Math.min(pCount, pNumberOfSlabs));
+		run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				final int lStart = (int) ((long) pSlab * pCount / lNumberOfSlabs);
+				final int lEnd = (int) ((long) (pSlab + 1) * pCount / lNumberOfSlabs);
+				if (lStart < lEnd)
+					pRangeTask.run(lStart, lEnd);
+			}
+		});
+	}
+
+}
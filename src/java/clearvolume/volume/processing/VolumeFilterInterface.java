@@ -0,0 +1,30 @@
+package clearvolume.volume.processing;
+
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+
+public interface VolumeFilterInterface
+{
+
+	/**
+	 * Filters a volume into another volume of the same type and dimensions, or
+	 * into itself if {@link #isInPlace()} returns true.
+	 *
+	 * @param pInput
+	 *            input volume
+	 * @param pOutput
+	 *            output volume
+	 * @param pForkJoinPool
+	 *            pool running the work
+	 */
+	public void apply(Volume pInput, Volume pOutput, ForkJoinPool pForkJoinPool);
+
+	/**
+	 * Returns true if the output volume can be the input volume.
+	 *
+	 * @return true if the filter can work in place
+	 */
+	public boolean isInPlace();
+
+}
@@ -0,0 +1,81 @@
+package clearvolume.volume.processing;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.sink.VolumeSinkInterface;
+
+/**
+ * Applies a chain of filters to each volume before relaying it. Filters that
+ * can work in place modify the received volume, the others write into a volume
+ * of the same type and dimensions requested from the manager of the relay sink,
+ * and the volume they read from is made available to its manager. The filters
+ * run on a fork-join pool, the common pool unless another one is given.
+ */
+public class VolumeProcessingSink extends ProcessingSinkAdapter
+{
+	private final ForkJoinPool mForkJoinPool;
+	private final CopyOnWriteArrayList<VolumeFilterInterface> mFilters = new CopyOnWriteArrayList<VolumeFilterInterface>();
+
+	public VolumeProcessingSink()
+	{
+		this(ForkJoinPool.commonPool());
+	}
+
+	public VolumeProcessingSink(ForkJoinPool pForkJoinPool)
+	{
+		super();
+		mForkJoinPool = pForkJoinPool;
+	}
+
+	public VolumeProcessingSink(VolumeSinkInterface pRelaySink)
+	{
+		super(pRelaySink);
+		mForkJoinPool = ForkJoinPool.commonPool();
+	}
+
+	public VolumeProcessingSink addFilter(VolumeFilterInterface pFilter)
+	{
+		mFilters.add(pFilter);
+		return this;
+	}
+
+	public boolean removeFilter(VolumeFilterInterface pFilter)
+	{
+		return mFilters.remove(pFilter);
+	}
+
+	public List<VolumeFilterInterface> getFilters()
+	{
+		return mFilters;
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		Volume lVolume = pVolume;
+		for (final VolumeFilterInterface lFilter : mFilters)
+		{
+			if (lFilter.isInPlace())
+			{
+				lFilter.apply(lVolume, lVolume, mForkJoinPool);
+				continue;
+			}
+
+			final Volume lOutput = requestVolume(	lVolume.getNativeType(),
+													lVolume.getDimensionsInVoxels());
+			lFilter.apply(lVolume, lOutput, mForkJoinPool);
+			lOutput.copyMetaDataFrom(lVolume);
+			lVolume.makeAvailableToManager();
+			lVolume = lOutput;
+		}
+
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(lVolume);
+		else
+			lVolume.makeAvailableToManager();
+	}
+
+}
@@ -0,0 +1,186 @@
+package clearvolume.volume.processing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import clearvolume.volume.Volume;
+import coremem.enums.NativeTypeEnum;
+
+/**
+ * Converts slices of a volume to and from float arrays, the working format of
+ * the processing stages. Float arrays keep the layout of the volume: element,
+ * then x, then y, then z. Integer values written back are rounded and clamped
+ * to the range of the voxel type.
+ */
+public class VoxelAccess
+{
+
+	/**
+	 * Reads slices into a float array. Slices outside of the volume are
+	 * replaced by the nearest slice of the volume, so that halos around the
+	 * first and last slices repeat the edge.
+	 *
+	 * @param pVolume
+	 *            volume
+	 * @param pZStart
+	 *            first slice, can be negative
+	 * @param pZEnd
+	 *            slice after the last one, can be past the depth
+	 * @param pSlices
+	 *            array receiving the slices
+	 */
+	public static void readSlices(	Volume pVolume,
+									int pZStart,
+									int pZEnd,
+									float[] pSlices)
+	{
+		final int lSliceLength = getSliceLength(pVolume);
+		final int lDepth = getDepth(pVolume);
+		final ByteBuffer lBuffer = pVolume.getDataBuffer()
+											.duplicate()
+											.order(ByteOrder.nativeOrder());
+		final NativeTypeEnum lType = pVolume.getNativeType();
+
+		for (int z = pZStart; z < pZEnd; z++)
+		{
+			final int lSourceZ = Math.max(0, Math.min(lDepth - 1, z));
+			final int lSource = lSourceZ * lSliceLength;
+			final int lDestination = (z - pZStart) * lSliceLength;
+			switch (lType)
+			{
+			case UnsignedByte:
+				for (int i = 0; i < lSliceLength; i++)
+					pSlices[lDestination + i] = lBuffer.get(lSource + i) & 0xFF;
+				break;
+			case Byte:
+				for (int i = 0; i < lSliceLength; i++)
+					pSlices[lDestination + i] = lBuffer.get(lSource + i);
+				break;
+			case UnsignedShort:
+				for (int i = 0; i < lSliceLength; i++)
+					pSlices[lDestination + i] = lBuffer.getShort(2 * (lSource + i)) & 0xFFFF;
+				break;
+			case Short:
+				for (int i = 0; i < lSliceLength; i++)
+					pSlices[lDestination + i] = lBuffer.getShort(2 * (lSource + i));
+				break;
+			case UnsignedInt:
+				for (int i = 0; i < lSliceLength; i++)
+					pSlices[lDestination + i] = lBuffer.getInt(4 * (lSource + i)) & 0xFFFFFFFFL;
+				break;
+			case Int:
+				for (int i = 0; i < lSliceLength; i++)
+					pSlices[lDestination + i] = lBuffer.getInt(4 * (lSource + i));
+				break;
+			case Float:
+				for (int i = 0; i < lSliceLength; i++)
+					pSlices[lDestination + i] = lBuffer.getFloat(4 * (lSource + i));
+				break;
+			case Double:
+				for (int i = 0; i < lSliceLength; i++)
+					pSlices[lDestination + i] = (float) lBuffer.getDouble(8 * (lSource + i));
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported voxel type: " + lType);
+			}
+		}
+	}
+
+	/**
+	 * Writes slices from a float array.
+	 *
+	 * @param pVolume
+	 *            volume
+	 * @param pZStart
+	 *            first slice
+	 * @param pZEnd
+	 *            slice after the last one
+	 * @param pSlices
+	 *            array holding the slices, starting at index 0
+	 */
+	public static void writeSlices(	Volume pVolume,
+									int pZStart,
+									int pZEnd,
+									float[] pSlices)
+	{
+		final int lSliceLength = getSliceLength(pVolume);
+		final ByteBuffer lBuffer = pVolume.getDataBuffer()
+											.duplicate()
+											.order(ByteOrder.nativeOrder());
+		final NativeTypeEnum lType = pVolume.getNativeType();
+		final int lOffset = pZStart * lSliceLength;
+		final int lLength = (pZEnd - pZStart) * lSliceLength;
+
+		switch (lType)
+		{
+		case UnsignedByte:
+			for (int i = 0; i < lLength; i++)
+				lBuffer.put(lOffset + i, (byte) clamp(pSlices[i], 0, 255));
+			break;
+		case Byte:
+			for (int i = 0; i < lLength; i++)
+				lBuffer.put(lOffset + i,
+							(byte) clamp(pSlices[i], Byte.MIN_VALUE, Byte.MAX_VALUE));
+			break;
+		case UnsignedShort:
+			for (int i = 0; i < lLength; i++)
+				lBuffer.putShort(	2 * (lOffset + i),
+									(short) clamp(pSlices[i], 0, 65535));
+			break;
+		case Short:
+			for (int i = 0; i < lLength; i++)
+				lBuffer.putShort(	2 * (lOffset + i),
+									(short) clamp(	pSlices[i],
+													Short.MIN_VALUE,
+													Short.MAX_VALUE));
+			break;
+		case UnsignedInt:
+			for (int i = 0; i < lLength; i++)
+				lBuffer.putInt(	4 * (lOffset + i),
+								(int) clamp(pSlices[i], 0, 4294967295L));
+			break;
+		case Int:
+			for (int i = 0; i < lLength; i++)
+				lBuffer.putInt(	4 * (lOffset + i),
+								(int) clamp(pSlices[i],
+											Integer.MIN_VALUE,
+											Integer.MAX_VALUE));
+			break;
+		case Float:
+			for (int i = 0; i < lLength; i++)
+				lBuffer.putFloat(4 * (lOffset + i), pSlices[i]);
+			break;
+		case Double:
+			for (int i = 0; i < lLength; i++)
+				lBuffer.putDouble(8 * (lOffset + i), pSlices[i]);
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported voxel type: " + lType);
+		}
+	}
+
+	private static long clamp(float pValue, long pMin, long pMax)
+	{
+		return Math.max(pMin, Math.min(pMax, Math.round((double) pValue)));
+	}
+
+	/**
+	 * Returns the number of values in one slice: elements times width times
+	 * height.
+	 *
+	 * @param pVolume
+	 *            volume
+	 * @return slice length
+	 */
+	public static int getSliceLength(Volume pVolume)
+	{
+		return (int) (pVolume.getElementSize() * pVolume.getWidthInVoxels() * pVolume.getHeightInVoxels());
+	}
+
+	public static int getDepth(Volume pVolume)
+	{
+		return pVolume.getDimension() >= 3 ? (int) pVolume.getDepthInVoxels()
+											: 1;
+	}
+
+}
@@ -0,0 +1,169 @@
+package clearvolume.volume.processing.deskew;
+
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.SlabRunner;
+import clearvolume.volume.processing.SlabRunner.SlabTaskInterface;
+import clearvolume.volume.processing.VoxelAccess;
+
+/**
+ * Shear resampling of stage-scanned light-sheet volumes, in which plane z is
+ * offset along x by z times a constant shear. Each output plane is computed
+ * from its input plane alone, by linear interpolation along x, so planes can be
+ * deskewed independently and as soon as they arrive. The output is wider than
+ * the input by the total shear, voxels not covered by the input plane are
+ * zero.
+ */
+public class Deskew
+{
+	private final double mShear;
+
+	/**
+	 * @param pShear
+	 *            offset along x between consecutive planes, in voxels, can be
+	 *            negative or fractional
+	 */
+	public Deskew(double pShear)
+	{
+		super();
+		mShear = pShear;
+	}
+
+	public double getShear()
+	{
+		return mShear;
+	}
+
+	/**
+	 * Returns the width of the deskewed volume.
+	 *
+	 * @param pWidth
+	 *            width of the input
+	 * @param pDepth
+	 *            depth of the input
+	 * @return output width
+	 */
+	public int getOutputWidth(int pWidth, int pDepth)
+	{
+		return pWidth + (int) Math.ceil(Math.abs(mShear) * (pDepth - 1) - 1e-9);
+	}
+
+	/**
+	 * Returns the dimensions of the deskewed volume.
+	 *
+	 * @param pDimensions
+	 *            dimensions of the input, element size, width, height, depth
+	 * @return output dimensions
+	 */
+	public long[] getOutputDimensions(long[] pDimensions)
+	{
+		final long[] lDimensions = pDimensions.clone();
+		lDimensions[1] = getOutputWidth((int) pDimensions[1],
+										(int) pDimensions[3]);
+		return lDimensions;
+	}
+
+	/**
+	 * Deskews one plane.
+	 *
+	 * @param pInput
+	 *            input plane, element fastest, then x and y
+	 * @param pOutput
+	 *            output plane of the output width, entirely overwritten
+	 * @param pElementSize
+	 *            number of elements per voxel
+	 * @param pWidth
+	 *            input width
+	 * @param pHeight
+	 *            height
+	 * @param pZ
+	 *            index of the plane
+	 * @param pDepth
+	 *            depth of the volume
+	 */
+	public void deskewPlane(float[] pInput,
+							float[] pOutput,
+							int pElementSize,
+							int pWidth,
+							int pHeight,
+							int pZ,
+							int pDepth)
+	{
+		final int lOutputWidth = getOutputWidth(pWidth, pDepth);
+		final double lOffset = pZ * mShear - Math.min(0, (pDepth - 1) * mShear);
+		final int lIntegerOffset = (int) Math.floor(lOffset);
+		// output x takes input x - offset, between two input voxels:
+		final float lFraction = (float) (lOffset - lIntegerOffset);
+
+		for (int y = 0; y < pHeight; y++)
+		{
+			final int lInputRow = y * pWidth * pElementSize;
+			final int lOutputRow = y * lOutputWidth * pElementSize;
+			for (int x = 0; x < lOutputWidth; x++)
+			{
+				final int lX1 = x - lIntegerOffset;
+				final int lX0 = lX1 - 1;
+				for (int c = 0; c < pElementSize; c++)
+				{
+					final float lValue0 = lX0 >= 0 && lX0 < pWidth ? pInput[lInputRow + lX0
+																			* pElementSize
+																			+ c]
+																	: 0;
+					final float lValue1 = lX1 >= 0 && lX1 < pWidth ? pInput[lInputRow + lX1
+																			* pElementSize
+																			+ c]
+																	: 0;
+					pOutput[lOutputRow + x * pElementSize + c] = lFraction * lValue0
+																	+ (1 - lFraction)
+																	* lValue1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deskews a volume, planes in parallel.
+	 *
+	 * @param pInput
+	 *            input volume
+	 * @param pOutput
+	 *            output volume with the dimensions given by
+	 *            {@link #getOutputDimensions(long[])}
+	 * @param pForkJoinPool
+	 *            pool running the planes
+	 */
+	public void apply(	final Volume pInput,
+						final Volume pOutput,
+						ForkJoinPool pForkJoinPool)
+	{
+		final int lElementSize = (int) pInput.getElementSize();
+		final int lWidth = (int) pInput.getWidthInVoxels();
+		final int lHeight = (int) pInput.getHeightInVoxels();
+		final int lDepth = VoxelAccess.getDepth(pInput);
+		final int lInputSliceLength = VoxelAccess.getSliceLength(pInput);
+		final int lOutputSliceLength = lElementSize * getOutputWidth(	lWidth,
+																		lDepth)
+										* lHeight;
+
+		SlabRunner.run(pForkJoinPool, lDepth, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pZ)
+			{
+				final float[] lInputPlane = new float[lInputSliceLength];
+				final float[] lOutputPlane = new float[lOutputSliceLength];
+				VoxelAccess.readSlices(pInput, pZ, pZ + 1, lInputPlane);
+				deskewPlane(lInputPlane,
+							lOutputPlane,
+							lElementSize,
+							lWidth,
+							lHeight,
+							pZ,
+							lDepth);
+				VoxelAccess.writeSlices(pOutput, pZ, pZ + 1, lOutputPlane);
+			}
+		});
+	}
+
+}
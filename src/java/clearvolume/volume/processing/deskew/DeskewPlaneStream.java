@@ -0,0 +1,156 @@
+package clearvolume.volume.processing.deskew;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.VoxelAccess;
+
+/**
+ * Deskews a volume plane by plane as its planes arrive, see
+ * {@link DeskewSink#openPlaneStream}. Planes can be sent in any order and from
+ * several threads, each plane is deskewed on the sending thread. The deskewed
+ * volume is relayed when all planes have been sent, or when the stream is
+ * closed, in which case missing planes are zero. Planes still being written
+ * when the stream is closed are finished first, the last writer relays.
+ */
+public class DeskewPlaneStream implements ClearVolumeCloseable
+{
+	private final DeskewSink mDeskewSink;
+	private final Volume mDeskewedVolume;
+	private final int mElementSize, mWidth, mHeight, mDepth;
+	private final AtomicIntegerArray mReceivedPlanes;
+	private final AtomicInteger mNumberOfReceivedPlanes = new AtomicInteger();
+	private final AtomicInteger mNumberOfPendingWrites = new AtomicInteger();
+	private final AtomicBoolean mIsClosed = new AtomicBoolean();
+	private final AtomicBoolean mIsRelayed = new AtomicBoolean();
+
+	DeskewPlaneStream(	DeskewSink pDeskewSink,
+						Volume pDeskewedVolume,
+						int pElementSize,
+						int pWidth,
+						int pHeight,
+						int pDepth)
+	{
+		super();
+		mDeskewSink = pDeskewSink;
+		mDeskewedVolume = pDeskewedVolume;
+		mElementSize = pElementSize;
+		mWidth = pWidth;
+		mHeight = pHeight;
+		mDepth = pDepth;
+		mReceivedPlanes = new AtomicIntegerArray(pDepth);
+	}
+
+	/**
+	 * Returns the volume the planes are deskewed into, to set its metadata.
+	 *
+	 * @return deskewed volume
+	 */
+	public Volume getDeskewedVolume()
+	{
+		return mDeskewedVolume;
+	}
+
+	/**
+	 * Deskews a plane into the output volume.
+	 *
+	 * @param pZ
+	 *            index of the plane
+	 * @param pPlane
+	 *            plane, element fastest, then x and y
+	 */
+	public void sendPlane(int pZ, float[] pPlane)
+	{
+		if (pZ < 0 || pZ >= mDepth)
+			throw new IllegalArgumentException("Plane index out of range: " + pZ);
+		mNumberOfPendingWrites.incrementAndGet();
+		try
+		{
+			if (mIsRelayed.get())
+				throw new IllegalStateException("Volume already relayed");
+			if (!mReceivedPlanes.compareAndSet(pZ, 0, 1))
+				throw new IllegalStateException("Plane already sent: " + pZ);
+
+			writePlane(pZ, pPlane);
+			if (mNumberOfReceivedPlanes.incrementAndGet() == mDepth)
+				relay();
+		}
+		finally
+		{
+			finishWrite();
+		}
+	}
+
+	private void writePlane(int pZ, float[] pPlane)
+	{
+		final Deskew lDeskew = mDeskewSink.getDeskew();
+		final float[] lDeskewedPlane = new float[mElementSize * lDeskew.getOutputWidth(	mWidth,
+																						mDepth)
+													* mHeight];
+		if (pPlane != null)
+			lDeskew.deskewPlane(pPlane,
+								lDeskewedPlane,
+								mElementSize,
+								mWidth,
+								mHeight,
+								pZ,
+								mDepth);
+		VoxelAccess.writeSlices(mDeskewedVolume, pZ, pZ + 1, lDeskewedPlane);
+	}
+
+	/**
+	 * Relays the volume once the stream is closed and the last pending write is
+	 * done.
+	 */
+	private void finishWrite()
+	{
+		if (mNumberOfPendingWrites.decrementAndGet() == 0 && mIsClosed.get())
+			relay();
+	}
+
+	private void relay()
+	{
+		if (mIsRelayed.compareAndSet(false, true))
+			mDeskewSink.relay(mDeskewedVolume);
+	}
+
+	public int getNumberOfReceivedPlanes()
+	{
+		return mNumberOfReceivedPlanes.get();
+	}
+
+	public boolean isRelayed()
+	{
+		return mIsRelayed.get();
+	}
+
+	/**
+	 * Zeroes the planes that were not sent and relays the volume, if not done
+	 * already. If planes are still being written, the volume is relayed by the
+	 * thread finishing the last of them.
+	 */
+	@Override
+	public void close()
+	{
+		if (mIsRelayed.get())
+			return;
+		// counted as a pending write so that no sender relays before the
+		// missing planes are zeroed:
+		mNumberOfPendingWrites.incrementAndGet();
+		try
+		{
+			if (mIsClosed.compareAndSet(false, true))
+				for (int z = 0; z < mDepth; z++)
+					if (mReceivedPlanes.compareAndSet(z, 0, 1))
+						writePlane(z, null);
+		}
+		finally
+		{
+			finishWrite();
+		}
+	}
+
+}
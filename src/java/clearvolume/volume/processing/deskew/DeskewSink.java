@@ -0,0 +1,103 @@
+package clearvolume.volume.processing.deskew;
+
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.ProcessingSinkAdapter;
+import coremem.enums.NativeTypeEnum;
+
+/**
+ * Deskews stage-scanned light-sheet volumes before relaying them. Whole volumes
+ * sent to the sink are deskewed plane by plane in parallel into a pooled
+ * volume, and the input is made available to its manager. To deskew while a
+ * volume is being acquired, open a {@link DeskewPlaneStream} and send it the
+ * planes as they arrive: each plane is deskewed right away and the volume is
+ * relayed as soon as its last plane is in.
+ */
+public class DeskewSink extends ProcessingSinkAdapter
+{
+	private final Deskew mDeskew;
+	private final ForkJoinPool mForkJoinPool;
+
+	public DeskewSink(double pShear)
+	{
+		this(pShear, ForkJoinPool.commonPool());
+	}
+
+	public DeskewSink(double pShear, ForkJoinPool pForkJoinPool)
+	{
+		super();
+		mDeskew = new Deskew(pShear);
+		mForkJoinPool = pForkJoinPool;
+	}
+
+	public Deskew getDeskew()
+	{
+		return mDeskew;
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		final Volume lDeskewedVolume = requestVolume(	pVolume.getNativeType(),
+														mDeskew.getOutputDimensions(pVolume.getDimensionsInVoxels()));
+		mDeskew.apply(pVolume, lDeskewedVolume, mForkJoinPool);
+		copyMetaData(pVolume, lDeskewedVolume);
+		pVolume.makeAvailableToManager();
+		relay(lDeskewedVolume);
+	}
+
+	/**
+	 * Opens a stream for a volume that arrives plane by plane. Set the
+	 * metadata, such as time index and channel, on the volume returned by
+	 * {@link DeskewPlaneStream#getDeskewedVolume()} before the last plane is
+	 * sent.
+	 *
+	 * @param pType
+	 *            voxel type
+	 * @param pElementSize
+	 *            number of elements per voxel
+	 * @param pWidth
+	 *            width of the planes
+	 * @param pHeight
+	 *            height of the planes
+	 * @param pDepth
+	 *            number of planes
+	 * @return plane stream
+	 */
+	public DeskewPlaneStream openPlaneStream(	NativeTypeEnum pType,
+												int pElementSize,
+												int pWidth,
+												int pHeight,
+												int pDepth)
+	{
+		final Volume lDeskewedVolume = requestVolume(	pType,
+														mDeskew.getOutputDimensions(new long[]
+														{ pElementSize,
+															pWidth,
+															pHeight,
+															pDepth }));
+		return new DeskewPlaneStream(	this,
+										lDeskewedVolume,
+										pElementSize,
+										pWidth,
+										pHeight,
+										pDepth);
+	}
+
+	void relay(Volume pDeskewedVolume)
+	{
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(pDeskewedVolume);
+		else
+			pDeskewedVolume.makeAvailableToManager();
+	}
+
+	private static void copyMetaData(Volume pFrom, Volume pTo)
+	{
+		final long[] lDimensions = pTo.getDimensionsInVoxels().clone();
+		pTo.copyMetaDataFrom(pFrom);
+		pTo.setDimensionsInVoxels(lDimensions);
+	}
+
+}
@@ -0,0 +1,294 @@
+package clearvolume.volume.processing.deskew.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.processing.deskew.Deskew;
+import clearvolume.volume.processing.deskew.DeskewPlaneStream;
+import clearvolume.volume.processing.deskew.DeskewSink;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import coremem.enums.NativeTypeEnum;
+
+public class DeskewTests
+{
+	private static final int cWidth = 10, cHeight = 3, cDepth = 5;
+
+	@Test
+	public void testOutputWidth()
+	{
+		assertEquals(18, new Deskew(2).getOutputWidth(cWidth, cDepth));
+		assertEquals(18, new Deskew(-2).getOutputWidth(cWidth, cDepth));
+		assertEquals(12, new Deskew(0.5).getOutputWidth(cWidth, cDepth));
+		assertEquals(cWidth, new Deskew(0).getOutputWidth(cWidth, cDepth));
+	}
+
+	@Test
+	public void testDeskewUndoesShear()
+	{
+		for (final double lShear : new double[]
+		{ 2, -1, 0.5 })
+		{
+			// each voxel holds the x it should have once deskewed:
+			final Volume lSheared = new Volume(	NativeTypeEnum.Float,
+												1,
+												cWidth,
+												cHeight,
+												cDepth);
+			final Deskew lDeskew = new Deskew(lShear);
+			final int lOutputWidth = lDeskew.getOutputWidth(cWidth, cDepth);
+			final double lBase = -Math.min(0, (cDepth - 1) * lShear);
+			final float[] lValues = new float[cWidth * cHeight * cDepth];
+			for (int z = 0; z < cDepth; z++)
+				for (int y = 0; y < cHeight; y++)
+					for (int x = 0; x < cWidth; x++)
+					{
+						final double lOutputX = x + lShear * z + lBase;
+						lValues[(z * cHeight + y) * cWidth + x] = (float) lOutputX;
+					}
+			VoxelAccess.writeSlices(lSheared, 0, cDepth, lValues);
+
+			final Volume lDeskewed = new Volume(NativeTypeEnum.Float,
+												lDeskew.getOutputDimensions(lSheared.getDimensionsInVoxels()));
+			lDeskew.apply(lSheared, lDeskewed, ForkJoinPool.commonPool());
+
+			final float[] lResult = new float[lOutputWidth * cHeight * cDepth];
+			VoxelAccess.readSlices(lDeskewed, 0, cDepth, lResult);
+			for (int z = 0; z < cDepth; z++)
+				for (int y = 0; y < cHeight; y++)
+					for (int x = 0; x < lOutputWidth; x++)
+					{
+						final double lInputX = x - lShear * z - lBase;
+						final float lValue = lResult[(z * cHeight + y) * lOutputWidth
+														+ x];
+						if (lInputX >= 0 && lInputX <= cWidth - 1)
+							assertEquals(x, lValue, 1e-4);
+						else if (lInputX < -1 || lInputX > cWidth)
+							assertEquals(0, lValue, 0);
+					}
+		}
+	}
+
+	@Test
+	public void testPlaneStreamMatchesWholeVolume()
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(4);
+		final ArrayList<Volume> lReceived = new ArrayList<Volume>();
+		final DeskewSink lDeskewSink = new DeskewSink(1.5);
+		lDeskewSink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				lReceived.add(pVolume);
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		});
+
+		final float[][] lPlanes = new float[cDepth][cWidth * cHeight];
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		for (int z = 0; z < cDepth; z++)
+			for (int i = 0; i < cWidth * cHeight; i++)
+				lValues[z * cWidth * cHeight + i] = lPlanes[z][i] = (i * 7 + z * 13) % 50;
+
+		final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	0,
+																		TimeUnit.MILLISECONDS,
+																		NativeTypeEnum.UnsignedShort,
+																		1,
+																		cWidth,
+																		cHeight,
+																		cDepth);
+		VoxelAccess.writeSlices(lVolume, 0, cDepth, lValues);
+		lVolume.setTimeIndex(3);
+		lDeskewSink.sendVolume(lVolume);
+		assertEquals(1, lReceived.size());
+		assertEquals(3, lReceived.get(0).getTimeIndex());
+		final int lOutputWidth = (int) lReceived.get(0).getWidthInVoxels();
+		assertEquals(16, lOutputWidth);
+		final float[] lExpected = new float[lOutputWidth * cHeight * cDepth];
+		VoxelAccess.readSlices(lReceived.get(0), 0, cDepth, lExpected);
+
+		final DeskewPlaneStream lDeskewPlaneStream = lDeskewSink.openPlaneStream(	NativeTypeEnum.UnsignedShort,
+																					1,
+																					cWidth,
+																					cHeight,
+																					cDepth);
+		lDeskewPlaneStream.getDeskewedVolume().setTimeIndex(4);
+		// planes in any order, the volume is relayed with the last one:
+		for (int z = cDepth - 1; z >= 0; z--)
+		{
+			assertFalse(lDeskewPlaneStream.isRelayed());
+			lDeskewPlaneStream.sendPlane(z, lPlanes[z]);
+		}
+		assertTrue(lDeskewPlaneStream.isRelayed());
+		assertEquals(2, lReceived.size());
+		assertEquals(4, lReceived.get(1).getTimeIndex());
+
+		final float[] lStreamed = new float[lExpected.length];
+		VoxelAccess.readSlices(lReceived.get(1), 0, cDepth, lStreamed);
+		assertArrayEquals(lExpected, lStreamed, 0);
+
+		lDeskewSink.close();
+	}
+
+	@Test
+	public void testClosingStreamZeroesMissingPlanes()
+	{
+		final DeskewSink lDeskewSink = new DeskewSink(1);
+		final ArrayList<Volume> lReceived = new ArrayList<Volume>();
+		final VolumeManager lVolumeManager = new VolumeManager(4);
+		lDeskewSink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				lReceived.add(pVolume);
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		});
+
+		final DeskewPlaneStream lDeskewPlaneStream = lDeskewSink.openPlaneStream(	NativeTypeEnum.UnsignedByte,
+																					1,
+																					cWidth,
+																					cHeight,
+																					cDepth);
+		final float[] lPlane = new float[cWidth * cHeight];
+		Arrays.fill(lPlane, 9);
+		lDeskewPlaneStream.sendPlane(0, lPlane);
+		lDeskewPlaneStream.close();
+		assertEquals(1, lReceived.size());
+
+		final int lOutputWidth = cWidth + cDepth - 1;
+		final float[] lResult = new float[lOutputWidth * cHeight * cDepth];
+		VoxelAccess.readSlices(lReceived.get(0), 0, cDepth, lResult);
+		assertEquals(9, lResult[0], 0);
+		for (int i = lOutputWidth * cHeight; i < lResult.length; i++)
+			assertEquals(0, lResult[i], 0);
+
+		lDeskewSink.close();
+	}
+
+	@Test
+	public void testClosingStreamWaitsForPendingPlanes() throws InterruptedException
+	{
+		final CountDownLatch lWriting = new CountDownLatch(1);
+		final CountDownLatch lResume = new CountDownLatch(1);
+		final Deskew lBlockingDeskew = new Deskew(1)
+		{
+			@Override
+			public void deskewPlane(float[] pInput,
+									float[] pOutput,
+									int pElementSize,
+									int pWidth,
+									int pHeight,
+									int pZ,
+									int pDepth)
+			{
+				super.deskewPlane(	pInput,
+									pOutput,
+									pElementSize,
+									pWidth,
+									pHeight,
+									pZ,
+									pDepth);
+				lWriting.countDown();
+				try
+				{
+					lResume.await();
+				}
+				catch (final InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		final DeskewSink lDeskewSink = new DeskewSink(1)
+		{
+			@Override
+			public Deskew getDeskew()
+			{
+				return lBlockingDeskew;
+			}
+		};
+		final ArrayList<Volume> lReceived = new ArrayList<Volume>();
+		final VolumeManager lVolumeManager = new VolumeManager(4);
+		lDeskewSink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				synchronized (lReceived)
+				{
+					lReceived.add(pVolume);
+				}
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		});
+
+		final DeskewPlaneStream lDeskewPlaneStream = lDeskewSink.openPlaneStream(	NativeTypeEnum.UnsignedByte,
+																					1,
+																					cWidth,
+																					cHeight,
+																					cDepth);
+		final float[] lPlane = new float[cWidth * cHeight];
+		Arrays.fill(lPlane, 9);
+		final Thread lSender = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				lDeskewPlaneStream.sendPlane(0, lPlane);
+			}
+		};
+		lSender.start();
+		assertTrue(lWriting.await(1, TimeUnit.SECONDS));
+
+		// the plane being written is not lost, the sender relays once done:
+		lDeskewPlaneStream.close();
+		synchronized (lReceived)
+		{
+			assertEquals(0, lReceived.size());
+		}
+		lResume.countDown();
+		lSender.join(1000);
+		synchronized (lReceived)
+		{
+			assertEquals(1, lReceived.size());
+		}
+		assertTrue(lDeskewPlaneStream.isRelayed());
+
+		final float[] lResult = new float[(cWidth + cDepth - 1) * cHeight];
+		VoxelAccess.readSlices(lReceived.get(0), 0, 1, lResult);
+		assertEquals(9, lResult[0], 0);
+
+		lDeskewSink.close();
+	}
+
+}
@@ -0,0 +1,335 @@
+package clearvolume.volume.processing.fft;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.processing.SlabRunner;
+import clearvolume.volume.processing.SlabRunner.RangeTaskInterface;
+
+/**
+ * Three-dimensional FFT of real float volumes of a given size. The spectrum of
+ * a real volume is Hermitian, so only the non-negative x frequencies are kept:
+ * (width/2+1) x height x depth complex values, interleaved real and imaginary
+ * parts, x fastest. Each pass transforms independent lines in parallel on a
+ * fork-join pool, lines are copied to double precision scratch arrays. Spectra
+ * and real volumes are large and can be requested from small pools and given
+ * back after use.
+ */
+public class FFT3D
+{
+	private static final int cMaxPooledSpectra = 2;
+	private static final int cChunksPerThread = 4;
+
+	private final int mWidth, mHeight, mDepth;
+	private final int mSpectrumWidth;
+	private final int mSpectrumLength;
+	private final FFTPlan mPlanX, mPlanY, mPlanZ;
+
+	private final ArrayBlockingQueue<SoftReference<float[]>> mSpectrumPool = new ArrayBlockingQueue<SoftReference<float[]>>(cMaxPooledSpectra);
+	private final ArrayBlockingQueue<SoftReference<float[]>> mRealPool = new ArrayBlockingQueue<SoftReference<float[]>>(cMaxPooledSpectra);
+
+	public FFT3D(int pWidth, int pHeight, int pDepth)
+	{
+		super();
+		mWidth = pWidth;
+		mHeight = pHeight;
+		mDepth = pDepth;
+		mSpectrumWidth = pWidth / 2 + 1;
+		final long lSpectrumLength = 2L * mSpectrumWidth * pHeight * pDepth;
+		if (lSpectrumLength > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException(String.format(	"Volume too large for a single spectrum array: %dx%dx%d",
+																pWidth,
+																pHeight,
+																pDepth));
+		mSpectrumLength = (int) lSpectrumLength;
+		if ((long) pWidth * pHeight * pDepth > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException(String.format(	"Volume too large for a single array: %dx%dx%d",
+																pWidth,
+																pHeight,
+																pDepth));
+		mPlanX = FFTPlan.getPlan(pWidth);
+		mPlanY = FFTPlan.getPlan(pHeight);
+		mPlanZ = FFTPlan.getPlan(pDepth);
+	}
+
+	public int getWidth()
+	{
+		return mWidth;
+	}
+
+	public int getHeight()
+	{
+		return mHeight;
+	}
+
+	public int getDepth()
+	{
+		return mDepth;
+	}
+
+	/**
+	 * Returns the number of complex values along x in the spectrum.
+	 *
+	 * @return width/2+1
+	 */
+	public int getSpectrumWidth()
+	{
+		return mSpectrumWidth;
+	}
+
+	/**
+	 * Returns the length of the spectrum array, twice the number of complex
+	 * values.
+	 *
+	 * @return length in floats
+	 */
+	public int getSpectrumLength()
+	{
+		return mSpectrumLength;
+	}
+
+	/**
+	 * Returns a pooled spectrum array, or a new one. Its content is undefined.
+	 *
+	 * @return spectrum array
+	 */
+	public float[] requestSpectrum()
+	{
+		return request(mSpectrumPool, mSpectrumLength);
+	}
+
+	/**
+	 * Gives a spectrum array back to the pool, it is dropped if the pool is
+	 * full.
+	 *
+	 * @param pSpectrum
+	 *            spectrum array
+	 */
+	public void releaseSpectrum(float[] pSpectrum)
+	{
+		release(mSpectrumPool, pSpectrum, mSpectrumLength);
+	}
+
+	/**
+	 * Returns a pooled real volume array of width x height x depth floats, or a
+	 * new one. Its content is undefined.
+	 *
+	 * @return real volume array
+	 */
+	public float[] requestReal()
+	{
+		return request(mRealPool, mWidth * mHeight * mDepth);
+	}
+
+	/**
+	 * Gives a real volume array back to the pool, it is dropped if the pool is
+	 * full.
+	 *
+	 * @param pReal
+	 *            real volume array
+	 */
+	public void releaseReal(float[] pReal)
+	{
+		release(mRealPool, pReal, mWidth * mHeight * mDepth);
+	}
+
+	static float[] request(	ArrayBlockingQueue<SoftReference<float[]>> pPool,
+							int pLength)
+	{
+		SoftReference<float[]> lReference;
+		while ((lReference = pPool.poll()) != null)
+		{
+			final float[] lArray = lReference.get();
+			if (lArray != null && lArray.length == pLength)
+				return lArray;
+		}
+		return new float[pLength];
+	}
+
+	static void release(ArrayBlockingQueue<SoftReference<float[]>> pPool,
+						float[] pArray,
+						int pLength)
+	{
+		if (pArray.length == pLength)
+			pPool.offer(new SoftReference<float[]>(pArray));
+	}
+
+	/**
+	 * Forward transform.
+	 *
+	 * @param pReal
+	 *            real volume, width x height x depth, x fastest
+	 * @param pSpectrum
+	 *            array receiving the half spectrum
+	 * @param pForkJoinPool
+	 *            pool running the passes
+	 */
+	public void forward(final float[] pReal,
+						final float[] pSpectrum,
+						ForkJoinPool pForkJoinPool)
+	{
+		parallelFor(pForkJoinPool, mHeight * mDepth, new RangeTaskInterface()
+		{
+			@Override
+			public void run(int pStart, int pEnd)
+			{
+				final double[] lLine = new double[2 * mWidth];
+				for (int lRow = pStart; lRow < pEnd; lRow++)
+				{
+					final int lInput = lRow * mWidth;
+					for (int x = 0; x < mWidth; x++)
+					{
+						lLine[2 * x] = pReal[lInput + x];
+						lLine[2 * x + 1] = 0;
+					}
+					mPlanX.transform(lLine, false);
+					final int lOutput = 2 * lRow * mSpectrumWidth;
+					for (int k = 0; k < 2 * mSpectrumWidth; k++)
+						pSpectrum[lOutput + k] = (float) lLine[k];
+				}
+			}
+		});
+		transformColumns(pSpectrum, false, pForkJoinPool);
+	}
+
+	/**
+	 * Inverse transform, divided by the number of voxels so that it inverts
+	 * {@link #forward(float[], float[], ForkJoinPool)}. The spectrum is
+	 * overwritten.
+	 *
+	 * @param pSpectrum
+	 *            half spectrum
+	 * @param pReal
+	 *            array receiving the real volume
+	 * @param pForkJoinPool
+	 *            pool running the passes
+	 */
+	public void inverse(final float[] pSpectrum,
+						final float[] pReal,
+						ForkJoinPool pForkJoinPool)
+	{
+		transformColumns(pSpectrum, true, pForkJoinPool);
+		final double lScale = 1.0 / ((double) mWidth * mHeight * mDepth);
+		parallelFor(pForkJoinPool, mHeight * mDepth, new RangeTaskInterface()
+		{
+			@Override
+			public void run(int pStart, int pEnd)
+			{
+				final double[] lLine = new double[2 * mWidth];
+				for (int lRow = pStart; lRow < pEnd; lRow++)
+				{
+					final int lInput = 2 * lRow * mSpectrumWidth;
+					for (int k = 0; k < 2 * mSpectrumWidth; k++)
+						lLine[k] = pSpectrum[lInput + k];
+					// negative frequencies are the conjugates of the positive ones:
+					for (int k = mSpectrumWidth; k < mWidth; k++)
+					{
+						lLine[2 * k] = lLine[2 * (mWidth - k)];
+						lLine[2 * k + 1] = -lLine[2 * (mWidth - k) + 1];
+					}
+					mPlanX.transform(lLine, true);
+					final int lOutput = lRow * mWidth;
+					for (int x = 0; x < mWidth; x++)
+						pReal[lOutput + x] = (float) (lLine[2 * x] * lScale);
+				}
+			}
+		});
+	}
+
+	private void transformColumns(	final float[] pSpectrum,
+									final boolean pInverse,
+									ForkJoinPool pForkJoinPool)
+	{
+		if (mHeight > 1)
+			parallelFor(pForkJoinPool,
+						mDepth * mSpectrumWidth,
+						new RangeTaskInterface()
+						{
+							@Override
+							public void run(int pStart, int pEnd)
+							{
+								transformLines(	pSpectrum,
+												mPlanY,
+												mSpectrumWidth,
+												mSpectrumWidth * mHeight,
+												pStart,
+												pEnd,
+												pInverse);
+							}
+						});
+		if (mDepth > 1)
+			parallelFor(pForkJoinPool,
+						mHeight * mSpectrumWidth,
+						new RangeTaskInterface()
+						{
+							@Override
+							public void run(int pStart, int pEnd)
+							{
+								transformLines(	pSpectrum,
+												mPlanZ,
+												mSpectrumWidth * mHeight,
+												mSpectrumWidth,
+												pStart,
+												pEnd,
+												pInverse);
+							}
+						});
+	}
+
+	/**
+	 * Transforms lines of complex values spaced by a stride. Line i starts at
+	 * (i / width) * outer stride + (i % width), in complex values, where width
+	 * is the spectrum width.
+	 */
+	private void transformLines(float[] pSpectrum,
+								FFTPlan pPlan,
+								int pStride,
+								int pOuterStride,
+								int pStart,
+								int pEnd,
+								boolean pInverse)
+	{
+		final int lLength = pPlan.getLength();
+		final double[] lLine = new double[2 * lLength];
+		for (int i = pStart; i < pEnd; i++)
+		{
+			final int lOffset = 2 * ((i / mSpectrumWidth) * pOuterStride + i
+																			% mSpectrumWidth);
+			for (int k = 0; k < lLength; k++)
+			{
+				final int lIndex = lOffset + 2 * k * pStride;
+				lLine[2 * k] = pSpectrum[lIndex];
+				lLine[2 * k + 1] = pSpectrum[lIndex + 1];
+			}
+			pPlan.transform(lLine, pInverse);
+			for (int k = 0; k < lLength; k++)
+			{
+				final int lIndex = lOffset + 2 * k * pStride;
+				pSpectrum[lIndex] = (float) lLine[2 * k];
+				pSpectrum[lIndex + 1] = (float) lLine[2 * k + 1];
+			}
+		}
+	}
+
+	/**
+	 * Runs a range of independent lines in chunks on a fork-join pool.
+	 *
+	 * @param pForkJoinPool
+	 *            pool
+	 * @param pCount
+	 *            number of lines
+	 * @param pRangeTask
+	 *            work for a sub-range of lines
+	 */
+	static void parallelFor(ForkJoinPool pForkJoinPool,
+							int pCount,
+							RangeTaskInterface pRangeTask)
+	{
+		SlabRunner.runRanges(	pForkJoinPool,
+								pCount,
+								cChunksPerThread * pForkJoinPool.getParallelism(),
+								pRangeTask);
+	}
+
+}
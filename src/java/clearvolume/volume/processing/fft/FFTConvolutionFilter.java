@@ -0,0 +1,36 @@
+package clearvolume.volume.processing.fft;
+
+/**
+ * Convolves volumes with a kernel in the frequency domain. The cost does not
+ * depend on the size of the kernel, which makes it the choice for kernels too
+ * large or not separable for the slab filters.
+ */
+public class FFTConvolutionFilter extends FFTFilter
+{
+
+	public FFTConvolutionFilter(float[] pKernel,
+								int pKernelWidth,
+								int pKernelHeight,
+								int pKernelDepth)
+	{
+		super(pKernel, pKernelWidth, pKernelHeight, pKernelDepth);
+	}
+
+	@Override
+	protected void filterSpectrum(	float[] pSpectrum,
+									float[] pKernelSpectrum,
+									int pStart,
+									int pEnd)
+	{
+		for (int i = 2 * pStart; i < 2 * pEnd; i += 2)
+		{
+			final float lRe = pSpectrum[i];
+			final float lIm = pSpectrum[i + 1];
+			final float lKernelRe = pKernelSpectrum[i];
+			final float lKernelIm = pKernelSpectrum[i + 1];
+			pSpectrum[i] = lRe * lKernelRe - lIm * lKernelIm;
+			pSpectrum[i + 1] = lRe * lKernelIm + lIm * lKernelRe;
+		}
+	}
+
+}
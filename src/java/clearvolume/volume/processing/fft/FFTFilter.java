@@ -0,0 +1,193 @@
+package clearvolume.volume.processing.fft;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.SlabRunner.RangeTaskInterface;
+import clearvolume.volume.processing.VolumeFilterInterface;
+import clearvolume.volume.processing.VoxelAccess;
+
+/**
+ * Base class of filters that multiply the spectrum of a volume by a function of
+ * the spectrum of a kernel. The volume is padded by at least the size of the
+ * kernel, repeating its edges, so that the circular convolution of the FFT
+ * does not wrap around; each padded axis is rounded up to the next product of
+ * 2, 3 and 5 so that no axis falls back to Bluestein's algorithm while the
+ * padding stays small enough for large volumes. The kernel spectrum and the
+ * FFT are computed once per padded size and reused while volumes keep the same
+ * size, and so are the working arrays. The whole volume is read before the
+ * result is written, so filters work in place. Volumes must have one element
+ * per voxel.
+ */
+public abstract class FFTFilter implements VolumeFilterInterface
+{
+	private final float[] mKernel;
+	private final int mKernelWidth, mKernelHeight, mKernelDepth;
+
+	private final ArrayBlockingQueue<SoftReference<float[]>> mVolumePool = new ArrayBlockingQueue<SoftReference<float[]>>(2);
+
+	private FFT3D mFFT3D;
+	private float[] mKernelSpectrum;
+
+	/**
+	 * @param pKernel
+	 *            kernel, x fastest, centered on the voxel at half its size
+	 * @param pKernelWidth
+	 *            width of the kernel
+	 * @param pKernelHeight
+	 *            height of the kernel
+	 * @param pKernelDepth
+	 *            depth of the kernel
+	 */
+	public FFTFilter(	float[] pKernel,
+						int pKernelWidth,
+						int pKernelHeight,
+						int pKernelDepth)
+	{
+		super();
+		if (pKernel.length != pKernelWidth * pKernelHeight * pKernelDepth)
+			throw new IllegalArgumentException("Kernel length does not match its dimensions");
+		mKernel = pKernel.clone();
+		mKernelWidth = pKernelWidth;
+		mKernelHeight = pKernelHeight;
+		mKernelDepth = pKernelDepth;
+	}
+
+	/**
+	 * Modifies a range of the volume spectrum.
+	 *
+	 * @param pSpectrum
+	 *            spectrum of the padded volume
+	 * @param pKernelSpectrum
+	 *            spectrum of the kernel
+	 * @param pStart
+	 *            first complex value
+	 * @param pEnd
+	 *            complex value after the last one
+	 */
+	protected abstract void filterSpectrum(	float[] pSpectrum,
+											float[] pKernelSpectrum,
+											int pStart,
+											int pEnd);
+
+	@Override
+	public boolean isInPlace()
+	{
+		return true;
+	}
+
+	@Override
+	public void apply(Volume pInput, Volume pOutput, ForkJoinPool pForkJoinPool)
+	{
+		if (pInput.getElementSize() != 1)
+			throw new IllegalArgumentException("FFT filters need one element per voxel");
+
+		final int lWidth = (int) pInput.getWidthInVoxels();
+		final int lHeight = (int) pInput.getHeightInVoxels();
+		final int lDepth = VoxelAccess.getDepth(pInput);
+		// convolution reads (size-1)/2 voxels before and size/2 after:
+		final int lLeft = (mKernelWidth - 1) / 2;
+		final int lTop = (mKernelHeight - 1) / 2;
+		final int lFront = (mKernelDepth - 1) / 2;
+		final int lPaddedWidth = FFTPlan.getFastLength(lWidth + mKernelWidth - 1);
+		final int lPaddedHeight = FFTPlan.getFastLength(lHeight + mKernelHeight
+														- 1);
+		final int lPaddedDepth = FFTPlan.getFastLength(lDepth + mKernelDepth - 1);
+
+		final FFT3D lFFT3D;
+		final float[] lKernelSpectrum;
+		synchronized (this)
+		{
+			if (mFFT3D == null || mFFT3D.getWidth() != lPaddedWidth
+				|| mFFT3D.getHeight() != lPaddedHeight
+				|| mFFT3D.getDepth() != lPaddedDepth)
+			{
+				mFFT3D = new FFT3D(lPaddedWidth, lPaddedHeight, lPaddedDepth);
+				mKernelSpectrum = computeKernelSpectrum(mFFT3D, pForkJoinPool);
+			}
+			lFFT3D = mFFT3D;
+			lKernelSpectrum = mKernelSpectrum;
+		}
+
+		final int lVolumeLength = lWidth * lHeight * lDepth;
+		final float[] lVolume = FFT3D.request(mVolumePool, lVolumeLength);
+		final float[] lPadded = lFFT3D.requestReal();
+		final float[] lSpectrum = lFFT3D.requestSpectrum();
+		try
+		{
+			VoxelAccess.readSlices(pInput, 0, lDepth, lVolume);
+			for (int z = 0; z < lPaddedDepth; z++)
+			{
+				final int lZ = Math.max(0, Math.min(lDepth - 1, z - lFront));
+				for (int y = 0; y < lPaddedHeight; y++)
+				{
+					final int lY = Math.max(0, Math.min(lHeight - 1, y - lTop));
+					final int lRow = (lZ * lHeight + lY) * lWidth;
+					final int lPaddedRow = (z * lPaddedHeight + y) * lPaddedWidth;
+					for (int x = 0; x < lPaddedWidth; x++)
+						lPadded[lPaddedRow + x] = lVolume[lRow + Math.max(	0,
+																			Math.min(	lWidth - 1,
+																						x - lLeft))];
+				}
+			}
+
+			lFFT3D.forward(lPadded, lSpectrum, pForkJoinPool);
+			FFT3D.parallelFor(	pForkJoinPool,
+								lFFT3D.getSpectrumLength() / 2,
+								new RangeTaskInterface()
+								{
+									@Override
+									public void run(int pStart, int pEnd)
+									{
+										filterSpectrum(	lSpectrum,
+														lKernelSpectrum,
+														pStart,
+														pEnd);
+									}
+								});
+			lFFT3D.inverse(lSpectrum, lPadded, pForkJoinPool);
+
+			for (int z = 0; z < lDepth; z++)
+				for (int y = 0; y < lHeight; y++)
+					System.arraycopy(	lPadded,
+										((z + lFront) * lPaddedHeight + y + lTop) * lPaddedWidth
+												+ lLeft,
+										lVolume,
+										(z * lHeight + y) * lWidth,
+										lWidth);
+			VoxelAccess.writeSlices(pOutput, 0, lDepth, lVolume);
+		}
+		finally
+		{
+			lFFT3D.releaseSpectrum(lSpectrum);
+			lFFT3D.releaseReal(lPadded);
+			FFT3D.release(mVolumePool, lVolume, lVolumeLength);
+		}
+	}
+
+	private float[] computeKernelSpectrum(FFT3D pFFT3D, ForkJoinPool pForkJoinPool)
+	{
+		final int lWidth = pFFT3D.getWidth();
+		final int lHeight = pFFT3D.getHeight();
+		final int lDepth = pFFT3D.getDepth();
+		// the center of the kernel goes to the origin, the rest wraps around:
+		final float[] lWrappedKernel = new float[lWidth * lHeight * lDepth];
+		for (int z = 0; z < mKernelDepth; z++)
+			for (int y = 0; y < mKernelHeight; y++)
+				for (int x = 0; x < mKernelWidth; x++)
+				{
+					final int lX = (x - mKernelWidth / 2 + lWidth) % lWidth;
+					final int lY = (y - mKernelHeight / 2 + lHeight) % lHeight;
+					final int lZ = (z - mKernelDepth / 2 + lDepth) % lDepth;
+					lWrappedKernel[(lZ * lHeight + lY) * lWidth + lX] = mKernel[(z * mKernelHeight + y) * mKernelWidth
+																				+ x];
+				}
+
+		final float[] lKernelSpectrum = new float[pFFT3D.getSpectrumLength()];
+		pFFT3D.forward(lWrappedKernel, lKernelSpectrum, pForkJoinPool);
+		return lKernelSpectrum;
+	}
+
+}
@@ -0,0 +1,357 @@
+package clearvolume.volume.processing.fft;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Complex one-dimensional FFT of a given length. Powers of two use an
+ * iterative radix-2 transform, other products of 2, 3 and 5 a mixed-radix
+ * Stockham transform, and the remaining lengths Bluestein's algorithm on top of
+ * a radix-2 transform of at least twice the length. Twiddle factors and chirps
+ * are computed once per length, plans are cached and can be shared by threads.
+ * Transforms are not normalized.
+ */
+public class FFTPlan
+{
+	private static final ConcurrentHashMap<Integer, FFTPlan> cPlanCache = new ConcurrentHashMap<Integer, FFTPlan>();
+
+	private final int mLength;
+
+	// radix-2:
+	private final int[] mBitReversal;
+	// radix-2 over half the length, mixed radix over the whole length:
+	private final double[] mCos, mSin;
+
+	// mixed radix:
+	private final int[] mRadices;
+
+	// Bluestein:
+	private final FFTPlan mConvolutionPlan;
+	private final double[] mChirp;
+	private final double[] mChirpSpectrum;
+	private final ThreadLocal<double[]> mScratch;
+
+	/**
+	 * Returns the cached plan for a length, creating it if needed.
+	 *
+	 * @param pLength
+	 *            length
+	 * @return plan
+	 */
+	public static FFTPlan getPlan(int pLength)
+	{
+		FFTPlan lPlan = cPlanCache.get(pLength);
+		if (lPlan == null)
+		{
+			lPlan = new FFTPlan(pLength);
+			final FFTPlan lExistingPlan = cPlanCache.putIfAbsent(pLength, lPlan);
+			if (lExistingPlan != null)
+				lPlan = lExistingPlan;
+		}
+		return lPlan;
+	}
+
+	private FFTPlan(int pLength)
+	{
+		super();
+		if (pLength < 1)
+			throw new IllegalArgumentException("Length must be at least 1");
+		mLength = pLength;
+
+		if (isPowerOfTwo(pLength))
+		{
+			final int lBits = Integer.numberOfTrailingZeros(pLength);
+			mBitReversal = new int[pLength];
+			for (int i = 0; i < pLength; i++)
+				mBitReversal[i] = lBits == 0 ? 0
+											: Integer.reverse(i) >>> (32 - lBits);
+			mCos = new double[pLength / 2];
+			mSin = new double[pLength / 2];
+			for (int k = 0; k < pLength / 2; k++)
+			{
+				mCos[k] = Math.cos(2 * Math.PI * k / pLength);
+				mSin[k] = Math.sin(2 * Math.PI * k / pLength);
+			}
+			mRadices = null;
+			mConvolutionPlan = null;
+			mChirp = null;
+			mChirpSpectrum = null;
+			mScratch = null;
+		}
+		else if (isSmooth(pLength))
+		{
+			mBitReversal = null;
+			mRadices = factor(pLength);
+			mCos = new double[pLength];
+			mSin = new double[pLength];
+			for (int k = 0; k < pLength; k++)
+			{
+				mCos[k] = Math.cos(2 * Math.PI * k / pLength);
+				mSin[k] = Math.sin(2 * Math.PI * k / pLength);
+			}
+			mConvolutionPlan = null;
+			mChirp = null;
+			mChirpSpectrum = null;
+			mScratch = new ThreadLocal<double[]>()
+			{
+				@Override
+				protected double[] initialValue()
+				{
+					return new double[2 * pLength];
+				}
+			};
+		}
+		else
+		{
+			mBitReversal = null;
+			mRadices = null;
+			mCos = null;
+			mSin = null;
+
+			final int lConvolutionLength = Integer.highestOneBit(2 * pLength - 1) << 1;
+			mConvolutionPlan = getPlan(lConvolutionLength);
+
+			// w_k = exp(-i pi k^2 / n), k^2 taken modulo 2n to keep the angle small:
+			mChirp = new double[2 * pLength];
+			for (int k = 0; k < pLength; k++)
+			{
+				final double lAngle = Math.PI * (((long) k * k) % (2L * pLength))
+										/ pLength;
+				mChirp[2 * k] = Math.cos(lAngle);
+				mChirp[2 * k + 1] = -Math.sin(lAngle);
+			}
+
+			mChirpSpectrum = new double[2 * lConvolutionLength];
+			for (int k = 0; k < pLength; k++)
+			{
+				mChirpSpectrum[2 * k] = mChirp[2 * k];
+				mChirpSpectrum[2 * k + 1] = -mChirp[2 * k + 1];
+				if (k > 0)
+				{
+					mChirpSpectrum[2 * (lConvolutionLength - k)] = mChirp[2 * k];
+					mChirpSpectrum[2 * (lConvolutionLength - k) + 1] = -mChirp[2 * k + 1];
+				}
+			}
+			mConvolutionPlan.transform(mChirpSpectrum, false);
+
+			mScratch = new ThreadLocal<double[]>()
+			{
+				@Override
+				protected double[] initialValue()
+				{
+					return new double[2 * lConvolutionLength];
+				}
+			};
+		}
+	}
+
+	private static boolean isPowerOfTwo(int pLength)
+	{
+		return (pLength & (pLength - 1)) == 0;
+	}
+
+	private static boolean isSmooth(int pLength)
+	{
+		int lLength = pLength;
+		for (final int lRadix : new int[]
+		{ 2, 3, 5 })
+			while (lLength % lRadix == 0)
+				lLength /= lRadix;
+		return lLength == 1;
+	}
+
+	private static int[] factor(int pLength)
+	{
+		final int[] lRadices = new int[32];
+		int lNumberOfRadices = 0;
+		int lLength = pLength;
+		// radix 4 halves the number of passes over the data for powers of two:
+		for (final int lRadix : new int[]
+		{ 4, 2, 3, 5 })
+			while (lLength % lRadix == 0)
+			{
+				lRadices[lNumberOfRadices++] = lRadix;
+				lLength /= lRadix;
+			}
+		return Arrays.copyOf(lRadices, lNumberOfRadices);
+	}
+
+	/**
+	 * Returns the smallest length at least as large as the given one that is
+	 * transformed without Bluestein's algorithm, a product of 2, 3 and 5. Such
+	 * lengths are never more than a few percent longer than the given one, so
+	 * padding keeps large volumes within a single array.
+	 *
+	 * @param pMinimalLength
+	 *            minimal length
+	 * @return fast length
+	 */
+	public static int getFastLength(int pMinimalLength)
+	{
+		if (pMinimalLength > 1 << 30)
+			throw new IllegalArgumentException("Length too large: " + pMinimalLength);
+		int lLength = Math.max(1, pMinimalLength);
+		while (!isSmooth(lLength))
+			lLength++;
+		return lLength;
+	}
+
+	public int getLength()
+	{
+		return mLength;
+	}
+
+	/**
+	 * Transforms in place.
+	 *
+	 * @param pData
+	 *            interleaved real and imaginary parts, at least twice the length
+	 * @param pInverse
+	 *            true for the inverse transform, which is not divided by the
+	 *            length
+	 */
+	public void transform(double[] pData, boolean pInverse)
+	{
+		if (mBitReversal != null)
+			radix2(pData, pInverse);
+		else if (mRadices != null)
+			mixedRadix(pData, pInverse);
+		else
+			bluestein(pData, pInverse);
+	}
+
+	private void radix2(double[] pData, boolean pInverse)
+	{
+		final int n = mLength;
+		for (int i = 0; i < n; i++)
+		{
+			final int j = mBitReversal[i];
+			if (j > i)
+			{
+				final double lRe = pData[2 * i];
+				final double lIm = pData[2 * i + 1];
+				pData[2 * i] = pData[2 * j];
+				pData[2 * i + 1] = pData[2 * j + 1];
+				pData[2 * j] = lRe;
+				pData[2 * j + 1] = lIm;
+			}
+		}
+
+		for (int lSize = 2; lSize <= n; lSize <<= 1)
+		{
+			final int lHalf = lSize >> 1;
+			final int lStep = n / lSize;
+			for (int i = 0; i < n; i += lSize)
+				for (int j = 0; j < lHalf; j++)
+				{
+					final double lWRe = mCos[j * lStep];
+					final double lWIm = pInverse ? mSin[j * lStep]
+												: -mSin[j * lStep];
+					final int a = 2 * (i + j);
+					final int b = a + 2 * lHalf;
+					final double lTRe = lWRe * pData[b] - lWIm * pData[b + 1];
+					final double lTIm = lWRe * pData[b + 1] + lWIm * pData[b];
+					pData[b] = pData[a] - lTRe;
+					pData[b + 1] = pData[a + 1] - lTIm;
+					pData[a] += lTRe;
+					pData[a + 1] += lTIm;
+				}
+		}
+	}
+
+	private void mixedRadix(double[] pData, boolean pInverse)
+	{
+		final int n = mLength;
+		final double lSign = pInverse ? 1 : -1;
+		final double[] lRe = new double[5], lIm = new double[5];
+		double[] x = pData;
+		double[] y = mScratch.get();
+
+		// decimation in frequency, each pass writes its sub-transforms
+		// interleaved into the other array so that no reordering is needed:
+		int lSubLength = n;
+		int lStride = 1;
+		for (final int p : mRadices)
+		{
+			final int m = lSubLength / p;
+			final int lSubPeriod = n / p;
+			for (int q = 0; q < m; q++)
+				for (int t = 0; t < lStride; t++)
+				{
+					for (int r = 0; r < p; r++)
+					{
+						final int a = 2 * (t + lStride * (q + r * m));
+						lRe[r] = x[a];
+						lIm[r] = x[a + 1];
+					}
+					for (int u = 0; u < p; u++)
+					{
+						double lSumRe = 0, lSumIm = 0;
+						for (int r = 0; r < p; r++)
+						{
+							final int k = (r * u % p) * lSubPeriod;
+							final double lWRe = mCos[k];
+							final double lWIm = lSign * mSin[k];
+							lSumRe += lRe[r] * lWRe - lIm[r] * lWIm;
+							lSumIm += lRe[r] * lWIm + lIm[r] * lWRe;
+						}
+						// twiddle of the sub-transform, below n since u < p and q < m:
+						final int k = u * q * lStride;
+						final double lWRe = mCos[k];
+						final double lWIm = lSign * mSin[k];
+						final int b = 2 * (t + lStride * (p * q + u));
+						y[b] = lSumRe * lWRe - lSumIm * lWIm;
+						y[b + 1] = lSumRe * lWIm + lSumIm * lWRe;
+					}
+				}
+			final double[] lSwap = x;
+			x = y;
+			y = lSwap;
+			lSubLength = m;
+			lStride *= p;
+		}
+		if (x != pData)
+			System.arraycopy(x, 0, pData, 0, 2 * n);
+	}
+
+	private void bluestein(double[] pData, boolean pInverse)
+	{
+		final int n = mLength;
+		final int m = mConvolutionPlan.getLength();
+		final double[] lScratch = mScratch.get();
+		// the inverse is the conjugate of the forward transform of the conjugate:
+		final double lSign = pInverse ? -1 : 1;
+
+		for (int k = 0; k < n; k++)
+		{
+			final double lRe = pData[2 * k];
+			final double lIm = lSign * pData[2 * k + 1];
+			lScratch[2 * k] = lRe * mChirp[2 * k] - lIm * mChirp[2 * k + 1];
+			lScratch[2 * k + 1] = lRe * mChirp[2 * k + 1] + lIm * mChirp[2 * k];
+		}
+		for (int k = 2 * n; k < 2 * m; k++)
+			lScratch[k] = 0;
+
+		mConvolutionPlan.transform(lScratch, false);
+		for (int k = 0; k < m; k++)
+		{
+			final double lRe = lScratch[2 * k];
+			final double lIm = lScratch[2 * k + 1];
+			lScratch[2 * k] = lRe * mChirpSpectrum[2 * k] - lIm
+															* mChirpSpectrum[2 * k + 1];
+			lScratch[2 * k + 1] = lRe * mChirpSpectrum[2 * k + 1] + lIm
+																	* mChirpSpectrum[2 * k];
+		}
+		mConvolutionPlan.transform(lScratch, true);
+
+		for (int k = 0; k < n; k++)
+		{
+			final double lRe = lScratch[2 * k] / m;
+			final double lIm = lScratch[2 * k + 1] / m;
+			pData[2 * k] = lRe * mChirp[2 * k] - lIm * mChirp[2 * k + 1];
+			pData[2 * k + 1] = lSign * (lRe * mChirp[2 * k + 1] + lIm
+																	* mChirp[2 * k]);
+		}
+	}
+
+}
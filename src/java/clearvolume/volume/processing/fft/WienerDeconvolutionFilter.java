@@ -0,0 +1,64 @@
+package clearvolume.volume.processing.fft;
+
+/**
+ * Deconvolves volumes by a point spread function with a Wiener filter: the
+ * spectrum is multiplied by conj(K) / (|K|^2 + lambda), where K is the spectrum
+ * of the point spread function. The regularization lambda limits the
+ * amplification of noise at frequencies the point spread function suppresses,
+ * larger values give smoother results. The point spread function is normalized
+ * to a sum of one.
+ */
+public class WienerDeconvolutionFilter extends FFTFilter
+{
+	private final float mRegularization;
+
+	public WienerDeconvolutionFilter(	float[] pPointSpreadFunction,
+										int pWidth,
+										int pHeight,
+										int pDepth,
+										float pRegularization)
+	{
+		super(normalize(pPointSpreadFunction), pWidth, pHeight, pDepth);
+		if (pRegularization <= 0)
+			throw new IllegalArgumentException("Regularization must be positive");
+		mRegularization = pRegularization;
+	}
+
+	private static float[] normalize(float[] pPointSpreadFunction)
+	{
+		double lSum = 0;
+		for (final float lValue : pPointSpreadFunction)
+			lSum += lValue;
+		if (lSum == 0)
+			throw new IllegalArgumentException("Point spread function sums to zero");
+		final float[] lNormalized = new float[pPointSpreadFunction.length];
+		for (int i = 0; i < lNormalized.length; i++)
+			lNormalized[i] = (float) (pPointSpreadFunction[i] / lSum);
+		return lNormalized;
+	}
+
+	public float getRegularization()
+	{
+		return mRegularization;
+	}
+
+	@Override
+	protected void filterSpectrum(	float[] pSpectrum,
+									float[] pKernelSpectrum,
+									int pStart,
+									int pEnd)
+	{
+		for (int i = 2 * pStart; i < 2 * pEnd; i += 2)
+		{
+			final float lRe = pSpectrum[i];
+			final float lIm = pSpectrum[i + 1];
+			final float lKernelRe = pKernelSpectrum[i];
+			final float lKernelIm = pKernelSpectrum[i + 1];
+			final float lScale = 1 / (lKernelRe * lKernelRe + lKernelIm
+																* lKernelIm + mRegularization);
+			pSpectrum[i] = (lRe * lKernelRe + lIm * lKernelIm) * lScale;
+			pSpectrum[i + 1] = (lIm * lKernelRe - lRe * lKernelIm) * lScale;
+		}
+	}
+
+}
@@ -0,0 +1,251 @@
+package clearvolume.volume.processing.fft.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.GaussianFilter;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.processing.fft.FFT3D;
+import clearvolume.volume.processing.fft.FFTConvolutionFilter;
+import clearvolume.volume.processing.fft.FFTPlan;
+import clearvolume.volume.processing.fft.WienerDeconvolutionFilter;
+import coremem.enums.NativeTypeEnum;
+
+public class FFTTests
+{
+
+	@Test
+	public void testPlansAgainstDFT()
+	{
+		final Random lRandom = new Random(1);
+		for (final int lLength : new int[]
+		{ 1, 2, 8, 12, 15, 17, 30, 64, 75, 1080 })
+		{
+			final double[] lData = new double[2 * lLength];
+			for (int i = 0; i < lData.length; i++)
+				lData[i] = lRandom.nextGaussian();
+
+			final double[] lExpected = new double[2 * lLength];
+			for (int k = 0; k < lLength; k++)
+				for (int j = 0; j < lLength; j++)
+				{
+					final double lAngle = -2 * Math.PI * ((long) j * k % lLength)
+											/ lLength;
+					lExpected[2 * k] += lData[2 * j] * Math.cos(lAngle) - lData[2 * j + 1]
+																			* Math.sin(lAngle);
+					lExpected[2 * k + 1] += lData[2 * j] * Math.sin(lAngle) + lData[2 * j + 1]
+																				* Math.cos(lAngle);
+				}
+
+			final double[] lTransformed = lData.clone();
+			final FFTPlan lPlan = FFTPlan.getPlan(lLength);
+			assertSame(lPlan, FFTPlan.getPlan(lLength));
+			lPlan.transform(lTransformed, false);
+			for (int i = 0; i < lData.length; i++)
+				assertEquals(lExpected[i], lTransformed[i], 1e-9);
+
+			lPlan.transform(lTransformed, true);
+			for (int i = 0; i < lData.length; i++)
+				assertEquals(lData[i], lTransformed[i] / lLength, 1e-9);
+		}
+
+		assertEquals(1, FFTPlan.getFastLength(1));
+		assertEquals(18, FFTPlan.getFastLength(17));
+		assertEquals(64, FFTPlan.getFastLength(64));
+		// a 1024 wide axis padded for a 16 wide kernel:
+		assertEquals(1080, FFTPlan.getFastLength(1024 + 15));
+		final int lPadded = FFTPlan.getFastLength(1024 + 15);
+		final FFT3D lFFT3D = new FFT3D(lPadded, lPadded, lPadded);
+		assertEquals(lPadded, lFFT3D.getDepth());
+	}
+
+	@Test
+	public void testRoundTrip()
+	{
+		final ForkJoinPool lForkJoinPool = new ForkJoinPool(3);
+		try
+		{
+			final FFT3D lFFT3D = new FFT3D(9, 6, 7);
+			assertEquals(2 * 5 * 6 * 7, lFFT3D.getSpectrumLength());
+
+			final Random lRandom = new Random(2);
+			final float[] lVolume = new float[9 * 6 * 7];
+			for (int i = 0; i < lVolume.length; i++)
+				lVolume[i] = lRandom.nextFloat();
+
+			final float[] lSpectrum = lFFT3D.requestSpectrum();
+			lFFT3D.forward(lVolume, lSpectrum, lForkJoinPool);
+
+			// the DC component is the sum of the volume:
+			double lSum = 0;
+			for (final float lValue : lVolume)
+				lSum += lValue;
+			assertEquals(lSum, lSpectrum[0], 1e-3);
+			assertEquals(0, lSpectrum[1], 1e-3);
+
+			final float[] lResult = new float[lVolume.length];
+			lFFT3D.inverse(lSpectrum, lResult, lForkJoinPool);
+			for (int i = 0; i < lVolume.length; i++)
+				assertEquals(lVolume[i], lResult[i], 1e-5);
+
+			lFFT3D.releaseSpectrum(lSpectrum);
+			assertSame(lSpectrum, lFFT3D.requestSpectrum());
+		}
+		finally
+		{
+			lForkJoinPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testConvolutionMatchesGaussianFilter()
+	{
+		final int lWidth = 20, lHeight = 11, lDepth = 13;
+		final double lSigma = 1.3;
+
+		final Random lRandom = new Random(3);
+		final float[] lValues = new float[lWidth * lHeight * lDepth];
+		for (int i = 0; i < lValues.length; i++)
+			lValues[i] = 1000 * lRandom.nextFloat();
+		final Volume lInput = new Volume(	NativeTypeEnum.Float,
+											1,
+											lWidth,
+											lHeight,
+											lDepth);
+		VoxelAccess.writeSlices(lInput, 0, lDepth, lValues);
+
+		final Volume lExpected = new Volume(NativeTypeEnum.Float,
+											1,
+											lWidth,
+											lHeight,
+											lDepth);
+		new GaussianFilter(lSigma).apply(	lInput,
+											lExpected,
+											ForkJoinPool.commonPool());
+
+		final float[] l1DKernel = gaussian(lSigma);
+		final int n = l1DKernel.length;
+		final float[] lKernel = new float[n * n * n];
+		for (int z = 0; z < n; z++)
+			for (int y = 0; y < n; y++)
+				for (int x = 0; x < n; x++)
+					lKernel[(z * n + y) * n + x] = l1DKernel[x] * l1DKernel[y]
+													* l1DKernel[z];
+
+		final Volume lOutput = new Volume(	NativeTypeEnum.Float,
+											1,
+											lWidth,
+											lHeight,
+											lDepth);
+		final FFTConvolutionFilter lFilter = new FFTConvolutionFilter(lKernel,
+																		n,
+																		n,
+																		n);
+		assertTrue(lFilter.isInPlace());
+		final float[] lExpectedValues = new float[lValues.length];
+		final float[] lOutputValues = new float[lValues.length];
+		VoxelAccess.readSlices(lExpected, 0, lDepth, lExpectedValues);
+		// the second pass runs on pooled working arrays:
+		for (int lPass = 0; lPass < 2; lPass++)
+		{
+			lFilter.apply(lInput, lOutput, ForkJoinPool.commonPool());
+			VoxelAccess.readSlices(lOutput, 0, lDepth, lOutputValues);
+			for (int i = 0; i < lValues.length; i++)
+				assertEquals(lExpectedValues[i], lOutputValues[i], 1e-2);
+		}
+	}
+
+	@Test
+	public void testConvolutionOfWideAxis()
+	{
+		final int lWidth = 1024, lHeight = 2, lDepth = 2;
+		final Random lRandom = new Random(5);
+		final float[] lValues = new float[lWidth * lHeight * lDepth];
+		for (int i = 0; i < lValues.length; i++)
+			lValues[i] = 100 * lRandom.nextFloat();
+		final Volume lVolume = new Volume(	NativeTypeEnum.Float,
+											1,
+											lWidth,
+											lHeight,
+											lDepth);
+		VoxelAccess.writeSlices(lVolume, 0, lDepth, lValues);
+
+		// 1024 + 2 pads to 1080, which is not a power of two:
+		new FFTConvolutionFilter(new float[]
+		{ 0.25f, 0.5f, 0.25f }, 3, 1, 1).apply(	lVolume,
+												lVolume,
+												ForkJoinPool.commonPool());
+		final float[] lOutputValues = new float[lValues.length];
+		VoxelAccess.readSlices(lVolume, 0, lDepth, lOutputValues);
+		for (int lRow = 0; lRow < lHeight * lDepth; lRow++)
+			for (int x = 0; x < lWidth; x++)
+			{
+				final int i = lRow * lWidth + x;
+				final float lExpected = 0.25f * lValues[i - Math.min(x, 1)]
+										+ 0.5f
+										* lValues[i]
+										+ 0.25f
+										* lValues[i + Math.min(lWidth - 1 - x, 1)];
+				assertEquals(lExpected, lOutputValues[i], 1e-3);
+			}
+	}
+
+	@Test
+	public void testWienerDeconvolution()
+	{
+		final int lSize = 16;
+		final float[] l1DKernel = gaussian(1);
+		final int n = l1DKernel.length;
+		final float[] lKernel = new float[n * n * n];
+		for (int z = 0; z < n; z++)
+			for (int y = 0; y < n; y++)
+				for (int x = 0; x < n; x++)
+					lKernel[(z * n + y) * n + x] = l1DKernel[x] * l1DKernel[y]
+													* l1DKernel[z];
+
+		final float[] lValues = new float[lSize * lSize * lSize];
+		final int lCenter = (8 * lSize + 8) * lSize + 8;
+		lValues[lCenter] = 1000;
+		final Volume lVolume = new Volume(	NativeTypeEnum.Float,
+											1,
+											lSize,
+											lSize,
+											lSize);
+		VoxelAccess.writeSlices(lVolume, 0, lSize, lValues);
+
+		new FFTConvolutionFilter(lKernel, n, n, n).apply(	lVolume,
+															lVolume,
+															ForkJoinPool.commonPool());
+		VoxelAccess.readSlices(lVolume, 0, lSize, lValues);
+		final float lBlurredPeak = lValues[lCenter];
+		assertTrue(lBlurredPeak < 100);
+
+		new WienerDeconvolutionFilter(lKernel, n, n, n, 1e-4f).apply(	lVolume,
+																		lVolume,
+																		ForkJoinPool.commonPool());
+		VoxelAccess.readSlices(lVolume, 0, lSize, lValues);
+		assertTrue(lValues[lCenter] > 5 * lBlurredPeak);
+		for (int i = 0; i < lValues.length; i++)
+			assertTrue(lValues[i] <= lValues[lCenter]);
+	}
+
+	private static float[] gaussian(double pSigma)
+	{
+		final int lRadius = (int) Math.ceil(3 * pSigma);
+		final float[] lKernel = new float[2 * lRadius + 1];
+		double lSum = 0;
+		for (int i = -lRadius; i <= lRadius; i++)
+			lSum += lKernel[i + lRadius] = (float) Math.exp(-i * i / (2 * pSigma * pSigma));
+		for (int i = 0; i < lKernel.length; i++)
+			lKernel[i] /= lSum;
+		return lKernel;
+	}
+
+}
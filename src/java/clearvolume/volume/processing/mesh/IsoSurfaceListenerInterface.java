@@ -0,0 +1,21 @@
+package clearvolume.volume.processing.mesh;
+
+public interface IsoSurfaceListenerInterface
+{
+
+	/**
+	 * Called on the thread of the sender once the iso-surface of a volume is
+	 * extracted.
+	 *
+	 * @param pChannelID
+	 *            channel of the volume
+	 * @param pTimeIndex
+	 *            time index of the volume
+	 * @param pMesh
+	 *            iso-surface
+	 */
+	public void notifyIsoSurface(	int pChannelID,
+									long pTimeIndex,
+									TriangleMesh pMesh);
+
+}
@@ -0,0 +1,103 @@
+package clearvolume.volume.processing.mesh;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.relay.RelaySinkAdapter;
+import clearvolume.volume.sink.relay.RelaySinkInterface;
+
+/**
+ * Extracts the iso-surface of each volume, hands it to the listeners and
+ * relays the volume unchanged. The last mesh of each channel is kept. The
+ * iso-level can be changed while volumes flow, it applies from the next volume
+ * on.
+ */
+public class IsoSurfaceSink extends RelaySinkAdapter	implements
+														RelaySinkInterface,
+														ClearVolumeCloseable
+{
+	private volatile SurfaceNets mSurfaceNets;
+	private final ForkJoinPool mForkJoinPool;
+	private final CopyOnWriteArrayList<IsoSurfaceListenerInterface> mListeners = new CopyOnWriteArrayList<IsoSurfaceListenerInterface>();
+	private final ConcurrentHashMap<Integer, TriangleMesh> mLastMeshes = new ConcurrentHashMap<Integer, TriangleMesh>();
+
+	public IsoSurfaceSink(float pIsoLevel)
+	{
+		this(pIsoLevel, ForkJoinPool.commonPool());
+	}
+
+	public IsoSurfaceSink(float pIsoLevel, ForkJoinPool pForkJoinPool)
+	{
+		super();
+		mSurfaceNets = new SurfaceNets(pIsoLevel);
+		mForkJoinPool = pForkJoinPool;
+	}
+
+	public float getIsoLevel()
+	{
+		return mSurfaceNets.getIsoLevel();
+	}
+
+	public void setIsoLevel(float pIsoLevel)
+	{
+		mSurfaceNets = new SurfaceNets(pIsoLevel);
+	}
+
+	public void addListener(IsoSurfaceListenerInterface pListener)
+	{
+		mListeners.add(pListener);
+	}
+
+	public void removeListener(IsoSurfaceListenerInterface pListener)
+	{
+		mListeners.remove(pListener);
+	}
+
+	/**
+	 * Returns the iso-surface of the last volume of a channel.
+	 *
+	 * @param pChannelID
+	 *            channel
+	 * @return mesh, or null if no volume of that channel was received yet
+	 */
+	public TriangleMesh getLastMesh(int pChannelID)
+	{
+		return mLastMeshes.get(pChannelID);
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		final TriangleMesh lMesh = mSurfaceNets.extract(pVolume, mForkJoinPool);
+		mLastMeshes.put(pVolume.getChannelID(), lMesh);
+		for (final IsoSurfaceListenerInterface lListener : mListeners)
+			lListener.notifyIsoSurface(	pVolume.getChannelID(),
+										pVolume.getTimeIndex(),
+										lMesh);
+
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(pVolume);
+		else
+			pVolume.makeAvailableToManager();
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		if (getRelaySink() != null)
+			return getRelaySink().getManager();
+		return null;
+	}
+
+	@Override
+	public void close()
+	{
+		mListeners.clear();
+		mLastMeshes.clear();
+	}
+
+}
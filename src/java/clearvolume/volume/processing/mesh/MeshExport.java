@@ -0,0 +1,121 @@
+package clearvolume.volume.processing.mesh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Writes triangle meshes as binary little-endian PLY or as Wavefront OBJ, which
+ * only exists as text. Positions are written in real units, using the voxel
+ * size of the volume the mesh was extracted from, and normals are corrected
+ * for anisotropic voxels.
+ */
+public class MeshExport
+{
+	private static final int cBufferSize = 1 << 16;
+
+	public static void writePLY(TriangleMesh pMesh, OutputStream pOutputStream) throws IOException
+	{
+		final String lHeader = String.format(	"ply\n" + "format binary_little_endian 1.0\n"
+														+ "comment ClearVolume iso-surface\n"
+														+ "element vertex %d\n"
+														+ "property float x\n"
+														+ "property float y\n"
+														+ "property float z\n"
+														+ "property float nx\n"
+														+ "property float ny\n"
+														+ "property float nz\n"
+														+ "element face %d\n"
+														+ "property list uchar int vertex_indices\n"
+														+ "end_header\n",
+												pMesh.getNumberOfVertices(),
+												pMesh.getNumberOfTriangles());
+		pOutputStream.write(lHeader.getBytes(StandardCharsets.US_ASCII));
+
+		final ByteBuffer lBuffer = ByteBuffer.allocate(cBufferSize)
+												.order(ByteOrder.LITTLE_ENDIAN);
+		final float[] lVertex = new float[6];
+		for (int v = 0; v < pMesh.getNumberOfVertices(); v++)
+		{
+			scaledVertex(pMesh, v, lVertex);
+			if (lBuffer.remaining() < 6 * 4)
+				flush(lBuffer, pOutputStream);
+			for (final float lValue : lVertex)
+				lBuffer.putFloat(lValue);
+		}
+
+		final int[] lIndices = pMesh.getIndices();
+		for (int t = 0; t < lIndices.length; t += 3)
+		{
+			if (lBuffer.remaining() < 1 + 3 * 4)
+				flush(lBuffer, pOutputStream);
+			lBuffer.put((byte) 3);
+			lBuffer.putInt(lIndices[t]);
+			lBuffer.putInt(lIndices[t + 1]);
+			lBuffer.putInt(lIndices[t + 2]);
+		}
+		flush(lBuffer, pOutputStream);
+		pOutputStream.flush();
+	}
+
+	public static void writeOBJ(TriangleMesh pMesh, Writer pWriter) throws IOException
+	{
+		pWriter.write("# ClearVolume iso-surface\n");
+		final float[] lVertex = new float[6];
+		for (int v = 0; v < pMesh.getNumberOfVertices(); v++)
+		{
+			scaledVertex(pMesh, v, lVertex);
+			pWriter.write(String.format(Locale.US,
+										"v %g %g %g\nvn %g %g %g\n",
+										lVertex[0],
+										lVertex[1],
+										lVertex[2],
+										lVertex[3],
+										lVertex[4],
+										lVertex[5]));
+		}
+
+		// indices start at 1, and normals share the indices of the vertices:
+		final int[] lIndices = pMesh.getIndices();
+		for (int t = 0; t < lIndices.length; t += 3)
+			pWriter.write(String.format("f %d//%d %d//%d %d//%d\n",
+										lIndices[t] + 1,
+										lIndices[t] + 1,
+										lIndices[t + 1] + 1,
+										lIndices[t + 1] + 1,
+										lIndices[t + 2] + 1,
+										lIndices[t + 2] + 1));
+		pWriter.flush();
+	}
+
+	private static void scaledVertex(	TriangleMesh pMesh,
+										int pVertex,
+										float[] pVertexAndNormal)
+	{
+		final double[] lVoxelSize = pMesh.getVoxelSize();
+		final float[] lVertices = pMesh.getVertices();
+		final float[] lNormals = pMesh.getNormals();
+		double lLength = 0;
+		for (int a = 0; a < 3; a++)
+		{
+			pVertexAndNormal[a] = (float) (lVertices[3 * pVertex + a] * lVoxelSize[a]);
+			pVertexAndNormal[3 + a] = (float) (lNormals[3 * pVertex + a] / lVoxelSize[a]);
+			lLength += pVertexAndNormal[3 + a] * pVertexAndNormal[3 + a];
+		}
+		lLength = Math.sqrt(lLength);
+		if (lLength > 0)
+			for (int a = 3; a < 6; a++)
+				pVertexAndNormal[a] /= lLength;
+	}
+
+	private static void flush(ByteBuffer pBuffer, OutputStream pOutputStream) throws IOException
+	{
+		pOutputStream.write(pBuffer.array(), 0, pBuffer.position());
+		pBuffer.clear();
+	}
+
+}
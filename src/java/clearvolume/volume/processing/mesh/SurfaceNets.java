@@ -0,0 +1,427 @@
+package clearvolume.volume.processing.mesh;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.SlabRunner;
+import clearvolume.volume.processing.SlabRunner.SlabTaskInterface;
+import clearvolume.volume.processing.VoxelAccess;
+
+/**
+ * Extracts the iso-surface of the first element of each voxel with surface
+ * nets. Every cell of eight voxels that the surface crosses gets one vertex, at
+ * the mean of the crossings along its edges, so vertices are shared by
+ * construction. Every voxel edge crossing the surface gives a quad between the
+ * four cells around it. Voxels above the iso-level are inside, and the volume
+ * is padded with one layer of outside voxels so that meshes are closed.
+ * Normals point outside, along the opposite of the gradient interpolated at
+ * the vertices.
+ *
+ * Cells are processed in z-slabs on a fork-join pool: a first pass places the
+ * vertices of each slab, and once the vertices are numbered a second pass
+ * emits the quads. Slabs are concatenated in order, so the mesh is the same
+ * whatever the number of slabs.
+ */
+public class SurfaceNets
+{
+	private static final int cSlabsPerThread = 2;
+
+	private final float mIsoLevel;
+
+	public SurfaceNets(float pIsoLevel)
+	{
+		super();
+		mIsoLevel = pIsoLevel;
+	}
+
+	public float getIsoLevel()
+	{
+		return mIsoLevel;
+	}
+
+	/**
+	 * Extracts the iso-surface of a volume.
+	 *
+	 * @param pVolume
+	 *            volume
+	 * @param pForkJoinPool
+	 *            pool running the slabs
+	 * @return mesh in voxel coordinates
+	 */
+	public TriangleMesh extract(final Volume pVolume, ForkJoinPool pForkJoinPool)
+	{
+		final int lWidth = (int) pVolume.getWidthInVoxels();
+		final int lHeight = (int) pVolume.getHeightInVoxels();
+		final int lDepth = VoxelAccess.getDepth(pVolume);
+
+		// cells start at voxel -1 to include the padding:
+		final int lCellsX = lWidth + 1;
+		final int lCellsY = lHeight + 1;
+		final int lCellsZ = lDepth + 1;
+		final long lNumberOfCells = (long) lCellsX * lCellsY * lCellsZ;
+		if (lNumberOfCells > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Volume too large to mesh");
+
+		final int[] lCellVertices = new int[(int) lNumberOfCells];
+		final int lNumberOfSlabs = Math.min(lCellsZ,
+											cSlabsPerThread * pForkJoinPool.getParallelism());
+		final int[] lSlabStarts = new int[lNumberOfSlabs + 1];
+		for (int s = 0; s <= lNumberOfSlabs; s++)
+			lSlabStarts[s] = (int) ((long) s * lCellsZ / lNumberOfSlabs) - 1;
+
+		// 1) one vertex per cell crossed by the surface, numbered within the slab:
+		final FloatArray[] lSlabVertices = new FloatArray[lNumberOfSlabs];
+		final FloatArray[] lSlabNormals = new FloatArray[lNumberOfSlabs];
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				final int lZStart = lSlabStarts[pSlab];
+				final int lZEnd = lSlabStarts[pSlab + 1];
+				final Slab lSlab = new Slab(pVolume, lZStart - 1, lZEnd + 2);
+				final FloatArray lVertices = new FloatArray();
+				final FloatArray lNormals = new FloatArray();
+				final float[] lValues = new float[8];
+				final float[] lGradient = new float[3];
+
+				for (int cz = lZStart; cz < lZEnd; cz++)
+					for (int cy = -1; cy < lHeight; cy++)
+						for (int cx = -1, i = cellIndex(cx,
+														cy,
+														cz,
+														lCellsX,
+														lCellsY); cx < lWidth; cx++, i++)
+						{
+							int lInside = 0;
+							for (int c = 0; c < 8; c++)
+							{
+								lValues[c] = lSlab.sample(	cx + (c & 1),
+															cy + ((c >> 1) & 1),
+															cz + ((c >> 2) & 1));
+								if (lValues[c] > mIsoLevel)
+									lInside |= 1 << c;
+							}
+							if (lInside == 0 || lInside == 0xFF)
+							{
+								lCellVertices[i] = -1;
+								continue;
+							}
+
+							float lX = 0, lY = 0, lZ = 0;
+							int lCount = 0;
+							for (int c = 0; c < 8; c++)
+								for (int lBit = 1; lBit < 8; lBit <<= 1)
+								{
+									final int lOther = c | lBit;
+									if ((c & lBit) != 0 || ((lInside >> c) & 1) == ((lInside >> lOther) & 1))
+										continue;
+									final float t = crossing(	lValues[c],
+																lValues[lOther]);
+									lX += (c & 1) + (lBit == 1 ? t : 0);
+									lY += ((c >> 1) & 1) + (lBit == 2 ? t : 0);
+									lZ += ((c >> 2) & 1) + (lBit == 4 ? t : 0);
+									lCount++;
+								}
+							lX = cx + lX / lCount;
+							lY = cy + lY / lCount;
+							lZ = cz + lZ / lCount;
+
+							lSlab.gradient(lX, lY, lZ, lGradient);
+							final float lLength = (float) Math.sqrt(lGradient[0] * lGradient[0]
+																	+ lGradient[1]
+																	* lGradient[1]
+																	+ lGradient[2]
+																	* lGradient[2]);
+							final float lScale = lLength > 0 ? -1 / lLength : 0;
+
+							lCellVertices[i] = lVertices.size() / 3;
+							lVertices.add(lX, lY, lZ);
+							lNormals.add(	lScale * lGradient[0],
+											lScale * lGradient[1],
+											lScale * lGradient[2]);
+						}
+				lSlabVertices[pSlab] = lVertices;
+				lSlabNormals[pSlab] = lNormals;
+			}
+		});
+
+		// 2) number the vertices across slabs:
+		final int[] lVertexOffsets = new int[lNumberOfSlabs + 1];
+		for (int s = 0; s < lNumberOfSlabs; s++)
+			lVertexOffsets[s + 1] = lVertexOffsets[s] + lSlabVertices[s].size()
+									/ 3;
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				final int lOffset = lVertexOffsets[pSlab];
+				final int lStart = cellIndex(	-1,
+												-1,
+												lSlabStarts[pSlab],
+												lCellsX,
+												lCellsY);
+				final int lEnd = cellIndex(	-1,
+											-1,
+											lSlabStarts[pSlab + 1],
+											lCellsX,
+											lCellsY);
+				for (int i = lStart; i < lEnd; i++)
+					if (lCellVertices[i] >= 0)
+						lCellVertices[i] += lOffset;
+			}
+		});
+
+		// 3) one quad per voxel edge crossed by the surface:
+		final IntArray[] lSlabIndices = new IntArray[lNumberOfSlabs];
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				final int lZStart = lSlabStarts[pSlab];
+				final int lZEnd = lSlabStarts[pSlab + 1];
+				final Slab lSlab = new Slab(pVolume, lZStart, lZEnd + 1);
+				final IntArray lIndices = new IntArray();
+				final int[] lStart = new int[3];
+				final int[] lCell = new int[3];
+				final int[] lQuad = new int[4];
+
+				for (int z = lZStart; z < lZEnd; z++)
+					for (int y = -1; y < lHeight; y++)
+						for (int x = -1; x < lWidth; x++)
+						{
+							final boolean lInside = lSlab.sample(x, y, z) > mIsoLevel;
+							lStart[0] = x;
+							lStart[1] = y;
+							lStart[2] = z;
+							for (int a = 0; a < 3; a++)
+							{
+								final boolean lEndInside = lSlab.sample(x + (a == 0 ? 1 : 0),
+																		y + (a == 1 ? 1 : 0),
+																		z + (a == 2 ? 1 : 0)) > mIsoLevel;
+								if (lInside == lEndInside)
+									continue;
+
+								// cells around the edge, counter-clockwise seen from the end:
+								final int u = (a + 1) % 3;
+								final int v = (a + 2) % 3;
+								for (int q = 0; q < 4; q++)
+								{
+									lCell[a] = lStart[a];
+									lCell[u] = lStart[u] - (q == 0 || q == 3 ? 1 : 0);
+									lCell[v] = lStart[v] - (q < 2 ? 1 : 0);
+									lQuad[q] = lCellVertices[cellIndex(	lCell[0],
+																		lCell[1],
+																		lCell[2],
+																		lCellsX,
+																		lCellsY)];
+								}
+
+								if (lInside)
+									lIndices.add(	lQuad[0],
+													lQuad[1],
+													lQuad[2],
+													lQuad[0],
+													lQuad[2],
+													lQuad[3]);
+								else
+									lIndices.add(	lQuad[0],
+													lQuad[2],
+													lQuad[1],
+													lQuad[0],
+													lQuad[3],
+													lQuad[2]);
+							}
+						}
+				lSlabIndices[pSlab] = lIndices;
+			}
+		});
+
+		final int lNumberOfVertices = lVertexOffsets[lNumberOfSlabs];
+		final float[] lVertices = new float[3 * lNumberOfVertices];
+		final float[] lNormals = new float[3 * lNumberOfVertices];
+		int lNumberOfIndices = 0;
+		for (final IntArray lIndices : lSlabIndices)
+			lNumberOfIndices += lIndices.size();
+		final int[] lIndices = new int[lNumberOfIndices];
+		for (int s = 0, lIndexOffset = 0; s < lNumberOfSlabs; s++)
+		{
+			lSlabVertices[s].copyTo(lVertices, 3 * lVertexOffsets[s]);
+			lSlabNormals[s].copyTo(lNormals, 3 * lVertexOffsets[s]);
+			lSlabIndices[s].copyTo(lIndices, lIndexOffset);
+			lIndexOffset += lSlabIndices[s].size();
+		}
+
+		return new TriangleMesh(lVertices,
+								lNormals,
+								lIndices,
+								lWidth,
+								lHeight,
+								lDepth,
+								new double[]
+								{ pVolume.getVoxelWidthInRealUnits(),
+									pVolume.getVoxelHeightInRealUnits(),
+									pVolume.getVoxelDepthInRealUnits() });
+	}
+
+	/**
+	 * Returns where the iso-level is crossed between two values, the middle if
+	 * one of them is padding.
+	 */
+	private float crossing(float pA, float pB)
+	{
+		if (Float.isInfinite(pA) || Float.isInfinite(pB))
+			return 0.5f;
+		return (mIsoLevel - pA) / (pB - pA);
+	}
+
+	private static int cellIndex(	int pX,
+									int pY,
+									int pZ,
+									int pCellsX,
+									int pCellsY)
+	{
+		return ((pZ + 1) * pCellsY + pY + 1) * pCellsX + pX + 1;
+	}
+
+	/**
+	 * First elements of a range of slices. Outside of the volume, samples are
+	 * padding, and gradients see the nearest voxel, capped at the iso-level so
+	 * that objects touching the border get normals pointing out of the volume.
+	 */
+	private class Slab
+	{
+		private final float[] mValues;
+		private final int mZStart;
+		private final int mWidth, mHeight, mDepth;
+
+		Slab(Volume pVolume, int pZStart, int pZEnd)
+		{
+			final int lElementSize = (int) pVolume.getElementSize();
+			mWidth = (int) pVolume.getWidthInVoxels();
+			mHeight = (int) pVolume.getHeightInVoxels();
+			mDepth = VoxelAccess.getDepth(pVolume);
+			mZStart = pZStart;
+			final float[] lSlices = new float[(pZEnd - pZStart) * VoxelAccess.getSliceLength(pVolume)];
+			VoxelAccess.readSlices(pVolume, pZStart, pZEnd, lSlices);
+			if (lElementSize == 1)
+				mValues = lSlices;
+			else
+			{
+				mValues = new float[lSlices.length / lElementSize];
+				for (int i = 0; i < mValues.length; i++)
+					mValues[i] = lSlices[i * lElementSize];
+			}
+		}
+
+		float sample(int pX, int pY, int pZ)
+		{
+			if (pX < 0 || pX >= mWidth
+				|| pY < 0
+				|| pY >= mHeight
+				|| pZ < 0
+				|| pZ >= mDepth)
+				return Float.NEGATIVE_INFINITY;
+			return mValues[((pZ - mZStart) * mHeight + pY) * mWidth + pX];
+		}
+
+		private float sampleForGradient(int pX, int pY, int pZ)
+		{
+			final int lX = Math.max(0, Math.min(mWidth - 1, pX));
+			final int lY = Math.max(0, Math.min(mHeight - 1, pY));
+			final int lZ = Math.max(0, Math.min(mDepth - 1, pZ));
+			final float lValue = mValues[((lZ - mZStart) * mHeight + lY) * mWidth
+											+ lX];
+			if (lX != pX || lY != pY || lZ != pZ)
+				return Math.min(lValue, mIsoLevel);
+			return lValue;
+		}
+
+		private float interpolate(float pX, float pY, float pZ)
+		{
+			final int lX = (int) Math.floor(pX);
+			final int lY = (int) Math.floor(pY);
+			final int lZ = (int) Math.floor(pZ);
+			final float fx = pX - lX;
+			final float fy = pY - lY;
+			final float fz = pZ - lZ;
+			float lValue = 0;
+			for (int c = 0; c < 8; c++)
+			{
+				final int dx = c & 1;
+				final int dy = (c >> 1) & 1;
+				final int dz = (c >> 2) & 1;
+				lValue += (dx == 1 ? fx : 1 - fx) * (dy == 1 ? fy : 1 - fy)
+							* (dz == 1 ? fz : 1 - fz)
+							* sampleForGradient(lX + dx, lY + dy, lZ + dz);
+			}
+			return lValue;
+		}
+
+		void gradient(float pX, float pY, float pZ, float[] pGradient)
+		{
+			pGradient[0] = interpolate(pX + 0.5f, pY, pZ) - interpolate(	pX - 0.5f,
+																		pY,
+																		pZ);
+			pGradient[1] = interpolate(pX, pY + 0.5f, pZ) - interpolate(	pX,
+																		pY - 0.5f,
+																		pZ);
+			pGradient[2] = interpolate(pX, pY, pZ + 0.5f) - interpolate(	pX,
+																		pY,
+																		pZ - 0.5f);
+		}
+	}
+
+	private static class FloatArray
+	{
+		private float[] mArray = new float[1024];
+		private int mSize;
+
+		void add(float pA, float pB, float pC)
+		{
+			if (mSize + 3 > mArray.length)
+				mArray = Arrays.copyOf(mArray, 2 * mArray.length);
+			mArray[mSize++] = pA;
+			mArray[mSize++] = pB;
+			mArray[mSize++] = pC;
+		}
+
+		int size()
+		{
+			return mSize;
+		}
+
+		void copyTo(float[] pArray, int pOffset)
+		{
+			System.arraycopy(mArray, 0, pArray, pOffset, mSize);
+		}
+	}
+
+	private static class IntArray
+	{
+		private int[] mArray = new int[1024];
+		private int mSize;
+
+		void add(int... pValues)
+		{
+			if (mSize + pValues.length > mArray.length)
+				mArray = Arrays.copyOf(mArray, 2 * mArray.length);
+			System.arraycopy(pValues, 0, mArray, mSize, pValues.length);
+			mSize += pValues.length;
+		}
+
+		int size()
+		{
+			return mSize;
+		}
+
+		void copyTo(int[] pArray, int pOffset)
+		{
+			System.arraycopy(mArray, 0, pArray, pOffset, mSize);
+		}
+	}
+
+}
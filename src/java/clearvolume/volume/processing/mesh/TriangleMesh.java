@@ -0,0 +1,163 @@
+package clearvolume.volume.processing.mesh;
+
+/**
+ * Indexed triangle mesh in voxel coordinates, with one normal per vertex and
+ * triangles wound counter-clockwise when seen from outside. The dimensions and
+ * voxel size of the volume it was extracted from are kept for scaling to real
+ * units.
+ */
+public class TriangleMesh
+{
+	private final float[] mVertices;
+	private final float[] mNormals;
+	private final int[] mIndices;
+	private final long mWidth, mHeight, mDepth;
+	private final double[] mVoxelSize;
+
+	/**
+	 * @param pVertices
+	 *            x, y and z of each vertex, in voxels
+	 * @param pNormals
+	 *            unit normal of each vertex
+	 * @param pIndices
+	 *            three vertex indices per triangle
+	 * @param pWidth
+	 *            width of the volume in voxels
+	 * @param pHeight
+	 *            height of the volume in voxels
+	 * @param pDepth
+	 *            depth of the volume in voxels
+	 * @param pVoxelSize
+	 *            voxel width, height and depth in real units
+	 */
+	public TriangleMesh(float[] pVertices,
+						float[] pNormals,
+						int[] pIndices,
+						long pWidth,
+						long pHeight,
+						long pDepth,
+						double[] pVoxelSize)
+	{
+		super();
+		mVertices = pVertices;
+		mNormals = pNormals;
+		mIndices = pIndices;
+		mWidth = pWidth;
+		mHeight = pHeight;
+		mDepth = pDepth;
+		mVoxelSize = pVoxelSize.clone();
+	}
+
+	public int getNumberOfVertices()
+	{
+		return mVertices.length / 3;
+	}
+
+	public int getNumberOfTriangles()
+	{
+		return mIndices.length / 3;
+	}
+
+	public float[] getVertices()
+	{
+		return mVertices;
+	}
+
+	public float[] getNormals()
+	{
+		return mNormals;
+	}
+
+	public int[] getIndices()
+	{
+		return mIndices;
+	}
+
+	public long getWidth()
+	{
+		return mWidth;
+	}
+
+	public long getHeight()
+	{
+		return mHeight;
+	}
+
+	public long getDepth()
+	{
+		return mDepth;
+	}
+
+	public double[] getVoxelSize()
+	{
+		return mVoxelSize.clone();
+	}
+
+	/**
+	 * Returns the surface area in squared real units.
+	 *
+	 * @return surface area
+	 */
+	public double getSurfaceArea()
+	{
+		double lArea = 0;
+		final double[] lCross = new double[3];
+		for (int t = 0; t < mIndices.length; t += 3)
+		{
+			cross(t, lCross);
+			lArea += 0.5 * Math.sqrt(lCross[0] * lCross[0]
+										+ lCross[1]
+										* lCross[1]
+										+ lCross[2]
+										* lCross[2]);
+		}
+		return lArea;
+	}
+
+	/**
+	 * Returns the enclosed volume in cubed real units, only meaningful for
+	 * closed meshes.
+	 *
+	 * @return enclosed volume
+	 */
+	public double getEnclosedVolume()
+	{
+		double lVolume = 0;
+		final double[] lCross = new double[3];
+		for (int t = 0; t < mIndices.length; t += 3)
+		{
+			// divergence theorem, with the first vertex as reference point:
+			cross(t, lCross);
+			final int a = 3 * mIndices[t];
+			lVolume += (mVertices[a] * mVoxelSize[0] * lCross[0]
+						+ mVertices[a + 1] * mVoxelSize[1] * lCross[1]
+						+ mVertices[a + 2] * mVoxelSize[2] * lCross[2]) / 6;
+		}
+		return lVolume;
+	}
+
+	private void cross(int pTriangle, double[] pCross)
+	{
+		final int a = 3 * mIndices[pTriangle];
+		final int b = 3 * mIndices[pTriangle + 1];
+		final int c = 3 * mIndices[pTriangle + 2];
+		final double lUX = (mVertices[b] - mVertices[a]) * mVoxelSize[0];
+		final double lUY = (mVertices[b + 1] - mVertices[a + 1]) * mVoxelSize[1];
+		final double lUZ = (mVertices[b + 2] - mVertices[a + 2]) * mVoxelSize[2];
+		final double lVX = (mVertices[c] - mVertices[a]) * mVoxelSize[0];
+		final double lVY = (mVertices[c + 1] - mVertices[a + 1]) * mVoxelSize[1];
+		final double lVZ = (mVertices[c + 2] - mVertices[a + 2]) * mVoxelSize[2];
+		pCross[0] = lUY * lVZ - lUZ * lVY;
+		pCross[1] = lUZ * lVX - lUX * lVZ;
+		pCross[2] = lUX * lVY - lUY * lVX;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(	"TriangleMesh [vertices=%d, triangles=%d]",
+								getNumberOfVertices(),
+								getNumberOfTriangles());
+	}
+
+}
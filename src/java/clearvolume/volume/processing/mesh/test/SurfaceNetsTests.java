@@ -0,0 +1,212 @@
+package clearvolume.volume.processing.mesh.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.processing.mesh.IsoSurfaceListenerInterface;
+import clearvolume.volume.processing.mesh.IsoSurfaceSink;
+import clearvolume.volume.processing.mesh.MeshExport;
+import clearvolume.volume.processing.mesh.SurfaceNets;
+import clearvolume.volume.processing.mesh.TriangleMesh;
+import coremem.enums.NativeTypeEnum;
+
+public class SurfaceNetsTests
+{
+	private static final int cWidth = 32, cHeight = 28, cDepth = 24;
+
+	@Test
+	public void testSphere()
+	{
+		final double lRadius = 8;
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		for (int z = 0; z < cDepth; z++)
+			for (int y = 0; y < cHeight; y++)
+				for (int x = 0; x < cWidth; x++)
+				{
+					final double lDistance = Math.sqrt((x - 15.5) * (x - 15.5)
+														+ (y - 13.2)
+														* (y - 13.2)
+														+ (z - 11.7)
+														* (z - 11.7));
+					// smooth edge, 100 inside and 0 outside:
+					lValues[(z * cHeight + y) * cWidth + x] = (float) Math.max(	0,
+																				Math.min(	100,
+																							50 + 50 * (lRadius - lDistance)));
+				}
+		final Volume lVolume = newVolume(lValues);
+
+		final ForkJoinPool lSingleThreadPool = new ForkJoinPool(1);
+		final ForkJoinPool lEightThreadPool = new ForkJoinPool(8);
+		try
+		{
+			final SurfaceNets lSurfaceNets = new SurfaceNets(50);
+			final TriangleMesh lMesh = lSurfaceNets.extract(	lVolume,
+																lEightThreadPool);
+			assertClosed(lMesh);
+			assertEquals(	4 * Math.PI * lRadius * lRadius,
+							lMesh.getSurfaceArea(),
+							0.05 * 4 * Math.PI * lRadius * lRadius);
+			assertEquals(	4 * Math.PI * lRadius * lRadius * lRadius / 3,
+							lMesh.getEnclosedVolume(),
+							0.03 * 4 * Math.PI * lRadius * lRadius * lRadius / 3);
+
+			// normals point away from the center:
+			final float[] lVertices = lMesh.getVertices();
+			final float[] lNormals = lMesh.getNormals();
+			for (int v = 0; v < lMesh.getNumberOfVertices(); v++)
+			{
+				final double lDot = (lVertices[3 * v] - 15.5) * lNormals[3 * v]
+									+ (lVertices[3 * v + 1] - 13.2)
+									* lNormals[3 * v + 1]
+									+ (lVertices[3 * v + 2] - 11.7)
+									* lNormals[3 * v + 2];
+				assertTrue(lDot > 0.9 * lRadius);
+			}
+
+			final TriangleMesh lOneSlab = lSurfaceNets.extract(	lVolume,
+																lSingleThreadPool);
+			assertArrayEquals(lMesh.getVertices(), lOneSlab.getVertices(), 0);
+			assertArrayEquals(lMesh.getIndices(), lOneSlab.getIndices());
+		}
+		finally
+		{
+			lSingleThreadPool.shutdown();
+			lEightThreadPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testBoxTouchingTheBorderIsClosed()
+	{
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		for (int z = 0; z < 6; z++)
+			for (int y = 3; y < 10; y++)
+				for (int x = 20; x < cWidth; x++)
+					lValues[(z * cHeight + y) * cWidth + x] = 1;
+		final Volume lVolume = newVolume(lValues);
+		lVolume.setVoxelSizeInRealUnits("micron", 0.5, 0.5, 2);
+
+		final ForkJoinPool lForkJoinPool = new ForkJoinPool(4);
+		try
+		{
+			final TriangleMesh lMesh = new SurfaceNets(0.5f).extract(	lVolume,
+																		lForkJoinPool);
+			assertClosed(lMesh);
+			// voxel count times voxel volume, less the chamfered edges and corners:
+			final double lExpected = 6 * 7 * 12 * 0.5 * 0.5 * 2;
+			assertTrue(lMesh.getEnclosedVolume() < lExpected);
+			assertTrue(lMesh.getEnclosedVolume() > 0.85 * lExpected);
+		}
+		finally
+		{
+			lForkJoinPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testSinkAndExport() throws IOException
+	{
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		for (int z = 4; z < 8; z++)
+			for (int y = 4; y < 8; y++)
+				for (int x = 4; x < 8; x++)
+					lValues[(z * cHeight + y) * cWidth + x] = 200;
+		final Volume lVolume = newVolume(lValues);
+		lVolume.setManager(new VolumeManager(2));
+		lVolume.setChannelID(1);
+
+		final IsoSurfaceSink lIsoSurfaceSink = new IsoSurfaceSink(100);
+		final TriangleMesh[] lNotified = new TriangleMesh[1];
+		lIsoSurfaceSink.addListener(new IsoSurfaceListenerInterface()
+		{
+			@Override
+			public void notifyIsoSurface(	int pChannelID,
+											long pTimeIndex,
+											TriangleMesh pMesh)
+			{
+				assertEquals(1, pChannelID);
+				lNotified[0] = pMesh;
+			}
+		});
+		lIsoSurfaceSink.sendVolume(lVolume);
+		final TriangleMesh lMesh = lIsoSurfaceSink.getLastMesh(1);
+		assertSame(lMesh, lNotified[0]);
+		assertClosed(lMesh);
+		lIsoSurfaceSink.close();
+
+		final ByteArrayOutputStream lByteArrayOutputStream = new ByteArrayOutputStream();
+		MeshExport.writePLY(lMesh, lByteArrayOutputStream);
+		final byte[] lBytes = lByteArrayOutputStream.toByteArray();
+		final String lText = new String(lBytes, StandardCharsets.US_ASCII);
+		final int lHeaderLength = lText.indexOf("end_header\n") + "end_header\n".length();
+		assertTrue(lText.startsWith("ply\nformat binary_little_endian 1.0\n"));
+		assertTrue(lText.contains("element vertex " + lMesh.getNumberOfVertices()
+									+ "\n"));
+		assertEquals(	lHeaderLength + 24L * lMesh.getNumberOfVertices()
+								+ 13L
+								* lMesh.getNumberOfTriangles(),
+						lBytes.length);
+
+		final StringWriter lStringWriter = new StringWriter();
+		MeshExport.writeOBJ(lMesh, lStringWriter);
+		int lVertexLines = 0, lFaceLines = 0;
+		for (final String lLine : lStringWriter.toString().split("\n"))
+			if (lLine.startsWith("v "))
+				lVertexLines++;
+			else if (lLine.startsWith("f "))
+				lFaceLines++;
+		assertEquals(lMesh.getNumberOfVertices(), lVertexLines);
+		assertEquals(lMesh.getNumberOfTriangles(), lFaceLines);
+	}
+
+	/**
+	 * Checks that every edge is shared by exactly two triangles, in opposite
+	 * directions.
+	 */
+	private static void assertClosed(TriangleMesh pMesh)
+	{
+		assertTrue(pMesh.getNumberOfTriangles() > 0);
+		final int[] lIndices = pMesh.getIndices();
+		final HashMap<Long, Integer> lDirectedEdges = new HashMap<Long, Integer>();
+		for (int t = 0; t < lIndices.length; t += 3)
+			for (int e = 0; e < 3; e++)
+			{
+				final long lEdge = ((long) lIndices[t + e] << 32) | lIndices[t + (e + 1)
+																				% 3];
+				final Integer lCount = lDirectedEdges.get(lEdge);
+				lDirectedEdges.put(lEdge, lCount == null ? 1 : lCount + 1);
+			}
+		for (final Long lEdge : lDirectedEdges.keySet())
+		{
+			assertEquals(1, (int) lDirectedEdges.get(lEdge));
+			final long lReverse = ((lEdge & 0xFFFFFFFFL) << 32) | (lEdge >>> 32);
+			assertTrue(lDirectedEdges.containsKey(lReverse));
+		}
+	}
+
+	private static Volume newVolume(float[] pValues)
+	{
+		final Volume lVolume = new Volume(	NativeTypeEnum.UnsignedByte,
+											1,
+											cWidth,
+											cHeight,
+											cDepth);
+		VoxelAccess.writeSlices(lVolume, 0, cDepth, pValues);
+		return lVolume;
+	}
+
+}
@@ -0,0 +1,116 @@
+package clearvolume.volume.processing.registration;
+
+/**
+ * Affine transform of voxel coordinates, read from and written to the 4x4
+ * column-major view matrices carried by volumes. The last row of view matrices
+ * is assumed to be 0 0 0 1.
+ */
+public class AffineTransform3D
+{
+	// row-major 3x4: x' = m0 x + m1 y + m2 z + m3, ...
+	private final double[] mMatrix;
+
+	private AffineTransform3D(double[] pMatrix)
+	{
+		super();
+		mMatrix = pMatrix;
+	}
+
+	public static AffineTransform3D identity()
+	{
+		return new AffineTransform3D(new double[]
+		{ 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0 });
+	}
+
+	/**
+	 * @param pViewMatrix
+	 *            4x4 column-major matrix, or null for the identity
+	 * @return transform
+	 */
+	public static AffineTransform3D fromViewMatrix(float[] pViewMatrix)
+	{
+		if (pViewMatrix == null)
+			return identity();
+		if (pViewMatrix.length != 16)
+			throw new IllegalArgumentException("View matrices have 16 elements");
+		final double[] lMatrix = new double[12];
+		for (int lRow = 0; lRow < 3; lRow++)
+			for (int lColumn = 0; lColumn < 4; lColumn++)
+				lMatrix[4 * lRow + lColumn] = pViewMatrix[4 * lColumn + lRow];
+		return new AffineTransform3D(lMatrix);
+	}
+
+	public float[] toViewMatrix()
+	{
+		final float[] lViewMatrix = new float[16];
+		for (int lRow = 0; lRow < 3; lRow++)
+			for (int lColumn = 0; lColumn < 4; lColumn++)
+				lViewMatrix[4 * lColumn + lRow] = (float) mMatrix[4 * lRow + lColumn];
+		lViewMatrix[15] = 1;
+		return lViewMatrix;
+	}
+
+	public AffineTransform3D inverse()
+	{
+		final double[] m = mMatrix;
+		final double lDeterminant = m[0] * (m[5] * m[10] - m[6] * m[9])
+									- m[1]
+									* (m[4] * m[10] - m[6] * m[8])
+									+ m[2]
+									* (m[4] * m[9] - m[5] * m[8]);
+		if (Math.abs(lDeterminant) < 1e-12)
+			throw new IllegalArgumentException("Transform is not invertible");
+
+		final double[] lInverse = new double[12];
+		lInverse[0] = (m[5] * m[10] - m[6] * m[9]) / lDeterminant;
+		lInverse[1] = (m[2] * m[9] - m[1] * m[10]) / lDeterminant;
+		lInverse[2] = (m[1] * m[6] - m[2] * m[5]) / lDeterminant;
+		lInverse[4] = (m[6] * m[8] - m[4] * m[10]) / lDeterminant;
+		lInverse[5] = (m[0] * m[10] - m[2] * m[8]) / lDeterminant;
+		lInverse[6] = (m[2] * m[4] - m[0] * m[6]) / lDeterminant;
+		lInverse[8] = (m[4] * m[9] - m[5] * m[8]) / lDeterminant;
+		lInverse[9] = (m[1] * m[8] - m[0] * m[9]) / lDeterminant;
+		lInverse[10] = (m[0] * m[5] - m[1] * m[4]) / lDeterminant;
+		for (int lRow = 0; lRow < 3; lRow++)
+			lInverse[4 * lRow + 3] = -(lInverse[4 * lRow] * m[3]
+										+ lInverse[4 * lRow + 1]
+										* m[7] + lInverse[4 * lRow + 2]
+													* m[11]);
+		return new AffineTransform3D(lInverse);
+	}
+
+	/**
+	 * Transforms a point.
+	 *
+	 * @param pX
+	 *            x
+	 * @param pY
+	 *            y
+	 * @param pZ
+	 *            z
+	 * @param pResult
+	 *            array receiving x, y and z
+	 */
+	public void apply(double pX, double pY, double pZ, double[] pResult)
+	{
+		final double[] m = mMatrix;
+		pResult[0] = m[0] * pX + m[1] * pY + m[2] * pZ + m[3];
+		pResult[1] = m[4] * pX + m[5] * pY + m[6] * pZ + m[7];
+		pResult[2] = m[8] * pX + m[9] * pY + m[10] * pZ + m[11];
+	}
+
+	/**
+	 * Returns an element of the 3x4 matrix.
+	 *
+	 * @param pRow
+	 *            row, 0 to 2
+	 * @param pColumn
+	 *            column, 0 to 3, the last one being the translation
+	 * @return element
+	 */
+	public double get(int pRow, int pColumn)
+	{
+		return mMatrix[4 * pRow + pColumn];
+	}
+
+}
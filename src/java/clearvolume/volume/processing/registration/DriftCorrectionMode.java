@@ -0,0 +1,19 @@
+package clearvolume.volume.processing.registration;
+
+/**
+ * How {@link DriftCorrectionSink} applies the estimated drift.
+ */
+public enum DriftCorrectionMode
+{
+	/**
+	 * The drift is subtracted from the translation of the view matrix of each
+	 * volume, voxels are not touched.
+	 */
+	ViewMatrix,
+
+	/**
+	 * Each volume is resampled with trilinear interpolation into a new volume
+	 * shifted back by the drift.
+	 */
+	Resample
+}
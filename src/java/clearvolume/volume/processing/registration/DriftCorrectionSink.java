@@ -0,0 +1,155 @@
+package clearvolume.volume.processing.registration;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.ProcessingSinkAdapter;
+
+/**
+ * Corrects the drift of a time-lapse while it is acquired. Each volume of the
+ * reference channel is registered to the previous one by phase correlation on a
+ * subsampled copy, and the shifts are accumulated into the drift since the
+ * first time point. Volumes of all channels are then corrected by the drift
+ * known when they arrive, either in their view matrix or by resampling, so that
+ * channels sent before the reference channel of their time point use the drift
+ * of the previous time point.
+ *
+ * View matrices are 4x4 column-major matrices in voxel units, volumes without
+ * one get the identity.
+ */
+public class DriftCorrectionSink extends ProcessingSinkAdapter
+{
+	private final int mReferenceChannelID;
+	private final DriftCorrectionMode mDriftCorrectionMode;
+	private final PhaseCorrelation mPhaseCorrelation;
+	private final ForkJoinPool mForkJoinPool;
+
+	private final Object mLock = new Object();
+	private SubsampledVolume mPreviousReference;
+	private final double[] mDrift = new double[3];
+
+	public DriftCorrectionSink(	int pReferenceChannelID,
+								int pSubsampling,
+								DriftCorrectionMode pDriftCorrectionMode)
+	{
+		this(	pReferenceChannelID,
+				pSubsampling,
+				pDriftCorrectionMode,
+				ForkJoinPool.commonPool());
+	}
+
+	public DriftCorrectionSink(	int pReferenceChannelID,
+								int pSubsampling,
+								DriftCorrectionMode pDriftCorrectionMode,
+								ForkJoinPool pForkJoinPool)
+	{
+		super();
+		mReferenceChannelID = pReferenceChannelID;
+		mDriftCorrectionMode = pDriftCorrectionMode;
+		mPhaseCorrelation = new PhaseCorrelation(pSubsampling);
+		mForkJoinPool = pForkJoinPool;
+	}
+
+	/**
+	 * Returns the drift accumulated since the first time point, or since the
+	 * last reset.
+	 *
+	 * @return drift in voxels, x, y and z
+	 */
+	public double[] getDrift()
+	{
+		synchronized (mLock)
+		{
+			return mDrift.clone();
+		}
+	}
+
+	/**
+	 * Forgets the drift and the previous reference, the next reference volume
+	 * becomes the new origin.
+	 */
+	public void reset()
+	{
+		synchronized (mLock)
+		{
+			mPreviousReference = null;
+			Arrays.fill(mDrift, 0);
+		}
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		final double[] lDrift;
+		synchronized (mLock)
+		{
+			if (pVolume.getChannelID() == mReferenceChannelID)
+				register(pVolume);
+			lDrift = mDrift.clone();
+		}
+
+		final Volume lCorrectedVolume;
+		switch (mDriftCorrectionMode)
+		{
+		case Resample:
+			lCorrectedVolume = requestVolume(	pVolume.getNativeType(),
+												pVolume.getDimensionsInVoxels());
+			Resampling.translate(pVolume, lCorrectedVolume, lDrift, mForkJoinPool);
+			lCorrectedVolume.copyMetaDataFrom(pVolume);
+			pVolume.makeAvailableToManager();
+			break;
+		default:
+			pVolume.setViewMatrix(translate(pVolume.getViewMatrix(), lDrift));
+			lCorrectedVolume = pVolume;
+			break;
+		}
+
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(lCorrectedVolume);
+		else
+			lCorrectedVolume.makeAvailableToManager();
+	}
+
+	private void register(Volume pVolume)
+	{
+		final SubsampledVolume lReference = mPhaseCorrelation.subsample(pVolume,
+																		mForkJoinPool);
+		final SubsampledVolume lPreviousReference = mPreviousReference;
+		mPreviousReference = lReference;
+		if (lPreviousReference == null || lPreviousReference.getWidth() != lReference.getWidth()
+			|| lPreviousReference.getHeight() != lReference.getHeight()
+			|| lPreviousReference.getDepth() != lReference.getDepth())
+			return;
+
+		final double[] lShift = mPhaseCorrelation.estimateShift(lPreviousReference,
+																lReference,
+																mForkJoinPool);
+		for (int i = 0; i < 3; i++)
+			mDrift[i] += lShift[i];
+	}
+
+	private static float[] translate(float[] pViewMatrix, double[] pDrift)
+	{
+		final float[] lViewMatrix;
+		if (pViewMatrix != null && pViewMatrix.length == 16)
+			lViewMatrix = pViewMatrix.clone();
+		else
+		{
+			lViewMatrix = new float[16];
+			lViewMatrix[0] = lViewMatrix[5] = lViewMatrix[10] = lViewMatrix[15] = 1;
+		}
+		// translation applied after the matrix, which has no projective part:
+		for (int i = 0; i < 3; i++)
+			lViewMatrix[12 + i] -= pDrift[i];
+		return lViewMatrix;
+	}
+
+	@Override
+	public void close()
+	{
+		reset();
+		super.close();
+	}
+
+}
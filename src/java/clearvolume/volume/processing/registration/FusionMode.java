@@ -0,0 +1,18 @@
+package clearvolume.volume.processing.registration;
+
+/**
+ * How {@link MultiViewFusionSink} combines the views covering a voxel.
+ */
+public enum FusionMode
+{
+	/**
+	 * Average of the views, weighted by how far the voxel is from the border of
+	 * each view.
+	 */
+	WeightedAverage,
+
+	/**
+	 * Maximum of the views.
+	 */
+	Max
+}
@@ -0,0 +1,263 @@
+package clearvolume.volume.processing.registration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.ProcessingSinkAdapter;
+import clearvolume.volume.processing.SlabRunner;
+import clearvolume.volume.processing.SlabRunner.SlabTaskInterface;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.sink.VolumeGroupSinkInterface;
+import clearvolume.volume.sink.sync.TimePointSynchronizerSink;
+
+/**
+ * Fuses the views of a time point into one volume. Each view is a channel whose
+ * view matrix maps its voxel coordinates into a common reference frame, views
+ * without view matrix are in the reference frame. The fused volume is sampled
+ * in the reference frame: every output voxel is mapped back into each view and
+ * interpolated trilinearly, then the views are combined according to the
+ * {@link FusionMode}. Output bricks are independent tasks on a fork-join pool.
+ *
+ * Put a {@link TimePointSynchronizerSink} in front of this sink so that it
+ * receives the views of a time point as one group. A volume received alone is
+ * resampled into the reference frame by itself.
+ */
+public class MultiViewFusionSink extends ProcessingSinkAdapter	implements
+																VolumeGroupSinkInterface
+{
+	private static final int cBrickSize = 32;
+
+	private final FusionMode mFusionMode;
+	private final ForkJoinPool mForkJoinPool;
+	private volatile long[] mOutputDimensions;
+	private volatile Integer mFusedChannelID;
+	private volatile double mBlendingWidth = 8;
+
+	public MultiViewFusionSink(FusionMode pFusionMode)
+	{
+		this(pFusionMode, ForkJoinPool.commonPool());
+	}
+
+	public MultiViewFusionSink(FusionMode pFusionMode, ForkJoinPool pForkJoinPool)
+	{
+		super();
+		mFusionMode = pFusionMode;
+		mForkJoinPool = pForkJoinPool;
+	}
+
+	/**
+	 * Sets the size of the fused volume in the reference frame, by default it
+	 * is the size of the first view.
+	 *
+	 * @param pWidth
+	 *            width in voxels
+	 * @param pHeight
+	 *            height in voxels
+	 * @param pDepth
+	 *            depth in voxels
+	 */
+	public void setOutputDimensions(int pWidth, int pHeight, int pDepth)
+	{
+		mOutputDimensions = new long[]
+		{ pWidth, pHeight, pDepth };
+	}
+
+	/**
+	 * Sets the channel of the fused volume, by default it is the channel of the
+	 * first view.
+	 *
+	 * @param pChannelID
+	 *            channel
+	 */
+	public void setFusedChannelID(int pChannelID)
+	{
+		mFusedChannelID = pChannelID;
+	}
+
+	/**
+	 * Sets over how many voxels the weight of a view rises from the border of
+	 * the view, which hides seams in weighted averages. Zero gives all voxels
+	 * of a view the same weight.
+	 *
+	 * @param pBlendingWidth
+	 *            blending width in voxels
+	 */
+	public void setBlendingWidth(double pBlendingWidth)
+	{
+		mBlendingWidth = pBlendingWidth;
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		sendVolumeGroup(Collections.singletonList(pVolume));
+	}
+
+	@Override
+	public void sendVolumeGroup(List<Volume> pVolumes)
+	{
+		if (pVolumes.isEmpty())
+			return;
+
+		final Volume lFusedVolume;
+		try
+		{
+			lFusedVolume = fuse(pVolumes);
+		}
+		finally
+		{
+			for (final Volume lVolume : pVolumes)
+				lVolume.makeAvailableToManager();
+		}
+
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(lFusedVolume);
+		else
+			lFusedVolume.makeAvailableToManager();
+	}
+
+	private Volume fuse(List<Volume> pViews)
+	{
+		final Volume lFirstView = pViews.get(0);
+		final int lElementSize = (int) lFirstView.getElementSize();
+		final long[] lOutputDimensions = mOutputDimensions;
+		final int lWidth = (int) (lOutputDimensions != null	? lOutputDimensions[0]
+															: lFirstView.getWidthInVoxels());
+		final int lHeight = (int) (lOutputDimensions != null ? lOutputDimensions[1]
+															: lFirstView.getHeightInVoxels());
+		final int lDepth = lOutputDimensions != null ? (int) lOutputDimensions[2]
+													: VoxelAccess.getDepth(lFirstView);
+
+		final int lNumberOfViews = pViews.size();
+		final float[][] lViewValues = new float[lNumberOfViews][];
+		final int[][] lViewDimensions = new int[lNumberOfViews][];
+		final AffineTransform3D[] lToView = new AffineTransform3D[lNumberOfViews];
+		for (int v = 0; v < lNumberOfViews; v++)
+		{
+			final Volume lView = pViews.get(v);
+			if (lView.getElementSize() != lElementSize)
+				throw new IllegalArgumentException("Views differ in element size");
+			final int lViewDepth = VoxelAccess.getDepth(lView);
+			lViewDimensions[v] = new int[]
+			{ (int) lView.getWidthInVoxels(),
+				(int) lView.getHeightInVoxels(),
+				lViewDepth };
+			lViewValues[v] = new float[VoxelAccess.getSliceLength(lView) * lViewDepth];
+			VoxelAccess.readSlices(lView, 0, lViewDepth, lViewValues[v]);
+			lToView[v] = AffineTransform3D.fromViewMatrix(lView.getViewMatrix())
+											.inverse();
+		}
+
+		final float[] lFused = new float[lElementSize * lWidth
+											* lHeight
+											* lDepth];
+		final int lBricksAlongX = (lWidth + cBrickSize - 1) / cBrickSize;
+		final int lBricksAlongY = (lHeight + cBrickSize - 1) / cBrickSize;
+		final int lBricksAlongZ = (lDepth + cBrickSize - 1) / cBrickSize;
+		SlabRunner.run(	mForkJoinPool,
+						lBricksAlongX * lBricksAlongY * lBricksAlongZ,
+						new SlabTaskInterface()
+						{
+							@Override
+							public void run(int pBrick)
+							{
+								fuseBrick(	lFused,
+											lElementSize,
+											lWidth,
+											lHeight,
+											lDepth,
+											cBrickSize * (pBrick % lBricksAlongX),
+											cBrickSize * (pBrick / lBricksAlongX % lBricksAlongY),
+											cBrickSize * (pBrick / (lBricksAlongX * lBricksAlongY)),
+											lViewValues,
+											lViewDimensions,
+											lToView);
+							}
+						});
+
+		final Volume lFusedVolume = requestVolume(	lFirstView.getNativeType(),
+													lElementSize,
+													lWidth,
+													lHeight,
+													lDepth);
+		VoxelAccess.writeSlices(lFusedVolume, 0, lDepth, lFused);
+		lFusedVolume.copyMetaDataFrom(lFirstView);
+		lFusedVolume.setDimensionsInVoxels(lElementSize, lWidth, lHeight, lDepth);
+		lFusedVolume.setViewMatrix(null);
+		if (mFusedChannelID != null)
+			lFusedVolume.setChannelID(mFusedChannelID);
+		return lFusedVolume;
+	}
+
+	private void fuseBrick(	float[] pFused,
+							int pElementSize,
+							int pWidth,
+							int pHeight,
+							int pDepth,
+							int pX,
+							int pY,
+							int pZ,
+							float[][] pViewValues,
+							int[][] pViewDimensions,
+							AffineTransform3D[] pToView)
+	{
+		final int lNumberOfViews = pViewValues.length;
+		final double lBlendingWidth = mBlendingWidth;
+		final boolean lMax = mFusionMode == FusionMode.Max;
+		final double[] lPosition = new double[3];
+		final double[] lSums = new double[pElementSize];
+
+		for (int z = pZ; z < Math.min(pDepth, pZ + cBrickSize); z++)
+			for (int y = pY; y < Math.min(pHeight, pY + cBrickSize); y++)
+				for (int x = pX; x < Math.min(pWidth, pX + cBrickSize); x++)
+				{
+					final int lIndex = ((z * pHeight + y) * pWidth + x) * pElementSize;
+					for (int c = 0; c < pElementSize; c++)
+						lSums[c] = lMax ? Double.NEGATIVE_INFINITY : 0;
+					double lWeightSum = 0;
+
+					for (int v = 0; v < lNumberOfViews; v++)
+					{
+						pToView[v].apply(x, y, z, lPosition);
+						final int[] lDimensions = pViewDimensions[v];
+						double lDistance = Double.POSITIVE_INFINITY;
+						for (int a = 0; a < 3; a++)
+							lDistance = Math.min(lDistance,
+													Math.min(	lPosition[a],
+																lDimensions[a] - 1
+																		- lPosition[a]));
+						if (lDistance < 0)
+							continue;
+
+						final double lWeight = lBlendingWidth > 0	? Math.min(	1,
+																				(lDistance + 1) / (lBlendingWidth + 1))
+																	: 1;
+						lWeightSum += lWeight;
+						for (int c = 0; c < pElementSize; c++)
+						{
+							final float lValue = Resampling.sample(	pViewValues[v],
+																	pElementSize,
+																	lDimensions[0],
+																	lDimensions[1],
+																	lDimensions[2],
+																	lPosition[0],
+																	lPosition[1],
+																	lPosition[2],
+																	c);
+							if (lMax)
+								lSums[c] = Math.max(lSums[c], lValue);
+							else
+								lSums[c] += lWeight * lValue;
+						}
+					}
+
+					for (int c = 0; c < pElementSize; c++)
+						if (lWeightSum > 0)
+							pFused[lIndex + c] = (float) (lMax	? lSums[c]
+																: lSums[c] / lWeightSum);
+				}
+	}
+
+}
@@ -0,0 +1,296 @@
+package clearvolume.volume.processing.registration;
+
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.SlabRunner;
+import clearvolume.volume.processing.SlabRunner.SlabTaskInterface;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.processing.fft.FFT3D;
+
+/**
+ * Estimates the translation between two volumes by phase correlation. Volumes
+ * are first summed over blocks of subsampling^3 voxels, which makes the FFT
+ * much cheaper and still resolves drifts to a fraction of a block thanks to a
+ * parabolic fit around the correlation peak. A Hann window suppresses the
+ * correlation of the volume borders, which would otherwise pull the estimate
+ * towards zero. Shifts are limited to half the volume size.
+ */
+public class PhaseCorrelation
+{
+	private final int mSubsampling;
+	private FFT3D mFFT3D;
+
+	public PhaseCorrelation(int pSubsampling)
+	{
+		super();
+		if (pSubsampling < 1)
+			throw new IllegalArgumentException("Subsampling must be at least 1");
+		mSubsampling = pSubsampling;
+	}
+
+	public int getSubsampling()
+	{
+		return mSubsampling;
+	}
+
+	/**
+	 * Sums the first element of a volume over blocks of subsampling^3 voxels,
+	 * the remainders at the far edges are left out.
+	 *
+	 * @param pVolume
+	 *            volume
+	 * @param pForkJoinPool
+	 *            pool running the slabs
+	 * @return subsampled volume, x fastest
+	 */
+	public SubsampledVolume subsample(	final Volume pVolume,
+										ForkJoinPool pForkJoinPool)
+	{
+		final int lElementSize = (int) pVolume.getElementSize();
+		final int lWidth = (int) pVolume.getWidthInVoxels();
+		final int lHeight = (int) pVolume.getHeightInVoxels();
+		final int lSubsampling = mSubsampling;
+		final int lSubsampledWidth = Math.max(1, lWidth / lSubsampling);
+		final int lSubsampledHeight = Math.max(1, lHeight / lSubsampling);
+		final int lSubsampledDepth = Math.max(	1,
+												VoxelAccess.getDepth(pVolume) / lSubsampling);
+		final int lSliceLength = VoxelAccess.getSliceLength(pVolume);
+		final float[] lSubsampled = new float[lSubsampledWidth * lSubsampledHeight
+												* lSubsampledDepth];
+
+		SlabRunner.run(pForkJoinPool, lSubsampledDepth, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pZ)
+			{
+				final float[] lSlices = new float[lSubsampling * lSliceLength];
+				VoxelAccess.readSlices(	pVolume,
+										pZ * lSubsampling,
+										(pZ + 1) * lSubsampling,
+										lSlices);
+				final int lOutput = pZ * lSubsampledWidth * lSubsampledHeight;
+				for (int s = 0; s < lSubsampling; s++)
+					for (int y = 0; y < lSubsampledHeight * lSubsampling
+									&& y < lHeight; y++)
+						for (int x = 0; x < lSubsampledWidth * lSubsampling
+										&& x < lWidth; x++)
+							lSubsampled[lOutput + (y / lSubsampling)
+											* lSubsampledWidth
+											+ x
+											/ lSubsampling] += lSlices[s * lSliceLength
+																		+ (y * lWidth + x)
+																		* lElementSize];
+			}
+		});
+
+		return new SubsampledVolume(lSubsampled,
+									lSubsampledWidth,
+									lSubsampledHeight,
+									lSubsampledDepth);
+	}
+
+	/**
+	 * Estimates how far the content of a volume moved relative to a reference.
+	 *
+	 * @param pReference
+	 *            subsampled reference
+	 * @param pMoving
+	 *            subsampled moving volume of the same size
+	 * @param pForkJoinPool
+	 *            pool running the FFTs
+	 * @return shift in voxels of the full resolution volume, x, y and z
+	 */
+	public double[] estimateShift(	SubsampledVolume pReference,
+									SubsampledVolume pMoving,
+									ForkJoinPool pForkJoinPool)
+	{
+		final int lWidth = pReference.getWidth();
+		final int lHeight = pReference.getHeight();
+		final int lDepth = pReference.getDepth();
+		if (pMoving.getWidth() != lWidth || pMoving.getHeight() != lHeight
+			|| pMoving.getDepth() != lDepth)
+			throw new IllegalArgumentException("Volumes differ in size");
+
+		final FFT3D lFFT3D;
+		synchronized (this)
+		{
+			if (mFFT3D == null || mFFT3D.getWidth() != lWidth
+				|| mFFT3D.getHeight() != lHeight
+				|| mFFT3D.getDepth() != lDepth)
+				mFFT3D = new FFT3D(lWidth, lHeight, lDepth);
+			lFFT3D = mFFT3D;
+		}
+
+		final float[] lReferenceSpectrum = lFFT3D.requestSpectrum();
+		final float[] lMovingSpectrum = lFFT3D.requestSpectrum();
+		final float[] lCorrelation = new float[lWidth * lHeight * lDepth];
+		try
+		{
+			lFFT3D.forward(	window(pReference),
+							lReferenceSpectrum,
+							pForkJoinPool);
+			lFFT3D.forward(window(pMoving), lMovingSpectrum, pForkJoinPool);
+
+			// normalized cross power spectrum, moving times conjugate reference:
+			for (int i = 0; i < lMovingSpectrum.length; i += 2)
+			{
+				final float lRe = lMovingSpectrum[i] * lReferenceSpectrum[i]
+									+ lMovingSpectrum[i + 1]
+									* lReferenceSpectrum[i + 1];
+				final float lIm = lMovingSpectrum[i + 1] * lReferenceSpectrum[i]
+									- lMovingSpectrum[i]
+									* lReferenceSpectrum[i + 1];
+				final float lMagnitude = (float) Math.sqrt(lRe * lRe + lIm * lIm);
+				final float lScale = lMagnitude > 1e-20f ? 1 / lMagnitude : 0;
+				lMovingSpectrum[i] = lRe * lScale;
+				lMovingSpectrum[i + 1] = lIm * lScale;
+			}
+			lFFT3D.inverse(lMovingSpectrum, lCorrelation, pForkJoinPool);
+		}
+		finally
+		{
+			lFFT3D.releaseSpectrum(lReferenceSpectrum);
+			lFFT3D.releaseSpectrum(lMovingSpectrum);
+		}
+
+		int lPeak = 0;
+		for (int i = 1; i < lCorrelation.length; i++)
+			if (lCorrelation[i] > lCorrelation[lPeak])
+				lPeak = i;
+		final int lPeakX = lPeak % lWidth;
+		final int lPeakY = (lPeak / lWidth) % lHeight;
+		final int lPeakZ = lPeak / (lWidth * lHeight);
+
+		return new double[]
+		{ mSubsampling * refine(lCorrelation,
+								lPeakX,
+								lPeakY,
+								lPeakZ,
+								1,
+								lWidth,
+								lWidth,
+								lHeight,
+								lDepth),
+			mSubsampling * refine(	lCorrelation,
+									lPeakX,
+									lPeakY,
+									lPeakZ,
+									2,
+									lHeight,
+									lWidth,
+									lHeight,
+									lDepth),
+			mSubsampling * refine(	lCorrelation,
+									lPeakX,
+									lPeakY,
+									lPeakZ,
+									3,
+									lDepth,
+									lWidth,
+									lHeight,
+									lDepth) };
+	}
+
+	/**
+	 * Fits a parabola through the peak and its two neighbours along an axis and
+	 * returns the position of its maximum, wrapped to [-n/2, n/2).
+	 */
+	private static double refine(	float[] pCorrelation,
+									int pX,
+									int pY,
+									int pZ,
+									int pAxis,
+									int pLength,
+									int pWidth,
+									int pHeight,
+									int pDepth)
+	{
+		final int lPosition = pAxis == 1 ? pX : pAxis == 2 ? pY : pZ;
+		double lOffset = 0;
+		if (pLength >= 3)
+		{
+			final float lCenter = pCorrelation[(pZ * pHeight + pY) * pWidth + pX];
+			final float lBefore = sample(	pCorrelation,
+											pX,
+											pY,
+											pZ,
+											pAxis,
+											-1,
+											pWidth,
+											pHeight,
+											pDepth);
+			final float lAfter = sample(pCorrelation,
+										pX,
+										pY,
+										pZ,
+										pAxis,
+										1,
+										pWidth,
+										pHeight,
+										pDepth);
+			final double lCurvature = lBefore - 2 * lCenter + lAfter;
+			if (lCurvature < 0)
+				lOffset = Math.max(-0.5, Math.min(0.5, 0.5 * (lBefore - lAfter)
+														/ lCurvature));
+		}
+		double lShift = lPosition + lOffset;
+		if (lShift >= pLength / 2.0)
+			lShift -= pLength;
+		return lShift;
+	}
+
+	private static float sample(float[] pCorrelation,
+								int pX,
+								int pY,
+								int pZ,
+								int pAxis,
+								int pDelta,
+								int pWidth,
+								int pHeight,
+								int pDepth)
+	{
+		if (pAxis == 1)
+			pX = (pX + pDelta + pWidth) % pWidth;
+		else if (pAxis == 2)
+			pY = (pY + pDelta + pHeight) % pHeight;
+		else
+			pZ = (pZ + pDelta + pDepth) % pDepth;
+		return pCorrelation[(pZ * pHeight + pY) * pWidth + pX];
+	}
+
+	private static float[] window(SubsampledVolume pVolume)
+	{
+		final float[] lValues = pVolume.getValues();
+		final int lWidth = pVolume.getWidth();
+		final int lHeight = pVolume.getHeight();
+		final int lDepth = pVolume.getDepth();
+
+		double lMean = 0;
+		for (final float lValue : lValues)
+			lMean += lValue;
+		lMean /= lValues.length;
+
+		final double[] lWindowX = hann(lWidth);
+		final double[] lWindowY = hann(lHeight);
+		final double[] lWindowZ = hann(lDepth);
+		final float[] lWindowed = new float[lValues.length];
+		for (int z = 0, i = 0; z < lDepth; z++)
+			for (int y = 0; y < lHeight; y++)
+				for (int x = 0; x < lWidth; x++, i++)
+					lWindowed[i] = (float) ((lValues[i] - lMean) * lWindowX[x]
+											* lWindowY[y] * lWindowZ[z]);
+		return lWindowed;
+	}
+
+	private static double[] hann(int pLength)
+	{
+		final double[] lWindow = new double[pLength];
+		for (int i = 0; i < pLength; i++)
+			lWindow[i] = pLength < 3 ? 1
+									: 0.5 - 0.5 * Math.cos(2 * Math.PI * i
+															/ (pLength - 1));
+		return lWindow;
+	}
+
+}
@@ -0,0 +1,143 @@
+package clearvolume.volume.processing.registration;
+
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.SlabRunner;
+import clearvolume.volume.processing.SlabRunner.SlabTaskInterface;
+import clearvolume.volume.processing.VoxelAccess;
+
+/**
+ * Trilinear resampling of float volumes. Samples outside of the volume are
+ * zero.
+ */
+public class Resampling
+{
+
+	/**
+	 * Samples a volume at a position with trilinear interpolation.
+	 *
+	 * @param pValues
+	 *            volume, element fastest, then x, y and z
+	 * @param pElementSize
+	 *            number of elements per voxel
+	 * @param pWidth
+	 *            width
+	 * @param pHeight
+	 *            height
+	 * @param pDepth
+	 *            depth
+	 * @param pX
+	 *            x in voxels
+	 * @param pY
+	 *            y in voxels
+	 * @param pZ
+	 *            z in voxels
+	 * @param pElement
+	 *            element
+	 * @return interpolated value, zero outside of the volume
+	 */
+	public static float sample(	float[] pValues,
+								int pElementSize,
+								int pWidth,
+								int pHeight,
+								int pDepth,
+								double pX,
+								double pY,
+								double pZ,
+								int pElement)
+	{
+		final int lX0 = (int) Math.floor(pX);
+		final int lY0 = (int) Math.floor(pY);
+		final int lZ0 = (int) Math.floor(pZ);
+		if (lX0 < -1 || lY0 < -1 || lZ0 < -1
+			|| lX0 >= pWidth
+			|| lY0 >= pHeight
+			|| lZ0 >= pDepth)
+			return 0;
+		final double lFX = pX - lX0;
+		final double lFY = pY - lY0;
+		final double lFZ = pZ - lZ0;
+
+		double lSum = 0;
+		for (int dz = 0; dz <= 1; dz++)
+		{
+			final int lZ = lZ0 + dz;
+			if (lZ < 0 || lZ >= pDepth)
+				continue;
+			final double lWZ = dz == 0 ? 1 - lFZ : lFZ;
+			for (int dy = 0; dy <= 1; dy++)
+			{
+				final int lY = lY0 + dy;
+				if (lY < 0 || lY >= pHeight)
+					continue;
+				final double lWY = dy == 0 ? 1 - lFY : lFY;
+				for (int dx = 0; dx <= 1; dx++)
+				{
+					final int lX = lX0 + dx;
+					if (lX < 0 || lX >= pWidth)
+						continue;
+					final double lWX = dx == 0 ? 1 - lFX : lFX;
+					lSum += lWX * lWY
+							* lWZ
+							* pValues[((lZ * pHeight + lY) * pWidth + lX) * pElementSize
+										+ pElement];
+				}
+			}
+		}
+		return (float) lSum;
+	}
+
+	/**
+	 * Resamples a volume so that the output voxel at p takes the input value at
+	 * p + shift, which moves the content by minus the shift. Slices are
+	 * resampled in parallel.
+	 *
+	 * @param pInput
+	 *            input volume
+	 * @param pOutput
+	 *            output volume of the same type and dimensions, not the input
+	 * @param pShift
+	 *            shift in voxels, x, y and z
+	 * @param pForkJoinPool
+	 *            pool running the slices
+	 */
+	public static void translate(	Volume pInput,
+									Volume pOutput,
+									final double[] pShift,
+									ForkJoinPool pForkJoinPool)
+	{
+		final int lElementSize = (int) pInput.getElementSize();
+		final int lWidth = (int) pInput.getWidthInVoxels();
+		final int lHeight = (int) pInput.getHeightInVoxels();
+		final int lDepth = VoxelAccess.getDepth(pInput);
+		final int lSliceLength = VoxelAccess.getSliceLength(pInput);
+		final float[] lInput = new float[lSliceLength * lDepth];
+		final float[] lOutput = new float[lInput.length];
+		VoxelAccess.readSlices(pInput, 0, lDepth, lInput);
+
+		SlabRunner.run(pForkJoinPool, lDepth, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pZ)
+			{
+				int i = pZ * lSliceLength;
+				for (int y = 0; y < lHeight; y++)
+					for (int x = 0; x < lWidth; x++)
+						for (int c = 0; c < lElementSize; c++)
+							lOutput[i++] = sample(	lInput,
+													lElementSize,
+													lWidth,
+													lHeight,
+													lDepth,
+													x + pShift[0],
+													y + pShift[1],
+													pZ + pShift[2],
+													c);
+			}
+		});
+
+		VoxelAccess.writeSlices(pOutput, 0, lDepth, lOutput);
+	}
+
+}
@@ -0,0 +1,43 @@
+package clearvolume.volume.processing.registration;
+
+/**
+ * Float volume with one element per voxel, x fastest, as produced by
+ * {@link PhaseCorrelation#subsample}.
+ */
+public class SubsampledVolume
+{
+	private final float[] mValues;
+	private final int mWidth, mHeight, mDepth;
+
+	public SubsampledVolume(float[] pValues, int pWidth, int pHeight, int pDepth)
+	{
+		super();
+		if (pValues.length != pWidth * pHeight * pDepth)
+			throw new IllegalArgumentException("Length does not match the dimensions");
+		mValues = pValues;
+		mWidth = pWidth;
+		mHeight = pHeight;
+		mDepth = pDepth;
+	}
+
+	public float[] getValues()
+	{
+		return mValues;
+	}
+
+	public int getWidth()
+	{
+		return mWidth;
+	}
+
+	public int getHeight()
+	{
+		return mHeight;
+	}
+
+	public int getDepth()
+	{
+		return mDepth;
+	}
+
+}
@@ -0,0 +1,170 @@
+package clearvolume.volume.processing.registration.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.processing.registration.DriftCorrectionMode;
+import clearvolume.volume.processing.registration.DriftCorrectionSink;
+import clearvolume.volume.processing.registration.PhaseCorrelation;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import coremem.enums.NativeTypeEnum;
+
+public class DriftCorrectionTests
+{
+	private static final int cSize = 48;
+
+	@Test
+	public void testPhaseCorrelation()
+	{
+		final Volume lReference = newBlobVolume(0, 0, 0);
+		final Volume lMoving = newBlobVolume(3, -2, 1.5);
+
+		final PhaseCorrelation lPhaseCorrelation = new PhaseCorrelation(1);
+		final double[] lShift = lPhaseCorrelation.estimateShift(lPhaseCorrelation.subsample(	lReference,
+																							ForkJoinPool.commonPool()),
+																lPhaseCorrelation.subsample(lMoving,
+																							ForkJoinPool.commonPool()),
+																ForkJoinPool.commonPool());
+		assertEquals(3, lShift[0], 0.25);
+		assertEquals(-2, lShift[1], 0.25);
+		assertEquals(1.5, lShift[2], 0.25);
+
+		final PhaseCorrelation lSubsampledPhaseCorrelation = new PhaseCorrelation(2);
+		final double[] lSubsampledShift = lSubsampledPhaseCorrelation.estimateShift(lSubsampledPhaseCorrelation.subsample(	lReference,
+																															ForkJoinPool.commonPool()),
+																					lSubsampledPhaseCorrelation.subsample(	lMoving,
+																															ForkJoinPool.commonPool()),
+																					ForkJoinPool.commonPool());
+		assertEquals(3, lSubsampledShift[0], 0.75);
+		assertEquals(-2, lSubsampledShift[1], 0.75);
+		assertEquals(1.5, lSubsampledShift[2], 0.75);
+	}
+
+	@Test
+	public void testViewMatrixCorrection()
+	{
+		final DriftCorrectionSink lDriftCorrectionSink = new DriftCorrectionSink(	1,
+																					1,
+																					DriftCorrectionMode.ViewMatrix);
+		final AtomicReference<Volume> lReceived = new AtomicReference<Volume>();
+		lDriftCorrectionSink.setRelaySink(newRecordingSink(lReceived));
+
+		lDriftCorrectionSink.sendVolume(newBlobVolume(0, 0, 0));
+		lDriftCorrectionSink.sendVolume(newBlobVolume(2, 0, 0));
+		final Volume lVolume = newBlobVolume(2, 1, -1);
+		lDriftCorrectionSink.sendVolume(lVolume);
+
+		final double[] lDrift = lDriftCorrectionSink.getDrift();
+		assertEquals(2, lDrift[0], 0.25);
+		assertEquals(1, lDrift[1], 0.25);
+		assertEquals(-1, lDrift[2], 0.25);
+
+		// another channel is corrected by the drift of the reference channel:
+		final Volume lOtherChannel = newBlobVolume(2, 1, -1);
+		lOtherChannel.setChannelID(2);
+		lDriftCorrectionSink.sendVolume(lOtherChannel);
+		final float[] lViewMatrix = lReceived.get().getViewMatrix();
+		assertEquals(1, lViewMatrix[0], 0);
+		assertEquals(-lDrift[0], lViewMatrix[12], 1e-6);
+		assertEquals(-lDrift[1], lViewMatrix[13], 1e-6);
+		assertEquals(-lDrift[2], lViewMatrix[14], 1e-6);
+
+		lDriftCorrectionSink.close();
+	}
+
+	@Test
+	public void testResamplingCorrection()
+	{
+		final DriftCorrectionSink lDriftCorrectionSink = new DriftCorrectionSink(	1,
+																					2,
+																					DriftCorrectionMode.Resample);
+		final AtomicReference<Volume> lReceived = new AtomicReference<Volume>();
+		lDriftCorrectionSink.setRelaySink(newRecordingSink(lReceived));
+		// resampled inputs go back to their manager:
+		final VolumeManager lVolumeManager = new VolumeManager(4);
+
+		final Volume lFirst = newBlobVolume(0, 0, 0);
+		final float[] lExpected = new float[cSize * cSize * cSize];
+		VoxelAccess.readSlices(lFirst, 0, cSize, lExpected);
+		lFirst.setManager(lVolumeManager);
+		lDriftCorrectionSink.sendVolume(lFirst);
+		final Volume lSecond = newBlobVolume(4, -2, 2);
+		lSecond.setManager(lVolumeManager);
+		lDriftCorrectionSink.sendVolume(lSecond);
+
+		final float[] lCorrected = new float[lExpected.length];
+		VoxelAccess.readSlices(lReceived.get(), 0, cSize, lCorrected);
+		double lError = 0, lNorm = 0;
+		for (int i = 0; i < lExpected.length; i++)
+		{
+			lError += Math.abs(lExpected[i] - lCorrected[i]);
+			lNorm += lExpected[i];
+		}
+		assertEquals(0, lError / lNorm, 0.1);
+
+		lDriftCorrectionSink.close();
+	}
+
+	private static VolumeSinkInterface newRecordingSink(final AtomicReference<Volume> pReceived)
+	{
+		return new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				pReceived.set(pVolume);
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Gaussian blobs at fixed random positions, moved by a shift.
+	 */
+	private static Volume newBlobVolume(double pShiftX,
+										double pShiftY,
+										double pShiftZ)
+	{
+		final Random lRandom = new Random(7);
+		final float[] lValues = new float[cSize * cSize * cSize];
+		for (int b = 0; b < 20; b++)
+		{
+			final double lX = 10 + lRandom.nextDouble() * (cSize - 20) + pShiftX;
+			final double lY = 10 + lRandom.nextDouble() * (cSize - 20) + pShiftY;
+			final double lZ = 10 + lRandom.nextDouble() * (cSize - 20) + pShiftZ;
+			for (int z = 0, i = 0; z < cSize; z++)
+				for (int y = 0; y < cSize; y++)
+					for (int x = 0; x < cSize; x++, i++)
+					{
+						final double lDistance2 = (x - lX) * (x - lX)
+													+ (y - lY)
+													* (y - lY)
+													+ (z - lZ)
+													* (z - lZ);
+						lValues[i] += 1000 * Math.exp(-lDistance2 / (2 * 2.0 * 2.0));
+					}
+		}
+		final Volume lVolume = new Volume(	NativeTypeEnum.Float,
+											1,
+											cSize,
+											cSize,
+											cSize);
+		VoxelAccess.writeSlices(lVolume, 0, cSize, lValues);
+		lVolume.setChannelID(1);
+		return lVolume;
+	}
+
+}
@@ -0,0 +1,201 @@
+package clearvolume.volume.processing.registration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.processing.registration.AffineTransform3D;
+import clearvolume.volume.processing.registration.FusionMode;
+import clearvolume.volume.processing.registration.MultiViewFusionSink;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.sync.TimePointSynchronizerSink;
+import coremem.enums.NativeTypeEnum;
+
+public class MultiViewFusionTests
+{
+	private static final int cSize = 40;
+
+	@Test
+	public void testInverse()
+	{
+		final float[] lViewMatrix = rotationAboutZ(5, -3, 2);
+		lViewMatrix[0] *= 2;
+		final AffineTransform3D lTransform = AffineTransform3D.fromViewMatrix(lViewMatrix);
+		final double[] lPoint = new double[3];
+		final double[] lBack = new double[3];
+		lTransform.apply(1, 2, 3, lPoint);
+		lTransform.inverse().apply(lPoint[0], lPoint[1], lPoint[2], lBack);
+		assertEquals(1, lBack[0], 1e-9);
+		assertEquals(2, lBack[1], 1e-9);
+		assertEquals(3, lBack[2], 1e-9);
+
+		final float[] lRoundTrip = lTransform.toViewMatrix();
+		for (int i = 0; i < 16; i++)
+			assertEquals(lViewMatrix[i], lRoundTrip[i], 0);
+	}
+
+	@Test
+	public void testFusionOfTranslatedAndRotatedViews()
+	{
+		for (final FusionMode lFusionMode : FusionMode.values())
+		{
+			final VolumeManager lVolumeManager = new VolumeManager(8);
+			final ArrayList<Volume> lReceived = new ArrayList<Volume>();
+			final MultiViewFusionSink lFusionSink = new MultiViewFusionSink(lFusionMode);
+			lFusionSink.setRelaySink(newRecordingSink(lVolumeManager, lReceived));
+			lFusionSink.setFusedChannelID(9);
+
+			final TimePointSynchronizerSink lSynchronizerSink = new TimePointSynchronizerSink(	lFusionSink,
+																								1,
+																								TimeUnit.SECONDS,
+																								0,
+																								1,
+																								2);
+
+			// view 0 is the reference, view 1 is translated, view 2 is rotated:
+			lSynchronizerSink.sendVolume(newView(lVolumeManager, 0, null));
+			final float[] lTranslation = new float[16];
+			lTranslation[0] = lTranslation[5] = lTranslation[10] = lTranslation[15] = 1;
+			lTranslation[12] = 3;
+			lTranslation[13] = -2;
+			lSynchronizerSink.sendVolume(newView(lVolumeManager, 1, lTranslation));
+			assertEquals(0, lReceived.size());
+			lSynchronizerSink.sendVolume(newView(	lVolumeManager,
+													2,
+													rotationAboutZ(cSize - 1, 0, 0)));
+
+			assertEquals(1, lReceived.size());
+			final Volume lFused = lReceived.get(0);
+			assertEquals(9, lFused.getChannelID());
+			assertNull(lFused.getViewMatrix());
+
+			final float[] lValues = new float[cSize * cSize * cSize];
+			VoxelAccess.readSlices(lFused, 0, cSize, lValues);
+			for (int z = 8; z < cSize - 8; z++)
+				for (int y = 8; y < cSize - 8; y++)
+					for (int x = 8; x < cSize - 8; x++)
+						assertEquals(	object(x, y, z),
+										lValues[(z * cSize + y) * cSize + x],
+										1e-2);
+
+			lSynchronizerSink.close();
+			lFusionSink.close();
+		}
+	}
+
+	@Test
+	public void testInputsAreReleased()
+	{
+		final AtomicInteger lNumberOfReleasedVolumes = new AtomicInteger();
+		final VolumeManager lVolumeManager = new VolumeManager(8)
+		{
+			@Override
+			public <T> void makeAvailable(Volume pVolume)
+			{
+				lNumberOfReleasedVolumes.incrementAndGet();
+				super.makeAvailable(pVolume);
+			}
+		};
+		final ArrayList<Volume> lReceived = new ArrayList<Volume>();
+		final MultiViewFusionSink lFusionSink = new MultiViewFusionSink(FusionMode.WeightedAverage);
+		lFusionSink.setRelaySink(newRecordingSink(lVolumeManager, lReceived));
+		lFusionSink.setOutputDimensions(16, 8, 4);
+
+		final ArrayList<Volume> lGroup = new ArrayList<Volume>();
+		lGroup.add(newView(lVolumeManager, 0, null));
+		lGroup.add(newView(lVolumeManager, 1, null));
+		lFusionSink.sendVolumeGroup(lGroup);
+
+		assertEquals(2, lNumberOfReleasedVolumes.get());
+		assertEquals(16, lReceived.get(0).getWidthInVoxels());
+		assertEquals(8, lReceived.get(0).getHeightInVoxels());
+		assertEquals(4, lReceived.get(0).getDepthInVoxels());
+		lFusionSink.close();
+	}
+
+	/**
+	 * Rotation by 90 degrees about z, followed by a translation.
+	 */
+	private static float[] rotationAboutZ(float pX, float pY, float pZ)
+	{
+		final float[] lViewMatrix = new float[16];
+		// x' = -y + tx, y' = x + ty, column-major:
+		lViewMatrix[1] = 1;
+		lViewMatrix[4] = -1;
+		lViewMatrix[10] = 1;
+		lViewMatrix[15] = 1;
+		lViewMatrix[12] = pX;
+		lViewMatrix[13] = pY;
+		lViewMatrix[14] = pZ;
+		return lViewMatrix;
+	}
+
+	/**
+	 * Smooth object in the reference frame, linear so that trilinear
+	 * interpolation reproduces it exactly.
+	 */
+	private static float object(double pX, double pY, double pZ)
+	{
+		return (float) (100 + 2 * pX + 3 * pY + 5 * pZ);
+	}
+
+	/**
+	 * View whose voxel p shows the object at M p.
+	 */
+	private static Volume newView(	VolumeManager pVolumeManager,
+									int pChannelID,
+									float[] pViewMatrix)
+	{
+		final AffineTransform3D lToReference = AffineTransform3D.fromViewMatrix(pViewMatrix);
+		final double[] lPosition = new double[3];
+		final float[] lValues = new float[cSize * cSize * cSize];
+		for (int z = 0, i = 0; z < cSize; z++)
+			for (int y = 0; y < cSize; y++)
+				for (int x = 0; x < cSize; x++, i++)
+				{
+					lToReference.apply(x, y, z, lPosition);
+					lValues[i] = object(lPosition[0], lPosition[1], lPosition[2]);
+				}
+
+		final Volume lVolume = pVolumeManager.requestAndWaitForVolume(	0,
+																		TimeUnit.MILLISECONDS,
+																		NativeTypeEnum.Float,
+																		1,
+																		cSize,
+																		cSize,
+																		cSize);
+		VoxelAccess.writeSlices(lVolume, 0, cSize, lValues);
+		lVolume.setChannelID(pChannelID);
+		lVolume.setTimeIndex(0);
+		lVolume.setViewMatrix(pViewMatrix);
+		return lVolume;
+	}
+
+	private static VolumeSinkInterface newRecordingSink(final VolumeManager pVolumeManager,
+														final ArrayList<Volume> pReceived)
+	{
+		return new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				pReceived.add(pVolume);
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return pVolumeManager;
+			}
+		};
+	}
+
+}
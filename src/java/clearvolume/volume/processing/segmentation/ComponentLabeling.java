@@ -0,0 +1,117 @@
+package clearvolume.volume.processing.segmentation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+
+import clearvolume.volume.Volume;
+import coremem.enums.NativeTypeEnum;
+
+/**
+ * Result of {@link ConnectedComponents#label}: one label per voxel, zero for
+ * the background and 1 to n for the components, numbered in the order of their
+ * first voxel, x fastest, and the statistics of each component.
+ */
+public class ComponentLabeling
+{
+	private final int mWidth, mHeight, mDepth;
+	private final int[] mLabels;
+	private final List<ComponentStatistics> mStatistics;
+
+	ComponentLabeling(	int pWidth,
+						int pHeight,
+						int pDepth,
+						int[] pLabels,
+						List<ComponentStatistics> pStatistics)
+	{
+		super();
+		mWidth = pWidth;
+		mHeight = pHeight;
+		mDepth = pDepth;
+		mLabels = pLabels;
+		mStatistics = Collections.unmodifiableList(pStatistics);
+	}
+
+	public int getWidth()
+	{
+		return mWidth;
+	}
+
+	public int getHeight()
+	{
+		return mHeight;
+	}
+
+	public int getDepth()
+	{
+		return mDepth;
+	}
+
+	public int getNumberOfComponents()
+	{
+		return mStatistics.size();
+	}
+
+	public int getLabel(int pX, int pY, int pZ)
+	{
+		return mLabels[(pZ * mHeight + pY) * mWidth + pX];
+	}
+
+	public int[] getLabels()
+	{
+		return mLabels;
+	}
+
+	/**
+	 * Returns the statistics of the components, the component with label l at
+	 * index l-1.
+	 *
+	 * @return statistics
+	 */
+	public List<ComponentStatistics> getStatistics()
+	{
+		return mStatistics;
+	}
+
+	/**
+	 * Returns the smallest label type that can hold all labels.
+	 *
+	 * @return UnsignedShort or UnsignedInt
+	 */
+	public NativeTypeEnum getLabelType()
+	{
+		return getNumberOfComponents() <= 0xFFFF ? NativeTypeEnum.UnsignedShort
+												: NativeTypeEnum.UnsignedInt;
+	}
+
+	/**
+	 * Writes the labels into a volume of one element per voxel, of type
+	 * UnsignedShort or UnsignedInt and of the size of the labeling.
+	 *
+	 * @param pVolume
+	 *            label volume
+	 */
+	public void writeTo(Volume pVolume)
+	{
+		final ByteBuffer lBuffer = pVolume.getDataBuffer()
+											.duplicate()
+											.order(ByteOrder.nativeOrder());
+		switch (pVolume.getNativeType())
+		{
+		case UnsignedShort:
+			if (getNumberOfComponents() > 0xFFFF)
+				throw new IllegalArgumentException("Too many components for 16 bit labels: " + getNumberOfComponents());
+			for (int i = 0; i < mLabels.length; i++)
+				lBuffer.putShort(2 * i, (short) mLabels[i]);
+			break;
+		case UnsignedInt:
+			for (int i = 0; i < mLabels.length; i++)
+				lBuffer.putInt(4 * i, mLabels[i]);
+			break;
+		default:
+			throw new IllegalArgumentException("Label volumes are UnsignedShort or UnsignedInt");
+		}
+	}
+
+}
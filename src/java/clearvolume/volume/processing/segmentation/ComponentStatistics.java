@@ -0,0 +1,112 @@
+package clearvolume.volume.processing.segmentation;
+
+/**
+ * Voxel count, bounding box and centroid of a connected component, in voxel
+ * coordinates.
+ */
+public class ComponentStatistics
+{
+	private final int mLabel;
+	private long mVoxelCount;
+	private final int[] mMin = new int[]
+	{ Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+	private final int[] mMax = new int[]
+	{ Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+	private final double[] mSum = new double[3];
+
+	ComponentStatistics(int pLabel)
+	{
+		super();
+		mLabel = pLabel;
+	}
+
+	void add(int pX, int pY, int pZ)
+	{
+		mVoxelCount++;
+		addToBox(0, pX);
+		addToBox(1, pY);
+		addToBox(2, pZ);
+		mSum[0] += pX;
+		mSum[1] += pY;
+		mSum[2] += pZ;
+	}
+
+	private void addToBox(int pAxis, int pValue)
+	{
+		if (pValue < mMin[pAxis])
+			mMin[pAxis] = pValue;
+		if (pValue > mMax[pAxis])
+			mMax[pAxis] = pValue;
+	}
+
+	void merge(ComponentStatistics pOther)
+	{
+		mVoxelCount += pOther.mVoxelCount;
+		for (int a = 0; a < 3; a++)
+		{
+			mMin[a] = Math.min(mMin[a], pOther.mMin[a]);
+			mMax[a] = Math.max(mMax[a], pOther.mMax[a]);
+			mSum[a] += pOther.mSum[a];
+		}
+	}
+
+	public int getLabel()
+	{
+		return mLabel;
+	}
+
+	public long getVoxelCount()
+	{
+		return mVoxelCount;
+	}
+
+	/**
+	 * Returns the smallest coordinates of the component.
+	 *
+	 * @return x, y and z
+	 */
+	public int[] getBoundingBoxMin()
+	{
+		return mMin.clone();
+	}
+
+	/**
+	 * Returns the largest coordinates of the component, inclusive.
+	 *
+	 * @return x, y and z
+	 */
+	public int[] getBoundingBoxMax()
+	{
+		return mMax.clone();
+	}
+
+	/**
+	 * Returns the mean position of the voxels of the component.
+	 *
+	 * @return x, y and z
+	 */
+	public double[] getCentroid()
+	{
+		return new double[]
+		{ mSum[0] / mVoxelCount, mSum[1] / mVoxelCount, mSum[2] / mVoxelCount };
+	}
+
+	@Override
+	public String toString()
+	{
+		final double[] lCentroid = getCentroid();
+		return String.format(	"ComponentStatistics [label=%d, voxels=%d, min=(%d,%d,%d), max=(%d,%d,%d), centroid=(%.2f,%.2f,%.2f)]",
+								mLabel,
+								mVoxelCount,
+								mMin[0],
+								mMin[1],
+								mMin[2],
+								mMax[0],
+								mMax[1],
+								mMax[2],
+								lCentroid[0],
+								lCentroid[1],
+								lCentroid[2]);
+	}
+
+}
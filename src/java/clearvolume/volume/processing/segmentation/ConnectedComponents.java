@@ -0,0 +1,286 @@
+package clearvolume.volume.processing.segmentation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.SlabRunner;
+import clearvolume.volume.processing.SlabRunner.SlabTaskInterface;
+import clearvolume.volume.processing.VoxelAccess;
+
+/**
+ * Labels the connected components of the voxels above a threshold, using the
+ * first element of each voxel. The volume is cut into z-slabs labeled in
+ * parallel with a union-find over voxel indices, then the components touching
+ * across slab borders are merged in a single pass over the border planes, and
+ * finally the slabs resolve their labels and statistics in parallel. Roots are
+ * always the smallest voxel index of their component, which numbers components
+ * in raster order whatever the number of slabs.
+ */
+public class ConnectedComponents
+{
+	private static final int cSlabsPerThread = 2;
+
+	private final float mThreshold;
+	private final int[][] mBackwardNeighbours;
+
+	/**
+	 * @param pThreshold
+	 *            voxels strictly above the threshold are foreground
+	 * @param pConnectivity
+	 *            6 for faces, 18 for faces and edges, 26 for faces, edges and
+	 *            corners
+	 */
+	public ConnectedComponents(float pThreshold, int pConnectivity)
+	{
+		super();
+		if (pConnectivity != 6 && pConnectivity != 18 && pConnectivity != 26)
+			throw new IllegalArgumentException("Connectivity must be 6, 18 or 26");
+		mThreshold = pThreshold;
+
+		// neighbours visited before a voxel in raster order:
+		final int lMaxDistance = pConnectivity == 6	? 1
+													: pConnectivity == 18 ? 2 : 3;
+		final ArrayList<int[]> lNeighbours = new ArrayList<int[]>();
+		for (int dz = -1; dz <= 0; dz++)
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dx = -1; dx <= 1; dx++)
+				{
+					final boolean lBackward = dz < 0 || (dz == 0 && dy < 0)
+												|| (dz == 0 && dy == 0 && dx < 0);
+					if (lBackward && Math.abs(dx) + Math.abs(dy) + Math.abs(dz) <= lMaxDistance)
+						lNeighbours.add(new int[]
+						{ dx, dy, dz });
+				}
+		mBackwardNeighbours = lNeighbours.toArray(new int[lNeighbours.size()][]);
+	}
+
+	public float getThreshold()
+	{
+		return mThreshold;
+	}
+
+	/**
+	 * Labels a volume.
+	 *
+	 * @param pVolume
+	 *            volume
+	 * @param pForkJoinPool
+	 *            pool running the slabs
+	 * @return labels and statistics
+	 */
+	public ComponentLabeling label(final Volume pVolume, ForkJoinPool pForkJoinPool)
+	{
+		final int lElementSize = (int) pVolume.getElementSize();
+		final int lWidth = (int) pVolume.getWidthInVoxels();
+		final int lHeight = (int) pVolume.getHeightInVoxels();
+		final int lDepth = VoxelAccess.getDepth(pVolume);
+		final int lPlaneLength = lWidth * lHeight;
+		final long lNumberOfVoxels = (long) lPlaneLength * lDepth;
+		if (lNumberOfVoxels > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Volume too large to label");
+
+		final int[] lParents = new int[(int) lNumberOfVoxels];
+		final int lNumberOfSlabs = Math.min(lDepth,
+											cSlabsPerThread * pForkJoinPool.getParallelism());
+		final int[] lSlabStarts = new int[lNumberOfSlabs + 1];
+		for (int s = 0; s <= lNumberOfSlabs; s++)
+			lSlabStarts[s] = (int) ((long) s * lDepth / lNumberOfSlabs);
+
+		// 1) union-find inside each slab:
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				final int lZStart = lSlabStarts[pSlab];
+				final int lZEnd = lSlabStarts[pSlab + 1];
+				final float[] lPlane = new float[lElementSize * lPlaneLength];
+				for (int z = lZStart; z < lZEnd; z++)
+				{
+					VoxelAccess.readSlices(pVolume, z, z + 1, lPlane);
+					for (int y = 0, i = z * lPlaneLength; y < lHeight; y++)
+						for (int x = 0; x < lWidth; x++, i++)
+						{
+							if (lPlane[(y * lWidth + x) * lElementSize] <= mThreshold)
+							{
+								lParents[i] = -1;
+								continue;
+							}
+							lParents[i] = i;
+							for (final int[] lNeighbour : mBackwardNeighbours)
+							{
+								final int lX = x + lNeighbour[0];
+								final int lY = y + lNeighbour[1];
+								final int lZ = z + lNeighbour[2];
+								if (lX < 0 || lX >= lWidth
+									|| lY < 0
+									|| lY >= lHeight
+									|| lZ < lZStart)
+									continue;
+								final int j = (lZ * lHeight + lY) * lWidth + lX;
+								if (lParents[j] >= 0)
+									union(lParents, i, j);
+							}
+						}
+				}
+			}
+		});
+
+		// 2) merge across the first plane of each slab and the plane before:
+		for (int s = 1; s < lNumberOfSlabs; s++)
+		{
+			final int z = lSlabStarts[s];
+			for (int y = 0, i = z * lPlaneLength; y < lHeight; y++)
+				for (int x = 0; x < lWidth; x++, i++)
+				{
+					if (lParents[i] < 0)
+						continue;
+					for (final int[] lNeighbour : mBackwardNeighbours)
+					{
+						if (lNeighbour[2] == 0)
+							continue;
+						final int lX = x + lNeighbour[0];
+						final int lY = y + lNeighbour[1];
+						if (lX < 0 || lX >= lWidth || lY < 0 || lY >= lHeight)
+							continue;
+						final int j = ((z - 1) * lHeight + lY) * lWidth + lX;
+						if (lParents[j] >= 0)
+							union(lParents, i, j);
+					}
+				}
+		}
+
+		// 3) number the roots, slab by slab in raster order:
+		final int[] lLabels = new int[lParents.length];
+		final int[] lRootsPerSlab = new int[lNumberOfSlabs + 1];
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				int lCount = 0;
+				for (int i = lSlabStarts[pSlab] * lPlaneLength; i < lSlabStarts[pSlab + 1] * lPlaneLength; i++)
+					if (lParents[i] == i)
+						lCount++;
+				lRootsPerSlab[pSlab + 1] = lCount;
+			}
+		});
+		for (int s = 0; s < lNumberOfSlabs; s++)
+			lRootsPerSlab[s + 1] += lRootsPerSlab[s];
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				int lLabel = lRootsPerSlab[pSlab];
+				for (int i = lSlabStarts[pSlab] * lPlaneLength; i < lSlabStarts[pSlab + 1] * lPlaneLength; i++)
+					if (lParents[i] == i)
+						lLabels[i] = ++lLabel;
+			}
+		});
+
+		// 4) label every voxel with the label of its root, then gather statistics
+		// over the range of labels the slab sees:
+		final int lNumberOfComponents = lRootsPerSlab[lNumberOfSlabs];
+		final List<List<ComponentStatistics>> lSlabStatistics = new ArrayList<List<ComponentStatistics>>(Collections.<List<ComponentStatistics>> nCopies(	lNumberOfSlabs,
+																																							null));
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				int lMinLabel = Integer.MAX_VALUE, lMaxLabel = 0;
+				for (int i = lSlabStarts[pSlab] * lPlaneLength; i < lSlabStarts[pSlab + 1] * lPlaneLength; i++)
+				{
+					if (lParents[i] < 0)
+						continue;
+					if (lParents[i] != i)
+						lLabels[i] = lLabels[find(lParents, i)];
+					lMinLabel = Math.min(lMinLabel, lLabels[i]);
+					lMaxLabel = Math.max(lMaxLabel, lLabels[i]);
+				}
+
+				final ArrayList<ComponentStatistics> lSeen = new ArrayList<ComponentStatistics>();
+				lSlabStatistics.set(pSlab, lSeen);
+				if (lMaxLabel == 0)
+					return;
+				final ComponentStatistics[] lStatistics = new ComponentStatistics[lMaxLabel - lMinLabel
+																					+ 1];
+				for (int z = lSlabStarts[pSlab]; z < lSlabStarts[pSlab + 1]; z++)
+					for (int y = 0, i = z * lPlaneLength; y < lHeight; y++)
+						for (int x = 0; x < lWidth; x++, i++)
+						{
+							if (lParents[i] < 0)
+								continue;
+							final int lLabel = lLabels[i];
+							ComponentStatistics lComponentStatistics = lStatistics[lLabel - lMinLabel];
+							if (lComponentStatistics == null)
+							{
+								lComponentStatistics = new ComponentStatistics(lLabel);
+								lStatistics[lLabel - lMinLabel] = lComponentStatistics;
+								lSeen.add(lComponentStatistics);
+							}
+							lComponentStatistics.add(x, y, z);
+						}
+			}
+		});
+
+		final ComponentStatistics[] lStatistics = new ComponentStatistics[lNumberOfComponents];
+		for (final List<ComponentStatistics> lSeen : lSlabStatistics)
+			for (final ComponentStatistics lComponentStatistics : lSeen)
+			{
+				final int lIndex = lComponentStatistics.getLabel() - 1;
+				if (lStatistics[lIndex] == null)
+					lStatistics[lIndex] = lComponentStatistics;
+				else
+					lStatistics[lIndex].merge(lComponentStatistics);
+			}
+
+		final ArrayList<ComponentStatistics> lStatisticsList = new ArrayList<ComponentStatistics>(lNumberOfComponents);
+		for (final ComponentStatistics lComponentStatistics : lStatistics)
+			lStatisticsList.add(lComponentStatistics);
+		return new ComponentLabeling(	lWidth,
+										lHeight,
+										lDepth,
+										lLabels,
+										lStatisticsList);
+	}
+
+	/**
+	 * Links the roots of two voxels, the larger root pointing to the smaller.
+	 */
+	private static void union(int[] pParents, int pA, int pB)
+	{
+		final int lRootA = findAndCompress(pParents, pA);
+		final int lRootB = findAndCompress(pParents, pB);
+		if (lRootA < lRootB)
+			pParents[lRootB] = lRootA;
+		else if (lRootB < lRootA)
+			pParents[lRootA] = lRootB;
+	}
+
+	private static int findAndCompress(int[] pParents, int pIndex)
+	{
+		while (pParents[pIndex] != pIndex)
+		{
+			pParents[pIndex] = pParents[pParents[pIndex]];
+			pIndex = pParents[pIndex];
+		}
+		return pIndex;
+	}
+
+	/**
+	 * Finds a root without modifying the forest, for use while other slabs read
+	 * it concurrently.
+	 */
+	private static int find(int[] pParents, int pIndex)
+	{
+		while (pParents[pIndex] != pIndex)
+			pIndex = pParents[pIndex];
+		return pIndex;
+	}
+
+}
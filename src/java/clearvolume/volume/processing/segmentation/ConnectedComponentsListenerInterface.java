@@ -0,0 +1,22 @@
+package clearvolume.volume.processing.segmentation;
+
+import java.util.List;
+
+public interface ConnectedComponentsListenerInterface
+{
+
+	/**
+	 * Called on the thread of the sender once a volume is labeled.
+	 *
+	 * @param pChannelID
+	 *            channel of the volume
+	 * @param pTimeIndex
+	 *            time index of the volume
+	 * @param pStatistics
+	 *            statistics of the components, in label order
+	 */
+	public void notifyComponents(	int pChannelID,
+									long pTimeIndex,
+									List<ComponentStatistics> pStatistics);
+
+}
@@ -0,0 +1,115 @@
+package clearvolume.volume.processing.segmentation;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.processing.ProcessingSinkAdapter;
+import clearvolume.volume.sink.VolumeSinkInterface;
+
+/**
+ * Labels the connected components of each volume, hands their statistics to the
+ * listeners and relays the volume unchanged. If a label sink is set, it also
+ * receives a label volume per volume, UnsignedShort or UnsignedInt depending
+ * on the number of components, with the metadata of the volume and the label
+ * channel.
+ */
+public class ConnectedComponentsSink extends ProcessingSinkAdapter
+{
+	private final ConnectedComponents mConnectedComponents;
+	private final ForkJoinPool mForkJoinPool;
+	private final CopyOnWriteArrayList<ConnectedComponentsListenerInterface> mListeners = new CopyOnWriteArrayList<ConnectedComponentsListenerInterface>();
+	private volatile VolumeSinkInterface mLabelSink;
+	private volatile int mLabelChannelID = -1;
+	private volatile int mLastNumberOfComponents;
+
+	public ConnectedComponentsSink(float pThreshold, int pConnectivity)
+	{
+		this(pThreshold, pConnectivity, ForkJoinPool.commonPool());
+	}
+
+	public ConnectedComponentsSink(	float pThreshold,
+									int pConnectivity,
+									ForkJoinPool pForkJoinPool)
+	{
+		super();
+		mConnectedComponents = new ConnectedComponents(pThreshold, pConnectivity);
+		mForkJoinPool = pForkJoinPool;
+	}
+
+	public void addListener(ConnectedComponentsListenerInterface pListener)
+	{
+		mListeners.add(pListener);
+	}
+
+	public void removeListener(ConnectedComponentsListenerInterface pListener)
+	{
+		mListeners.remove(pListener);
+	}
+
+	/**
+	 * Sets the sink receiving the label volumes.
+	 *
+	 * @param pLabelSink
+	 *            label sink, or null to not produce label volumes
+	 * @param pLabelChannelID
+	 *            channel of the label volumes, or -1 to keep the channel of the
+	 *            labeled volume
+	 */
+	public void setLabelSink(VolumeSinkInterface pLabelSink, int pLabelChannelID)
+	{
+		mLabelSink = pLabelSink;
+		mLabelChannelID = pLabelChannelID;
+	}
+
+	public int getLastNumberOfComponents()
+	{
+		return mLastNumberOfComponents;
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		final ComponentLabeling lComponentLabeling = mConnectedComponents.label(	pVolume,
+																					mForkJoinPool);
+		mLastNumberOfComponents = lComponentLabeling.getNumberOfComponents();
+		for (final ConnectedComponentsListenerInterface lListener : mListeners)
+			lListener.notifyComponents(	pVolume.getChannelID(),
+										pVolume.getTimeIndex(),
+										lComponentLabeling.getStatistics());
+
+		final VolumeSinkInterface lLabelSink = mLabelSink;
+		if (lLabelSink != null)
+		{
+			final Volume lLabelVolume = requestVolume(	lLabelSink.getManager(),
+														lComponentLabeling.getLabelType(),
+														1,
+														lComponentLabeling.getWidth(),
+														lComponentLabeling.getHeight(),
+														lComponentLabeling.getDepth());
+			lComponentLabeling.writeTo(lLabelVolume);
+			lLabelVolume.copyMetaDataFrom(pVolume);
+			lLabelVolume.setType(lComponentLabeling.getLabelType());
+			lLabelVolume.setDimensionsInVoxels(	1,
+												lComponentLabeling.getWidth(),
+												lComponentLabeling.getHeight(),
+												lComponentLabeling.getDepth());
+			if (mLabelChannelID >= 0)
+				lLabelVolume.setChannelID(mLabelChannelID);
+			lLabelSink.sendVolume(lLabelVolume);
+		}
+
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(pVolume);
+		else
+			pVolume.makeAvailableToManager();
+	}
+
+	@Override
+	public void close()
+	{
+		mListeners.clear();
+		super.close();
+	}
+
+}
@@ -0,0 +1,201 @@
+package clearvolume.volume.processing.segmentation.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.processing.segmentation.ComponentLabeling;
+import clearvolume.volume.processing.segmentation.ComponentStatistics;
+import clearvolume.volume.processing.segmentation.ConnectedComponents;
+import clearvolume.volume.processing.segmentation.ConnectedComponentsListenerInterface;
+import clearvolume.volume.processing.segmentation.ConnectedComponentsSink;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import coremem.enums.NativeTypeEnum;
+
+public class ConnectedComponentsTests
+{
+	private static final int cWidth = 20, cHeight = 16, cDepth = 24;
+
+	@Test
+	public void testBoxesAndStatistics()
+	{
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		// a box crossing all slabs, a small box, and a diagonal pair:
+		fillBox(lValues, 2, 2, 0, 5, 4, cDepth - 1);
+		fillBox(lValues, 10, 10, 3, 12, 11, 4);
+		fillBox(lValues, 15, 2, 10, 15, 2, 10);
+		fillBox(lValues, 16, 3, 11, 16, 3, 11);
+		final Volume lVolume = newVolume(lValues);
+
+		final ForkJoinPool lForkJoinPool = new ForkJoinPool(4);
+		try
+		{
+			final ComponentLabeling l6 = new ConnectedComponents(0.5f, 6).label(	lVolume,
+																					lForkJoinPool);
+			assertEquals(4, l6.getNumberOfComponents());
+
+			final ComponentLabeling l26 = new ConnectedComponents(0.5f, 26).label(	lVolume,
+																					lForkJoinPool);
+			assertEquals(3, l26.getNumberOfComponents());
+
+			// labels follow the raster order of the first voxel of each component:
+			final ComponentStatistics lLong = l26.getStatistics().get(0);
+			assertEquals(1, lLong.getLabel());
+			assertEquals(4 * 3 * cDepth, lLong.getVoxelCount());
+			assertArrayEquals(new int[]
+			{ 2, 2, 0 }, lLong.getBoundingBoxMin());
+			assertArrayEquals(new int[]
+			{ 5, 4, cDepth - 1 }, lLong.getBoundingBoxMax());
+			assertArrayEquals(new double[]
+			{ 3.5, 3, (cDepth - 1) / 2.0 }, lLong.getCentroid(), 1e-9);
+
+			final ComponentStatistics lSmall = l26.getStatistics().get(1);
+			assertEquals(3 * 2 * 2, lSmall.getVoxelCount());
+			assertEquals(lSmall.getLabel(), l26.getLabel(11, 10, 4));
+			assertEquals(0, l26.getLabel(0, 0, 0));
+
+			assertEquals(2, l26.getStatistics().get(2).getVoxelCount());
+		}
+		finally
+		{
+			lForkJoinPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testSlabCountDoesNotChangeLabels()
+	{
+		final Random lRandom = new Random(11);
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		for (int i = 0; i < lValues.length; i++)
+			lValues[i] = lRandom.nextFloat() < 0.3f ? 1 : 0;
+		final Volume lVolume = newVolume(lValues);
+
+		final ForkJoinPool lSingleThreadPool = new ForkJoinPool(1);
+		final ForkJoinPool lEightThreadPool = new ForkJoinPool(8);
+		try
+		{
+			for (final int lConnectivity : new int[]
+			{ 6, 18, 26 })
+			{
+				final ConnectedComponents lConnectedComponents = new ConnectedComponents(	0.5f,
+																							lConnectivity);
+				final ComponentLabeling lOneSlab = lConnectedComponents.label(	lVolume,
+																				lSingleThreadPool);
+				final ComponentLabeling lManySlabs = lConnectedComponents.label(	lVolume,
+																					lEightThreadPool);
+				assertEquals(	lOneSlab.getNumberOfComponents(),
+								lManySlabs.getNumberOfComponents());
+				assertArrayEquals(lOneSlab.getLabels(), lManySlabs.getLabels());
+
+				long lTotal = 0;
+				for (final ComponentStatistics lStatistics : lManySlabs.getStatistics())
+					lTotal += lStatistics.getVoxelCount();
+				long lForeground = 0;
+				for (final float lValue : lValues)
+					lForeground += lValue > 0.5f ? 1 : 0;
+				assertEquals(lForeground, lTotal);
+			}
+		}
+		finally
+		{
+			lSingleThreadPool.shutdown();
+			lEightThreadPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testSink()
+	{
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		fillBox(lValues, 1, 1, 1, 2, 2, 2);
+		fillBox(lValues, 8, 8, 8, 9, 9, 9);
+		final Volume lVolume = newVolume(lValues);
+		lVolume.setManager(new VolumeManager(2));
+		lVolume.setTimeIndex(5);
+
+		final ConnectedComponentsSink lConnectedComponentsSink = new ConnectedComponentsSink(	0.5f,
+																								6);
+		final ArrayList<Integer> lCounts = new ArrayList<Integer>();
+		lConnectedComponentsSink.addListener(new ConnectedComponentsListenerInterface()
+		{
+			@Override
+			public void notifyComponents(	int pChannelID,
+											long pTimeIndex,
+											List<ComponentStatistics> pStatistics)
+			{
+				assertEquals(5, pTimeIndex);
+				lCounts.add(pStatistics.size());
+			}
+		});
+		final ArrayList<Volume> lLabelVolumes = new ArrayList<Volume>();
+		lConnectedComponentsSink.setLabelSink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				lLabelVolumes.add(pVolume);
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return null;
+			}
+		}, 7);
+
+		lConnectedComponentsSink.sendVolume(lVolume);
+
+		assertEquals(1, lCounts.size());
+		assertEquals(2, (int) lCounts.get(0));
+		assertEquals(2, lConnectedComponentsSink.getLastNumberOfComponents());
+		final Volume lLabelVolume = lLabelVolumes.get(0);
+		assertEquals(NativeTypeEnum.UnsignedShort, lLabelVolume.getNativeType());
+		assertEquals(7, lLabelVolume.getChannelID());
+		assertEquals(5, lLabelVolume.getTimeIndex());
+		assertEquals(cWidth, lLabelVolume.getWidthInVoxels());
+		final int lIndex = (8 * cHeight + 8) * cWidth + 8;
+		assertEquals(2, lLabelVolume.getDataBuffer()
+									.duplicate()
+									.order(ByteOrder.nativeOrder())
+									.getShort(2 * lIndex));
+
+		lConnectedComponentsSink.close();
+	}
+
+	private static void fillBox(float[] pValues,
+								int pX0,
+								int pY0,
+								int pZ0,
+								int pX1,
+								int pY1,
+								int pZ1)
+	{
+		for (int z = pZ0; z <= pZ1; z++)
+			for (int y = pY0; y <= pY1; y++)
+				for (int x = pX0; x <= pX1; x++)
+					pValues[(z * cHeight + y) * cWidth + x] = 1;
+	}
+
+	private static Volume newVolume(float[] pValues)
+	{
+		final Volume lVolume = new Volume(	NativeTypeEnum.UnsignedByte,
+											1,
+											cWidth,
+											cHeight,
+											cDepth);
+		VoxelAccess.writeSlices(lVolume, 0, cDepth, pValues);
+		return lVolume;
+	}
+
+}
@@ -0,0 +1,73 @@
+package clearvolume.volume.processing.spots;
+
+/**
+ * Spot found by a {@link SpotDetector}: position in voxel coordinates, refined
+ * below the voxel, intensity of the volume and difference of Gaussians response
+ * at the maximum, and standard deviation of the scale it was found at.
+ */
+public class Spot
+{
+	private final float mX, mY, mZ;
+	private final float mIntensity;
+	private final float mResponse;
+	private final float mScale;
+
+	public Spot(float pX,
+				float pY,
+				float pZ,
+				float pIntensity,
+				float pResponse,
+				float pScale)
+	{
+		super();
+		mX = pX;
+		mY = pY;
+		mZ = pZ;
+		mIntensity = pIntensity;
+		mResponse = pResponse;
+		mScale = pScale;
+	}
+
+	public float getX()
+	{
+		return mX;
+	}
+
+	public float getY()
+	{
+		return mY;
+	}
+
+	public float getZ()
+	{
+		return mZ;
+	}
+
+	public float getIntensity()
+	{
+		return mIntensity;
+	}
+
+	public float getResponse()
+	{
+		return mResponse;
+	}
+
+	public float getScale()
+	{
+		return mScale;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(	"Spot [x=%g, y=%g, z=%g, intensity=%g, response=%g, scale=%g]",
+								mX,
+								mY,
+								mZ,
+								mIntensity,
+								mResponse,
+								mScale);
+	}
+
+}
@@ -0,0 +1,102 @@
+package clearvolume.volume.processing.spots;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.relay.RelaySinkAdapter;
+import clearvolume.volume.sink.relay.RelaySinkInterface;
+
+/**
+ * Finds the spots of each volume, hands them to the listeners and relays the
+ * volume unchanged. The last spots of each channel are kept.
+ */
+public class SpotDetectionSink extends RelaySinkAdapter	implements
+														RelaySinkInterface,
+														ClearVolumeCloseable
+{
+	private final SpotDetector mSpotDetector;
+	private final ForkJoinPool mForkJoinPool;
+	private final CopyOnWriteArrayList<SpotListenerInterface> mListeners = new CopyOnWriteArrayList<SpotListenerInterface>();
+	private final ConcurrentHashMap<Integer, SpotList> mLastSpotLists = new ConcurrentHashMap<Integer, SpotList>();
+
+	public SpotDetectionSink(double pSigma, float pThreshold)
+	{
+		this(new SpotDetector(pSigma, pThreshold), ForkJoinPool.commonPool());
+	}
+
+	public SpotDetectionSink(	SpotDetector pSpotDetector,
+								ForkJoinPool pForkJoinPool)
+	{
+		super();
+		mSpotDetector = pSpotDetector;
+		mForkJoinPool = pForkJoinPool;
+	}
+
+	public SpotDetector getSpotDetector()
+	{
+		return mSpotDetector;
+	}
+
+	public void addListener(SpotListenerInterface pListener)
+	{
+		mListeners.add(pListener);
+	}
+
+	public void removeListener(SpotListenerInterface pListener)
+	{
+		mListeners.remove(pListener);
+	}
+
+	/**
+	 * Returns the spots of the last volume of a channel.
+	 *
+	 * @param pChannelID
+	 *            channel
+	 * @return spots, or null if no volume of that channel was received yet
+	 */
+	public SpotList getLastSpots(int pChannelID)
+	{
+		return mLastSpotLists.get(pChannelID);
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		final List<Spot> lSpots = mSpotDetector.detect(pVolume, mForkJoinPool);
+		final SpotList lSpotList = new SpotList(pVolume.getChannelID(),
+												pVolume.getTimeIndex(),
+												pVolume.getWidthInVoxels(),
+												pVolume.getHeightInVoxels(),
+												pVolume.getDepthInVoxels(),
+												lSpots);
+		mLastSpotLists.put(pVolume.getChannelID(), lSpotList);
+		for (final SpotListenerInterface lListener : mListeners)
+			lListener.notifySpots(lSpotList);
+
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(pVolume);
+		else
+			pVolume.makeAvailableToManager();
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		if (getRelaySink() != null)
+			return getRelaySink().getManager();
+		return null;
+	}
+
+	@Override
+	public void close()
+	{
+		mListeners.clear();
+		mSpotDetector.close();
+	}
+
+}
@@ -0,0 +1,348 @@
+package clearvolume.volume.processing.spots;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.processing.DifferenceOfGaussiansFilter;
+import clearvolume.volume.processing.SlabRunner;
+import clearvolume.volume.processing.SlabRunner.SlabTaskInterface;
+import clearvolume.volume.processing.VoxelAccess;
+import coremem.enums.NativeTypeEnum;
+
+/**
+ * Finds bright spots as 3D local maxima of the difference of Gaussians of the
+ * first element of each voxel. For each scale, the difference of the blurs with
+ * standard deviations sigma and 1.6 sigma of that element goes into a pooled
+ * Float volume with one element per voxel, and its maxima above the threshold
+ * are collected over z-slabs in parallel. A
+ * maximum must be strictly larger than its 26 neighbours that come before it in
+ * raster order and at least as large as the others, so that plateaus give a
+ * single spot. Positions are refined below the voxel with a parabola through
+ * the neighbours along each axis. With several scales, spots closer than
+ * sqrt(3) times the larger of their scales are suppressed in favour of the one
+ * with the strongest response.
+ */
+public class SpotDetector implements ClearVolumeCloseable
+{
+	private static final double cScaleRatio = 1.6;
+	private static final int cSlabsPerThread = 2;
+
+	private static final Comparator<Spot> cStrongestFirst = new Comparator<Spot>()
+	{
+		@Override
+		public int compare(Spot pA, Spot pB)
+		{
+			return Float.compare(pB.getResponse(), pA.getResponse());
+		}
+	};
+
+	private final double[] mSigmas;
+	private final DifferenceOfGaussiansFilter[] mFilters;
+	private final float mThreshold;
+	private final VolumeManager mVolumeManager = new VolumeManager(1);
+
+	/**
+	 * @param pSigma
+	 *            standard deviation matching the spots, in voxels, about their
+	 *            radius divided by sqrt(3)
+	 * @param pThreshold
+	 *            minimal difference of Gaussians response
+	 */
+	public SpotDetector(double pSigma, float pThreshold)
+	{
+		this(new double[]
+		{ pSigma }, pThreshold);
+	}
+
+	/**
+	 * @param pSigmas
+	 *            standard deviations of the scales to search, in voxels
+	 * @param pThreshold
+	 *            minimal difference of Gaussians response
+	 */
+	public SpotDetector(double[] pSigmas, float pThreshold)
+	{
+		super();
+		if (pSigmas.length == 0)
+			throw new IllegalArgumentException("At least one scale is needed");
+		mSigmas = pSigmas.clone();
+		mFilters = new DifferenceOfGaussiansFilter[pSigmas.length];
+		for (int s = 0; s < pSigmas.length; s++)
+		{
+			if (pSigmas[s] <= 0)
+				throw new IllegalArgumentException("Standard deviations must be positive");
+			mFilters[s] = new DifferenceOfGaussiansFilter(pSigmas[s],
+															cScaleRatio * pSigmas[s]);
+		}
+		mThreshold = pThreshold;
+	}
+
+	public double[] getSigmas()
+	{
+		return mSigmas.clone();
+	}
+
+	public float getThreshold()
+	{
+		return mThreshold;
+	}
+
+	/**
+	 * Finds the spots of a volume.
+	 *
+	 * @param pVolume
+	 *            volume
+	 * @param pForkJoinPool
+	 *            pool running the slabs
+	 * @return spots, strongest first
+	 */
+	public List<Spot> detect(Volume pVolume, ForkJoinPool pForkJoinPool)
+	{
+		final Volume lResponse = mVolumeManager.requestAndWaitForVolume(	0,
+																		TimeUnit.MILLISECONDS,
+																		NativeTypeEnum.Float,
+																		1,
+																		pVolume.getWidthInVoxels(),
+																		pVolume.getHeightInVoxels(),
+																		VoxelAccess.getDepth(pVolume));
+		final ArrayList<Spot> lSpots = new ArrayList<Spot>();
+		try
+		{
+			for (int s = 0; s < mSigmas.length; s++)
+			{
+				mFilters[s].applyToFirstElement(pVolume, lResponse, pForkJoinPool);
+				lSpots.addAll(findMaxima(	pVolume,
+											lResponse,
+											(float) mSigmas[s],
+											pForkJoinPool));
+			}
+		}
+		finally
+		{
+			lResponse.makeAvailableToManager();
+		}
+
+		Collections.sort(lSpots, cStrongestFirst);
+		if (mSigmas.length > 1)
+			return suppressOverlaps(lSpots);
+		return lSpots;
+	}
+
+	private List<Spot> findMaxima(	final Volume pVolume,
+									final Volume pResponse,
+									final float pScale,
+									ForkJoinPool pForkJoinPool)
+	{
+		final int lElementSize = (int) pVolume.getElementSize();
+		final int lWidth = (int) pVolume.getWidthInVoxels();
+		final int lHeight = (int) pVolume.getHeightInVoxels();
+		final int lDepth = VoxelAccess.getDepth(pVolume);
+		final int lPlaneLength = lWidth * lHeight;
+		final int lNumberOfSlabs = Math.min(lDepth,
+											cSlabsPerThread * pForkJoinPool.getParallelism());
+
+		final List<List<Spot>> lSlabSpots = new ArrayList<List<Spot>>(Collections.<List<Spot>> nCopies(	lNumberOfSlabs,
+																										null));
+		SlabRunner.run(pForkJoinPool, lNumberOfSlabs, new SlabTaskInterface()
+		{
+			@Override
+			public void run(int pSlab)
+			{
+				final int lZStart = (int) ((long) pSlab * lDepth / lNumberOfSlabs);
+				final int lZEnd = (int) ((long) (pSlab + 1) * lDepth / lNumberOfSlabs);
+
+				// response with one slice on each side, edges repeated:
+				final float[] lResponse = new float[(lZEnd - lZStart + 2) * lPlaneLength];
+				VoxelAccess.readSlices(pResponse, lZStart - 1, lZEnd + 1, lResponse);
+				final float[] lIntensities = new float[(lZEnd - lZStart) * lPlaneLength
+														* lElementSize];
+				VoxelAccess.readSlices(pVolume, lZStart, lZEnd, lIntensities);
+
+				final ArrayList<Spot> lSpots = new ArrayList<Spot>();
+				final float[] lNeighbours = new float[6];
+				for (int z = lZStart; z < lZEnd; z++)
+					for (int y = 0; y < lHeight; y++)
+						for (int x = 0; x < lWidth; x++)
+						{
+							final int lIndex = ((z - lZStart + 1) * lHeight + y) * lWidth
+												+ x;
+							final float lValue = lResponse[lIndex];
+							if (lValue <= mThreshold || !isMaximum(	lResponse,
+																	lValue,
+																	x,
+																	y,
+																	z,
+																	lZStart,
+																	lWidth,
+																	lHeight,
+																	lDepth))
+								continue;
+
+							// neighbours along x, y and z, or the value itself outside:
+							lNeighbours[0] = x > 0 ? lResponse[lIndex - 1] : lValue;
+							lNeighbours[1] = x < lWidth - 1	? lResponse[lIndex + 1]
+															: lValue;
+							lNeighbours[2] = y > 0	? lResponse[lIndex - lWidth]
+													: lValue;
+							lNeighbours[3] = y < lHeight - 1	? lResponse[lIndex + lWidth]
+																: lValue;
+							lNeighbours[4] = z > 0	? lResponse[lIndex - lPlaneLength]
+													: lValue;
+							lNeighbours[5] = z < lDepth - 1	? lResponse[lIndex + lPlaneLength]
+															: lValue;
+
+							lSpots.add(new Spot(x + refine(	lNeighbours[0],
+															lValue,
+															lNeighbours[1]),
+												y + refine(	lNeighbours[2],
+															lValue,
+															lNeighbours[3]),
+												z + refine(	lNeighbours[4],
+															lValue,
+															lNeighbours[5]),
+												lIntensities[(lIndex - lPlaneLength) * lElementSize],
+												lValue,
+												pScale));
+						}
+				lSlabSpots.set(pSlab, lSpots);
+			}
+		});
+
+		final ArrayList<Spot> lSpots = new ArrayList<Spot>();
+		for (final List<Spot> lSpotsOfSlab : lSlabSpots)
+			lSpots.addAll(lSpotsOfSlab);
+		return lSpots;
+	}
+
+	private static boolean isMaximum(	float[] pResponse,
+										float pValue,
+										int pX,
+										int pY,
+										int pZ,
+										int pZStart,
+										int pWidth,
+										int pHeight,
+										int pDepth)
+	{
+		for (int dz = -1; dz <= 1; dz++)
+		{
+			final int lZ = pZ + dz;
+			if (lZ < 0 || lZ >= pDepth)
+				continue;
+			for (int dy = -1; dy <= 1; dy++)
+			{
+				final int lY = pY + dy;
+				if (lY < 0 || lY >= pHeight)
+					continue;
+				for (int dx = -1; dx <= 1; dx++)
+				{
+					final int lX = pX + dx;
+					if (lX < 0 || lX >= pWidth || (dx == 0 && dy == 0 && dz == 0))
+						continue;
+					final float lNeighbour = pResponse[((lZ - pZStart + 1) * pHeight + lY)
+														* pWidth
+														+ lX];
+					final boolean lBefore = dz < 0 || (dz == 0 && dy < 0)
+											|| (dz == 0 && dy == 0 && dx < 0);
+					if (lBefore ? lNeighbour >= pValue : lNeighbour > pValue)
+						return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offset of the vertex of the parabola through three equally
+	 * spaced values, within half a voxel.
+	 */
+	private static float refine(float pPrevious, float pValue, float pNext)
+	{
+		final float lCurvature = pPrevious - 2 * pValue + pNext;
+		if (lCurvature >= 0)
+			return 0;
+		final float lOffset = 0.5f * (pPrevious - pNext) / lCurvature;
+		return Math.max(-0.5f, Math.min(0.5f, lOffset));
+	}
+
+	/**
+	 * Keeps the strongest of overlapping spots, using a grid of cells as large as
+	 * the largest suppression distance so that only neighbouring cells need to
+	 * be looked at.
+	 */
+	private List<Spot> suppressOverlaps(List<Spot> pSpotsStrongestFirst)
+	{
+		double lMaxSigma = 0;
+		for (final double lSigma : mSigmas)
+			lMaxSigma = Math.max(lMaxSigma, lSigma);
+		final double lCellSize = Math.sqrt(3) * lMaxSigma;
+
+		final HashMap<Long, ArrayList<Spot>> lGrid = new HashMap<Long, ArrayList<Spot>>();
+		final ArrayList<Spot> lKept = new ArrayList<Spot>();
+		for (final Spot lSpot : pSpotsStrongestFirst)
+		{
+			final long lCellX = (long) Math.floor(lSpot.getX() / lCellSize);
+			final long lCellY = (long) Math.floor(lSpot.getY() / lCellSize);
+			final long lCellZ = (long) Math.floor(lSpot.getZ() / lCellSize);
+
+			boolean lOverlaps = false;
+			search: for (long cz = lCellZ - 1; cz <= lCellZ + 1; cz++)
+				for (long cy = lCellY - 1; cy <= lCellY + 1; cy++)
+					for (long cx = lCellX - 1; cx <= lCellX + 1; cx++)
+					{
+						final ArrayList<Spot> lCell = lGrid.get(cellKey(cx,
+																		cy,
+																		cz));
+						if (lCell == null)
+							continue;
+						for (final Spot lOther : lCell)
+						{
+							final double lDistance = Math.sqrt(3) * Math.max(	lSpot.getScale(),
+																				lOther.getScale());
+							final double dx = lSpot.getX() - lOther.getX();
+							final double dy = lSpot.getY() - lOther.getY();
+							final double dz = lSpot.getZ() - lOther.getZ();
+							if (dx * dx + dy * dy + dz * dz < lDistance * lDistance)
+							{
+								lOverlaps = true;
+								break search;
+							}
+						}
+					}
+			if (lOverlaps)
+				continue;
+
+			lKept.add(lSpot);
+			final Long lKey = cellKey(lCellX, lCellY, lCellZ);
+			ArrayList<Spot> lCell = lGrid.get(lKey);
+			if (lCell == null)
+			{
+				lCell = new ArrayList<Spot>();
+				lGrid.put(lKey, lCell);
+			}
+			lCell.add(lSpot);
+		}
+		return lKept;
+	}
+
+	private static Long cellKey(long pX, long pY, long pZ)
+	{
+		return ((pZ & 0x1FFFFF) << 42) | ((pY & 0x1FFFFF) << 21)
+				| (pX & 0x1FFFFF);
+	}
+
+	@Override
+	public void close()
+	{
+		mVolumeManager.close();
+	}
+
+}
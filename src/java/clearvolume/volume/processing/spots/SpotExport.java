@@ -0,0 +1,110 @@
+package clearvolume.volume.processing.spots;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Writes spot lists as CSV, one line per spot, or in a compact big-endian
+ * binary format, one record per spot list, that can be read back. Records can
+ * be appended to the same stream, time point after time point.
+ */
+public class SpotExport
+{
+	private static final int cMagic = 0x43565350; // CVSP
+
+	public static final String cCSVHeader = "channel,timeindex,x,y,z,intensity,response,scale";
+
+	public static void writeCSVHeader(Writer pWriter) throws IOException
+	{
+		pWriter.write(cCSVHeader);
+		pWriter.write('\n');
+	}
+
+	public static void writeCSV(SpotList pSpotList, Writer pWriter) throws IOException
+	{
+		for (final Spot lSpot : pSpotList.getSpots())
+			pWriter.write(String.format(Locale.US,
+										"%d,%d,%g,%g,%g,%g,%g,%g\n",
+										pSpotList.getChannelID(),
+										pSpotList.getTimeIndex(),
+										lSpot.getX(),
+										lSpot.getY(),
+										lSpot.getZ(),
+										lSpot.getIntensity(),
+										lSpot.getResponse(),
+										lSpot.getScale()));
+	}
+
+	public static void writeBinary(	SpotList pSpotList,
+									DataOutputStream pDataOutputStream) throws IOException
+	{
+		pDataOutputStream.writeInt(cMagic);
+		pDataOutputStream.writeInt(pSpotList.getChannelID());
+		pDataOutputStream.writeLong(pSpotList.getTimeIndex());
+		pDataOutputStream.writeLong(pSpotList.getWidth());
+		pDataOutputStream.writeLong(pSpotList.getHeight());
+		pDataOutputStream.writeLong(pSpotList.getDepth());
+		pDataOutputStream.writeInt(pSpotList.size());
+		for (final Spot lSpot : pSpotList.getSpots())
+		{
+			pDataOutputStream.writeFloat(lSpot.getX());
+			pDataOutputStream.writeFloat(lSpot.getY());
+			pDataOutputStream.writeFloat(lSpot.getZ());
+			pDataOutputStream.writeFloat(lSpot.getIntensity());
+			pDataOutputStream.writeFloat(lSpot.getResponse());
+			pDataOutputStream.writeFloat(lSpot.getScale());
+		}
+	}
+
+	/**
+	 * Reads the next spot list written by
+	 * {@link #writeBinary(SpotList, DataOutputStream)}.
+	 *
+	 * @param pDataInputStream
+	 *            input stream
+	 * @return spot list, or null at the end of the stream
+	 * @throws IOException
+	 *             if the stream is truncated or not a spot stream
+	 */
+	public static SpotList readBinary(DataInputStream pDataInputStream) throws IOException
+	{
+		final int lMagic;
+		try
+		{
+			lMagic = pDataInputStream.readInt();
+		}
+		catch (final EOFException e)
+		{
+			return null;
+		}
+		if (lMagic != cMagic)
+			throw new IOException("Not a spot list record");
+
+		final int lChannelID = pDataInputStream.readInt();
+		final long lTimeIndex = pDataInputStream.readLong();
+		final long lWidth = pDataInputStream.readLong();
+		final long lHeight = pDataInputStream.readLong();
+		final long lDepth = pDataInputStream.readLong();
+		final int lNumberOfSpots = pDataInputStream.readInt();
+		final ArrayList<Spot> lSpots = new ArrayList<Spot>(lNumberOfSpots);
+		for (int i = 0; i < lNumberOfSpots; i++)
+			lSpots.add(new Spot(pDataInputStream.readFloat(),
+								pDataInputStream.readFloat(),
+								pDataInputStream.readFloat(),
+								pDataInputStream.readFloat(),
+								pDataInputStream.readFloat(),
+								pDataInputStream.readFloat()));
+		return new SpotList(lChannelID,
+							lTimeIndex,
+							lWidth,
+							lHeight,
+							lDepth,
+							lSpots);
+	}
+
+}
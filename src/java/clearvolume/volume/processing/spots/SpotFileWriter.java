@@ -0,0 +1,75 @@
+package clearvolume.volume.processing.spots;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import clearvolume.ClearVolumeCloseable;
+
+/**
+ * Listener appending every spot list it is notified of to a CSV or binary file,
+ * see {@link SpotExport}.
+ */
+public class SpotFileWriter implements
+							SpotListenerInterface,
+							ClearVolumeCloseable
+{
+	private final DataOutputStream mDataOutputStream;
+	private final Writer mWriter;
+
+	public SpotFileWriter(File pFile, boolean pBinary) throws IOException
+	{
+		super();
+		final BufferedOutputStream lOutputStream = new BufferedOutputStream(new FileOutputStream(pFile));
+		if (pBinary)
+		{
+			mDataOutputStream = new DataOutputStream(lOutputStream);
+			mWriter = null;
+		}
+		else
+		{
+			mDataOutputStream = null;
+			mWriter = new OutputStreamWriter(	lOutputStream,
+												StandardCharsets.UTF_8);
+			SpotExport.writeCSVHeader(mWriter);
+		}
+	}
+
+	@Override
+	public synchronized void notifySpots(SpotList pSpotList)
+	{
+		try
+		{
+			if (mDataOutputStream != null)
+				SpotExport.writeBinary(pSpotList, mDataOutputStream);
+			else
+				SpotExport.writeCSV(pSpotList, mWriter);
+		}
+		catch (final IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		try
+		{
+			if (mDataOutputStream != null)
+				mDataOutputStream.close();
+			else
+				mWriter.close();
+		}
+		catch (final IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package clearvolume.volume.processing.spots;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Spots of one channel at one time point, strongest first, together with the
+ * dimensions of the volume they were found in.
+ */
+public class SpotList
+{
+	private final int mChannelID;
+	private final long mTimeIndex;
+	private final long mWidth, mHeight, mDepth;
+	private final List<Spot> mSpots;
+
+	public SpotList(int pChannelID,
+					long pTimeIndex,
+					long pWidth,
+					long pHeight,
+					long pDepth,
+					List<Spot> pSpots)
+	{
+		super();
+		mChannelID = pChannelID;
+		mTimeIndex = pTimeIndex;
+		mWidth = pWidth;
+		mHeight = pHeight;
+		mDepth = pDepth;
+		mSpots = Collections.unmodifiableList(pSpots);
+	}
+
+	public int getChannelID()
+	{
+		return mChannelID;
+	}
+
+	public long getTimeIndex()
+	{
+		return mTimeIndex;
+	}
+
+	public long getWidth()
+	{
+		return mWidth;
+	}
+
+	public long getHeight()
+	{
+		return mHeight;
+	}
+
+	public long getDepth()
+	{
+		return mDepth;
+	}
+
+	public List<Spot> getSpots()
+	{
+		return mSpots;
+	}
+
+	public int size()
+	{
+		return mSpots.size();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(	"SpotList [channel=%d, timeindex=%d, spots=%d]",
+								mChannelID,
+								mTimeIndex,
+								mSpots.size());
+	}
+
+}
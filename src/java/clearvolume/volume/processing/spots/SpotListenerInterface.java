@@ -0,0 +1,14 @@
+package clearvolume.volume.processing.spots;
+
+public interface SpotListenerInterface
+{
+
+	/**
+	 * Called on the thread of the sender once the spots of a volume are found.
+	 *
+	 * @param pSpotList
+	 *            spots with their channel and time point
+	 */
+	public void notifySpots(SpotList pSpotList);
+
+}
@@ -0,0 +1,282 @@
+package clearvolume.volume.processing.spots.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.processing.spots.Spot;
+import clearvolume.volume.processing.spots.SpotDetectionSink;
+import clearvolume.volume.processing.spots.SpotDetector;
+import clearvolume.volume.processing.spots.SpotExport;
+import clearvolume.volume.processing.spots.SpotList;
+import clearvolume.volume.processing.spots.SpotListenerInterface;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import coremem.enums.NativeTypeEnum;
+
+public class SpotDetectionTests
+{
+	private static final int cWidth = 40, cHeight = 32, cDepth = 28;
+
+	@Test
+	public void testPositionsAndSlabs()
+	{
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		addBlob(lValues, 10.3, 12, 8, 1.5, 1000);
+		addBlob(lValues, 28, 20.6, 19.2, 1.5, 600);
+		addBlob(lValues, 30, 6, 4, 1.5, 300);
+		final Volume lVolume = newVolume(lValues);
+
+		final ForkJoinPool lSingleThreadPool = new ForkJoinPool(1);
+		final ForkJoinPool lEightThreadPool = new ForkJoinPool(8);
+		final SpotDetector lSpotDetector = new SpotDetector(1.5, 5);
+		try
+		{
+			final List<Spot> lSpots = lSpotDetector.detect(	lVolume,
+															lEightThreadPool);
+			assertEquals(3, lSpots.size());
+			assertSpot(lSpots.get(0), 10.3, 12, 8);
+			assertSpot(lSpots.get(1), 28, 20.6, 19.2);
+			assertSpot(lSpots.get(2), 30, 6, 4);
+			assertTrue(lSpots.get(0).getIntensity() > lSpots.get(1)
+															.getIntensity());
+			assertEquals(1.5f, lSpots.get(0).getScale(), 0);
+
+			final List<Spot> lOneSlab = lSpotDetector.detect(	lVolume,
+																lSingleThreadPool);
+			assertEquals(lSpots.size(), lOneSlab.size());
+			for (int i = 0; i < lSpots.size(); i++)
+			{
+				assertEquals(lSpots.get(i).getX(), lOneSlab.get(i).getX(), 1e-4);
+				assertEquals(lSpots.get(i).getResponse(), lOneSlab.get(i)
+																	.getResponse(), 1e-3);
+			}
+		}
+		finally
+		{
+			lSpotDetector.close();
+			lSingleThreadPool.shutdown();
+			lEightThreadPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testFirstElementOnly()
+	{
+		final float[] lFirst = new float[cWidth * cHeight * cDepth];
+		final float[] lSecond = new float[cWidth * cHeight * cDepth];
+		addBlob(lFirst, 12, 14, 10, 1.5, 800);
+		addBlob(lSecond, 30, 20, 18, 1.5, 2000);
+		final float[] lValues = new float[2 * lFirst.length];
+		for (int i = 0; i < lFirst.length; i++)
+		{
+			lValues[2 * i] = lFirst[i];
+			lValues[2 * i + 1] = lSecond[i];
+		}
+		final Volume lVolume = new Volume(	NativeTypeEnum.UnsignedShort,
+											2,
+											cWidth,
+											cHeight,
+											cDepth);
+		VoxelAccess.writeSlices(lVolume, 0, cDepth, lValues);
+
+		final ForkJoinPool lForkJoinPool = new ForkJoinPool(4);
+		final SpotDetector lSpotDetector = new SpotDetector(1.5, 5);
+		try
+		{
+			final List<Spot> lSpots = lSpotDetector.detect(	lVolume,
+															lForkJoinPool);
+			assertEquals(1, lSpots.size());
+			assertSpot(lSpots.get(0), 12, 14, 10);
+			assertEquals(800, lSpots.get(0).getIntensity(), 1);
+		}
+		finally
+		{
+			lSpotDetector.close();
+			lForkJoinPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testPlateauAndScales()
+	{
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		addBlob(lValues, 10, 10, 10, 1, 1000);
+		addBlob(lValues, 26, 18, 14, 3, 1000);
+		final Volume lVolume = newVolume(lValues);
+
+		final ForkJoinPool lForkJoinPool = new ForkJoinPool(4);
+		final SpotDetector lSpotDetector = new SpotDetector(new double[]
+		{ 1, 3 }, 5);
+		try
+		{
+			final List<Spot> lSpots = lSpotDetector.detect(	lVolume,
+															lForkJoinPool);
+			assertEquals(2, lSpots.size());
+			for (final Spot lSpot : lSpots)
+				if (lSpot.getX() < 18)
+				{
+					assertSpot(lSpot, 10, 10, 10);
+					assertEquals(1, lSpot.getScale(), 0);
+				}
+				else
+				{
+					assertSpot(lSpot, 26, 18, 14);
+					assertEquals(3, lSpot.getScale(), 0);
+				}
+
+			// a flat box gives a single spot:
+			final float[] lBox = new float[cWidth * cHeight * cDepth];
+			for (int z = 12; z < 14; z++)
+				for (int y = 12; y < 14; y++)
+					for (int x = 12; x < 14; x++)
+						lBox[(z * cHeight + y) * cWidth + x] = 1000;
+			assertEquals(1, new SpotDetector(0.5, 5).detect(	newVolume(lBox),
+															lForkJoinPool)
+													.size());
+		}
+		finally
+		{
+			lSpotDetector.close();
+			lForkJoinPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testSinkAndExport() throws IOException
+	{
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		addBlob(lValues, 12, 14, 10, 1.5, 1000);
+		addBlob(lValues, 30, 10, 20, 1.5, 800);
+		final Volume lVolume = newVolume(lValues);
+		lVolume.setManager(new VolumeManager(2));
+		lVolume.setChannelID(2);
+		lVolume.setTimeIndex(9);
+
+		final SpotDetectionSink lSpotDetectionSink = new SpotDetectionSink(	1.5,
+																			5);
+		final ArrayList<SpotList> lSpotLists = new ArrayList<SpotList>();
+		lSpotDetectionSink.addListener(new SpotListenerInterface()
+		{
+			@Override
+			public void notifySpots(SpotList pSpotList)
+			{
+				lSpotLists.add(pSpotList);
+			}
+		});
+		final ArrayList<Volume> lRelayed = new ArrayList<Volume>();
+		lSpotDetectionSink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				lRelayed.add(pVolume);
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return null;
+			}
+		});
+
+		lSpotDetectionSink.sendVolume(lVolume);
+		lSpotDetectionSink.close();
+
+		assertEquals(1, lSpotLists.size());
+		assertSame(lVolume, lRelayed.get(0));
+		final SpotList lSpotList = lSpotLists.get(0);
+		assertSame(lSpotList, lSpotDetectionSink.getLastSpots(2));
+		assertNull(lSpotDetectionSink.getLastSpots(0));
+		assertEquals(2, lSpotList.getChannelID());
+		assertEquals(9, lSpotList.getTimeIndex());
+		assertEquals(cWidth, lSpotList.getWidth());
+		assertEquals(2, lSpotList.size());
+
+		final StringWriter lStringWriter = new StringWriter();
+		SpotExport.writeCSVHeader(lStringWriter);
+		SpotExport.writeCSV(lSpotList, lStringWriter);
+		final String[] lLines = lStringWriter.toString().split("\n");
+		assertEquals(3, lLines.length);
+		assertEquals(SpotExport.cCSVHeader, lLines[0]);
+		assertTrue(lLines[1].startsWith("2,9,"));
+
+		final ByteArrayOutputStream lByteArrayOutputStream = new ByteArrayOutputStream();
+		final DataOutputStream lDataOutputStream = new DataOutputStream(lByteArrayOutputStream);
+		SpotExport.writeBinary(lSpotList, lDataOutputStream);
+		SpotExport.writeBinary(lSpotList, lDataOutputStream);
+		lDataOutputStream.close();
+
+		final DataInputStream lDataInputStream = new DataInputStream(new ByteArrayInputStream(lByteArrayOutputStream.toByteArray()));
+		for (int r = 0; r < 2; r++)
+		{
+			final SpotList lRead = SpotExport.readBinary(lDataInputStream);
+			assertEquals(9, lRead.getTimeIndex());
+			assertEquals(cDepth, lRead.getDepth());
+			assertEquals(2, lRead.size());
+			for (int i = 0; i < 2; i++)
+			{
+				final Spot lExpected = lSpotList.getSpots().get(i);
+				final Spot lActual = lRead.getSpots().get(i);
+				assertEquals(lExpected.getX(), lActual.getX(), 0);
+				assertEquals(lExpected.getZ(), lActual.getZ(), 0);
+				assertEquals(lExpected.getResponse(), lActual.getResponse(), 0);
+			}
+		}
+		assertNull(SpotExport.readBinary(lDataInputStream));
+	}
+
+	private static void assertSpot(Spot pSpot, double pX, double pY, double pZ)
+	{
+		assertEquals(pX, pSpot.getX(), 0.25);
+		assertEquals(pY, pSpot.getY(), 0.25);
+		assertEquals(pZ, pSpot.getZ(), 0.25);
+	}
+
+	private static void addBlob(float[] pValues,
+								double pX,
+								double pY,
+								double pZ,
+								double pSigma,
+								float pAmplitude)
+	{
+		for (int z = 0; z < cDepth; z++)
+			for (int y = 0; y < cHeight; y++)
+				for (int x = 0; x < cWidth; x++)
+				{
+					final double lSquaredDistance = (x - pX) * (x - pX)
+													+ (y - pY)
+													* (y - pY)
+													+ (z - pZ)
+													* (z - pZ);
+					pValues[(z * cHeight + y) * cWidth + x] += pAmplitude * Math.exp(-lSquaredDistance / (2 * pSigma * pSigma));
+				}
+	}
+
+	private static Volume newVolume(float[] pValues)
+	{
+		final Volume lVolume = new Volume(	NativeTypeEnum.UnsignedShort,
+											1,
+											cWidth,
+											cHeight,
+											cDepth);
+		VoxelAccess.writeSlices(lVolume, 0, cDepth, pValues);
+		return lVolume;
+	}
+
+}
@@ -0,0 +1,169 @@
+package clearvolume.volume.processing.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.processing.CLAHEFilter;
+import clearvolume.volume.processing.CLAHESink;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import coremem.enums.NativeTypeEnum;
+
+public class CLAHETests
+{
+	private static final int cWidth = 32;
+	private static final int cHeight = 24;
+	private static final int cDepth = 20;
+
+	@Test
+	public void testDimAndBrightRegions()
+	{
+		// dim noise on the left, bright noise on the right:
+		final Random lRandom = new Random(3);
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		for (int i = 0; i < lValues.length; i++)
+			lValues[i] = i % cWidth < cWidth / 2	? 1000 * lRandom.nextFloat()
+													: 20000 + 1000 * lRandom.nextFloat();
+		final Volume lInput = newVolume(NativeTypeEnum.UnsignedShort);
+		VoxelAccess.writeSlices(lInput, 0, cDepth, lValues);
+
+		// far from the border between regions, both span most of the output range:
+		final Volume lOutput = newVolume(NativeTypeEnum.UnsignedByte);
+		new CLAHEFilter(2, 3, 2, 100, 4096).apply(	lInput,
+													lOutput,
+													ForkJoinPool.commonPool());
+		final float[] lResult = readAll(lOutput);
+		final float[] lDimRange = range(lResult, 0, 6);
+		final float[] lBrightRange = range(lResult, cWidth - 6, cWidth);
+		assertTrue(lDimRange[1] - lDimRange[0] > 200);
+		assertTrue(lBrightRange[1] - lBrightRange[0] > 200);
+
+		// the lowest clip limit leaves the mapping close to linear:
+		new CLAHEFilter(2, 3, 2, 1, 4096).apply(	lInput,
+												lOutput,
+												ForkJoinPool.commonPool());
+		final float[] lClippedDimRange = range(readAll(lOutput), 0, 6);
+		assertTrue(lClippedDimRange[1] - lClippedDimRange[0] < 30);
+	}
+
+	@Test
+	public void testSlabSplitsAndInPlace()
+	{
+		final Random lRandom = new Random(7);
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		for (int i = 0; i < lValues.length; i++)
+			lValues[i] = 1000 * lRandom.nextFloat() * lRandom.nextFloat();
+		final Volume lInput = newVolume(NativeTypeEnum.UnsignedShort);
+		VoxelAccess.writeSlices(lInput, 0, cDepth, lValues);
+
+		final CLAHEFilter lCLAHEFilter = new CLAHEFilter(3, 3, 3, 2.5f);
+		final Volume lOneSlab = newVolume(NativeTypeEnum.UnsignedShort);
+		final Volume lManySlabs = newVolume(NativeTypeEnum.UnsignedShort);
+		final ForkJoinPool lSingleThreadPool = new ForkJoinPool(1);
+		final ForkJoinPool lEightThreadPool = new ForkJoinPool(8);
+		try
+		{
+			lCLAHEFilter.apply(lInput, lOneSlab, lSingleThreadPool);
+			lCLAHEFilter.apply(lInput, lManySlabs, lEightThreadPool);
+			assertArrayEquals(readAll(lOneSlab), readAll(lManySlabs), 0);
+
+			lCLAHEFilter.apply(lInput, lInput, lEightThreadPool);
+			assertArrayEquals(readAll(lOneSlab), readAll(lInput), 0);
+		}
+		finally
+		{
+			lSingleThreadPool.shutdown();
+			lEightThreadPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testSink()
+	{
+		final AtomicInteger lNumberOfReleasedVolumes = new AtomicInteger();
+		final VolumeManager lInputVolumeManager = new VolumeManager(4)
+		{
+			@Override
+			public <T> void makeAvailable(Volume pVolume)
+			{
+				lNumberOfReleasedVolumes.incrementAndGet();
+				super.makeAvailable(pVolume);
+			}
+		};
+		final Volume lInput = newVolume(NativeTypeEnum.Float);
+		lInput.setManager(lInputVolumeManager);
+		lInput.setChannelID(3);
+		lInput.setTimeIndex(12);
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		for (int i = 0; i < lValues.length; i++)
+			lValues[i] = i % 97;
+		VoxelAccess.writeSlices(lInput, 0, cDepth, lValues);
+
+		final Volume[] lReceived = new Volume[1];
+		final VolumeManager lOutputVolumeManager = new VolumeManager(4);
+		final CLAHESink lCLAHESink = new CLAHESink(	new CLAHEFilter(2, 2, 2, 3),
+													NativeTypeEnum.UnsignedShort);
+		lCLAHESink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				lReceived[0] = pVolume;
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lOutputVolumeManager;
+			}
+		});
+		lCLAHESink.sendVolume(lInput);
+		lCLAHESink.close();
+
+		assertEquals(1, lNumberOfReleasedVolumes.get());
+		final Volume lOutput = lReceived[0];
+		assertEquals(NativeTypeEnum.UnsignedShort, lOutput.getNativeType());
+		assertEquals(3, lOutput.getChannelID());
+		assertEquals(12, lOutput.getTimeIndex());
+		assertEquals(cDepth, lOutput.getDepthInVoxels());
+		final float[] lRange = range(readAll(lOutput), 0, cWidth);
+		assertTrue(lRange[1] > 60000);
+	}
+
+	private static float[] range(float[] pValues, int pXStart, int pXEnd)
+	{
+		final float[] lRange = new float[]
+		{ Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY };
+		for (int i = 0; i < pValues.length; i++)
+		{
+			final int x = i % cWidth;
+			if (x < pXStart || x >= pXEnd)
+				continue;
+			lRange[0] = Math.min(lRange[0], pValues[i]);
+			lRange[1] = Math.max(lRange[1], pValues[i]);
+		}
+		return lRange;
+	}
+
+	private static Volume newVolume(NativeTypeEnum pType)
+	{
+		return new Volume(pType, 1, cWidth, cHeight, cDepth);
+	}
+
+	private static float[] readAll(Volume pVolume)
+	{
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		VoxelAccess.readSlices(pVolume, 0, cDepth, lValues);
+		return lValues;
+	}
+
+}
@@ -0,0 +1,149 @@
+package clearvolume.volume.processing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.processing.MaxProjectionListenerInterface;
+import clearvolume.volume.processing.MaxProjectionSink;
+import clearvolume.volume.processing.MaxProjections;
+import clearvolume.volume.processing.ProjectionPlane;
+import clearvolume.volume.processing.VoxelAccess;
+import coremem.enums.NativeTypeEnum;
+
+public class MaxProjectionTests
+{
+	private static final int cWidth = 7;
+	private static final int cHeight = 5;
+	private static final int cDepth = 9;
+
+	@Test
+	public void testProjections()
+	{
+		final Volume lVolume = new Volume(	NativeTypeEnum.Float,
+											2,
+											cWidth,
+											cHeight,
+											cDepth);
+		fill(lVolume);
+
+		final ForkJoinPool lForkJoinPool = new ForkJoinPool(3);
+		try
+		{
+			final MaxProjections lMaxProjections = MaxProjections.compute(	lVolume,
+																			lForkJoinPool);
+
+			assertEquals(cWidth, lMaxProjections.getWidth(ProjectionPlane.XY));
+			assertEquals(cHeight, lMaxProjections.getHeight(ProjectionPlane.XY));
+			assertEquals(cWidth, lMaxProjections.getWidth(ProjectionPlane.XZ));
+			assertEquals(cDepth, lMaxProjections.getHeight(ProjectionPlane.XZ));
+			assertEquals(cDepth, lMaxProjections.getWidth(ProjectionPlane.YZ));
+			assertEquals(cHeight, lMaxProjections.getHeight(ProjectionPlane.YZ));
+
+			for (int c = 0; c < 2; c++)
+			{
+				for (int y = 0; y < cHeight; y++)
+					for (int x = 0; x < cWidth; x++)
+						assertEquals(	value(x, y, cDepth - 1, c),
+										lMaxProjections.getValue(ProjectionPlane.XY,
+																x,
+																y,
+																c),
+										0);
+				for (int z = 0; z < cDepth; z++)
+					for (int x = 0; x < cWidth; x++)
+						assertEquals(	value(x, cHeight - 1, z, c),
+										lMaxProjections.getValue(ProjectionPlane.XZ,
+																x,
+																z,
+																c),
+										0);
+				for (int y = 0; y < cHeight; y++)
+					for (int z = 0; z < cDepth; z++)
+						assertEquals(	value(cWidth - 1, y, z, c),
+										lMaxProjections.getValue(ProjectionPlane.YZ,
+																z,
+																y,
+																c),
+										0);
+			}
+		}
+		finally
+		{
+			lForkJoinPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testSink()
+	{
+		final AtomicInteger lNumberOfReleasedVolumes = new AtomicInteger();
+		final VolumeManager lVolumeManager = new VolumeManager(4)
+		{
+			@Override
+			public <T> void makeAvailable(Volume pVolume)
+			{
+				lNumberOfReleasedVolumes.incrementAndGet();
+				super.makeAvailable(pVolume);
+			}
+		};
+
+		final MaxProjectionSink lMaxProjectionSink = new MaxProjectionSink();
+		final AtomicReference<MaxProjections> lNotified = new AtomicReference<MaxProjections>();
+		lMaxProjectionSink.addListener(new MaxProjectionListenerInterface()
+		{
+			@Override
+			public void notifyMaxProjections(MaxProjections pMaxProjections)
+			{
+				lNotified.set(pMaxProjections);
+			}
+		});
+
+		final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	0,
+																		TimeUnit.MILLISECONDS,
+																		NativeTypeEnum.UnsignedShort,
+																		1,
+																		cWidth,
+																		cHeight,
+																		cDepth);
+		lVolume.setChannelID(3);
+		lVolume.setTimeIndex(42);
+		lMaxProjectionSink.sendVolume(lVolume);
+
+		assertEquals(3, lNotified.get().getChannelID());
+		assertEquals(42, lNotified.get().getTimeIndex());
+		assertSame(lNotified.get(), lMaxProjectionSink.getLastProjections(3));
+		// without relay sink the volume goes back to its manager:
+		assertEquals(1, lNumberOfReleasedVolumes.get());
+		lMaxProjectionSink.close();
+	}
+
+	private static void fill(Volume pVolume)
+	{
+		final float[] lValues = new float[2 * cWidth * cHeight * cDepth];
+		for (int z = 0; z < cDepth; z++)
+			for (int y = 0; y < cHeight; y++)
+				for (int x = 0; x < cWidth; x++)
+					for (int c = 0; c < 2; c++)
+						lValues[((z * cHeight + y) * cWidth + x) * 2 + c] = value(	x,
+																					y,
+																					z,
+																					c);
+		VoxelAccess.writeSlices(pVolume, 0, cDepth, lValues);
+	}
+
+	private static float value(int pX, int pY, int pZ, int pElement)
+	{
+		final float lValue = pX + 10 * pY + 100 * pZ;
+		return pElement == 0 ? lValue : 2 * lValue + 1;
+	}
+
+}
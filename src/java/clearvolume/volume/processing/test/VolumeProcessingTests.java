@@ -0,0 +1,202 @@
+package clearvolume.volume.processing.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.processing.BackgroundSubtractionFilter;
+import clearvolume.volume.processing.GaussianFilter;
+import clearvolume.volume.processing.MedianFilter;
+import clearvolume.volume.processing.VolumeProcessingSink;
+import clearvolume.volume.processing.VoxelAccess;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import coremem.enums.NativeTypeEnum;
+
+public class VolumeProcessingTests
+{
+	private static final int cWidth = 17;
+	private static final int cHeight = 13;
+	private static final int cDepth = 11;
+
+	@Test
+	public void testGaussianOfConstant()
+	{
+		final Volume lInput = newVolume(NativeTypeEnum.UnsignedShort);
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		Arrays.fill(lValues, 1000);
+		VoxelAccess.writeSlices(lInput, 0, cDepth, lValues);
+
+		final Volume lOutput = newVolume(NativeTypeEnum.UnsignedShort);
+		new GaussianFilter(1.5, 1.5, 2).apply(lInput,
+												lOutput,
+												ForkJoinPool.commonPool());
+
+		final float[] lResult = readAll(lOutput);
+		for (final float lValue : lResult)
+			assertEquals(1000, lValue, 0);
+	}
+
+	@Test
+	public void testSlabSplitsAgree()
+	{
+		final Volume lInput = newRandomVolume(NativeTypeEnum.Float, 1);
+
+		final Volume lOneSlab = newVolume(NativeTypeEnum.Float);
+		final Volume lManySlabs = newVolume(NativeTypeEnum.Float);
+		final ForkJoinPool lSingleThreadPool = new ForkJoinPool(1);
+		final ForkJoinPool lEightThreadPool = new ForkJoinPool(8);
+		try
+		{
+			new GaussianFilter(1, 1, 1.7).apply(lInput,
+												lOneSlab,
+												lSingleThreadPool);
+			new GaussianFilter(1, 1, 1.7).apply(lInput,
+												lManySlabs,
+												lEightThreadPool);
+			assertArrayEquals(readAll(lOneSlab), readAll(lManySlabs), 0);
+
+			new MedianFilter(1).apply(lInput, lOneSlab, lSingleThreadPool);
+			new MedianFilter(1).apply(lInput, lManySlabs, lEightThreadPool);
+			assertArrayEquals(readAll(lOneSlab), readAll(lManySlabs), 0);
+		}
+		finally
+		{
+			lSingleThreadPool.shutdown();
+			lEightThreadPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testMedianRemovesSaltNoise()
+	{
+		final Volume lInput = newVolume(NativeTypeEnum.UnsignedByte);
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		Arrays.fill(lValues, 10);
+		for (int i = 0; i < lValues.length; i += 37)
+			lValues[i] = 255;
+		VoxelAccess.writeSlices(lInput, 0, cDepth, lValues);
+
+		final Volume lOutput = newVolume(NativeTypeEnum.UnsignedByte);
+		new MedianFilter(1).apply(lInput, lOutput, ForkJoinPool.commonPool());
+
+		for (final float lValue : readAll(lOutput))
+			assertEquals(10, lValue, 0);
+	}
+
+	@Test
+	public void testBackgroundSubtraction()
+	{
+		final Volume lInput = newVolume(NativeTypeEnum.UnsignedShort);
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		Arrays.fill(lValues, 500);
+		final int lCenter = (cDepth / 2 * cHeight + cHeight / 2) * cWidth
+							+ cWidth
+							/ 2;
+		lValues[lCenter] = 1500;
+		VoxelAccess.writeSlices(lInput, 0, cDepth, lValues);
+
+		final Volume lOutput = newVolume(NativeTypeEnum.UnsignedShort);
+		new BackgroundSubtractionFilter(3).apply(	lInput,
+													lOutput,
+													ForkJoinPool.commonPool());
+
+		final float[] lResult = readAll(lOutput);
+		for (int i = 0; i < lResult.length; i++)
+			if (i != lCenter)
+				assertEquals(0, lResult[i], 0);
+		assertEquals(1000, lResult[lCenter], 10);
+	}
+
+	@Test
+	public void testSinkRecyclesVolumes()
+	{
+		final AtomicInteger lNumberOfReleasedVolumes = new AtomicInteger();
+		final VolumeManager lVolumeManager = new VolumeManager(4)
+		{
+			@Override
+			public <T> void makeAvailable(Volume pVolume)
+			{
+				lNumberOfReleasedVolumes.incrementAndGet();
+				super.makeAvailable(pVolume);
+			}
+		};
+		final AtomicInteger lNumberOfReceivedVolumes = new AtomicInteger();
+		final VolumeSinkInterface lTerminalSink = new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				assertEquals(	lNumberOfReceivedVolumes.getAndIncrement(),
+								pVolume.getTimeIndex());
+				pVolume.makeAvailableToManager();
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		};
+
+		final VolumeProcessingSink lVolumeProcessingSink = new VolumeProcessingSink(lTerminalSink);
+		final MedianFilter lMedianFilter = new MedianFilter(1, 1, 0);
+		final GaussianFilter lGaussianFilter = new GaussianFilter(1);
+		lVolumeProcessingSink.addFilter(lMedianFilter)
+								.addFilter(lGaussianFilter);
+		assertTrue(lMedianFilter.isInPlace());
+		assertFalse(lGaussianFilter.isInPlace());
+
+		for (int i = 0; i < 10; i++)
+		{
+			final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	0,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedShort,
+																			1,
+																			cWidth,
+																			cHeight,
+																			cDepth);
+			lVolume.setTimeIndex(i);
+			lVolumeProcessingSink.sendVolume(lVolume);
+		}
+
+		assertEquals(10, lNumberOfReceivedVolumes.get());
+		// the inputs of the Gaussian filter and the forwarded outputs:
+		assertEquals(20, lNumberOfReleasedVolumes.get());
+		lVolumeProcessingSink.close();
+	}
+
+	private static Volume newVolume(NativeTypeEnum pType)
+	{
+		return new Volume(pType, 1, cWidth, cHeight, cDepth);
+	}
+
+	private static Volume newRandomVolume(NativeTypeEnum pType, long pSeed)
+	{
+		final Volume lVolume = newVolume(pType);
+		final Random lRandom = new Random(pSeed);
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		for (int i = 0; i < lValues.length; i++)
+			lValues[i] = lRandom.nextInt(1000);
+		VoxelAccess.writeSlices(lVolume, 0, cDepth, lValues);
+		return lVolume;
+	}
+
+	private static float[] readAll(Volume pVolume)
+	{
+		final float[] lValues = new float[cWidth * cHeight * cDepth];
+		VoxelAccess.readSlices(pVolume, 0, cDepth, lValues);
+		return lValues;
+	}
+
+}
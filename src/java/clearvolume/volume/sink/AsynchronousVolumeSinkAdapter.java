@@ -24,12 +24,25 @@ public class AsynchronousVolumeSinkAdapter	implements
 											int pMaxCapacity,
 											long pTimeOut,
 											TimeUnit pTimeUnit)
+	{
+		this(	pDelegatedVolumeSink,
+				new ArrayBlockingQueue<Volume>(pMaxCapacity),
+				pTimeOut,
+				pTimeUnit);
+	}
+
+	// pVolumeQueue can be a lock-free ring from clearvolume.utils.concurrent,
+	// it must support multiple producers unless only one thread sends volumes.
+	public AsynchronousVolumeSinkAdapter(	VolumeSinkInterface pDelegatedVolumeSink,
+											BlockingQueue<Volume> pVolumeQueue,
+											long pTimeOut,
+											TimeUnit pTimeUnit)
 	{
 		super();
 		mDelegatedVolumeSink = pDelegatedVolumeSink;
 		mTimeOut = pTimeOut;
 		mTimeUnit = pTimeUnit;
-		mVolumeQueue = new ArrayBlockingQueue<Volume>(pMaxCapacity);
+		mVolumeQueue = pVolumeQueue;
 	}
 
 	@Override
@@ -0,0 +1,14 @@
+package clearvolume.volume.sink;
+
+import java.util.List;
+
+import clearvolume.volume.Volume;
+
+/**
+ * Sink that can consume a group of volumes belonging to the same time point in
+ * one go, for example to update all render layers with a single redraw.
+ */
+public interface VolumeGroupSinkInterface extends VolumeSinkInterface
+{
+	public void sendVolumeGroup(List<Volume> pVolumes);
+}
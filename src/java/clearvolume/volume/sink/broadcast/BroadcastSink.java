@@ -0,0 +1,169 @@
+package clearvolume.volume.sink.broadcast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.pipeline.AsynchronousRelaySink;
+import clearvolume.volume.sink.pipeline.BackPressurePolicy;
+import clearvolume.volume.sink.pipeline.SinkPipelineScheduler;
+
+/**
+ * Fans each volume out to several sinks, for example a renderer, a recorder
+ * and a network server. Every branch has its own bounded queue and worker on a
+ * {@link SinkPipelineScheduler}, so a slow branch only fills its own queue and
+ * never delays the others. The volume is shared by all branches, which must not
+ * modify it, and is made available to its manager only once every branch has
+ * released it or dropped it.
+ */
+public class BroadcastSink implements VolumeSinkInterface, ClearVolumeCloseable
+{
+	private static final int cDefaultQueueCapacity = 4;
+	private static final long cDefaultTimeOutInMilliseconds = 100;
+
+	private final SinkPipelineScheduler mScheduler;
+	private final VolumeManager mVolumeManager;
+	private final CopyOnWriteArrayList<AsynchronousRelaySink> mBranches = new CopyOnWriteArrayList<AsynchronousRelaySink>();
+
+	public BroadcastSink()
+	{
+		this(SinkPipelineScheduler.getSharedScheduler(), null);
+	}
+
+	/**
+	 * @param pScheduler
+	 *            scheduler running the branches
+	 * @param pVolumeManager
+	 *            manager returned by {@link #getManager()}, if null the manager
+	 *            of the first branch is returned
+	 */
+	public BroadcastSink(	SinkPipelineScheduler pScheduler,
+							VolumeManager pVolumeManager)
+	{
+		super();
+		mScheduler = pScheduler;
+		mVolumeManager = pVolumeManager;
+	}
+
+	/**
+	 * Adds a branch whose queue drops the oldest volume when full, so that the
+	 * branch always gets the most recent volumes.
+	 *
+	 * @param pSink
+	 *            sink
+	 * @return queue of the branch
+	 */
+	public AsynchronousRelaySink addBranch(VolumeSinkInterface pSink)
+	{
+		return addBranch(	pSink,
+							cDefaultQueueCapacity,
+							BackPressurePolicy.DropOldest);
+	}
+
+	/**
+	 * Adds a branch. With the {@link BackPressurePolicy#Block} policy a full
+	 * branch makes the sender wait, and thus delays all other branches.
+	 *
+	 * @param pSink
+	 *            sink
+	 * @param pQueueCapacity
+	 *            capacity of the queue of the branch
+	 * @param pBackPressurePolicy
+	 *            policy applied when the queue is full
+	 * @return queue of the branch
+	 */
+	public AsynchronousRelaySink addBranch(	VolumeSinkInterface pSink,
+											int pQueueCapacity,
+											BackPressurePolicy pBackPressurePolicy)
+	{
+		final AsynchronousRelaySink lBranch = new AsynchronousRelaySink(mScheduler,
+																		pQueueCapacity,
+																		pBackPressurePolicy,
+																		cDefaultTimeOutInMilliseconds,
+																		TimeUnit.MILLISECONDS);
+		lBranch.setRelaySink(pSink);
+		mBranches.add(lBranch);
+		return lBranch;
+	}
+
+	/**
+	 * Removes a branch, its queued volumes are released.
+	 *
+	 * @param pSink
+	 *            sink of the branch
+	 * @return true if removed
+	 */
+	public boolean removeBranch(VolumeSinkInterface pSink)
+	{
+		for (final AsynchronousRelaySink lBranch : mBranches)
+			if (lBranch.getRelaySink() == pSink)
+			{
+				mBranches.remove(lBranch);
+				lBranch.close();
+				return true;
+			}
+		return false;
+	}
+
+	public List<AsynchronousRelaySink> getBranches()
+	{
+		return new ArrayList<AsynchronousRelaySink>(mBranches);
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		final Object[] lBranches = mBranches.toArray();
+		if (lBranches.length == 0)
+		{
+			pVolume.makeAvailableToManager();
+			return;
+		}
+
+		// one reference per branch, each branch releases its own:
+		pVolume.addReferences(lBranches.length - 1);
+		for (final Object lBranch : lBranches)
+			((AsynchronousRelaySink) lBranch).sendVolume(pVolume);
+	}
+
+	/**
+	 * Waits until all branches have delivered their queued volumes.
+	 *
+	 * @param pTimeOut
+	 *            time out per branch
+	 * @param pTimeUnit
+	 *            time unit
+	 * @return true if all branches were flushed before the time out
+	 */
+	public boolean flush(long pTimeOut, TimeUnit pTimeUnit)
+	{
+		boolean lFlushed = true;
+		for (final AsynchronousRelaySink lBranch : mBranches)
+			lFlushed &= lBranch.flush(pTimeOut, pTimeUnit);
+		return lFlushed;
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		if (mVolumeManager != null)
+			return mVolumeManager;
+		for (final AsynchronousRelaySink lBranch : mBranches)
+			return lBranch.getManager();
+		return null;
+	}
+
+	@Override
+	public void close()
+	{
+		for (final AsynchronousRelaySink lBranch : mBranches)
+			lBranch.close();
+		mBranches.clear();
+	}
+
+}
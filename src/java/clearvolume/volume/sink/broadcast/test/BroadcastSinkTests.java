@@ -0,0 +1,138 @@
+package clearvolume.volume.sink.broadcast.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.broadcast.BroadcastSink;
+import clearvolume.volume.sink.pipeline.AsynchronousRelaySink;
+import clearvolume.volume.sink.pipeline.BackPressurePolicy;
+import clearvolume.volume.sink.pipeline.SinkPipelineScheduler;
+import coremem.enums.NativeTypeEnum;
+
+public class BroadcastSinkTests
+{
+
+	private static class CountingVolumeManager extends VolumeManager
+	{
+		final AtomicLong mNumberOfReleasedVolumes = new AtomicLong();
+
+		CountingVolumeManager()
+		{
+			super(100);
+		}
+
+		@Override
+		public <T> void makeAvailable(Volume pVolume)
+		{
+			mNumberOfReleasedVolumes.incrementAndGet();
+			super.makeAvailable(pVolume);
+		}
+	}
+
+	private static class ReleasingSink implements VolumeSinkInterface
+	{
+		final AtomicLong mNumberOfReceivedVolumes = new AtomicLong();
+		final long mDelayInMilliseconds;
+		volatile long mLastTimeIndex = -1;
+
+		ReleasingSink(long pDelayInMilliseconds)
+		{
+			mDelayInMilliseconds = pDelayInMilliseconds;
+		}
+
+		@Override
+		public void sendVolume(Volume pVolume)
+		{
+			try
+			{
+				Thread.sleep(mDelayInMilliseconds);
+			}
+			catch (final InterruptedException e)
+			{
+			}
+			mNumberOfReceivedVolumes.incrementAndGet();
+			mLastTimeIndex = pVolume.getTimeIndex();
+			pVolume.makeAvailableToManager();
+		}
+
+		@Override
+		public VolumeManager getManager()
+		{
+			return null;
+		}
+	}
+
+	@Test
+	public void testReferenceCounting()
+	{
+		final CountingVolumeManager lVolumeManager = new CountingVolumeManager();
+		final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	0,
+																		TimeUnit.MILLISECONDS,
+																		NativeTypeEnum.UnsignedByte,
+																		1,
+																		2,
+																		2,
+																		2);
+		lVolume.addReferences(2);
+		lVolume.makeAvailableToManager();
+		lVolume.makeAvailableToManager();
+		assertEquals(0, lVolumeManager.mNumberOfReleasedVolumes.get());
+		lVolume.makeAvailableToManager();
+		assertEquals(1, lVolumeManager.mNumberOfReleasedVolumes.get());
+	}
+
+	@Test
+	public void testSlowBranchDoesNotDelayOthers()
+	{
+		final SinkPipelineScheduler lScheduler = new SinkPipelineScheduler(1);
+		final CountingVolumeManager lVolumeManager = new CountingVolumeManager();
+		final BroadcastSink lBroadcastSink = new BroadcastSink(	lScheduler,
+																lVolumeManager);
+		final ReleasingSink lFastSink = new ReleasingSink(0);
+		final ReleasingSink lSlowSink = new ReleasingSink(20);
+		final AsynchronousRelaySink lFastBranch = lBroadcastSink.addBranch(	lFastSink,
+																			100,
+																			BackPressurePolicy.Block);
+		final AsynchronousRelaySink lSlowBranch = lBroadcastSink.addBranch(lSlowSink);
+		assertEquals(2, lScheduler.getNumberOfThreads());
+
+		final long lStart = System.nanoTime();
+		for (int i = 0; i < 50; i++)
+		{
+			final Volume lVolume = lBroadcastSink.getManager()
+													.requestAndWaitForVolume(	0,
+																				TimeUnit.MILLISECONDS,
+																				NativeTypeEnum.UnsignedByte,
+																				1,
+																				4,
+																				4,
+																				4);
+			lVolume.setTimeIndex(i);
+			lBroadcastSink.sendVolume(lVolume);
+		}
+		assertTrue(lFastBranch.flush(1, TimeUnit.SECONDS));
+		// the fast branch got everything long before the slow one could have:
+		assertTrue(System.nanoTime() - lStart < TimeUnit.MILLISECONDS.toNanos(50 * 20 / 2));
+		assertEquals(50, lFastSink.mNumberOfReceivedVolumes.get());
+
+		assertTrue(lSlowBranch.flush(1, TimeUnit.SECONDS));
+		assertTrue(lSlowBranch.getNumberOfDroppedVolumes() > 0);
+		assertEquals(50, lSlowSink.mNumberOfReceivedVolumes.get() + lSlowBranch.getNumberOfDroppedVolumes());
+		assertEquals(49, lSlowSink.mLastTimeIndex);
+
+		// each volume is recycled once, after both branches are done with it:
+		assertEquals(50, lVolumeManager.mNumberOfReleasedVolumes.get());
+
+		lBroadcastSink.close();
+		lScheduler.close();
+	}
+
+}
@@ -0,0 +1,226 @@
+package clearvolume.volume.sink.coalescing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.utils.concurrent.BlockingWaitStrategy;
+import clearvolume.utils.concurrent.WaitConditionInterface;
+import clearvolume.utils.concurrent.WaitStrategyInterface;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.relay.RelaySinkAdapter;
+import clearvolume.volume.sink.relay.RelaySinkInterface;
+
+/**
+ * Latest-wins sink: keeps at most one pending volume per channel. A newer
+ * volume replaces a pending one that the relay sink did not pick up yet, and
+ * the stale volume is immediately made available to its manager. sendVolume
+ * never blocks, memory is bounded by one volume per channel, and the relay sink
+ * always receives the freshest data.
+ */
+public class CoalescingSink extends RelaySinkAdapter	implements
+														RelaySinkInterface,
+														ClearVolumeCloseable
+{
+	private static final long cIdleWaitInNanoseconds = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final ConcurrentHashMap<Integer, AtomicReference<Volume>> mChannelToPendingVolumeMap = new ConcurrentHashMap<>();
+	private final CopyOnWriteArrayList<AtomicReference<Volume>> mPendingVolumeSlots = new CopyOnWriteArrayList<>();
+	private final AtomicInteger mNumberOfPendingVolumes = new AtomicInteger();
+
+	private final AtomicLong mNumberOfCoalescedVolumes = new AtomicLong();
+	private final AtomicLong mNumberOfForwardedVolumes = new AtomicLong();
+
+	private final WaitStrategyInterface mWaitStrategy;
+	private final WaitConditionInterface mHasPendingVolumes = new WaitConditionInterface()
+	{
+		@Override
+		public boolean isSatisfied()
+		{
+			return mNumberOfPendingVolumes.get() > 0 || mStopSignal;
+		}
+	};
+
+	private volatile boolean mStopSignal;
+	private volatile boolean mStoppedSignal;
+
+	public CoalescingSink()
+	{
+		this(null, new BlockingWaitStrategy());
+	}
+
+	public CoalescingSink(VolumeSinkInterface pRelaySink)
+	{
+		this(pRelaySink, new BlockingWaitStrategy());
+	}
+
+	public CoalescingSink(	VolumeSinkInterface pRelaySink,
+							WaitStrategyInterface pWaitStrategy)
+	{
+		super(pRelaySink);
+		mWaitStrategy = pWaitStrategy;
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		final AtomicReference<Volume> lSlot = getSlot(pVolume.getChannelID());
+
+		final Volume lStaleVolume = lSlot.getAndSet(pVolume);
+		if (lStaleVolume != null)
+		{
+			mNumberOfCoalescedVolumes.incrementAndGet();
+			lStaleVolume.makeAvailableToManager();
+		}
+		else
+		{
+			mNumberOfPendingVolumes.incrementAndGet();
+			mWaitStrategy.signalAll();
+		}
+	}
+
+	private AtomicReference<Volume> getSlot(int pChannelID)
+	{
+		AtomicReference<Volume> lSlot = mChannelToPendingVolumeMap.get(pChannelID);
+		if (lSlot == null)
+		{
+			final AtomicReference<Volume> lNewSlot = new AtomicReference<>();
+			lSlot = mChannelToPendingVolumeMap.putIfAbsent(	pChannelID,
+															lNewSlot);
+			if (lSlot == null)
+			{
+				lSlot = lNewSlot;
+				mPendingVolumeSlots.add(lNewSlot);
+			}
+		}
+		return lSlot;
+	}
+
+	public boolean start()
+	{
+		final Runnable lRunnable = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				while (!mStopSignal)
+				{
+					try
+					{
+						mWaitStrategy.waitFor(	mHasPendingVolumes,
+												cIdleWaitInNanoseconds);
+						forwardPendingVolumes();
+					}
+					catch (final Throwable e)
+					{
+						e.printStackTrace();
+					}
+				}
+				mStoppedSignal = true;
+			}
+		};
+
+		final Thread lThread = new Thread(	lRunnable,
+											this.getClass()
+												.getSimpleName());
+		lThread.setDaemon(true);
+		lThread.start();
+		return true;
+	}
+
+	/**
+	 * Forwards all currently pending volumes to the relay sink, one per channel
+	 * in order of channel appearance. Can also be called directly instead of
+	 * starting the forwarding thread, for example from a render loop.
+	 *
+	 * @return number of forwarded volumes
+	 */
+	public int forwardPendingVolumes()
+	{
+		int lCount = 0;
+		for (final AtomicReference<Volume> lSlot : mPendingVolumeSlots)
+		{
+			final Volume lVolume = lSlot.getAndSet(null);
+			if (lVolume == null)
+				continue;
+			mNumberOfPendingVolumes.decrementAndGet();
+			mNumberOfForwardedVolumes.incrementAndGet();
+			lCount++;
+
+			final VolumeSinkInterface lRelaySink = getRelaySink();
+			if (lRelaySink != null)
+				lRelaySink.sendVolume(lVolume);
+			else
+				lVolume.makeAvailableToManager();
+		}
+		return lCount;
+	}
+
+	public boolean stop()
+	{
+		mStopSignal = true;
+		mWaitStrategy.signalAll();
+		return true;
+	}
+
+	public boolean waitForStop()
+	{
+		while (!mStoppedSignal)
+		{
+			try
+			{
+				Thread.sleep(10);
+			}
+			catch (final InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		return true;
+	}
+
+	public int getNumberOfPendingVolumes()
+	{
+		return mNumberOfPendingVolumes.get();
+	}
+
+	public long getNumberOfCoalescedVolumes()
+	{
+		return mNumberOfCoalescedVolumes.get();
+	}
+
+	public long getNumberOfForwardedVolumes()
+	{
+		return mNumberOfForwardedVolumes.get();
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		if (getRelaySink() != null)
+			return getRelaySink().getManager();
+		return null;
+	}
+
+	@Override
+	public void close()
+	{
+		stop();
+		for (final AtomicReference<Volume> lSlot : mPendingVolumeSlots)
+		{
+			final Volume lVolume = lSlot.getAndSet(null);
+			if (lVolume != null)
+			{
+				mNumberOfPendingVolumes.decrementAndGet();
+				lVolume.makeAvailableToManager();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package clearvolume.volume.sink.coalescing.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.coalescing.CoalescingSink;
+import coremem.enums.NativeTypeEnum;
+
+public class CoalescingSinkTests
+{
+
+	@Test
+	public void test()
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(10);
+		final ArrayList<Volume> lReceivedVolumes = new ArrayList<>();
+
+		final CoalescingSink lCoalescingSink = new CoalescingSink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				lReceivedVolumes.add(pVolume);
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		});
+
+		for (int i = 0; i < 6; i++)
+		{
+			final Volume lVolume = lCoalescingSink.getManager()
+													.requestAndWaitForVolume(	1,
+																				TimeUnit.MILLISECONDS,
+																				NativeTypeEnum.UnsignedByte,
+																				1,
+																				4,
+																				4,
+																				4);
+			lVolume.setTimeIndex(i / 2);
+			lVolume.setChannelID(i % 2);
+			lCoalescingSink.sendVolume(lVolume);
+		}
+
+		assertEquals(2, lCoalescingSink.getNumberOfPendingVolumes());
+		assertEquals(4, lCoalescingSink.getNumberOfCoalescedVolumes());
+
+		assertEquals(2, lCoalescingSink.forwardPendingVolumes());
+		assertEquals(2, lReceivedVolumes.size());
+		for (final Volume lVolume : lReceivedVolumes)
+			assertEquals(2, lVolume.getTimeIndex());
+
+		assertEquals(0, lCoalescingSink.forwardPendingVolumes());
+		lCoalescingSink.close();
+	}
+
+}
@@ -4,8 +4,6 @@ import java.util.ArrayList;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.AbstractListModel;
@@ -15,18 +13,24 @@ import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
 import clearvolume.ClearVolumeCloseable;
+import clearvolume.utils.concurrent.SerialExecutor;
 import clearvolume.volume.Volume;
 import clearvolume.volume.VolumeManager;
 import clearvolume.volume.sink.NullVolumeSink;
 import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.pipeline.ScheduledSinkInterface;
+import clearvolume.volume.sink.pipeline.SchedulerReference;
+import clearvolume.volume.sink.pipeline.SinkPipelineScheduler;
 import clearvolume.volume.sink.relay.RelaySinkAdapter;
 import clearvolume.volume.sink.relay.RelaySinkInterface;
 
 public class ChannelFilterSink extends RelaySinkAdapter	implements
 														RelaySinkInterface,
+														ScheduledSinkInterface,
 														ClearVolumeCloseable
 {
-	private static final ExecutorService mSeekingExecutor = Executors.newSingleThreadExecutor();
+	private final SchedulerReference mScheduler = new SchedulerReference();
+	private final SerialExecutor mSeekingExecutor = new SerialExecutor(mScheduler);
 
 	private final Object mLock = new Object();
 	private final ConcurrentHashMap<Integer, String> mSeenChannelIdToNameMap = new ConcurrentHashMap<Integer, String>();
@@ -80,6 +84,12 @@ public class ChannelFilterSink extends RelaySinkAdapter	implements
 
 	}
 
+	@Override
+	public void setScheduler(SinkPipelineScheduler pScheduler)
+	{
+		mScheduler.set(pScheduler);
+	}
+
 	public void setActiveChannels(final int[] pActiveChannels)
 	{
 		mSeekingExecutor.execute(new Runnable()
@@ -0,0 +1,339 @@
+package clearvolume.volume.sink.jitter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.pipeline.ScheduledSinkInterface;
+import clearvolume.volume.sink.pipeline.SinkPipelineScheduler;
+import clearvolume.volume.sink.relay.OrderedRelayQueue;
+import clearvolume.volume.sink.relay.RelaySinkAdapter;
+import clearvolume.volume.sink.relay.RelaySinkInterface;
+
+/**
+ * Reorders volumes by time index, per channel, within a latency window. A
+ * volume that directly follows the last forwarded time index of its channel is
+ * forwarded immediately; otherwise it is held until the missing time points
+ * arrive or until it has waited for the latency window, in which case the gap
+ * is skipped. Volumes arriving for a time index at or before the last forwarded
+ * one are late: they are dropped, since forwarding them would break the order.
+ * A volume further behind than the reorder window restarts the channel
+ * instead, as when the source restarts its time indices: the volumes still
+ * held for the channel are forwarded and the channel starts over with it.
+ * Duplicates are dropped too. Expired volumes are flushed by a periodic task on
+ * a {@link SinkPipelineScheduler}. Volumes are picked under the sink's lock but
+ * forwarded after releasing it, through an {@link OrderedRelayQueue}.
+ */
+public class JitterBufferSink extends RelaySinkAdapter	implements
+														RelaySinkInterface,
+														ScheduledSinkInterface,
+														ClearVolumeCloseable
+{
+
+	private static final long cDefaultReorderWindowInTimePoints = 8;
+
+	private final Object mLock = new Object();
+	private final HashMap<Integer, ChannelBuffer> mChannelBufferMap = new HashMap<Integer, ChannelBuffer>();
+	private final long mLatencyWindowInNanoseconds;
+	private final int mMaxBufferedVolumesPerChannel;
+	private final long mFlushPeriodInNanoseconds;
+	private volatile long mReorderWindowInTimePoints = cDefaultReorderWindowInTimePoints;
+	private SinkPipelineScheduler mScheduler;
+	private ScheduledFuture<?> mFlushFuture;
+	private boolean mIsClosed;
+
+	private final OrderedRelayQueue<Volume> mRelayQueue = new OrderedRelayQueue<Volume>()
+	{
+		@Override
+		protected void relay(Volume pVolume)
+		{
+			forward(pVolume);
+		}
+	};
+
+	private final Runnable mFlushRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			try
+			{
+				flushExpiredVolumes();
+			}
+			catch (final Throwable e)
+			{
+				e.printStackTrace();
+			}
+		}
+	};
+
+	private volatile long mNumberOfForwardedVolumes;
+	private volatile long mNumberOfReorderedVolumes;
+	private volatile long mNumberOfLateVolumes;
+	private volatile long mNumberOfDroppedVolumes;
+	private volatile long mNumberOfSkippedTimePoints;
+	private volatile long mNumberOfStreamResets;
+
+	private static class BufferedVolume
+	{
+		final Volume mVolume;
+		final long mArrivalTimeInNanoseconds;
+
+		BufferedVolume(Volume pVolume, long pArrivalTimeInNanoseconds)
+		{
+			mVolume = pVolume;
+			mArrivalTimeInNanoseconds = pArrivalTimeInNanoseconds;
+		}
+	}
+
+	private static class ChannelBuffer
+	{
+		final TreeMap<Long, BufferedVolume> mTimeIndexToVolumeMap = new TreeMap<Long, BufferedVolume>();
+		long mLastForwardedTimeIndex = Long.MIN_VALUE;
+	}
+
+	public JitterBufferSink(long pLatencyWindow, TimeUnit pTimeUnit)
+	{
+		this(null, pLatencyWindow, pTimeUnit, Integer.MAX_VALUE);
+	}
+
+	public JitterBufferSink(VolumeSinkInterface pRelaySink,
+							long pLatencyWindow,
+							TimeUnit pTimeUnit,
+							int pMaxBufferedVolumesPerChannel)
+	{
+		super(pRelaySink);
+		mLatencyWindowInNanoseconds = pTimeUnit.toNanos(pLatencyWindow);
+		mMaxBufferedVolumesPerChannel = Math.max(	1,
+													pMaxBufferedVolumesPerChannel);
+
+		mFlushPeriodInNanoseconds = Math.max(	TimeUnit.MILLISECONDS.toNanos(1),
+												mLatencyWindowInNanoseconds / 4);
+		setScheduler(null);
+	}
+
+	@Override
+	public void setScheduler(SinkPipelineScheduler pScheduler)
+	{
+		synchronized (mLock)
+		{
+			if (mIsClosed)
+				return;
+			if (mFlushFuture != null)
+				mFlushFuture.cancel(false);
+			mScheduler = pScheduler != null	? pScheduler
+											: SinkPipelineScheduler.getSharedScheduler();
+			mFlushFuture = mScheduler.scheduleAtFixedRate(	mFlushRunnable,
+															mFlushPeriodInNanoseconds,
+															mFlushPeriodInNanoseconds,
+															TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Sets how far behind the last forwarded time index of its channel a volume
+	 * can arrive and still be dropped as late. Volumes further behind restart
+	 * the channel.
+	 *
+	 * @param pReorderWindowInTimePoints
+	 *            reorder window in time points
+	 */
+	public void setReorderWindow(long pReorderWindowInTimePoints)
+	{
+		mReorderWindowInTimePoints = Math.max(0, pReorderWindowInTimePoints);
+	}
+
+	public long getReorderWindow()
+	{
+		return mReorderWindowInTimePoints;
+	}
+
+	public SinkPipelineScheduler getScheduler()
+	{
+		synchronized (mLock)
+		{
+			return mScheduler;
+		}
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		synchronized (mLock)
+		{
+			final long lTimeIndex = pVolume.getTimeIndex();
+			ChannelBuffer lChannelBuffer = mChannelBufferMap.get(pVolume.getChannelID());
+			if (lChannelBuffer == null)
+			{
+				lChannelBuffer = new ChannelBuffer();
+				mChannelBufferMap.put(pVolume.getChannelID(), lChannelBuffer);
+			}
+
+			if (lChannelBuffer.mLastForwardedTimeIndex != Long.MIN_VALUE && lChannelBuffer.mLastForwardedTimeIndex - lTimeIndex > mReorderWindowInTimePoints)
+			{
+				// the source restarted its time indices, the old stream is over:
+				mNumberOfStreamResets++;
+				for (final BufferedVolume lBufferedVolume : lChannelBuffer.mTimeIndexToVolumeMap.values())
+					mRelayQueue.add(lBufferedVolume.mVolume);
+				lChannelBuffer.mTimeIndexToVolumeMap.clear();
+				lChannelBuffer.mLastForwardedTimeIndex = Long.MIN_VALUE;
+			}
+			else if (lTimeIndex <= lChannelBuffer.mLastForwardedTimeIndex)
+			{
+				mNumberOfLateVolumes++;
+				mNumberOfDroppedVolumes++;
+				pVolume.makeAvailableToManager();
+				return;
+			}
+
+			if (lChannelBuffer.mTimeIndexToVolumeMap.containsKey(lTimeIndex))
+			{
+				mNumberOfDroppedVolumes++;
+				pVolume.makeAvailableToManager();
+				return;
+			}
+
+			if (!lChannelBuffer.mTimeIndexToVolumeMap.isEmpty() && lTimeIndex < lChannelBuffer.mTimeIndexToVolumeMap.lastKey())
+				mNumberOfReorderedVolumes++;
+
+			lChannelBuffer.mTimeIndexToVolumeMap.put(	lTimeIndex,
+														new BufferedVolume(	pVolume,
+																			System.nanoTime()));
+
+			collectForwardableVolumes(lChannelBuffer, System.nanoTime());
+		}
+		mRelayQueue.drain();
+	}
+
+	/**
+	 * Forwards all volumes that have waited for the latency window, skipping the
+	 * missing time points before them. Called periodically, but can also be
+	 * called directly.
+	 */
+	public void flushExpiredVolumes()
+	{
+		synchronized (mLock)
+		{
+			final long lNow = System.nanoTime();
+			for (final ChannelBuffer lChannelBuffer : mChannelBufferMap.values())
+				collectForwardableVolumes(lChannelBuffer, lNow);
+		}
+		mRelayQueue.drain();
+	}
+
+	/**
+	 * Queues the volumes of a channel that can be forwarded. Must be called
+	 * while holding the lock.
+	 */
+	private void collectForwardableVolumes(	ChannelBuffer pChannelBuffer,
+											long pNow)
+	{
+		final TreeMap<Long, BufferedVolume> lMap = pChannelBuffer.mTimeIndexToVolumeMap;
+
+		// the newest volume that has expired forces forwarding of everything up
+		// to it:
+		long lForwardUpTo = Long.MIN_VALUE;
+		for (final Map.Entry<Long, BufferedVolume> lEntry : lMap.entrySet())
+			if (pNow - lEntry.getValue().mArrivalTimeInNanoseconds >= mLatencyWindowInNanoseconds)
+				lForwardUpTo = lEntry.getKey();
+
+		while (!lMap.isEmpty())
+		{
+			final long lFirstTimeIndex = lMap.firstKey();
+			final boolean lIsNext = pChannelBuffer.mLastForwardedTimeIndex != Long.MIN_VALUE && lFirstTimeIndex == pChannelBuffer.mLastForwardedTimeIndex + 1;
+			final boolean lIsOverCapacity = lMap.size() > mMaxBufferedVolumesPerChannel;
+
+			if (!lIsNext && !lIsOverCapacity
+				&& lFirstTimeIndex > lForwardUpTo)
+				break;
+
+			if (!lIsNext && pChannelBuffer.mLastForwardedTimeIndex != Long.MIN_VALUE)
+				mNumberOfSkippedTimePoints += lFirstTimeIndex - pChannelBuffer.mLastForwardedTimeIndex
+												- 1;
+
+			pChannelBuffer.mLastForwardedTimeIndex = lFirstTimeIndex;
+			mRelayQueue.add(lMap.pollFirstEntry().getValue().mVolume);
+		}
+	}
+
+	private void forward(Volume pVolume)
+	{
+		mNumberOfForwardedVolumes++;
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(pVolume);
+		else
+			pVolume.makeAvailableToManager();
+	}
+
+	public int getNumberOfBufferedVolumes()
+	{
+		synchronized (mLock)
+		{
+			int lCount = 0;
+			for (final ChannelBuffer lChannelBuffer : mChannelBufferMap.values())
+				lCount += lChannelBuffer.mTimeIndexToVolumeMap.size();
+			return lCount;
+		}
+	}
+
+	public long getNumberOfForwardedVolumes()
+	{
+		return mNumberOfForwardedVolumes;
+	}
+
+	public long getNumberOfReorderedVolumes()
+	{
+		return mNumberOfReorderedVolumes;
+	}
+
+	public long getNumberOfLateVolumes()
+	{
+		return mNumberOfLateVolumes;
+	}
+
+	public long getNumberOfDroppedVolumes()
+	{
+		return mNumberOfDroppedVolumes;
+	}
+
+	public long getNumberOfSkippedTimePoints()
+	{
+		return mNumberOfSkippedTimePoints;
+	}
+
+	public long getNumberOfStreamResets()
+	{
+		return mNumberOfStreamResets;
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		if (getRelaySink() != null)
+			return getRelaySink().getManager();
+		return null;
+	}
+
+	@Override
+	public void close()
+	{
+		synchronized (mLock)
+		{
+			mIsClosed = true;
+			mFlushFuture.cancel(false);
+			for (final ChannelBuffer lChannelBuffer : mChannelBufferMap.values())
+			{
+				for (final BufferedVolume lBufferedVolume : lChannelBuffer.mTimeIndexToVolumeMap.values())
+					lBufferedVolume.mVolume.makeAvailableToManager();
+				lChannelBuffer.mTimeIndexToVolumeMap.clear();
+			}
+		}
+	}
+
+}
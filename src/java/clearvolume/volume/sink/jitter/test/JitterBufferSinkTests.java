@@ -0,0 +1,201 @@
+package clearvolume.volume.sink.jitter.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.jitter.JitterBufferSink;
+import coremem.enums.NativeTypeEnum;
+
+public class JitterBufferSinkTests
+{
+
+	@Test
+	public void test() throws InterruptedException
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(20);
+		final ArrayList<Long> lReceivedTimeIndices = new ArrayList<>();
+
+		final JitterBufferSink lJitterBufferSink = new JitterBufferSink(new VolumeSinkInterface()
+																		{
+																			@Override
+																			public void sendVolume(Volume pVolume)
+																			{
+																				synchronized (lReceivedTimeIndices)
+																				{
+																					lReceivedTimeIndices.add(pVolume.getTimeIndex());
+																				}
+																				pVolume.makeAvailableToManager();
+																			}
+
+																			@Override
+																			public VolumeManager getManager()
+																			{
+																				return lVolumeManager;
+																			}
+																		},
+																		100,
+																		TimeUnit.MILLISECONDS,
+																		16);
+
+		send(lJitterBufferSink, 0);
+		send(lJitterBufferSink, 2);
+		send(lJitterBufferSink, 1);
+		assertEquals(3, lJitterBufferSink.getNumberOfBufferedVolumes());
+		assertEquals(1, lJitterBufferSink.getNumberOfReorderedVolumes());
+
+		Thread.sleep(300);
+		assertEquals(0, lJitterBufferSink.getNumberOfBufferedVolumes());
+
+		// next time index in sequence goes through immediately:
+		send(lJitterBufferSink, 3);
+		assertEquals(4, lJitterBufferSink.getNumberOfForwardedVolumes());
+
+		// late arrival is dropped:
+		send(lJitterBufferSink, 1);
+		assertEquals(1, lJitterBufferSink.getNumberOfLateVolumes());
+		assertEquals(1, lJitterBufferSink.getNumberOfDroppedVolumes());
+
+		// gap is skipped once the latency window has elapsed:
+		send(lJitterBufferSink, 6);
+		Thread.sleep(300);
+		assertEquals(2, lJitterBufferSink.getNumberOfSkippedTimePoints());
+
+		synchronized (lReceivedTimeIndices)
+		{
+			assertEquals(5, lReceivedTimeIndices.size());
+			for (int i = 0; i < 4; i++)
+				assertEquals(i, (long) lReceivedTimeIndices.get(i));
+			assertEquals(6, (long) lReceivedTimeIndices.get(4));
+		}
+
+		lJitterBufferSink.close();
+	}
+
+	@Test
+	public void testForwardOutsideLock()
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(4);
+		final JitterBufferSink[] lJitterBufferSink = new JitterBufferSink[1];
+		final AtomicInteger lNumberOfUnblockedForwards = new AtomicInteger();
+		lJitterBufferSink[0] = new JitterBufferSink(new VolumeSinkInterface()
+													{
+														@Override
+														public void sendVolume(Volume pVolume)
+														{
+															// another thread can use the sink meanwhile:
+															final Thread lThread = new Thread(new Runnable()
+															{
+																@Override
+																public void run()
+																{
+																	lJitterBufferSink[0].getNumberOfBufferedVolumes();
+																}
+															});
+															lThread.start();
+															try
+															{
+																lThread.join(1000);
+															}
+															catch (final InterruptedException e)
+															{
+																Thread.currentThread().interrupt();
+															}
+															if (!lThread.isAlive())
+																lNumberOfUnblockedForwards.incrementAndGet();
+															pVolume.makeAvailableToManager();
+														}
+
+														@Override
+														public VolumeManager getManager()
+														{
+															return lVolumeManager;
+														}
+													},
+													1,
+													TimeUnit.SECONDS,
+													1);
+
+		// the second volume pushes the first one out, then each one is next:
+		send(lJitterBufferSink[0], 0);
+		send(lJitterBufferSink[0], 1);
+		send(lJitterBufferSink[0], 2);
+		assertEquals(3, lJitterBufferSink[0].getNumberOfForwardedVolumes());
+		assertEquals(3, lNumberOfUnblockedForwards.get());
+		lJitterBufferSink[0].close();
+	}
+
+	@Test
+	public void testStreamReset() throws InterruptedException
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(20);
+		final ArrayList<Long> lReceivedTimeIndices = new ArrayList<>();
+
+		final JitterBufferSink lJitterBufferSink = new JitterBufferSink(new VolumeSinkInterface()
+																		{
+																			@Override
+																			public void sendVolume(Volume pVolume)
+																			{
+																				synchronized (lReceivedTimeIndices)
+																				{
+																					lReceivedTimeIndices.add(pVolume.getTimeIndex());
+																				}
+																				pVolume.makeAvailableToManager();
+																			}
+
+																			@Override
+																			public VolumeManager getManager()
+																			{
+																				return lVolumeManager;
+																			}
+																		},
+																		50,
+																		TimeUnit.MILLISECONDS,
+																		16);
+
+		for (int i = 0; i < 10; i++)
+			send(lJitterBufferSink, i);
+		Thread.sleep(200);
+
+		// the source restarts its time indices:
+		for (int i = 0; i < 4; i++)
+			send(lJitterBufferSink, i);
+		Thread.sleep(200);
+
+		assertEquals(1, lJitterBufferSink.getNumberOfStreamResets());
+		assertEquals(0, lJitterBufferSink.getNumberOfLateVolumes());
+		synchronized (lReceivedTimeIndices)
+		{
+			assertEquals(14, lReceivedTimeIndices.size());
+			for (int i = 0; i < 10; i++)
+				assertEquals(i, (long) lReceivedTimeIndices.get(i));
+			for (int i = 0; i < 4; i++)
+				assertEquals(i, (long) lReceivedTimeIndices.get(10 + i));
+		}
+
+		lJitterBufferSink.close();
+	}
+
+	private void send(JitterBufferSink pJitterBufferSink, long pTimeIndex)
+	{
+		final Volume lVolume = pJitterBufferSink.getManager()
+												.requestAndWaitForVolume(	1,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedByte,
+																			1,
+																			4,
+																			4,
+																			4);
+		lVolume.setTimeIndex(pTimeIndex);
+		lVolume.setChannelID(0);
+		pJitterBufferSink.sendVolume(lVolume);
+	}
+
+}
@@ -0,0 +1,253 @@
+package clearvolume.volume.sink.pipeline;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.utils.concurrent.MultiProducerRing;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.relay.RelaySinkAdapter;
+import clearvolume.volume.sink.relay.RelaySinkInterface;
+
+/**
+ * Queue in front of a relay sink, drained on a shared
+ * {@link SinkPipelineScheduler} instead of a dedicated thread. At most one
+ * drain task per stage runs at a time, so volumes are relayed in the order they
+ * were queued. A drain task relays a bounded batch of volumes and then yields
+ * its thread to the other stages sharing the scheduler. What happens when the
+ * queue is full is decided by a {@link BackPressurePolicy}.
+ *
+ * The queue is a preallocated lock-free {@link MultiProducerRing}: volumes can
+ * be sent from several threads, and both the drain task and the DropOldest
+ * policy take volumes from it. Its capacity is rounded up to the next power of
+ * two.
+ */
+public class AsynchronousRelaySink extends RelaySinkAdapter	implements
+															RelaySinkInterface,
+															ClearVolumeCloseable
+{
+	private static final int cMaxBatchSize = 16;
+
+	private final SinkPipelineScheduler mScheduler;
+	private final MultiProducerRing<Volume> mVolumeQueue;
+	private final BackPressurePolicy mBackPressurePolicy;
+	private final long mTimeOut;
+	private final TimeUnit mTimeUnit;
+
+	private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+	private final AtomicLong mNumberOfForwardedVolumes = new AtomicLong();
+	private final AtomicLong mNumberOfDroppedVolumes = new AtomicLong();
+	private volatile boolean mIsClosed;
+
+	private final Runnable mDrainRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			drain();
+		}
+	};
+
+	public AsynchronousRelaySink(	SinkPipelineScheduler pScheduler,
+									int pCapacity,
+									BackPressurePolicy pBackPressurePolicy,
+									long pTimeOut,
+									TimeUnit pTimeUnit)
+	{
+		super();
+		mScheduler = pScheduler;
+		mVolumeQueue = new MultiProducerRing<Volume>(pCapacity);
+		mBackPressurePolicy = pBackPressurePolicy;
+		mTimeOut = pTimeOut;
+		mTimeUnit = pTimeUnit;
+		mScheduler.register(this);
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		if (mIsClosed)
+		{
+			drop(pVolume);
+			return;
+		}
+
+		try
+		{
+			switch (mBackPressurePolicy)
+			{
+			case Block:
+				mVolumeQueue.put(pVolume);
+				break;
+			case DropNewest:
+				if (!mVolumeQueue.offer(pVolume, mTimeOut, mTimeUnit))
+				{
+					drop(pVolume);
+					return;
+				}
+				break;
+			case DropOldest:
+				while (!mVolumeQueue.offer(pVolume))
+				{
+					final Volume lOldestVolume = mVolumeQueue.poll();
+					if (lOldestVolume != null)
+						drop(lOldestVolume);
+				}
+				break;
+			}
+		}
+		catch (final InterruptedException e)
+		{
+			drop(pVolume);
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		scheduleDrain();
+	}
+
+	private void scheduleDrain()
+	{
+		if (mDrainScheduled.compareAndSet(false, true))
+			try
+			{
+				mScheduler.execute(mDrainRunnable);
+			}
+			catch (final RejectedExecutionException e)
+			{
+				// scheduler closed, queued volumes are released on close:
+				mDrainScheduled.set(false);
+			}
+	}
+
+	private void drain()
+	{
+		try
+		{
+			for (int i = 0; i < cMaxBatchSize; i++)
+			{
+				final Volume lVolume = mVolumeQueue.poll();
+				if (lVolume == null)
+					break;
+				final VolumeSinkInterface lRelaySink = getRelaySink();
+				if (lRelaySink != null)
+				{
+					lRelaySink.sendVolume(lVolume);
+					mNumberOfForwardedVolumes.incrementAndGet();
+				}
+				else
+					drop(lVolume);
+			}
+		}
+		catch (final Throwable e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			mDrainScheduled.set(false);
+			// volumes queued while the flag was still set would be stranded:
+			if (!mVolumeQueue.isEmpty() && !mScheduler.isClosed())
+				scheduleDrain();
+		}
+	}
+
+	private void drop(Volume pVolume)
+	{
+		mNumberOfDroppedVolumes.incrementAndGet();
+		pVolume.makeAvailableToManager();
+	}
+
+	/**
+	 * Waits until all queued volumes have been relayed.
+	 *
+	 * @param pTimeOut
+	 *            time out
+	 * @param pTimeUnit
+	 *            time unit
+	 * @return true if the queue was flushed before the time out
+	 */
+	public boolean flush(long pTimeOut, TimeUnit pTimeUnit)
+	{
+		final long lDeadline = System.nanoTime() + pTimeUnit.toNanos(pTimeOut);
+		while (!mVolumeQueue.isEmpty() || mDrainScheduled.get())
+		{
+			if (System.nanoTime() > lDeadline || mScheduler.isClosed())
+				return false;
+			try
+			{
+				Thread.sleep(1);
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getCapacity()
+	{
+		return mVolumeQueue.capacity();
+	}
+
+	public BackPressurePolicy getBackPressurePolicy()
+	{
+		return mBackPressurePolicy;
+	}
+
+	public int getNumberOfQueuedVolumes()
+	{
+		return mVolumeQueue.size();
+	}
+
+	public long getNumberOfForwardedVolumes()
+	{
+		return mNumberOfForwardedVolumes.get();
+	}
+
+	public long getNumberOfDroppedVolumes()
+	{
+		return mNumberOfDroppedVolumes.get();
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		if (getRelaySink() != null)
+			return getRelaySink().getManager();
+		return null;
+	}
+
+	/**
+	 * Stops accepting volumes and makes the volumes still queued available to
+	 * their manager. Call {@link #flush(long, TimeUnit)} first to relay them
+	 * instead.
+	 */
+	@Override
+	public void close()
+	{
+		if (mIsClosed)
+			return;
+		mIsClosed = true;
+		Volume lVolume;
+		while ((lVolume = mVolumeQueue.poll()) != null)
+			drop(lVolume);
+		mScheduler.unregister(this);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(	"%s [capacity=%d, policy=%s]",
+								getClass().getSimpleName(),
+								getCapacity(),
+								mBackPressurePolicy);
+	}
+
+}
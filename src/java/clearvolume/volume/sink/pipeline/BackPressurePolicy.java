@@ -0,0 +1,25 @@
+package clearvolume.volume.sink.pipeline;
+
+/**
+ * What an asynchronous pipeline stage does with an incoming volume when its
+ * queue is full.
+ */
+public enum BackPressurePolicy
+{
+	/**
+	 * The sender waits until there is room in the queue, nothing is dropped.
+	 */
+	Block,
+
+	/**
+	 * The sender waits up to the stage time out, then the incoming volume is
+	 * dropped and made available to its manager.
+	 */
+	DropNewest,
+
+	/**
+	 * The oldest queued volume is dropped and made available to its manager to
+	 * make room for the incoming one, the sender never waits.
+	 */
+	DropOldest;
+}
@@ -0,0 +1,20 @@
+package clearvolume.volume.sink.pipeline;
+
+/**
+ * Sinks that run background or periodic tasks. They use the shared
+ * {@link SinkPipelineScheduler} unless another one is set, and
+ * {@link SinkPipelineBuilder} sets the scheduler of the pipeline on every
+ * stage that implements this interface, so that a pipeline runs all its tasks
+ * on the scheduler it was given.
+ */
+public interface ScheduledSinkInterface
+{
+	/**
+	 * Sets the scheduler running the tasks of this sink, null for the shared
+	 * scheduler.
+	 *
+	 * @param pScheduler
+	 *            scheduler or null
+	 */
+	public void setScheduler(SinkPipelineScheduler pScheduler);
+}
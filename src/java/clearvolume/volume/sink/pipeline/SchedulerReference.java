@@ -0,0 +1,38 @@
+package clearvolume.volume.sink.pipeline;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Scheduler set on a {@link ScheduledSinkInterface}, resolved to the shared
+ * {@link SinkPipelineScheduler} while none is set. Tasks executed through the
+ * reference go to the scheduler that is current at the time they are
+ * submitted.
+ */
+public class SchedulerReference implements Executor
+{
+	private volatile SinkPipelineScheduler mScheduler;
+
+	public SchedulerReference()
+	{
+		super();
+	}
+
+	public void set(SinkPipelineScheduler pScheduler)
+	{
+		mScheduler = pScheduler;
+	}
+
+	public SinkPipelineScheduler get()
+	{
+		final SinkPipelineScheduler lScheduler = mScheduler;
+		return lScheduler != null	? lScheduler
+									: SinkPipelineScheduler.getSharedScheduler();
+	}
+
+	@Override
+	public void execute(Runnable pRunnable)
+	{
+		get().execute(pRunnable);
+	}
+
+}
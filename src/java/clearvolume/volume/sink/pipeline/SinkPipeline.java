@@ -0,0 +1,138 @@
+package clearvolume.volume.sink.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+
+/**
+ * Chain of relay sink stages built by a {@link SinkPipelineBuilder}. Volumes
+ * sent to the pipeline go to its first stage. Closing the pipeline flushes the
+ * asynchronous stages from first to last, so that volumes in flight reach the
+ * terminal sink, and then closes all closeable stages in the same order.
+ */
+public class SinkPipeline implements VolumeSinkInterface, ClearVolumeCloseable
+{
+	private final List<VolumeSinkInterface> mStages;
+	private final VolumeSinkInterface mTerminalSink;
+	private final SinkPipelineScheduler mScheduler;
+	private final long mFlushTimeOutInMilliseconds;
+	private volatile boolean mIsClosed;
+
+	SinkPipeline(	List<VolumeSinkInterface> pStages,
+					VolumeSinkInterface pTerminalSink,
+					SinkPipelineScheduler pScheduler,
+					long pFlushTimeOutInMilliseconds)
+	{
+		super();
+		mStages = Collections.unmodifiableList(new ArrayList<VolumeSinkInterface>(pStages));
+		mTerminalSink = pTerminalSink;
+		mScheduler = pScheduler;
+		mFlushTimeOutInMilliseconds = pFlushTimeOutInMilliseconds;
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		if (mIsClosed)
+		{
+			pVolume.makeAvailableToManager();
+			return;
+		}
+		getHead().sendVolume(pVolume);
+	}
+
+	private VolumeSinkInterface getHead()
+	{
+		return mStages.isEmpty() ? mTerminalSink : mStages.get(0);
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		return getHead().getManager();
+	}
+
+	/**
+	 * Returns the stages from first to last, including the asynchronous stages
+	 * inserted by the builder but not the terminal sink.
+	 *
+	 * @return stages
+	 */
+	public List<VolumeSinkInterface> getStages()
+	{
+		return mStages;
+	}
+
+	public VolumeSinkInterface getTerminalSink()
+	{
+		return mTerminalSink;
+	}
+
+	public SinkPipelineScheduler getScheduler()
+	{
+		return mScheduler;
+	}
+
+	/**
+	 * Describes the stages of the pipeline, which of them run asynchronously and
+	 * with what queue capacity and back pressure policy.
+	 *
+	 * @return description
+	 */
+	public String describe()
+	{
+		final StringBuilder lStringBuilder = new StringBuilder();
+		for (final VolumeSinkInterface lStage : mStages)
+		{
+			if (lStage instanceof AsynchronousRelaySink)
+			{
+				final AsynchronousRelaySink lAsynchronousRelaySink = (AsynchronousRelaySink) lStage;
+				lStringBuilder.append(String.format("[async capacity=%d policy=%s] ",
+													lAsynchronousRelaySink.getCapacity(),
+													lAsynchronousRelaySink.getBackPressurePolicy()));
+			}
+			else
+				lStringBuilder.append(lStage.getClass().getSimpleName())
+								.append(" -> ");
+		}
+		lStringBuilder.append(mTerminalSink.getClass().getSimpleName());
+		return lStringBuilder.toString();
+	}
+
+	@Override
+	public void close()
+	{
+		if (mIsClosed)
+			return;
+		mIsClosed = true;
+
+		for (final VolumeSinkInterface lStage : mStages)
+			if (lStage instanceof AsynchronousRelaySink)
+				((AsynchronousRelaySink) lStage).flush(	mFlushTimeOutInMilliseconds,
+														TimeUnit.MILLISECONDS);
+
+		for (final VolumeSinkInterface lStage : mStages)
+			if (lStage instanceof AutoCloseable)
+				try
+				{
+					((AutoCloseable) lStage).close();
+				}
+				catch (final Exception e)
+				{
+					e.printStackTrace();
+				}
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("SinkPipeline [%s]", describe());
+	}
+
+}
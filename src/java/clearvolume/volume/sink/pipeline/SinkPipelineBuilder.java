@@ -0,0 +1,191 @@
+package clearvolume.volume.sink.pipeline;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.relay.RelaySinkInterface;
+
+/**
+ * Builds a {@link SinkPipeline} from relay sink stages. Stages added with
+ * {@link #addStage(RelaySinkInterface)} run on the thread of the stage before
+ * them, stages added with
+ * {@link #addAsynchronousStage(RelaySinkInterface, int, BackPressurePolicy)}
+ * get a bounded queue in front of them and run on the threads of the
+ * scheduler, which is shared by all pipelines unless another one is given.
+ * Stages implementing {@link ScheduledSinkInterface} run their background
+ * tasks on that scheduler too.
+ *
+ * <pre>
+ * final SinkPipeline lSinkPipeline = new SinkPipelineBuilder().addStage(lChannelFilterSink)
+ * 															.addAsynchronousStage(	lTimeShiftingSink,
+ * 																					4,
+ * 																					BackPressurePolicy.DropOldest)
+ * 															.build(lRendererSink);
+ * </pre>
+ */
+public class SinkPipelineBuilder
+{
+	private static final long cDefaultTimeOutInMilliseconds = 100;
+	private static final long cDefaultFlushTimeOutInMilliseconds = 1000;
+
+	private SinkPipelineScheduler mScheduler;
+	private long mTimeOutInMilliseconds = cDefaultTimeOutInMilliseconds;
+	private long mFlushTimeOutInMilliseconds = cDefaultFlushTimeOutInMilliseconds;
+
+	private final ArrayList<RelaySinkInterface> mStages = new ArrayList<RelaySinkInterface>();
+	private final ArrayList<QueueSpecification> mQueueSpecifications = new ArrayList<QueueSpecification>();
+
+	private static class QueueSpecification
+	{
+		final int mCapacity;
+		final BackPressurePolicy mBackPressurePolicy;
+
+		QueueSpecification(int pCapacity, BackPressurePolicy pBackPressurePolicy)
+		{
+			mCapacity = pCapacity;
+			mBackPressurePolicy = pBackPressurePolicy;
+		}
+	}
+
+	public SinkPipelineBuilder()
+	{
+		super();
+	}
+
+	/**
+	 * Sets the scheduler that runs the asynchronous stages, the shared scheduler
+	 * is used otherwise.
+	 *
+	 * @param pScheduler
+	 *            scheduler
+	 * @return this builder
+	 */
+	public SinkPipelineBuilder setScheduler(SinkPipelineScheduler pScheduler)
+	{
+		mScheduler = pScheduler;
+		return this;
+	}
+
+	/**
+	 * Sets how long senders wait on a full queue with the
+	 * {@link BackPressurePolicy#DropNewest} policy.
+	 *
+	 * @param pTimeOut
+	 *            time out
+	 * @param pTimeUnit
+	 *            time unit
+	 * @return this builder
+	 */
+	public SinkPipelineBuilder setTimeOut(long pTimeOut, TimeUnit pTimeUnit)
+	{
+		mTimeOutInMilliseconds = pTimeUnit.toMillis(pTimeOut);
+		return this;
+	}
+
+	/**
+	 * Sets how long closing the pipeline waits for each asynchronous stage to
+	 * relay its queued volumes.
+	 *
+	 * @param pTimeOut
+	 *            time out
+	 * @param pTimeUnit
+	 *            time unit
+	 * @return this builder
+	 */
+	public SinkPipelineBuilder setFlushTimeOut(long pTimeOut, TimeUnit pTimeUnit)
+	{
+		mFlushTimeOutInMilliseconds = pTimeUnit.toMillis(pTimeOut);
+		return this;
+	}
+
+	public SinkPipelineBuilder addStage(RelaySinkInterface pStage)
+	{
+		mStages.add(pStage);
+		mQueueSpecifications.add(null);
+		return this;
+	}
+
+	public SinkPipelineBuilder addAsynchronousStage(RelaySinkInterface pStage,
+													int pQueueCapacity,
+													BackPressurePolicy pBackPressurePolicy)
+	{
+		if (pQueueCapacity < 1)
+			throw new IllegalArgumentException("Queue capacity must be at least 1");
+		mStages.add(pStage);
+		mQueueSpecifications.add(new QueueSpecification(	pQueueCapacity,
+															pBackPressurePolicy));
+		return this;
+	}
+
+	/**
+	 * Wires the stages to each other, from the terminal sink backwards, and
+	 * returns the pipeline.
+	 *
+	 * @param pTerminalSink
+	 *            sink receiving the output of the last stage, volumes are
+	 *            made available to their manager if null
+	 * @return pipeline
+	 */
+	public SinkPipeline build(VolumeSinkInterface pTerminalSink)
+	{
+		final SinkPipelineScheduler lScheduler = mScheduler != null	? mScheduler
+																	: SinkPipelineScheduler.getSharedScheduler();
+		final VolumeSinkInterface lTerminalSink = pTerminalSink != null	? pTerminalSink
+																		: new RecyclingSink();
+		if (lTerminalSink instanceof ScheduledSinkInterface)
+			((ScheduledSinkInterface) lTerminalSink).setScheduler(lScheduler);
+
+		final ArrayList<VolumeSinkInterface> lStages = new ArrayList<VolumeSinkInterface>();
+		VolumeSinkInterface lNext = lTerminalSink;
+		for (int i = mStages.size() - 1; i >= 0; i--)
+		{
+			final RelaySinkInterface lStage = mStages.get(i);
+			lStage.setRelaySink(lNext);
+			if (lStage instanceof ScheduledSinkInterface)
+				((ScheduledSinkInterface) lStage).setScheduler(lScheduler);
+			lStages.add(0, lStage);
+			lNext = lStage;
+
+			final QueueSpecification lQueueSpecification = mQueueSpecifications.get(i);
+			if (lQueueSpecification != null)
+			{
+				final AsynchronousRelaySink lAsynchronousRelaySink = new AsynchronousRelaySink(	lScheduler,
+																								lQueueSpecification.mCapacity,
+																								lQueueSpecification.mBackPressurePolicy,
+																								mTimeOutInMilliseconds,
+																								TimeUnit.MILLISECONDS);
+				lAsynchronousRelaySink.setRelaySink(lNext);
+				lStages.add(0, lAsynchronousRelaySink);
+				lNext = lAsynchronousRelaySink;
+			}
+		}
+
+		return new SinkPipeline(lStages,
+								lTerminalSink,
+								lScheduler,
+								mFlushTimeOutInMilliseconds);
+	}
+
+	/**
+	 * Default terminal sink: volumes reaching the end of the pipeline are given
+	 * back to their manager instead of being leaked.
+	 */
+	private static class RecyclingSink implements VolumeSinkInterface
+	{
+		@Override
+		public void sendVolume(Volume pVolume)
+		{
+			pVolume.makeAvailableToManager();
+		}
+
+		@Override
+		public VolumeManager getManager()
+		{
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package clearvolume.volume.sink.pipeline;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.utils.concurrent.NamedThreadFactory;
+
+/**
+ * Sized pool of named daemon threads shared by the asynchronous stages of one
+ * or more sink pipelines. Each asynchronous stage has at most one task running
+ * at a time, and the pool never has fewer threads than there are registered
+ * stages, so that a stage blocked on a full downstream queue cannot starve the
+ * stage that would drain it.
+ *
+ * The background and periodic tasks of the sinks implementing
+ * {@link ScheduledSinkInterface}, such as seeks, compression, prefetching,
+ * thumbnails and time outs, run on the same threads. Closing a scheduler
+ * therefore stops all the work of the pipelines using it.
+ */
+public class SinkPipelineScheduler implements Executor, ClearVolumeCloseable
+{
+	private static final String cThreadName = "SinkPipeline";
+	private static final long cShutdownTimeOutInMilliseconds = 1000;
+
+	private static SinkPipelineScheduler sSharedScheduler;
+
+	private final int mNumberOfThreads;
+	private final ScheduledThreadPoolExecutor mExecutor;
+	private int mNumberOfRegisteredStages;
+
+	/**
+	 * Returns the scheduler shared by default by all pipelines, with one thread
+	 * per available processor. It is created on first use and again after it
+	 * has been closed.
+	 *
+	 * @return shared scheduler
+	 */
+	public static synchronized SinkPipelineScheduler getSharedScheduler()
+	{
+		if (sSharedScheduler == null || sSharedScheduler.isClosed())
+			sSharedScheduler = new SinkPipelineScheduler(Runtime.getRuntime()
+																	.availableProcessors());
+		return sSharedScheduler;
+	}
+
+	public SinkPipelineScheduler(int pNumberOfThreads)
+	{
+		this(pNumberOfThreads, cThreadName);
+	}
+
+	public SinkPipelineScheduler(int pNumberOfThreads, String pThreadName)
+	{
+		super();
+		if (pNumberOfThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		mNumberOfThreads = pNumberOfThreads;
+		mExecutor = new ScheduledThreadPoolExecutor(pNumberOfThreads,
+													new NamedThreadFactory(pThreadName));
+		// periodic tasks of closed sinks are cancelled, do not keep them queued:
+		mExecutor.setRemoveOnCancelPolicy(true);
+	}
+
+	@Override
+	public void execute(Runnable pRunnable)
+	{
+		mExecutor.execute(pRunnable);
+	}
+
+	public Future<?> submit(Runnable pRunnable)
+	{
+		return mExecutor.submit(pRunnable);
+	}
+
+	public ScheduledFuture<?> schedule(	Runnable pRunnable,
+										long pDelay,
+										TimeUnit pTimeUnit)
+	{
+		return mExecutor.schedule(pRunnable, pDelay, pTimeUnit);
+	}
+
+	public ScheduledFuture<?> scheduleAtFixedRate(	Runnable pRunnable,
+													long pInitialDelay,
+													long pPeriod,
+													TimeUnit pTimeUnit)
+	{
+		return mExecutor.scheduleAtFixedRate(	pRunnable,
+												pInitialDelay,
+												pPeriod,
+												pTimeUnit);
+	}
+
+	synchronized void register(AsynchronousRelaySink pStage)
+	{
+		mNumberOfRegisteredStages++;
+		resize();
+	}
+
+	synchronized void unregister(AsynchronousRelaySink pStage)
+	{
+		if (mNumberOfRegisteredStages > 0)
+			mNumberOfRegisteredStages--;
+		resize();
+	}
+
+	private void resize()
+	{
+		if (mExecutor.isShutdown())
+			return;
+		mExecutor.setCorePoolSize(Math.max(	mNumberOfThreads,
+											mNumberOfRegisteredStages));
+	}
+
+	public int getNumberOfThreads()
+	{
+		return mExecutor.getCorePoolSize();
+	}
+
+	public synchronized int getNumberOfRegisteredStages()
+	{
+		return mNumberOfRegisteredStages;
+	}
+
+	public boolean isClosed()
+	{
+		return mExecutor.isShutdown();
+	}
+
+	/**
+	 * Stops accepting tasks, lets running tasks finish for a short while and
+	 * interrupts them after that.
+	 */
+	@Override
+	public void close()
+	{
+		mExecutor.shutdown();
+		try
+		{
+			if (!mExecutor.awaitTermination(cShutdownTimeOutInMilliseconds,
+											TimeUnit.MILLISECONDS))
+				mExecutor.shutdownNow();
+		}
+		catch (final InterruptedException e)
+		{
+			mExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+package clearvolume.volume.sink.pipeline.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.pipeline.AsynchronousRelaySink;
+import clearvolume.volume.sink.pipeline.BackPressurePolicy;
+import clearvolume.volume.sink.pipeline.SinkPipeline;
+import clearvolume.volume.sink.pipeline.SinkPipelineBuilder;
+import clearvolume.volume.sink.pipeline.SinkPipelineScheduler;
+import clearvolume.volume.sink.relay.RelaySinkAdapter;
+import coremem.enums.NativeTypeEnum;
+
+public class SinkPipelineTests
+{
+
+	private static class CountingRelaySink extends RelaySinkAdapter
+	{
+		final AtomicLong mCount = new AtomicLong();
+		volatile String mThreadName;
+
+		@Override
+		public void sendVolume(Volume pVolume)
+		{
+			mCount.incrementAndGet();
+			mThreadName = Thread.currentThread().getName();
+			getRelaySink().sendVolume(pVolume);
+		}
+
+		@Override
+		public VolumeManager getManager()
+		{
+			return getRelaySink().getManager();
+		}
+	}
+
+	private static class RecordingSink implements VolumeSinkInterface
+	{
+		final VolumeManager mVolumeManager = new VolumeManager(100);
+		final ArrayList<Long> mTimeIndices = new ArrayList<Long>();
+		final long mDelayInMilliseconds;
+
+		RecordingSink(long pDelayInMilliseconds)
+		{
+			mDelayInMilliseconds = pDelayInMilliseconds;
+		}
+
+		@Override
+		public void sendVolume(Volume pVolume)
+		{
+			synchronized (mTimeIndices)
+			{
+				mTimeIndices.add(pVolume.getTimeIndex());
+			}
+			try
+			{
+				Thread.sleep(mDelayInMilliseconds);
+			}
+			catch (final InterruptedException e)
+			{
+			}
+			pVolume.makeAvailableToManager();
+		}
+
+		@Override
+		public VolumeManager getManager()
+		{
+			return mVolumeManager;
+		}
+	}
+
+	@Test
+	public void testOrderAndShutdown()
+	{
+		final SinkPipelineScheduler lScheduler = new SinkPipelineScheduler(1);
+		final CountingRelaySink lFirstStage = new CountingRelaySink();
+		final CountingRelaySink lSecondStage = new CountingRelaySink();
+		final RecordingSink lRecordingSink = new RecordingSink(0);
+
+		final SinkPipeline lSinkPipeline = new SinkPipelineBuilder().setScheduler(lScheduler)
+																	.addAsynchronousStage(	lFirstStage,
+																							8,
+																							BackPressurePolicy.Block)
+																	.addAsynchronousStage(	lSecondStage,
+																							2,
+																							BackPressurePolicy.Block)
+																	.build(lRecordingSink);
+
+		assertEquals(4, lSinkPipeline.getStages().size());
+		assertEquals(	"[async capacity=8 policy=Block] CountingRelaySink -> [async capacity=2 policy=Block] CountingRelaySink -> RecordingSink",
+						lSinkPipeline.describe());
+		// one thread per asynchronous stage at least:
+		assertEquals(2, lScheduler.getNumberOfThreads());
+
+		for (int i = 0; i < 1000; i++)
+			lSinkPipeline.sendVolume(newVolume(lRecordingSink, i));
+		lSinkPipeline.close();
+
+		assertEquals(1000, lFirstStage.mCount.get());
+		assertEquals(1000, lRecordingSink.mTimeIndices.size());
+		for (int i = 0; i < 1000; i++)
+			assertEquals(i, (long) lRecordingSink.mTimeIndices.get(i));
+		assertTrue(lSecondStage.mThreadName.startsWith("SinkPipeline-"));
+		assertEquals(0, lScheduler.getNumberOfRegisteredStages());
+
+		lScheduler.close();
+		assertTrue(lScheduler.isClosed());
+	}
+
+	@Test
+	public void testDropOldest() throws InterruptedException
+	{
+		final SinkPipelineScheduler lScheduler = new SinkPipelineScheduler(2);
+		final RecordingSink lRecordingSink = new RecordingSink(5);
+		final SinkPipeline lSinkPipeline = new SinkPipelineBuilder().setScheduler(lScheduler)
+																	.addAsynchronousStage(	new CountingRelaySink(),
+																							2,
+																							BackPressurePolicy.DropOldest)
+																	.build(lRecordingSink);
+
+		final long lStart = System.nanoTime();
+		for (int i = 0; i < 100; i++)
+			lSinkPipeline.sendVolume(newVolume(lRecordingSink, i));
+		// the sender never waits for the slow sink:
+		assertTrue(System.nanoTime() - lStart < TimeUnit.MILLISECONDS.toNanos(250));
+
+		final AsynchronousRelaySink lAsynchronousRelaySink = (AsynchronousRelaySink) lSinkPipeline.getStages()
+																									.get(0);
+		assertTrue(lAsynchronousRelaySink.flush(1, TimeUnit.SECONDS));
+		assertTrue(lAsynchronousRelaySink.getNumberOfDroppedVolumes() > 0);
+		assertEquals(100, lAsynchronousRelaySink.getNumberOfDroppedVolumes() + lAsynchronousRelaySink.getNumberOfForwardedVolumes());
+		// the most recent volume always gets through:
+		assertEquals(99L, (long) lRecordingSink.mTimeIndices.get(lRecordingSink.mTimeIndices.size() - 1));
+
+		lSinkPipeline.close();
+		lScheduler.close();
+	}
+
+	@Test
+	public void testDefaultTerminalSinkRecycles()
+	{
+		final AtomicLong lNumberOfRecycledVolumes = new AtomicLong();
+		final VolumeManager lVolumeManager = new VolumeManager(1)
+		{
+			@Override
+			public <T> void makeAvailable(Volume pVolume)
+			{
+				lNumberOfRecycledVolumes.incrementAndGet();
+				super.makeAvailable(pVolume);
+			}
+		};
+		final CountingRelaySink lCountingRelaySink = new CountingRelaySink();
+		final SinkPipeline lSinkPipeline = new SinkPipelineBuilder().addStage(lCountingRelaySink)
+																	.build(null);
+
+		for (int i = 0; i < 10; i++)
+		{
+			final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	0,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedByte,
+																			1,
+																			4,
+																			4,
+																			4);
+			lSinkPipeline.sendVolume(lVolume);
+		}
+		assertEquals(10, lCountingRelaySink.mCount.get());
+		assertEquals(10, lNumberOfRecycledVolumes.get());
+
+		// volumes without a manager are dropped quietly:
+		lSinkPipeline.sendVolume(new Volume(NativeTypeEnum.UnsignedByte,
+											1,
+											4,
+											4,
+											4));
+
+		lSinkPipeline.close();
+		lVolumeManager.close();
+	}
+
+	private static Volume newVolume(VolumeSinkInterface pSink, long pTimeIndex)
+	{
+		final Volume lVolume = pSink.getManager()
+									.requestAndWaitForVolume(	0,
+																TimeUnit.MILLISECONDS,
+																NativeTypeEnum.UnsignedByte,
+																1,
+																4,
+																4,
+																4);
+		lVolume.setTimeIndex(pTimeIndex);
+		return lVolume;
+	}
+
+}
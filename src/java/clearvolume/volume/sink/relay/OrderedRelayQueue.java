@@ -0,0 +1,66 @@
+package clearvolume.volume.sink.relay;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lets a sink decide what to relay while holding its lock, and relay it after
+ * releasing the lock without losing the order of its decisions. Items are added
+ * while holding the lock and relayed by {@link #drain()}, called once the lock
+ * is released; a single thread drains at a time, the others return right away
+ * and leave their items to it. A relay sink calling back into the same sink
+ * from the draining thread therefore neither deadlocks nor reorders.
+ *
+ * @param <T>
+ *            item type, a volume or a group of volumes
+ */
+public abstract class OrderedRelayQueue<T>
+{
+	private final ConcurrentLinkedQueue<T> mQueue = new ConcurrentLinkedQueue<T>();
+	private final AtomicBoolean mIsDraining = new AtomicBoolean();
+
+	public OrderedRelayQueue()
+	{
+		super();
+	}
+
+	/**
+	 * Relays one item, called by the draining thread only.
+	 *
+	 * @param pItem
+	 *            item
+	 */
+	protected abstract void relay(T pItem);
+
+	public void add(T pItem)
+	{
+		mQueue.add(pItem);
+	}
+
+	/**
+	 * Relays the queued items in order, unless another thread is already doing
+	 * it.
+	 */
+	public void drain()
+	{
+		// items added after the last poll but before the flag is cleared would
+		// be stranded, so check again once it is:
+		while (!mQueue.isEmpty() && mIsDraining.compareAndSet(false, true))
+			try
+			{
+				T lItem;
+				while ((lItem = mQueue.poll()) != null)
+					relay(lItem);
+			}
+			finally
+			{
+				mIsDraining.set(false);
+			}
+	}
+
+	public int size()
+	{
+		return mQueue.size();
+	}
+
+}
@@ -1,5 +1,7 @@
 package clearvolume.volume.sink.renderer;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
@@ -12,13 +14,19 @@ import clearvolume.transferf.TransferFunctions;
 import clearvolume.volume.Volume;
 import clearvolume.volume.VolumeManager;
 import clearvolume.volume.sink.NullVolumeSink;
+import clearvolume.volume.sink.VolumeGroupSinkInterface;
+import clearvolume.volume.sink.VolumeSinkInterface;
 import clearvolume.volume.sink.relay.RelaySinkAdapter;
 import clearvolume.volume.sink.relay.RelaySinkInterface;
 import coremem.enums.NativeTypeEnum;
+import coremem.fragmented.FragmentedMemory;
+import coremem.fragmented.FragmentedMemoryInterface;
+import coremem.offheap.OffHeapMemory;
 import coremem.util.Size;
 
 public class ClearVolumeRendererSink extends RelaySinkAdapter	implements
 																RelaySinkInterface,
+																VolumeGroupSinkInterface,
 																ClearVolumeCloseable
 {
 
@@ -72,7 +80,63 @@ public class ClearVolumeRendererSink extends RelaySinkAdapter	implements
 	@Override
 	public void sendVolume(Volume pVolume)
 	{
-		final long lTimePointIndex = pVolume.getTimeIndex();
+		uploadVolume(pVolume);
+
+		mClearVolumeRendererInterface.requestDisplay();
+
+		mClearVolumeRendererInterface.waitToFinishAllDataBufferCopy(mWaitForCopyTimeout,
+																	mTimeUnit);
+
+		if (getRelaySink() != null)
+			getRelaySink().sendVolume(pVolume);
+		else
+			pVolume.makeAvailableToManager();/**/
+
+	}
+
+	/**
+	 * Uploads all volumes of a group (typically one per channel of the same time
+	 * point) to their render layers and then requests a single display, so that
+	 * all layers are updated together with one redraw. Volume data updates are
+	 * held back while the layers are set, so that the renderer does not pick up
+	 * part of the group, and the copies are waited for once.
+	 */
+	@Override
+	public void sendVolumeGroup(List<Volume> pVolumes)
+	{
+		if (pVolumes.isEmpty())
+			return;
+
+		final ClearVolumeRendererInterface lRenderer = mClearVolumeRendererInterface;
+		lRenderer.setVolumeDataUpdateAllowed(false);
+		try
+		{
+			for (final Volume lVolume : pVolumes)
+				uploadVolume(lVolume);
+		}
+		finally
+		{
+			lRenderer.setVolumeDataUpdateAllowed(true);
+		}
+
+		mClearVolumeRendererInterface.requestDisplay();
+
+		mClearVolumeRendererInterface.waitToFinishAllDataBufferCopy(mWaitForCopyTimeout,
+																	mTimeUnit);
+
+		final VolumeSinkInterface lRelaySink = getRelaySink();
+		if (lRelaySink instanceof VolumeGroupSinkInterface)
+			((VolumeGroupSinkInterface) lRelaySink).sendVolumeGroup(pVolumes);
+		else if (lRelaySink != null)
+			for (final Volume lVolume : pVolumes)
+				lRelaySink.sendVolume(lVolume);
+		else
+			for (final Volume lVolume : pVolumes)
+				lVolume.makeAvailableToManager();
+	}
+
+	private void uploadVolume(Volume pVolume)
+	{
 		final int lChannelID = pVolume.getChannelID();
 		final String lChannelName = pVolume.getChannelName();
 		mSeenChannelIdToNameMap.put(lChannelID, lChannelName);
@@ -111,19 +175,28 @@ public class ClearVolumeRendererSink extends RelaySinkAdapter	implements
 			mClearVolumeRendererInterface.setTransferFunction(lTransferFunction);
 		}
 
-		mClearVolumeRendererInterface.setVolumeDataBuffer(	lRenderLayer,
-															pVolume);
-
-		mClearVolumeRendererInterface.requestDisplay();
-
-		mClearVolumeRendererInterface.waitToFinishAllDataBufferCopy(mWaitForCopyTimeout,
-																	mTimeUnit);
+		// does not wait for the copy, the caller waits once for all layers:
+		mClearVolumeRendererInterface.setVolumeDataBuffer(	false,
+															mWaitForCopyTimeout,
+															mTimeUnit,
+															lRenderLayer,
+															wrap(pVolume.getDataBuffer()),
+															pVolume.getWidthInVoxels(),
+															pVolume.getHeightInVoxels(),
+															pVolume.getDepthInVoxels(),
+															pVolume.getVoxelWidthInRealUnits(),
+															pVolume.getVoxelHeightInRealUnits(),
+															pVolume.getVoxelDepthInRealUnits());
+	}
 
-		if (getRelaySink() != null)
-			getRelaySink().sendVolume(pVolume);
-		else
-			pVolume.makeAvailableToManager();/**/
+	private static FragmentedMemoryInterface wrap(ByteBuffer pByteBuffer)
+	{
+		if (pByteBuffer.isDirect())
+			return FragmentedMemory.wrap(OffHeapMemory.wrapBuffer(pByteBuffer));
 
+		final OffHeapMemory lOffHeapMemory = new OffHeapMemory(pByteBuffer.capacity());
+		lOffHeapMemory.copyFrom(pByteBuffer);
+		return FragmentedMemory.wrap(lOffHeapMemory);
 	}
 
 	private void createRenderer(NativeTypeEnum pNativeTypeEnum,
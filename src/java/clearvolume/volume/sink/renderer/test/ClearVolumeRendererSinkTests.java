@@ -0,0 +1,130 @@
+package clearvolume.volume.sink.renderer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import clearvolume.renderer.ClearVolumeRendererInterface;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.renderer.ClearVolumeRendererSink;
+import coremem.enums.NativeTypeEnum;
+
+public class ClearVolumeRendererSinkTests
+{
+
+	/**
+	 * Renderer counting display requests, copy waits and uploads.
+	 */
+	private static class CountingRenderer implements InvocationHandler
+	{
+		int mNumberOfDisplayRequests;
+		int mNumberOfCopyWaits;
+		int mNumberOfUploads;
+		int mNumberOfWaitingUploads;
+		int mNumberOfUploadsWhileUpdatesAllowed;
+		boolean mVolumeDataUpdateAllowed = true;
+
+		@Override
+		public Object invoke(Object pProxy, Method pMethod, Object[] pArguments)
+		{
+			final String lName = pMethod.getName();
+			if (lName.equals("requestDisplay"))
+				mNumberOfDisplayRequests++;
+			else if (lName.equals("waitToFinishAllDataBufferCopy"))
+				mNumberOfCopyWaits++;
+			else if (lName.equals("setVolumeDataUpdateAllowed"))
+				mVolumeDataUpdateAllowed = (Boolean) pArguments[0];
+			else if (lName.equals("isVolumeDataUpdateAllowed"))
+				return mVolumeDataUpdateAllowed;
+			else if (lName.equals("getNumberOfRenderLayers"))
+				return 4;
+			else if (lName.equals("getNativeType"))
+				return NativeTypeEnum.UnsignedByte;
+			else if (lName.equals("setVolumeDataBuffer"))
+			{
+				mNumberOfUploads++;
+				if (!(pArguments[0] instanceof Boolean) || (Boolean) pArguments[0])
+					mNumberOfWaitingUploads++;
+				if (mVolumeDataUpdateAllowed)
+					mNumberOfUploadsWhileUpdatesAllowed++;
+			}
+
+			final Class<?> lReturnType = pMethod.getReturnType();
+			if (lReturnType == boolean.class)
+				return true;
+			if (lReturnType == int.class)
+				return 0;
+			if (lReturnType == long.class)
+				return 0L;
+			if (lReturnType == float.class)
+				return 0f;
+			if (lReturnType == double.class)
+				return 0d;
+			return null;
+		}
+	}
+
+	@Test
+	public void testOneDisplayRequestPerGroup()
+	{
+		final CountingRenderer lCountingRenderer = new CountingRenderer();
+		final ClearVolumeRendererInterface lRenderer = (ClearVolumeRendererInterface) Proxy.newProxyInstance(	ClearVolumeRendererInterface.class.getClassLoader(),
+																												new Class<?>[]
+																												{ ClearVolumeRendererInterface.class },
+																												lCountingRenderer);
+		final VolumeManager lVolumeManager = new VolumeManager(8);
+		final ClearVolumeRendererSink lRendererSink = new ClearVolumeRendererSink(	lRenderer,
+																					lVolumeManager,
+																					100,
+																					TimeUnit.MILLISECONDS);
+
+		final List<Volume> lGroup = new ArrayList<Volume>();
+		for (int c = 0; c < 3; c++)
+		{
+			final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedByte,
+																			1,
+																			8,
+																			8,
+																			8);
+			lVolume.setChannelID(c);
+			lGroup.add(lVolume);
+		}
+		lRendererSink.sendVolumeGroup(lGroup);
+
+		assertEquals(3, lCountingRenderer.mNumberOfUploads);
+		assertEquals(0, lCountingRenderer.mNumberOfWaitingUploads);
+		assertEquals(0, lCountingRenderer.mNumberOfUploadsWhileUpdatesAllowed);
+		assertTrue(lCountingRenderer.mVolumeDataUpdateAllowed);
+		assertEquals(1, lCountingRenderer.mNumberOfDisplayRequests);
+		assertEquals(1, lCountingRenderer.mNumberOfCopyWaits);
+
+		// a single volume also waits once, after its upload:
+		final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																		TimeUnit.MILLISECONDS,
+																		NativeTypeEnum.UnsignedByte,
+																		1,
+																		8,
+																		8,
+																		8);
+		lRendererSink.sendVolume(lVolume);
+		assertEquals(4, lCountingRenderer.mNumberOfUploads);
+		assertEquals(0, lCountingRenderer.mNumberOfWaitingUploads);
+		assertEquals(2, lCountingRenderer.mNumberOfDisplayRequests);
+		assertEquals(2, lCountingRenderer.mNumberOfCopyWaits);
+		assertEquals(1, lCountingRenderer.mNumberOfUploadsWhileUpdatesAllowed);
+
+		lVolumeManager.close();
+	}
+
+}
@@ -0,0 +1,280 @@
+package clearvolume.volume.sink.sync;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeGroupSinkInterface;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.pipeline.ScheduledSinkInterface;
+import clearvolume.volume.sink.pipeline.SinkPipelineScheduler;
+import clearvolume.volume.sink.relay.OrderedRelayQueue;
+import clearvolume.volume.sink.relay.RelaySinkAdapter;
+import clearvolume.volume.sink.relay.RelaySinkInterface;
+
+/**
+ * Groups incoming volumes by time index across a channel set and releases each
+ * time point as one group once all channels have arrived, or once the time out
+ * for missing channels has elapsed. Groups are released in time index order. If
+ * the relay sink implements {@link VolumeGroupSinkInterface} it receives the
+ * whole group at once, otherwise volumes are sent one by one. Time outs are
+ * checked by a periodic task on a {@link SinkPipelineScheduler}. Groups are
+ * decided under the sink's lock but relayed after releasing it, through an
+ * {@link OrderedRelayQueue}.
+ *
+ * The channel set can be given explicitly; if not, it is learned from the
+ * channels seen so far.
+ */
+public class TimePointSynchronizerSink extends RelaySinkAdapter	implements
+																RelaySinkInterface,
+																ScheduledSinkInterface,
+																ClearVolumeCloseable
+{
+
+	private final Object mLock = new Object();
+	private final TreeSet<Integer> mChannelSet = new TreeSet<Integer>();
+	private final boolean mLearnChannels;
+	private final TreeMap<Long, TimePointGroup> mPendingGroups = new TreeMap<Long, TimePointGroup>();
+	private final long mTimeOutInNanoseconds;
+	private final long mCheckPeriodInNanoseconds;
+	private SinkPipelineScheduler mScheduler;
+	private ScheduledFuture<?> mTimeOutFuture;
+	private boolean mIsClosed;
+
+	private final OrderedRelayQueue<ArrayList<Volume>> mRelayQueue = new OrderedRelayQueue<ArrayList<Volume>>()
+	{
+		@Override
+		protected void relay(ArrayList<Volume> pGroup)
+		{
+			forward(pGroup);
+		}
+	};
+
+	private final Runnable mTimeOutRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			try
+			{
+				releaseTimedOutGroups();
+			}
+			catch (final Throwable e)
+			{
+				e.printStackTrace();
+			}
+		}
+	};
+
+	private long mLastReleasedTimeIndex = Long.MIN_VALUE;
+	private volatile long mNumberOfCompleteGroups;
+	private volatile long mNumberOfIncompleteGroups;
+	private volatile long mNumberOfLateVolumes;
+
+	private static class TimePointGroup
+	{
+		final long mCreationTimeInNanoseconds = System.nanoTime();
+		final TreeMap<Integer, Volume> mChannelToVolumeMap = new TreeMap<Integer, Volume>();
+	}
+
+	public TimePointSynchronizerSink(	long pTimeOut,
+										TimeUnit pTimeUnit,
+										int... pChannels)
+	{
+		this(null, pTimeOut, pTimeUnit, pChannels);
+	}
+
+	public TimePointSynchronizerSink(	VolumeSinkInterface pRelaySink,
+										long pTimeOut,
+										TimeUnit pTimeUnit,
+										int... pChannels)
+	{
+		super(pRelaySink);
+		mTimeOutInNanoseconds = pTimeUnit.toNanos(pTimeOut);
+		mLearnChannels = pChannels == null || pChannels.length == 0;
+		if (!mLearnChannels)
+			for (final int lChannel : pChannels)
+				mChannelSet.add(lChannel);
+
+		mCheckPeriodInNanoseconds = Math.max(	TimeUnit.MILLISECONDS.toNanos(1),
+												mTimeOutInNanoseconds / 4);
+		setScheduler(null);
+	}
+
+	@Override
+	public void setScheduler(SinkPipelineScheduler pScheduler)
+	{
+		synchronized (mLock)
+		{
+			if (mIsClosed)
+				return;
+			if (mTimeOutFuture != null)
+				mTimeOutFuture.cancel(false);
+			mScheduler = pScheduler != null	? pScheduler
+											: SinkPipelineScheduler.getSharedScheduler();
+			mTimeOutFuture = mScheduler.scheduleAtFixedRate(mTimeOutRunnable,
+															mCheckPeriodInNanoseconds,
+															mCheckPeriodInNanoseconds,
+															TimeUnit.NANOSECONDS);
+		}
+	}
+
+	public SinkPipelineScheduler getScheduler()
+	{
+		synchronized (mLock)
+		{
+			return mScheduler;
+		}
+	}
+
+	@Override
+	public void sendVolume(Volume pVolume)
+	{
+		synchronized (mLock)
+		{
+			final long lTimeIndex = pVolume.getTimeIndex();
+			final int lChannelID = pVolume.getChannelID();
+
+			if (mLearnChannels)
+				mChannelSet.add(lChannelID);
+
+			if (lTimeIndex <= mLastReleasedTimeIndex)
+			{
+				// the group for this time point is gone, pass the volume on alone:
+				mNumberOfLateVolumes++;
+				final ArrayList<Volume> lGroup = new ArrayList<Volume>(1);
+				lGroup.add(pVolume);
+				mRelayQueue.add(lGroup);
+			}
+			else
+				addToGroup(pVolume, lTimeIndex, lChannelID);
+		}
+		mRelayQueue.drain();
+	}
+
+	private void addToGroup(Volume pVolume, long pTimeIndex, int pChannelID)
+	{
+		TimePointGroup lTimePointGroup = mPendingGroups.get(pTimeIndex);
+		if (lTimePointGroup == null)
+		{
+			lTimePointGroup = new TimePointGroup();
+			mPendingGroups.put(pTimeIndex, lTimePointGroup);
+		}
+
+		final Volume lReplacedVolume = lTimePointGroup.mChannelToVolumeMap.put(	pChannelID,
+																				pVolume);
+		if (lReplacedVolume != null && lReplacedVolume != pVolume)
+			lReplacedVolume.makeAvailableToManager();
+
+		if (lTimePointGroup.mChannelToVolumeMap.keySet()
+												.containsAll(mChannelSet))
+			releaseUpTo(pTimeIndex);
+	}
+
+	/**
+	 * Releases all pending groups whose time out has elapsed, together with any
+	 * older pending groups so that release order is preserved.
+	 */
+	public void releaseTimedOutGroups()
+	{
+		synchronized (mLock)
+		{
+			final long lNow = System.nanoTime();
+			Long lNewestTimedOutTimeIndex = null;
+			for (final Map.Entry<Long, TimePointGroup> lEntry : mPendingGroups.entrySet())
+				if (lNow - lEntry.getValue().mCreationTimeInNanoseconds >= mTimeOutInNanoseconds)
+					lNewestTimedOutTimeIndex = lEntry.getKey();
+
+			if (lNewestTimedOutTimeIndex != null)
+				releaseUpTo(lNewestTimedOutTimeIndex);
+		}
+		mRelayQueue.drain();
+	}
+
+	/**
+	 * Queues the pending groups up to a time index for relaying. Must be called
+	 * while holding the lock.
+	 */
+	private void releaseUpTo(long pTimeIndex)
+	{
+		while (!mPendingGroups.isEmpty() && mPendingGroups.firstKey() <= pTimeIndex)
+		{
+			final Map.Entry<Long, TimePointGroup> lEntry = mPendingGroups.pollFirstEntry();
+			final TimePointGroup lTimePointGroup = lEntry.getValue();
+
+			if (lTimePointGroup.mChannelToVolumeMap.keySet()
+													.containsAll(mChannelSet))
+				mNumberOfCompleteGroups++;
+			else
+				mNumberOfIncompleteGroups++;
+
+			mLastReleasedTimeIndex = lEntry.getKey();
+			mRelayQueue.add(new ArrayList<Volume>(lTimePointGroup.mChannelToVolumeMap.values()));
+		}
+	}
+
+	private void forward(ArrayList<Volume> pGroup)
+	{
+		final VolumeSinkInterface lRelaySink = getRelaySink();
+		if (lRelaySink instanceof VolumeGroupSinkInterface)
+			((VolumeGroupSinkInterface) lRelaySink).sendVolumeGroup(pGroup);
+		else if (lRelaySink != null)
+			for (final Volume lVolume : pGroup)
+				lRelaySink.sendVolume(lVolume);
+		else
+			for (final Volume lVolume : pGroup)
+				lVolume.makeAvailableToManager();
+	}
+
+	public int getNumberOfPendingGroups()
+	{
+		synchronized (mLock)
+		{
+			return mPendingGroups.size();
+		}
+	}
+
+	public long getNumberOfCompleteGroups()
+	{
+		return mNumberOfCompleteGroups;
+	}
+
+	public long getNumberOfIncompleteGroups()
+	{
+		return mNumberOfIncompleteGroups;
+	}
+
+	public long getNumberOfLateVolumes()
+	{
+		return mNumberOfLateVolumes;
+	}
+
+	@Override
+	public VolumeManager getManager()
+	{
+		if (getRelaySink() != null)
+			return getRelaySink().getManager();
+		return null;
+	}
+
+	@Override
+	public void close()
+	{
+		synchronized (mLock)
+		{
+			mIsClosed = true;
+			mTimeOutFuture.cancel(false);
+			for (final TimePointGroup lTimePointGroup : mPendingGroups.values())
+				for (final Volume lVolume : lTimePointGroup.mChannelToVolumeMap.values())
+					lVolume.makeAvailableToManager();
+			mPendingGroups.clear();
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+package clearvolume.volume.sink.sync.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeGroupSinkInterface;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.sync.TimePointSynchronizerSink;
+import coremem.enums.NativeTypeEnum;
+
+public class TimePointSynchronizerSinkTests
+{
+
+	@Test
+	public void test() throws InterruptedException
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(20);
+		final List<List<Volume>> lReceivedGroups = new ArrayList<>();
+
+		final TimePointSynchronizerSink lSynchronizerSink = new TimePointSynchronizerSink(	new VolumeGroupSinkInterface()
+																							{
+																								@Override
+																								public void sendVolume(Volume pVolume)
+																								{
+																									final ArrayList<Volume> lGroup = new ArrayList<>();
+																									lGroup.add(pVolume);
+																									sendVolumeGroup(lGroup);
+																								}
+
+																								@Override
+																								public void sendVolumeGroup(List<Volume> pVolumes)
+																								{
+																									synchronized (lReceivedGroups)
+																									{
+																										lReceivedGroups.add(pVolumes);
+																									}
+																									for (final Volume lVolume : pVolumes)
+																										lVolume.makeAvailableToManager();
+																								}
+
+																								@Override
+																								public VolumeManager getManager()
+																								{
+																									return lVolumeManager;
+																								}
+																							},
+																							200,
+																							TimeUnit.MILLISECONDS,
+																							0,
+																							1,
+																							2);
+
+		// time point 1 completes before time point 0, so both are released:
+		send(lSynchronizerSink, 0, 0);
+		send(lSynchronizerSink, 1, 2);
+		send(lSynchronizerSink, 1, 0);
+		send(lSynchronizerSink, 0, 1);
+		assertEquals(0, lReceivedGroups.size());
+		send(lSynchronizerSink, 1, 1);
+
+		synchronized (lReceivedGroups)
+		{
+			assertEquals(2, lReceivedGroups.size());
+			assertEquals(2, lReceivedGroups.get(0).size());
+			assertEquals(3, lReceivedGroups.get(1).size());
+			for (int c = 0; c < 3; c++)
+				assertEquals(c, lReceivedGroups.get(1).get(c).getChannelID());
+		}
+		assertEquals(1, lSynchronizerSink.getNumberOfCompleteGroups());
+		assertEquals(1, lSynchronizerSink.getNumberOfIncompleteGroups());
+
+		// late volume for an already released time point goes through alone:
+		send(lSynchronizerSink, 0, 2);
+		assertEquals(1, lSynchronizerSink.getNumberOfLateVolumes());
+
+		// incomplete time point is released by the time out:
+		send(lSynchronizerSink, 2, 0);
+		Thread.sleep(500);
+		assertEquals(0, lSynchronizerSink.getNumberOfPendingGroups());
+		synchronized (lReceivedGroups)
+		{
+			assertEquals(4, lReceivedGroups.size());
+			assertEquals(2, lReceivedGroups.get(3).get(0).getTimeIndex());
+		}
+
+		lSynchronizerSink.close();
+	}
+
+	@Test
+	public void testRelayOutsideLock() throws InterruptedException
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(4);
+		final TimePointSynchronizerSink[] lSynchronizerSink = new TimePointSynchronizerSink[1];
+		final AtomicInteger lNumberOfUnblockedRelays = new AtomicInteger();
+		lSynchronizerSink[0] = new TimePointSynchronizerSink(	new VolumeSinkInterface()
+																{
+																	@Override
+																	public void sendVolume(Volume pVolume)
+																	{
+																		// another thread can use the sink meanwhile:
+																		final Thread lThread = new Thread(new Runnable()
+																		{
+																			@Override
+																			public void run()
+																			{
+																				lSynchronizerSink[0].getNumberOfPendingGroups();
+																			}
+																		});
+																		lThread.start();
+																		try
+																		{
+																			lThread.join(1000);
+																		}
+																		catch (final InterruptedException e)
+																		{
+																			Thread.currentThread()
+																					.interrupt();
+																		}
+																		if (!lThread.isAlive())
+																			lNumberOfUnblockedRelays.incrementAndGet();
+																		pVolume.makeAvailableToManager();
+																	}
+
+																	@Override
+																	public VolumeManager getManager()
+																	{
+																		return lVolumeManager;
+																	}
+																},
+																1,
+																TimeUnit.SECONDS,
+																0,
+																1);
+
+		send(lSynchronizerSink[0], 0, 0);
+		send(lSynchronizerSink[0], 0, 1);
+		assertEquals(2, lNumberOfUnblockedRelays.get());
+		lSynchronizerSink[0].close();
+	}
+
+	private void send(	TimePointSynchronizerSink pSynchronizerSink,
+						long pTimeIndex,
+						int pChannelID)
+	{
+		final Volume lVolume = pSynchronizerSink.getManager()
+												.requestAndWaitForVolume(	1,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedByte,
+																			1,
+																			4,
+																			4,
+																			4);
+		lVolume.setTimeIndex(pTimeIndex);
+		lVolume.setChannelID(pChannelID);
+		pSynchronizerSink.sendVolume(lVolume);
+	}
+
+}
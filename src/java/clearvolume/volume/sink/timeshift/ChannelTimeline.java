@@ -0,0 +1,433 @@
+package clearvolume.volume.sink.timeshift;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * History entries of one channel, indexed by time index. Entries are stored in
+ * a ring whose capacity is a power of two, the slot of a time index is its
+ * value masked by the ring capacity. Next to each slot the ring keeps the
+ * nearest occupied time index at or before it, so floor lookups cost O(1) and
+ * involve no boxing, whatever the gaps between time indices. Gaps are paid for
+ * when entries are put or removed instead.
+ *
+ * The span of the timeline is capped: an entry that would stretch it further,
+ * after a jump or a reset of the acquisition time index, re-bases the ring and
+ * drops the entries that fall out of it. The ring grows with the span and
+ * shrinks again when the span gets much smaller than the capacity.
+ *
+ * Writes take the write lock of a {@link StampedLock}, lookups use optimistic
+ * reads and only fall back to the read lock if a write interfered.
+ */
+public class ChannelTimeline
+{
+	private static final int cInitialCapacity = 64;
+	private static final long cMaximalSpan = 1 << 24;
+
+	private final int mChannelID;
+	private final StampedLock mStampedLock = new StampedLock();
+
+	private HistoryEntry[] mRing = new HistoryEntry[cInitialCapacity];
+	private long[] mFloors = new long[cInitialCapacity];
+	private long mFirstTimeIndex;
+	private long mLastTimeIndex;
+	private int mSize;
+	private long mMaximalSpan;
+
+	volatile HistoryEntry mDisplayedEntry;
+
+	public ChannelTimeline(int pChannelID)
+	{
+		this(pChannelID, cMaximalSpan);
+	}
+
+	/**
+	 * @param pChannelID
+	 *            channel ID
+	 * @param pMaximalSpan
+	 *            maximal number of time indices between the first and last
+	 *            entries, inclusive
+	 */
+	public ChannelTimeline(int pChannelID, long pMaximalSpan)
+	{
+		super();
+		mChannelID = pChannelID;
+		mMaximalSpan = clampSpan(pMaximalSpan);
+	}
+
+	public int getChannelID()
+	{
+		return mChannelID;
+	}
+
+	/**
+	 * Sets the maximal span of the timeline, taken into account at the next
+	 * put.
+	 *
+	 * @param pMaximalSpan
+	 *            maximal number of time indices between the first and last
+	 *            entries, inclusive
+	 */
+	public void setMaximalSpan(long pMaximalSpan)
+	{
+		final long lStamp = mStampedLock.writeLock();
+		try
+		{
+			mMaximalSpan = clampSpan(pMaximalSpan);
+		}
+		finally
+		{
+			mStampedLock.unlockWrite(lStamp);
+		}
+	}
+
+	private static long clampSpan(long pMaximalSpan)
+	{
+		return Math.max(1, Math.min(cMaximalSpan, pMaximalSpan));
+	}
+
+	/**
+	 * Adds an entry, replacing the entry with the same time index if any. If the
+	 * entry lies further than the maximal span from the entries at the other
+	 * end of the timeline, those are dropped: the oldest ones when the time
+	 * index jumps forward, the newest ones when it is reset backwards.
+	 *
+	 * @param pEntry
+	 *            entry
+	 * @param pDroppedEntries
+	 *            list to add the entries dropped to keep within the maximal
+	 *            span to
+	 * @return replaced entry or null
+	 */
+	public HistoryEntry put(HistoryEntry pEntry,
+							List<HistoryEntry> pDroppedEntries)
+	{
+		final long lTimeIndex = pEntry.getTimeIndex();
+		final long lStamp = mStampedLock.writeLock();
+		try
+		{
+			if (mSize > 0)
+			{
+				if (lTimeIndex - mFirstTimeIndex >= mMaximalSpan)
+					dropBefore(lTimeIndex - mMaximalSpan + 1, pDroppedEntries);
+				else if (mLastTimeIndex - lTimeIndex >= mMaximalSpan)
+					dropAfter(lTimeIndex + mMaximalSpan - 1, pDroppedEntries);
+			}
+
+			if (mSize == 0)
+			{
+				resize(1);
+				mFirstTimeIndex = lTimeIndex;
+				mLastTimeIndex = lTimeIndex;
+				mRing[slot(mRing, lTimeIndex)] = pEntry;
+				mFloors[slot(mFloors, lTimeIndex)] = lTimeIndex;
+				mSize = 1;
+				return null;
+			}
+
+			resize(Math.max(mLastTimeIndex, lTimeIndex) - Math.min(	mFirstTimeIndex,
+																	lTimeIndex)
+					+ 1);
+
+			final int lSlot = slot(mRing, lTimeIndex);
+			final HistoryEntry lReplacedEntry = mRing[lSlot];
+			mRing[lSlot] = pEntry;
+			if (lReplacedEntry != null)
+				return lReplacedEntry;
+
+			mSize++;
+			if (lTimeIndex > mLastTimeIndex)
+			{
+				for (long t = mLastTimeIndex + 1; t < lTimeIndex; t++)
+					mFloors[slot(mFloors, t)] = mLastTimeIndex;
+				mLastTimeIndex = lTimeIndex;
+				mFloors[slot(mFloors, lTimeIndex)] = lTimeIndex;
+			}
+			else if (lTimeIndex < mFirstTimeIndex)
+			{
+				for (long t = lTimeIndex; t < mFirstTimeIndex; t++)
+					mFloors[slot(mFloors, t)] = lTimeIndex;
+				mFirstTimeIndex = lTimeIndex;
+			}
+			else
+				setFloors(lTimeIndex, lTimeIndex);
+			return null;
+		}
+		finally
+		{
+			mStampedLock.unlockWrite(lStamp);
+		}
+	}
+
+	/**
+	 * Removes an entry if it is still the one stored for its time index.
+	 *
+	 * @param pEntry
+	 *            entry
+	 * @return true if removed
+	 */
+	public boolean remove(HistoryEntry pEntry)
+	{
+		final long lTimeIndex = pEntry.getTimeIndex();
+		final long lStamp = mStampedLock.writeLock();
+		try
+		{
+			if (mSize == 0 || lTimeIndex < mFirstTimeIndex
+				|| lTimeIndex > mLastTimeIndex)
+				return false;
+			final int lSlot = slot(mRing, lTimeIndex);
+			if (mRing[lSlot] != pEntry)
+				return false;
+
+			removeAt(lTimeIndex);
+			resize(mSize == 0 ? 1 : mLastTimeIndex - mFirstTimeIndex + 1);
+			return true;
+		}
+		finally
+		{
+			mStampedLock.unlockWrite(lStamp);
+		}
+	}
+
+	/**
+	 * Returns the entry at or just before the given time index, or the first
+	 * entry if there is none before.
+	 *
+	 * @param pTimeIndex
+	 *            time index
+	 * @return entry or null if the timeline is empty
+	 */
+	public HistoryEntry lookup(long pTimeIndex)
+	{
+		long lStamp = mStampedLock.tryOptimisticRead();
+		HistoryEntry lEntry = lookup(	mRing,
+										mFloors,
+										mFirstTimeIndex,
+										mLastTimeIndex,
+										mSize,
+										pTimeIndex);
+		if (mStampedLock.validate(lStamp))
+			return lEntry;
+
+		lStamp = mStampedLock.readLock();
+		try
+		{
+			return lookup(	mRing,
+							mFloors,
+							mFirstTimeIndex,
+							mLastTimeIndex,
+							mSize,
+							pTimeIndex);
+		}
+		finally
+		{
+			mStampedLock.unlockRead(lStamp);
+		}
+	}
+
+	private static HistoryEntry lookup(	HistoryEntry[] pRing,
+										long[] pFloors,
+										long pFirstTimeIndex,
+										long pLastTimeIndex,
+										int pSize,
+										long pTimeIndex)
+	{
+		if (pSize == 0)
+			return null;
+		if (pTimeIndex <= pFirstTimeIndex)
+			return pRing[slot(pRing, pFirstTimeIndex)];
+		if (pTimeIndex >= pLastTimeIndex)
+			return pRing[slot(pRing, pLastTimeIndex)];
+		// masking with each array's own length keeps optimistic reads of
+		// arrays being swapped in bounds, validation catches the rest:
+		return pRing[slot(pRing, pFloors[slot(pFloors, pTimeIndex)])];
+	}
+
+	/**
+	 * Collects the entries before the given time index that are resident in
+	 * memory, uncompressed or compressed, from the most recent backwards,
+	 * stopping at the first entry that is not.
+	 *
+	 * @param pTimeIndex
+	 *            time index (exclusive)
+	 * @param pEntries
+	 *            list to add the entries to
+	 */
+	public void collectInMemoryBefore(long pTimeIndex, List<HistoryEntry> pEntries)
+	{
+		final long lStamp = mStampedLock.readLock();
+		try
+		{
+			if (mSize == 0 || pTimeIndex <= mFirstTimeIndex)
+				return;
+			long t = floor(Math.min(pTimeIndex - 1, mLastTimeIndex));
+			while (true)
+			{
+				final HistoryEntry lEntry = mRing[slot(mRing, t)];
+				if (!lEntry.isResident())
+					break;
+				pEntries.add(lEntry);
+				if (t == mFirstTimeIndex)
+					break;
+				t = floor(t - 1);
+			}
+		}
+		finally
+		{
+			mStampedLock.unlockRead(lStamp);
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 *
+	 * @return removed entries
+	 */
+	public List<HistoryEntry> clear()
+	{
+		final long lStamp = mStampedLock.writeLock();
+		try
+		{
+			final ArrayList<HistoryEntry> lEntries = new ArrayList<HistoryEntry>(mSize);
+			for (int i = 0; i < mRing.length; i++)
+				if (mRing[i] != null)
+					lEntries.add(mRing[i]);
+			mRing = new HistoryEntry[cInitialCapacity];
+			mFloors = new long[cInitialCapacity];
+			mSize = 0;
+			mDisplayedEntry = null;
+			return lEntries;
+		}
+		finally
+		{
+			mStampedLock.unlockWrite(lStamp);
+		}
+	}
+
+	public int size()
+	{
+		final long lStamp = mStampedLock.readLock();
+		try
+		{
+			return mSize;
+		}
+		finally
+		{
+			mStampedLock.unlockRead(lStamp);
+		}
+	}
+
+	/**
+	 * Returns the capacity of the ring, for tests.
+	 *
+	 * @return capacity
+	 */
+	public int capacity()
+	{
+		final long lStamp = mStampedLock.readLock();
+		try
+		{
+			return mRing.length;
+		}
+		finally
+		{
+			mStampedLock.unlockRead(lStamp);
+		}
+	}
+
+	private long floor(long pTimeIndex)
+	{
+		return mFloors[slot(mFloors, pTimeIndex)];
+	}
+
+	/**
+	 * Sets the floor of the time indices from the given one up to the next
+	 * occupied one, exclusive, or to the end of the timeline.
+	 */
+	private void setFloors(long pTimeIndex, long pFloor)
+	{
+		mFloors[slot(mFloors, pTimeIndex)] = pFloor;
+		for (long t = pTimeIndex + 1; t <= mLastTimeIndex
+										&& mRing[slot(mRing, t)] == null; t++)
+			mFloors[slot(mFloors, t)] = pFloor;
+	}
+
+	private void removeAt(long pTimeIndex)
+	{
+		mRing[slot(mRing, pTimeIndex)] = null;
+		mSize--;
+		if (mSize == 0)
+			return;
+
+		if (pTimeIndex == mFirstTimeIndex)
+		{
+			// floors past the new first entry stay valid:
+			long t = pTimeIndex + 1;
+			while (mRing[slot(mRing, t)] == null)
+				t++;
+			mFirstTimeIndex = t;
+		}
+		else if (pTimeIndex == mLastTimeIndex)
+			mLastTimeIndex = floor(pTimeIndex - 1);
+		else
+			setFloors(pTimeIndex, floor(pTimeIndex - 1));
+	}
+
+	private void dropBefore(long pTimeIndex, List<HistoryEntry> pDroppedEntries)
+	{
+		while (mSize > 0 && mFirstTimeIndex < pTimeIndex)
+		{
+			pDroppedEntries.add(mRing[slot(mRing, mFirstTimeIndex)]);
+			removeAt(mFirstTimeIndex);
+		}
+	}
+
+	private void dropAfter(long pTimeIndex, List<HistoryEntry> pDroppedEntries)
+	{
+		while (mSize > 0 && mLastTimeIndex > pTimeIndex)
+		{
+			pDroppedEntries.add(mRing[slot(mRing, mLastTimeIndex)]);
+			removeAt(mLastTimeIndex);
+		}
+	}
+
+	/**
+	 * Grows the ring to hold the given span, or shrinks it if the span is less
+	 * than a quarter of the capacity.
+	 */
+	private void resize(long pSpan)
+	{
+		int lCapacity = mRing.length;
+		if (pSpan > lCapacity)
+			while (lCapacity < pSpan)
+				lCapacity <<= 1;
+		else if (lCapacity > cInitialCapacity && 4 * pSpan <= lCapacity)
+			while (lCapacity > cInitialCapacity && 4 * pSpan <= lCapacity)
+				lCapacity >>= 1;
+		else
+			return;
+
+		final HistoryEntry[] lRing = new HistoryEntry[lCapacity];
+		final long[] lFloors = new long[lCapacity];
+		if (mSize > 0)
+			for (long t = mFirstTimeIndex; t <= mLastTimeIndex; t++)
+			{
+				lRing[slot(lRing, t)] = mRing[slot(mRing, t)];
+				lFloors[slot(lFloors, t)] = mFloors[slot(mFloors, t)];
+			}
+		mRing = lRing;
+		mFloors = lFloors;
+	}
+
+	private static int slot(HistoryEntry[] pRing, long pTimeIndex)
+	{
+		return (int) (pTimeIndex & (pRing.length - 1));
+	}
+
+	private static int slot(long[] pFloors, long pTimeIndex)
+	{
+		return (int) (pTimeIndex & (pFloors.length - 1));
+	}
+
+}
@@ -0,0 +1,181 @@
+package clearvolume.volume.sink.timeshift;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Byte-budgeted LRU bookkeeping for the history of a {@link TimeShiftingSink}.
+ * Entries are kept in a doubly linked list ordered from least to most recently
+ * used. Eviction walks the list from the least recently used end and skips
+ * pinned entries and entries that are protected because they are recent.
+ *
+ * This class is not thread safe, callers are expected to guard it.
+ */
+public class HistoryCache
+{
+	private volatile long mBudgetInBytes;
+	private long mSizeInBytes;
+	private int mNumberOfEntries;
+	private long mNumberOfEvictedEntries;
+
+	private HistoryEntry mLeastRecent, mMostRecent;
+
+	public HistoryCache(long pBudgetInBytes)
+	{
+		super();
+		mBudgetInBytes = pBudgetInBytes;
+	}
+
+	public void add(HistoryEntry pEntry)
+	{
+		if (pEntry.mIsLinked)
+			return;
+		link(pEntry);
+		pEntry.mAccountedSizeInBytes = pEntry.getResidentSizeInBytes();
+		mSizeInBytes += pEntry.mAccountedSizeInBytes;
+		mNumberOfEntries++;
+	}
+
+	public void touch(HistoryEntry pEntry)
+	{
+		if (!pEntry.mIsLinked || pEntry == mMostRecent)
+			return;
+		unlink(pEntry);
+		link(pEntry);
+	}
+
+	public void remove(HistoryEntry pEntry)
+	{
+		if (!pEntry.mIsLinked)
+			return;
+		unlink(pEntry);
+		mSizeInBytes -= pEntry.mAccountedSizeInBytes;
+		pEntry.mAccountedSizeInBytes = 0;
+		mNumberOfEntries--;
+	}
+
+	/**
+	 * Accounts for a change of the resident size of an entry, for example after
+	 * it was compressed, without changing its LRU position.
+	 * 
+	 * @param pEntry
+	 *            entry
+	 */
+	public void update(HistoryEntry pEntry)
+	{
+		if (!pEntry.mIsLinked)
+			return;
+		final long lSizeInBytes = pEntry.getResidentSizeInBytes();
+		mSizeInBytes += lSizeInBytes - pEntry.mAccountedSizeInBytes;
+		pEntry.mAccountedSizeInBytes = lSizeInBytes;
+	}
+
+	public void pin(HistoryEntry pEntry)
+	{
+		pEntry.mPinCount++;
+	}
+
+	public void unpin(HistoryEntry pEntry)
+	{
+		if (pEntry.mPinCount > 0)
+			pEntry.mPinCount--;
+	}
+
+	/**
+	 * Removes least recently used entries until the cache fits in its budget.
+	 * Pinned entries and entries with a time index at or above the given
+	 * protected time index are never evicted, so the cache may stay over budget.
+	 * 
+	 * @param pOldestProtectedTimeIndex
+	 *            oldest time index protected from eviction
+	 * @return evicted entries, from least to most recently used
+	 */
+	public List<HistoryEntry> evictOverBudget(long pOldestProtectedTimeIndex)
+	{
+		final ArrayList<HistoryEntry> lEvictedEntries = new ArrayList<HistoryEntry>();
+		HistoryEntry lEntry = mLeastRecent;
+		while (lEntry != null && mSizeInBytes > mBudgetInBytes)
+		{
+			final HistoryEntry lMoreRecent = lEntry.mMoreRecent;
+			if (!lEntry.isPinned() && lEntry.getTimeIndex() < pOldestProtectedTimeIndex)
+			{
+				remove(lEntry);
+				lEvictedEntries.add(lEntry);
+				mNumberOfEvictedEntries++;
+			}
+			lEntry = lMoreRecent;
+		}
+		return lEvictedEntries;
+	}
+
+	public void clear()
+	{
+		HistoryEntry lEntry = mLeastRecent;
+		while (lEntry != null)
+		{
+			final HistoryEntry lMoreRecent = lEntry.mMoreRecent;
+			lEntry.mLessRecent = null;
+			lEntry.mMoreRecent = null;
+			lEntry.mIsLinked = false;
+			lEntry.mAccountedSizeInBytes = 0;
+			lEntry = lMoreRecent;
+		}
+		mLeastRecent = null;
+		mMostRecent = null;
+		mSizeInBytes = 0;
+		mNumberOfEntries = 0;
+	}
+
+	private void link(HistoryEntry pEntry)
+	{
+		pEntry.mLessRecent = mMostRecent;
+		pEntry.mMoreRecent = null;
+		if (mMostRecent != null)
+			mMostRecent.mMoreRecent = pEntry;
+		else
+			mLeastRecent = pEntry;
+		mMostRecent = pEntry;
+		pEntry.mIsLinked = true;
+	}
+
+	private void unlink(HistoryEntry pEntry)
+	{
+		if (pEntry.mLessRecent != null)
+			pEntry.mLessRecent.mMoreRecent = pEntry.mMoreRecent;
+		else
+			mLeastRecent = pEntry.mMoreRecent;
+		if (pEntry.mMoreRecent != null)
+			pEntry.mMoreRecent.mLessRecent = pEntry.mLessRecent;
+		else
+			mMostRecent = pEntry.mLessRecent;
+		pEntry.mLessRecent = null;
+		pEntry.mMoreRecent = null;
+		pEntry.mIsLinked = false;
+	}
+
+	public long getBudgetInBytes()
+	{
+		return mBudgetInBytes;
+	}
+
+	public void setBudgetInBytes(long pBudgetInBytes)
+	{
+		mBudgetInBytes = pBudgetInBytes;
+	}
+
+	public long getSizeInBytes()
+	{
+		return mSizeInBytes;
+	}
+
+	public int getNumberOfEntries()
+	{
+		return mNumberOfEntries;
+	}
+
+	public long getNumberOfEvictedEntries()
+	{
+		return mNumberOfEvictedEntries;
+	}
+
+}
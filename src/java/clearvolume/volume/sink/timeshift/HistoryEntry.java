@@ -0,0 +1,153 @@
+package clearvolume.volume.sink.timeshift;
+
+import clearvolume.volume.Volume;
+
+/**
+ * Time point of one channel kept in the history of a {@link TimeShiftingSink}.
+ * Entries are linked into the LRU list of a {@link HistoryCache}.
+ */
+public class HistoryEntry
+{
+	private final int mChannelID;
+	private final long mTimeIndex;
+	private final double mTimeInSeconds;
+	private final long mSizeInBytes;
+	private volatile Volume mVolume;
+	private volatile HistorySpillStore.SpillRecord mSpillRecord;
+	private volatile byte[] mCompressedData;
+	private volatile Volume mCompressedMetaData;
+
+	int mPinCount;
+	long mAccountedSizeInBytes;
+	boolean mIsCompressionQueued;
+	boolean mIsDiscarded;
+	HistoryEntry mLessRecent, mMoreRecent;
+	boolean mIsLinked;
+
+	public HistoryEntry(Volume pVolume)
+	{
+		mChannelID = pVolume.getChannelID();
+		mTimeIndex = pVolume.getTimeIndex();
+		mTimeInSeconds = pVolume.getTimeInSeconds();
+		mSizeInBytes = pVolume.getDataSizeInBytes();
+		mVolume = pVolume;
+	}
+
+	public int getChannelID()
+	{
+		return mChannelID;
+	}
+
+	public long getTimeIndex()
+	{
+		return mTimeIndex;
+	}
+
+	public double getTimeInSeconds()
+	{
+		return mTimeInSeconds;
+	}
+
+	public long getSizeInBytes()
+	{
+		return mSizeInBytes;
+	}
+
+	public Volume getVolume()
+	{
+		return mVolume;
+	}
+
+	void setVolume(Volume pVolume)
+	{
+		mVolume = pVolume;
+	}
+
+	public HistorySpillStore.SpillRecord getSpillRecord()
+	{
+		return mSpillRecord;
+	}
+
+	void setSpillRecord(HistorySpillStore.SpillRecord pSpillRecord)
+	{
+		mSpillRecord = pSpillRecord;
+	}
+
+	public byte[] getCompressedData()
+	{
+		return mCompressedData;
+	}
+
+	public Volume getCompressedMetaData()
+	{
+		return mCompressedMetaData;
+	}
+
+	void setCompressedData(byte[] pCompressedData, Volume pMetaData)
+	{
+		mCompressedData = pCompressedData;
+		mCompressedMetaData = pMetaData;
+	}
+
+	/**
+	 * Returns true if the volume is in memory, uncompressed.
+	 * 
+	 * @return true if in memory
+	 */
+	public boolean isInMemory()
+	{
+		return mVolume != null;
+	}
+
+	public boolean isCompressed()
+	{
+		return mCompressedData != null;
+	}
+
+	/**
+	 * Returns true if the volume is in memory, uncompressed or compressed.
+	 * 
+	 * @return true if resident
+	 */
+	public boolean isResident()
+	{
+		return mVolume != null || mCompressedData != null;
+	}
+
+	/**
+	 * Returns the number of bytes this entry currently holds in memory: the
+	 * uncompressed volume and the compressed data, if present.
+	 * 
+	 * @return resident size in bytes
+	 */
+	public long getResidentSizeInBytes()
+	{
+		final byte[] lCompressedData = mCompressedData;
+		return (mVolume != null ? mSizeInBytes : 0) + (lCompressedData != null ? lCompressedData.length
+																				: 0);
+	}
+
+	public boolean isSpilled()
+	{
+		return mSpillRecord != null;
+	}
+
+	public boolean isPinned()
+	{
+		return mPinCount > 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(	"HistoryEntry [channel=%d, timeindex=%d, size=%d, inmemory=%s, compressed=%s, spilled=%s, pinned=%s]",
+								mChannelID,
+								mTimeIndex,
+								mSizeInBytes,
+								isInMemory(),
+								isCompressed(),
+								isSpilled(),
+								isPinned());
+	}
+
+}
@@ -0,0 +1,315 @@
+package clearvolume.volume.sink.timeshift;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays back the history of a {@link TimeShiftingSink}, forward or backward,
+ * at a target rate given either in time points per second or as a real-time
+ * scale factor (applied to the mean acquisition interval of the history).
+ *
+ * Pacing follows a playback clock: the time point to show is derived from the
+ * elapsed wall-clock time, so if the relay sink cannot keep up, time points are
+ * skipped instead of playback slowing down. Playback can loop over the
+ * available history or stop at its end. Live display is paused while playing.
+ * Playback runs as a task rescheduled on the scheduler of the sink for each
+ * time point.
+ */
+public class HistoryPlayer
+{
+	private static final double cRateSmoothingFactor = 0.1;
+	private static final long cMaxSleepInNanoseconds = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private final TimeShiftingSink mTimeShiftingSink;
+
+	private volatile double mTargetRateInTimePointsPerSecond = 10;
+	private volatile double mRealTimeScale = 0;
+	private volatile boolean mReverse;
+	private volatile boolean mLoop = true;
+
+	private volatile boolean mStopSignal = true;
+	private volatile boolean mStoppedSignal = true;
+
+	private volatile double mAchievedRateInTimePointsPerSecond;
+	private volatile long mNumberOfShownTimePoints;
+	private volatile long mNumberOfSkippedTimePoints;
+	private volatile long mCurrentTimeIndex;
+
+	public HistoryPlayer(TimeShiftingSink pTimeShiftingSink)
+	{
+		super();
+		mTimeShiftingSink = pTimeShiftingSink;
+	}
+
+	/**
+	 * Sets the target playback rate in time points per second, and switches to
+	 * fixed rate playback.
+	 *
+	 * @param pTargetRateInTimePointsPerSecond
+	 *            target rate
+	 */
+	public void setTargetRate(double pTargetRateInTimePointsPerSecond)
+	{
+		mTargetRateInTimePointsPerSecond = Math.max(1e-3,
+													pTargetRateInTimePointsPerSecond);
+		mRealTimeScale = 0;
+	}
+
+	/**
+	 * Switches to real-time playback: time points are shown at their
+	 * acquisition pace multiplied by the given scale.
+	 *
+	 * @param pRealTimeScale
+	 *            real-time scale, 1 is real time, 10 is ten times faster
+	 */
+	public void setRealTimeScale(double pRealTimeScale)
+	{
+		mRealTimeScale = Math.max(0, pRealTimeScale);
+	}
+
+	/**
+	 * Returns the effective target rate: the fixed rate or, in real-time mode,
+	 * the rate derived from the mean acquisition interval.
+	 *
+	 * @return target rate in time points per second
+	 */
+	public double getTargetRate()
+	{
+		final double lRealTimeScale = mRealTimeScale;
+		if (lRealTimeScale > 0)
+		{
+			final double lInterval = mTimeShiftingSink.getMeanTimePointIntervalInSeconds();
+			if (lInterval > 0)
+				return lRealTimeScale / lInterval;
+		}
+		return mTargetRateInTimePointsPerSecond;
+	}
+
+	public void setReverse(boolean pReverse)
+	{
+		mReverse = pReverse;
+	}
+
+	public boolean isReverse()
+	{
+		return mReverse;
+	}
+
+	public void setLoop(boolean pLoop)
+	{
+		mLoop = pLoop;
+	}
+
+	public boolean isLoop()
+	{
+		return mLoop;
+	}
+
+	public boolean isPlaying()
+	{
+		return !mStoppedSignal;
+	}
+
+	public double getAchievedRate()
+	{
+		return mAchievedRateInTimePointsPerSecond;
+	}
+
+	public long getNumberOfShownTimePoints()
+	{
+		return mNumberOfShownTimePoints;
+	}
+
+	public long getNumberOfSkippedTimePoints()
+	{
+		return mNumberOfSkippedTimePoints;
+	}
+
+	public long getCurrentTimeIndex()
+	{
+		return mCurrentTimeIndex;
+	}
+
+	/**
+	 * Starts playback from the current time shift. Live display is paused until
+	 * playback stops, and resumed then if it was on.
+	 *
+	 * @return true if started, false if already playing
+	 */
+	public synchronized boolean start()
+	{
+		if (!mStoppedSignal)
+			return false;
+		mStopSignal = false;
+		mStoppedSignal = false;
+		final boolean lWasPlaying = mTimeShiftingSink.isPlaying();
+		mTimeShiftingSink.pause();
+
+		final Playback lPlayback = new Playback(lWasPlaying);
+		if (!lPlayback.schedule(0))
+			lPlayback.finish();
+		return true;
+	}
+
+	/**
+	 * Playback as a task that shows the time point due and reschedules itself
+	 * on the scheduler of the sink for the next one, so that no scheduler
+	 * thread is held while waiting.
+	 */
+	private class Playback implements Runnable
+	{
+		private final boolean mWasPlaying;
+
+		private long mStartTimeIndex = mTimeShiftingSink.getNumberOfTimepoints() + mTimeShiftingSink.getTimeShift();
+		private long mStartTimeInNanoseconds = System.nanoTime();
+		private long mLastShownTimeIndex = Long.MIN_VALUE;
+		private long mLastShownTimeInNanoseconds = mStartTimeInNanoseconds;
+		private double mRate = getTargetRate();
+
+		private Playback(boolean pWasPlaying)
+		{
+			super();
+			mWasPlaying = pWasPlaying;
+		}
+
+		@Override
+		public void run()
+		{
+			long lSleep = -1;
+			try
+			{
+				lSleep = step();
+			}
+			catch (final Throwable e)
+			{
+				e.printStackTrace();
+			}
+			if (lSleep < 0 || !schedule(lSleep))
+				finish();
+		}
+
+		private boolean schedule(long pDelayInNanoseconds)
+		{
+			try
+			{
+				mTimeShiftingSink.getScheduler()
+									.schedule(	this,
+												pDelayInNanoseconds,
+												TimeUnit.NANOSECONDS);
+				return true;
+			}
+			catch (final RejectedExecutionException e)
+			{
+				// scheduler closed, playback ends
+				return false;
+			}
+		}
+
+		private void finish()
+		{
+			if (mWasPlaying)
+				mTimeShiftingSink.play();
+			mStoppedSignal = true;
+		}
+
+		/**
+		 * Shows the time point due, if any.
+		 *
+		 * @return nanoseconds until the next time point is due, or -1 when
+		 *         playback is over
+		 */
+		private long step()
+		{
+			if (mStopSignal)
+				return -1;
+
+			final long lOldest = mTimeShiftingSink.getOldestAvailableTimePointIndex();
+			final long lNewest = mTimeShiftingSink.getNumberOfTimepoints();
+			final int lDirection = mReverse ? -1 : 1;
+
+			// the target rate can change while playing, restart the clock then:
+			final double lTargetRate = getTargetRate();
+			if (lTargetRate != mRate)
+			{
+				mRate = lTargetRate;
+				mStartTimeIndex = mCurrentTimeIndex;
+				mStartTimeInNanoseconds = System.nanoTime();
+			}
+
+			final long lNow = System.nanoTime();
+			long lTimeIndex = mStartTimeIndex + lDirection
+								* (long) Math.floor((lNow - mStartTimeInNanoseconds) * 1e-9
+													* mRate);
+
+			if (lTimeIndex > lNewest || lTimeIndex < lOldest)
+			{
+				final long lEndTimeIndex = mReverse ? lOldest : lNewest;
+				if (!mLoop)
+				{
+					// always show the last time point before stopping:
+					if (mLastShownTimeIndex == lEndTimeIndex)
+						return -1;
+					lTimeIndex = lEndTimeIndex;
+				}
+				else
+				{
+					lTimeIndex = mReverse ? lNewest : lOldest;
+					mStartTimeIndex = lTimeIndex;
+					mStartTimeInNanoseconds = lNow;
+					mLastShownTimeIndex = Long.MIN_VALUE;
+				}
+			}
+
+			if (lTimeIndex != mLastShownTimeIndex)
+			{
+				if (mLastShownTimeIndex != Long.MIN_VALUE)
+					mNumberOfSkippedTimePoints += Math.max(	0,
+															Math.abs(lTimeIndex - mLastShownTimeIndex) - 1);
+
+				mTimeShiftingSink.seekTo(lTimeIndex);
+				mCurrentTimeIndex = lTimeIndex;
+				mNumberOfShownTimePoints++;
+
+				final long lShownTime = System.nanoTime();
+				if (mLastShownTimeIndex != Long.MIN_VALUE)
+				{
+					final double lInstantRate = 1e9 / Math.max(	1,
+																lShownTime - mLastShownTimeInNanoseconds);
+					mAchievedRateInTimePointsPerSecond = cRateSmoothingFactor * lInstantRate
+															+ (1 - cRateSmoothingFactor)
+															* mAchievedRateInTimePointsPerSecond;
+				}
+				mLastShownTimeIndex = lTimeIndex;
+				mLastShownTimeInNanoseconds = lShownTime;
+			}
+
+			// wait until the next time point is due:
+			final double lElapsedTimePoints = (System.nanoTime() - mStartTimeInNanoseconds) * 1e-9
+												* mRate;
+			final long lSleep = (long) ((Math.floor(lElapsedTimePoints) + 1 - lElapsedTimePoints) * 1e9 / mRate);
+			return Math.min(cMaxSleepInNanoseconds, Math.max(0, lSleep));
+		}
+	}
+
+	public void stop()
+	{
+		mStopSignal = true;
+	}
+
+	public boolean waitForStop()
+	{
+		while (!mStoppedSignal)
+		{
+			try
+			{
+				Thread.sleep(10);
+			}
+			catch (final InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		return true;
+	}
+
+}
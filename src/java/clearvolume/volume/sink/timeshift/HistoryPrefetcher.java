@@ -0,0 +1,236 @@
+package clearvolume.volume.sink.timeshift;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.sink.pipeline.SchedulerReference;
+import clearvolume.volume.sink.pipeline.SinkPipelineScheduler;
+
+/**
+ * Warms the history of a {@link TimeShiftingSink} ahead of scrubbing and
+ * playback. Each seek is reported with its target time index; the prefetcher
+ * estimates scrub direction and speed from successive seeks and, in the
+ * background, brings the next time points in that direction back into memory
+ * for all channels. The prefetch depth is a minimum: faster scrubbing prefetches
+ * the time points reached within the next half second, up to eight times that
+ * depth. A new seek cancels the prefetch of the previous one. Prefetches run on
+ * a {@link SinkPipelineScheduler}.
+ */
+public class HistoryPrefetcher implements ClearVolumeCloseable
+{
+	private static final double cSmoothingFactor = 0.5;
+	private static final long cIdleResetInNanoseconds = TimeUnit.SECONDS.toNanos(1);
+	private static final double cLookAheadInSeconds = 0.5;
+	private static final int cMaxDepthFactor = 8;
+
+	private final TimeShiftingSink mTimeShiftingSink;
+	private final SchedulerReference mScheduler = new SchedulerReference();
+
+	private volatile int mPrefetchDepth;
+	private volatile long mGeneration;
+	private Future<?> mCurrentPrefetch;
+	private boolean mIsClosed;
+
+	private long mLastTargetTimeIndex;
+	private long mLastSeekTimeInNanoseconds;
+	private double mSmoothedStepInTimePoints;
+	private double mSpeedInTimePointsPerSecond;
+	private int mCurrentPrefetchDepth;
+
+	private volatile long mNumberOfPrefetchedTimePoints;
+	private volatile long mNumberOfCancelledPrefetches;
+
+	public HistoryPrefetcher(	TimeShiftingSink pTimeShiftingSink,
+								int pPrefetchDepth)
+	{
+		super();
+		mTimeShiftingSink = pTimeShiftingSink;
+		mPrefetchDepth = pPrefetchDepth;
+	}
+
+	/**
+	 * Reports a seek to a time index and schedules the prefetch of the time
+	 * points expected next.
+	 * 
+	 * @param pTargetTimeIndex
+	 *            time index that is displayed after the seek
+	 */
+	public synchronized void notifySeek(long pTargetTimeIndex)
+	{
+		final long lNow = System.nanoTime();
+		final long lElapsed = lNow - mLastSeekTimeInNanoseconds;
+		final long lStep = pTargetTimeIndex - mLastTargetTimeIndex;
+
+		if (mLastSeekTimeInNanoseconds == 0 || lElapsed > cIdleResetInNanoseconds)
+		{
+			mSmoothedStepInTimePoints = lStep == 0 || mLastSeekTimeInNanoseconds == 0	? 0
+																						: Math.signum(lStep);
+			mSpeedInTimePointsPerSecond = 0;
+		}
+		else if (lStep != 0)
+		{
+			mSmoothedStepInTimePoints = cSmoothingFactor * lStep
+										+ (1 - cSmoothingFactor)
+										* mSmoothedStepInTimePoints;
+			mSpeedInTimePointsPerSecond = cSmoothingFactor * lStep
+											* 1e9
+											/ Math.max(1, lElapsed)
+											+ (1 - cSmoothingFactor)
+											* mSpeedInTimePointsPerSecond;
+		}
+		mLastTargetTimeIndex = pTargetTimeIndex;
+		mLastSeekTimeInNanoseconds = lNow;
+
+		final long lStride = Math.max(1, Math.round(Math.abs(mSmoothedStepInTimePoints)));
+		final int lPrefetchDepth = getScaledPrefetchDepth(mPrefetchDepth, lStride);
+		mCurrentPrefetchDepth = lPrefetchDepth;
+		if (lPrefetchDepth <= 0 || mIsClosed)
+			return;
+
+		final int lDirection = mSmoothedStepInTimePoints < 0 ? -1 : 1;
+		final boolean lBothDirections = mSmoothedStepInTimePoints == 0;
+
+		final long lGeneration = ++mGeneration;
+		if (mCurrentPrefetch != null && !mCurrentPrefetch.isDone())
+		{
+			mCurrentPrefetch.cancel(false);
+			mNumberOfCancelledPrefetches++;
+		}
+
+		try
+		{
+			mCurrentPrefetch = mScheduler.get().submit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int k = 1; k <= lPrefetchDepth; k++)
+					{
+						if (lGeneration != mGeneration)
+							return;
+
+						if (lBothDirections)
+						{
+							prefetch(pTargetTimeIndex + k);
+							prefetch(pTargetTimeIndex - k);
+						}
+						else
+							prefetch(pTargetTimeIndex + lDirection * lStride * k);
+					}
+				}
+			});
+		}
+		catch (final RejectedExecutionException e)
+		{
+			// scheduler closed, nothing to prefetch with
+		}
+	}
+
+	/**
+	 * Returns the number of prefetch steps covering the time points reached
+	 * at the current speed within the look-ahead time, between the prefetch
+	 * depth and a multiple of it.
+	 */
+	private int getScaledPrefetchDepth(int pPrefetchDepth, long pStride)
+	{
+		if (pPrefetchDepth <= 0)
+			return 0;
+		final double lSteps = Math.ceil(Math.abs(mSpeedInTimePointsPerSecond) * cLookAheadInSeconds
+										/ pStride);
+		return (int) Math.max(	pPrefetchDepth,
+								Math.min((long) cMaxDepthFactor * pPrefetchDepth,
+											(long) lSteps));
+	}
+
+	private void prefetch(long pTimeIndex)
+	{
+		try
+		{
+			mNumberOfPrefetchedTimePoints += mTimeShiftingSink.prefetch(pTimeIndex);
+		}
+		catch (final Throwable e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Sets the scheduler running the prefetches, null for the shared scheduler.
+	 *
+	 * @param pScheduler
+	 *            scheduler or null
+	 */
+	public void setScheduler(SinkPipelineScheduler pScheduler)
+	{
+		mScheduler.set(pScheduler);
+	}
+
+	public int getPrefetchDepth()
+	{
+		return mPrefetchDepth;
+	}
+
+	public void setPrefetchDepth(int pPrefetchDepth)
+	{
+		mPrefetchDepth = pPrefetchDepth;
+	}
+
+	/**
+	 * Returns the depth of the last prefetch, the prefetch depth scaled by the
+	 * scrub speed.
+	 *
+	 * @return number of prefetch steps
+	 */
+	public synchronized int getCurrentPrefetchDepth()
+	{
+		return mCurrentPrefetchDepth;
+	}
+
+	public synchronized double getSpeedInTimePointsPerSecond()
+	{
+		return mSpeedInTimePointsPerSecond;
+	}
+
+	public long getNumberOfPrefetchedTimePoints()
+	{
+		return mNumberOfPrefetchedTimePoints;
+	}
+
+	public long getNumberOfCancelledPrefetches()
+	{
+		return mNumberOfCancelledPrefetches;
+	}
+
+	/**
+	 * Waits until the current prefetch, if any, is finished or cancelled.
+	 */
+	public void waitForPrefetch()
+	{
+		final Future<?> lCurrentPrefetch;
+		synchronized (this)
+		{
+			lCurrentPrefetch = mCurrentPrefetch;
+		}
+		if (lCurrentPrefetch == null)
+			return;
+		try
+		{
+			lCurrentPrefetch.get();
+		}
+		catch (final Throwable e)
+		{
+		}
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		mIsClosed = true;
+		mGeneration++;
+		if (mCurrentPrefetch != null)
+			mCurrentPrefetch.cancel(false);
+	}
+
+}
@@ -0,0 +1,494 @@
+package clearvolume.volume.sink.timeshift;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.exceptions.ClearVolumeException;
+import clearvolume.volume.Volume;
+import coremem.enums.NativeTypeEnum;
+
+/**
+ * Append-only disk store for time points that fall out of the in-memory
+ * history of a {@link TimeShiftingSink}. Each channel has its own sequence of
+ * memory-mapped segment files; volume data is appended to the current segment
+ * and a new segment is started when it is full. Every write is also appended to
+ * an index file with the location and metadata of the volume, flushed after
+ * each record. Opening a store on a directory that already has an index reads
+ * it back, so that a store kept on close can be reopened and its records
+ * retrieved with {@link #getRecords()}; a record truncated by a crash is
+ * dropped.
+ *
+ * Segments are memory-mapped byte buffers, so a single volume cannot be larger
+ * than 2 GB.
+ */
+public class HistorySpillStore implements ClearVolumeCloseable
+{
+	private static final long cDefaultSegmentSizeInBytes = 256L * 1024 * 1024;
+	private static final String cIndexFileName = "history.index";
+
+	private final File mDirectory;
+	private final long mSegmentSizeInBytes;
+	private final boolean mDeleteOnClose;
+	private final HashMap<Integer, ChannelSegments> mChannelToSegmentsMap = new HashMap<>();
+	private final ArrayList<SpillRecord> mRecords = new ArrayList<>();
+	private final DataOutputStream mIndexOutputStream;
+
+	private long mSizeInBytes;
+	private long mNumberOfRecords;
+	private volatile boolean mIsClosed;
+
+	/**
+	 * Location and metadata of a volume written to the store.
+	 */
+	public static class SpillRecord
+	{
+		private final ChannelSegments mChannelSegments;
+		private final int mSegmentIndex;
+		private final int mOffset;
+		private final int mLength;
+		private final Volume mMetaData;
+
+		private SpillRecord(ChannelSegments pChannelSegments,
+							int pSegmentIndex,
+							int pOffset,
+							int pLength,
+							Volume pMetaData)
+		{
+			mChannelSegments = pChannelSegments;
+			mSegmentIndex = pSegmentIndex;
+			mOffset = pOffset;
+			mLength = pLength;
+			mMetaData = pMetaData;
+		}
+
+		public Volume getMetaData()
+		{
+			return mMetaData;
+		}
+
+		public int getLengthInBytes()
+		{
+			return mLength;
+		}
+
+		public int getChannelID()
+		{
+			return mMetaData.getChannelID();
+		}
+
+		public long getTimeIndex()
+		{
+			return mMetaData.getTimeIndex();
+		}
+	}
+
+	private static class ChannelSegments
+	{
+		final int mChannelID;
+		final ArrayList<MappedByteBuffer> mSegments = new ArrayList<>();
+		final ArrayList<File> mSegmentFiles = new ArrayList<>();
+		int mWritePosition;
+
+		ChannelSegments(int pChannelID)
+		{
+			mChannelID = pChannelID;
+		}
+	}
+
+	public HistorySpillStore() throws IOException
+	{
+		this(	createTemporaryDirectory(),
+				cDefaultSegmentSizeInBytes,
+				true);
+	}
+
+	public HistorySpillStore(	File pDirectory,
+								long pSegmentSizeInBytes,
+								boolean pDeleteOnClose) throws IOException
+	{
+		super();
+		mDirectory = pDirectory;
+		mSegmentSizeInBytes = Math.min(	pSegmentSizeInBytes,
+										Integer.MAX_VALUE);
+		mDeleteOnClose = pDeleteOnClose;
+		if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+			throw new IOException("Could not create history spill directory: " + mDirectory);
+		final File lIndexFile = new File(mDirectory, cIndexFileName);
+		if (lIndexFile.isFile())
+			readIndex(lIndexFile);
+		mIndexOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(lIndexFile,
+																								true)));
+	}
+
+	private static File createTemporaryDirectory() throws IOException
+	{
+		final File lFile = File.createTempFile("clearvolume-history", "");
+		if (!lFile.delete() || !lFile.mkdirs())
+			throw new IOException("Could not create history spill directory: " + lFile);
+		return lFile;
+	}
+
+	/**
+	 * Appends the data of a volume to the segment file of its channel.
+	 * 
+	 * @param pVolume
+	 *            volume to write, at most 2 GB
+	 * @return record to read the volume back
+	 */
+	public synchronized SpillRecord write(Volume pVolume)
+	{
+		if (mIsClosed)
+			throw new ClearVolumeException("History spill store is closed");
+		final long lSizeInBytes = pVolume.getDataSizeInBytes();
+		if (lSizeInBytes > Integer.MAX_VALUE)
+			throw new ClearVolumeException(String.format(	"Volume of %d bytes is too large to be spilled, at most %d bytes fit in a segment",
+															lSizeInBytes,
+															Integer.MAX_VALUE));
+
+		try
+		{
+			final int lChannelID = pVolume.getChannelID();
+			final ChannelSegments lChannelSegments = getChannelSegments(lChannelID);
+
+			final int lLength = (int) lSizeInBytes;
+			if (lChannelSegments.mSegments.isEmpty() || lChannelSegments.mWritePosition + (long) lLength > lChannelSegments.mSegments.get(lChannelSegments.mSegments.size() - 1)
+																																	.capacity())
+				addSegment(lChannelSegments, lLength);
+
+			final int lSegmentIndex = lChannelSegments.mSegments.size() - 1;
+			final int lOffset = lChannelSegments.mWritePosition;
+
+			final ByteBuffer lSegment = lChannelSegments.mSegments.get(lSegmentIndex)
+																	.duplicate();
+			lSegment.position(lOffset);
+			final ByteBuffer lData = pVolume.getDataBuffer().duplicate();
+			lData.clear();
+			lData.limit(lLength);
+			lSegment.put(lData);
+			lChannelSegments.mWritePosition += lLength;
+
+			final Volume lMetaData = new Volume();
+			lMetaData.copyMetaDataFrom(pVolume);
+			final SpillRecord lSpillRecord = new SpillRecord(	lChannelSegments,
+																lSegmentIndex,
+																lOffset,
+																lLength,
+																lMetaData);
+
+			// the index only refers to data already in the segment:
+			writeRecord(mIndexOutputStream, lSpillRecord);
+			mIndexOutputStream.flush();
+
+			mRecords.add(lSpillRecord);
+			mSizeInBytes += lLength;
+			mNumberOfRecords++;
+			return lSpillRecord;
+		}
+		catch (final IOException e)
+		{
+			throw new ClearVolumeException("Could not spill volume to disk", e);
+		}
+	}
+
+	private ChannelSegments getChannelSegments(int pChannelID)
+	{
+		ChannelSegments lChannelSegments = mChannelToSegmentsMap.get(pChannelID);
+		if (lChannelSegments == null)
+		{
+			lChannelSegments = new ChannelSegments(pChannelID);
+			mChannelToSegmentsMap.put(pChannelID, lChannelSegments);
+		}
+		return lChannelSegments;
+	}
+
+	private static void writeRecord(DataOutputStream pDataOutputStream,
+									SpillRecord pSpillRecord) throws IOException
+	{
+		final Volume lMetaData = pSpillRecord.mMetaData;
+		pDataOutputStream.writeInt(lMetaData.getChannelID());
+		pDataOutputStream.writeLong(lMetaData.getTimeIndex());
+		pDataOutputStream.writeInt(pSpillRecord.mSegmentIndex);
+		pDataOutputStream.writeInt(pSpillRecord.mOffset);
+		pDataOutputStream.writeInt(pSpillRecord.mLength);
+		pDataOutputStream.writeInt(lMetaData.getNativeType().ordinal());
+		final long[] lDimensions = lMetaData.getDimensionsInVoxels();
+		pDataOutputStream.writeInt(lDimensions.length);
+		for (final long lDimension : lDimensions)
+			pDataOutputStream.writeLong(lDimension);
+
+		pDataOutputStream.writeDouble(lMetaData.getTimeInSeconds());
+		writeString(pDataOutputStream, lMetaData.getChannelName());
+		final double[] lVoxelSize = lMetaData.getDimensionsInRealUnits();
+		writeString(pDataOutputStream, lVoxelSize == null	? null
+															: lMetaData.getRealUnitName());
+		pDataOutputStream.writeInt(lVoxelSize == null ? -1 : lVoxelSize.length);
+		if (lVoxelSize != null)
+			for (final double lValue : lVoxelSize)
+				pDataOutputStream.writeDouble(lValue);
+		writeFloats(pDataOutputStream, lMetaData.getColor());
+		writeFloats(pDataOutputStream, lMetaData.getViewMatrix());
+	}
+
+	private SpillRecord readRecord(DataInputStream pDataInputStream) throws IOException
+	{
+		final int lChannelID = pDataInputStream.readInt();
+		final long lTimeIndex = pDataInputStream.readLong();
+		final int lSegmentIndex = pDataInputStream.readInt();
+		final int lOffset = pDataInputStream.readInt();
+		final int lLength = pDataInputStream.readInt();
+		final NativeTypeEnum lType = NativeTypeEnum.values()[pDataInputStream.readInt()];
+		final long[] lDimensions = new long[pDataInputStream.readInt()];
+		for (int i = 0; i < lDimensions.length; i++)
+			lDimensions[i] = pDataInputStream.readLong();
+
+		final Volume lMetaData = new Volume();
+		lMetaData.setChannelID(lChannelID);
+		lMetaData.setTimeIndex(lTimeIndex);
+		lMetaData.setType(lType);
+		lMetaData.setDimensionsInVoxels(lDimensions);
+		lMetaData.setTimeInSeconds(pDataInputStream.readDouble());
+		lMetaData.setChannelName(readString(pDataInputStream));
+		final String lRealUnitName = readString(pDataInputStream);
+		final int lNumberOfVoxelSizes = pDataInputStream.readInt();
+		if (lNumberOfVoxelSizes >= 0)
+		{
+			final double[] lVoxelSize = new double[lNumberOfVoxelSizes];
+			for (int i = 0; i < lNumberOfVoxelSizes; i++)
+				lVoxelSize[i] = pDataInputStream.readDouble();
+			lMetaData.setVoxelSizeInRealUnits(lRealUnitName, lVoxelSize);
+		}
+		final float[] lColor = readFloats(pDataInputStream);
+		if (lColor != null)
+			lMetaData.setColor(lColor);
+		lMetaData.setViewMatrix(readFloats(pDataInputStream));
+
+		final ChannelSegments lChannelSegments = getChannelSegments(lChannelID);
+		while (lChannelSegments.mSegments.size() <= lSegmentIndex)
+			mapExistingSegment(lChannelSegments);
+		if (lOffset + (long) lLength > lChannelSegments.mSegments.get(lSegmentIndex)
+																	.capacity())
+			throw new IOException("Spill index refers past the end of a segment");
+		if (lSegmentIndex == lChannelSegments.mSegments.size() - 1)
+			lChannelSegments.mWritePosition = Math.max(	lChannelSegments.mWritePosition,
+														lOffset + lLength);
+
+		return new SpillRecord(	lChannelSegments,
+								lSegmentIndex,
+								lOffset,
+								lLength,
+								lMetaData);
+	}
+
+	/**
+	 * Reads back the records of an existing index, and truncates the index
+	 * after the last complete record.
+	 */
+	private void readIndex(File pIndexFile) throws IOException
+	{
+		final byte[] lIndex = Files.readAllBytes(pIndexFile.toPath());
+		final ByteArrayInputStream lByteArrayInputStream = new ByteArrayInputStream(lIndex);
+		final DataInputStream lDataInputStream = new DataInputStream(lByteArrayInputStream);
+		int lLengthOfCompleteRecords = 0;
+		try
+		{
+			while (lByteArrayInputStream.available() > 0)
+			{
+				final SpillRecord lSpillRecord = readRecord(lDataInputStream);
+				mRecords.add(lSpillRecord);
+				mSizeInBytes += lSpillRecord.mLength;
+				mNumberOfRecords++;
+				lLengthOfCompleteRecords = lIndex.length - lByteArrayInputStream.available();
+			}
+		}
+		catch (final EOFException e)
+		{
+			// last record only partially written
+		}
+
+		if (lLengthOfCompleteRecords < lIndex.length)
+			try (RandomAccessFile lRandomAccessFile = new RandomAccessFile(	pIndexFile,
+																			"rw"))
+			{
+				lRandomAccessFile.setLength(lLengthOfCompleteRecords);
+			}
+	}
+
+	private static void writeString(DataOutputStream pDataOutputStream,
+									String pString) throws IOException
+	{
+		pDataOutputStream.writeBoolean(pString != null);
+		if (pString != null)
+			pDataOutputStream.writeUTF(pString);
+	}
+
+	private static String readString(DataInputStream pDataInputStream) throws IOException
+	{
+		return pDataInputStream.readBoolean()	? pDataInputStream.readUTF()
+												: null;
+	}
+
+	private static void writeFloats(DataOutputStream pDataOutputStream,
+									float[] pFloats) throws IOException
+	{
+		pDataOutputStream.writeInt(pFloats == null ? -1 : pFloats.length);
+		if (pFloats != null)
+			for (final float lValue : pFloats)
+				pDataOutputStream.writeFloat(lValue);
+	}
+
+	private static float[] readFloats(DataInputStream pDataInputStream) throws IOException
+	{
+		final int lLength = pDataInputStream.readInt();
+		if (lLength < 0)
+			return null;
+		final float[] lFloats = new float[lLength];
+		for (int i = 0; i < lLength; i++)
+			lFloats[i] = pDataInputStream.readFloat();
+		return lFloats;
+	}
+
+	private void addSegment(ChannelSegments pChannelSegments,
+							int pMinimalSizeInBytes) throws IOException
+	{
+		final long lSegmentSize = Math.max(	mSegmentSizeInBytes,
+											pMinimalSizeInBytes);
+		final File lSegmentFile = getSegmentFile(pChannelSegments);
+		// a segment left over by a previous session may hold data not in the
+		// index, it is overwritten:
+		mapSegment(pChannelSegments, lSegmentFile, lSegmentSize);
+	}
+
+	private void mapExistingSegment(ChannelSegments pChannelSegments) throws IOException
+	{
+		final File lSegmentFile = getSegmentFile(pChannelSegments);
+		if (!lSegmentFile.isFile())
+			throw new IOException("Missing history spill segment: " + lSegmentFile);
+		mapSegment(pChannelSegments, lSegmentFile, lSegmentFile.length());
+	}
+
+	private File getSegmentFile(ChannelSegments pChannelSegments)
+	{
+		return new File(mDirectory,
+						String.format(	"channel%d.segment%d.bin",
+										pChannelSegments.mChannelID,
+										pChannelSegments.mSegments.size()));
+	}
+
+	private static void mapSegment(	ChannelSegments pChannelSegments,
+									File pSegmentFile,
+									long pSegmentSize) throws IOException
+	{
+		try (RandomAccessFile lRandomAccessFile = new RandomAccessFile(	pSegmentFile,
+																		"rw");
+				FileChannel lFileChannel = lRandomAccessFile.getChannel())
+		{
+			final MappedByteBuffer lMappedByteBuffer = lFileChannel.map(MapMode.READ_WRITE,
+																		0,
+																		pSegmentSize);
+			lMappedByteBuffer.order(ByteOrder.nativeOrder());
+			pChannelSegments.mSegments.add(lMappedByteBuffer);
+			pChannelSegments.mSegmentFiles.add(pSegmentFile);
+			pChannelSegments.mWritePosition = 0;
+		}
+	}
+
+	/**
+	 * Reads the data of a spilled volume back into a volume, which must be large
+	 * enough. Metadata is copied as well.
+	 * 
+	 * @param pSpillRecord
+	 *            record returned when the volume was written
+	 * @param pVolume
+	 *            volume to read into
+	 */
+	public void read(SpillRecord pSpillRecord, Volume pVolume)
+	{
+		final ByteBuffer lSegment;
+		synchronized (this)
+		{
+			if (mIsClosed)
+				throw new ClearVolumeException("History spill store is closed");
+			lSegment = pSpillRecord.mChannelSegments.mSegments.get(pSpillRecord.mSegmentIndex)
+																.duplicate();
+		}
+		lSegment.position(pSpillRecord.mOffset);
+		lSegment.limit(pSpillRecord.mOffset + pSpillRecord.mLength);
+
+		pVolume.copyMetaDataFrom(pSpillRecord.mMetaData);
+		final ByteBuffer lDataBuffer = pVolume.getDataBuffer();
+		lDataBuffer.clear();
+		lDataBuffer.put(lSegment);
+		lDataBuffer.rewind();
+	}
+
+	public File getDirectory()
+	{
+		return mDirectory;
+	}
+
+	public synchronized long getSizeInBytes()
+	{
+		return mSizeInBytes;
+	}
+
+	public synchronized long getNumberOfRecords()
+	{
+		return mNumberOfRecords;
+	}
+
+	/**
+	 * Returns the records written so far, including those read back from the
+	 * index when the store was opened, in the order they were written.
+	 *
+	 * @return records
+	 */
+	public synchronized List<SpillRecord> getRecords()
+	{
+		return new ArrayList<SpillRecord>(mRecords);
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		if (mIsClosed)
+			return;
+		mIsClosed = true;
+		try
+		{
+			mIndexOutputStream.close();
+		}
+		catch (final IOException e)
+		{
+			e.printStackTrace();
+		}
+
+		if (mDeleteOnClose)
+		{
+			for (final ChannelSegments lChannelSegments : mChannelToSegmentsMap.values())
+				for (final File lSegmentFile : lChannelSegments.mSegmentFiles)
+					lSegmentFile.delete();
+			new File(mDirectory, cIndexFileName).delete();
+			mDirectory.delete();
+		}
+		mChannelToSegmentsMap.clear();
+		mRecords.clear();
+	}
+
+}
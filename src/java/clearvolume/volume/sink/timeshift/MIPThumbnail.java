@@ -0,0 +1,203 @@
+package clearvolume.volume.sink.timeshift;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import clearvolume.volume.Volume;
+import coremem.enums.NativeTypeEnum;
+
+/**
+ * Tiny grayscale maximum intensity projection of a time point along the depth
+ * axis, downsampled so that it fits in a given number of pixels. The volume is
+ * subsampled rather than read in full: one voxel per thumbnail pixel in each
+ * plane, and planes spaced so that no more of them are read than the thumbnail
+ * is wide. Intensities are stretched to the range 0-255 of the thumbnail.
+ */
+public class MIPThumbnail
+{
+	private final int mChannelID;
+	private final long mTimeIndex;
+	private final int mWidth;
+	private final int mHeight;
+	private final byte[] mPixels;
+
+	public MIPThumbnail(int pChannelID,
+						long pTimeIndex,
+						int pWidth,
+						int pHeight,
+						byte[] pPixels)
+	{
+		super();
+		mChannelID = pChannelID;
+		mTimeIndex = pTimeIndex;
+		mWidth = pWidth;
+		mHeight = pHeight;
+		mPixels = pPixels;
+	}
+
+	/**
+	 * Computes the thumbnail of a volume, using the first element of each voxel.
+	 *
+	 * @param pVolume
+	 *            volume
+	 * @param pMaxSizeInPixels
+	 *            maximal width and height of the thumbnail
+	 * @return thumbnail, or null if the voxel type is not supported
+	 */
+	public static MIPThumbnail compute(Volume pVolume, int pMaxSizeInPixels)
+	{
+		final int lElementSize = (int) pVolume.getElementSize();
+		final int lWidth = (int) pVolume.getWidthInVoxels();
+		final int lHeight = (int) pVolume.getHeightInVoxels();
+		final int lDepth = pVolume.getDimension() >= 3	? (int) pVolume.getDepthInVoxels()
+														: 1;
+		final int lBytesPerElement = pVolume.getBytesPerVoxel();
+		final int lDownsampling = Math.max(1,
+											(Math.max(lWidth, lHeight) + pMaxSizeInPixels - 1) / pMaxSizeInPixels);
+		final int lThumbnailWidth = (lWidth + lDownsampling - 1) / lDownsampling;
+		final int lThumbnailHeight = (lHeight + lDownsampling - 1) / lDownsampling;
+
+		final ByteBuffer lDataBuffer = pVolume.getDataBuffer()
+												.duplicate()
+												.order(ByteOrder.nativeOrder());
+		final float[] lProjection = new float[lThumbnailWidth * lThumbnailHeight];
+		Arrays.fill(lProjection, Float.NEGATIVE_INFINITY);
+
+		// one voxel per thumbnail pixel, and no more planes than pixels along
+		// a side:
+		final int lPlaneStride = Math.max(	1,
+											(lDepth + pMaxSizeInPixels - 1) / pMaxSizeInPixels);
+		final int lVoxelSizeInBytes = lElementSize * lBytesPerElement;
+		final float[] lRow = new float[lThumbnailWidth];
+		for (int z = 0; z < lDepth; z += lPlaneStride)
+			for (int y = 0; y < lHeight; y += lDownsampling)
+			{
+				final long lLineIndex = ((long) z * lHeight + y) * lWidth;
+				if (!readRow(	pVolume.getNativeType(),
+								lDataBuffer,
+								(int) (lLineIndex * lVoxelSizeInBytes),
+								lDownsampling * lVoxelSizeInBytes,
+								lRow))
+					return null;
+
+				final int lRowOffset = (y / lDownsampling) * lThumbnailWidth;
+				for (int x = 0; x < lThumbnailWidth; x++)
+					if (lRow[x] > lProjection[lRowOffset + x])
+						lProjection[lRowOffset + x] = lRow[x];
+			}
+
+		float lMin = Float.POSITIVE_INFINITY;
+		float lMax = Float.NEGATIVE_INFINITY;
+		for (final float lValue : lProjection)
+		{
+			lMin = Math.min(lMin, lValue);
+			lMax = Math.max(lMax, lValue);
+		}
+		final float lScale = lMax > lMin ? 255 / (lMax - lMin) : 0;
+
+		final byte[] lPixels = new byte[lProjection.length];
+		for (int i = 0; i < lProjection.length; i++)
+			lPixels[i] = (byte) Math.round((lProjection[i] - lMin) * lScale);
+
+		return new MIPThumbnail(pVolume.getChannelID(),
+								pVolume.getTimeIndex(),
+								lThumbnailWidth,
+								lThumbnailHeight,
+								lPixels);
+	}
+
+	/**
+	 * Reads values spaced by a given number of bytes into a row, with the
+	 * type resolved once for the whole row.
+	 *
+	 * @return false if the type is not supported
+	 */
+	private static boolean readRow(	NativeTypeEnum pType,
+									ByteBuffer pDataBuffer,
+									int pFirstByteIndex,
+									int pByteStep,
+									float[] pRow)
+	{
+		int lByteIndex = pFirstByteIndex;
+		switch (pType)
+		{
+		case UnsignedByte:
+			for (int x = 0; x < pRow.length; x++, lByteIndex += pByteStep)
+				pRow[x] = pDataBuffer.get(lByteIndex) & 0xFF;
+			return true;
+		case Byte:
+			for (int x = 0; x < pRow.length; x++, lByteIndex += pByteStep)
+				pRow[x] = pDataBuffer.get(lByteIndex);
+			return true;
+		case UnsignedShort:
+			for (int x = 0; x < pRow.length; x++, lByteIndex += pByteStep)
+				pRow[x] = pDataBuffer.getShort(lByteIndex) & 0xFFFF;
+			return true;
+		case Short:
+			for (int x = 0; x < pRow.length; x++, lByteIndex += pByteStep)
+				pRow[x] = pDataBuffer.getShort(lByteIndex);
+			return true;
+		case UnsignedInt:
+			for (int x = 0; x < pRow.length; x++, lByteIndex += pByteStep)
+				pRow[x] = pDataBuffer.getInt(lByteIndex) & 0xFFFFFFFFL;
+			return true;
+		case Int:
+			for (int x = 0; x < pRow.length; x++, lByteIndex += pByteStep)
+				pRow[x] = pDataBuffer.getInt(lByteIndex);
+			return true;
+		case Float:
+			for (int x = 0; x < pRow.length; x++, lByteIndex += pByteStep)
+				pRow[x] = pDataBuffer.getFloat(lByteIndex);
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	public int getChannelID()
+	{
+		return mChannelID;
+	}
+
+	public long getTimeIndex()
+	{
+		return mTimeIndex;
+	}
+
+	public int getWidth()
+	{
+		return mWidth;
+	}
+
+	public int getHeight()
+	{
+		return mHeight;
+	}
+
+	/**
+	 * Returns the pixels, row by row, as unsigned bytes.
+	 *
+	 * @return pixels
+	 */
+	public byte[] getPixels()
+	{
+		return mPixels;
+	}
+
+	public int getPixel(int pX, int pY)
+	{
+		return mPixels[pY * mWidth + pX] & 0xFF;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(	"MIPThumbnail [channel=%d, timeindex=%d, width=%d, height=%d]",
+								mChannelID,
+								mTimeIndex,
+								mWidth,
+								mHeight);
+	}
+
+}
@@ -2,61 +2,66 @@ package clearvolume.volume.sink.timeshift;
 
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-public class SwitchableSoftReferenceManager<T>
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.sink.pipeline.SinkPipelineScheduler;
+
+/**
+ * Wraps referents in {@link SwitchableSoftReference}s and runs their clean-up
+ * runnables once they have been collected. The reference queue is polled by a
+ * periodic task on a {@link SinkPipelineScheduler}.
+ */
+public class SwitchableSoftReferenceManager<T> implements ClearVolumeCloseable
 {
 	private static final long cCleanUpPeriodInMilliseconds = 1000;
 
-	private static final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
-
 	private final ReferenceQueue<T> mReferenceQueue = new ReferenceQueue<T>();
+	private final ScheduledFuture<?> mCleanUpFuture;
 
 	public SwitchableSoftReferenceManager()
+	{
+		this(SinkPipelineScheduler.getSharedScheduler());
+	}
+
+	public SwitchableSoftReferenceManager(SinkPipelineScheduler pScheduler)
 	{
 		super();
-		Runnable lRunnable = new Runnable()
+		final Runnable lRunnable = new Runnable()
 		{
 
 			@Override
 			public void run()
 			{
-				while (true)
+				try
 				{
-					try
+					while (true)
 					{
-						while (true)
-						{
-							Reference<? extends T> lReference = mReferenceQueue.poll();
-							if (lReference == null)
-								break;
-
-							@SuppressWarnings("unchecked")
-							SwitchableSoftReference<T> lSwitchableSoftReference = (SwitchableSoftReference<T>) lReference;
-
-							Runnable lCleanUpRunnable = lSwitchableSoftReference.getCleanUpRunnable();
+						final Reference<? extends T> lReference = mReferenceQueue.poll();
+						if (lReference == null)
+							break;
 
-							if (lCleanUpRunnable != null)
-								mExecutor.execute(lCleanUpRunnable);
+						@SuppressWarnings("unchecked")
+						final SwitchableSoftReference<T> lSwitchableSoftReference = (SwitchableSoftReference<T>) lReference;
 
-						}
+						final Runnable lCleanUpRunnable = lSwitchableSoftReference.getCleanUpRunnable();
 
-						Thread.sleep(cCleanUpPeriodInMilliseconds);
-					}
-					catch (Throwable e)
-					{
-						e.printStackTrace();
+						if (lCleanUpRunnable != null)
+							lCleanUpRunnable.run();
 					}
 				}
+				catch (final Throwable e)
+				{
+					e.printStackTrace();
+				}
 			}
 		};
 
-		Thread lCleanUpThread = new Thread(	lRunnable,
-											"SwitchableSoftReferenceCleanUpThread");
-		lCleanUpThread.setDaemon(true);
-		lCleanUpThread.setPriority(Thread.MIN_PRIORITY);
-		lCleanUpThread.start();
+		mCleanUpFuture = pScheduler.scheduleAtFixedRate(lRunnable,
+														cCleanUpPeriodInMilliseconds,
+														cCleanUpPeriodInMilliseconds,
+														TimeUnit.MILLISECONDS);
 	}
 
 	public SwitchableSoftReference<T> wrapReference(T pReferent,
@@ -67,4 +72,10 @@ public class SwitchableSoftReferenceManager<T>
 												pCleaningRunnable);
 	}
 
+	@Override
+	public void close()
+	{
+		mCleanUpFuture.cancel(false);
+	}
+
 }
@@ -0,0 +1,219 @@
+package clearvolume.volume.sink.timeshift;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import clearvolume.ClearVolumeCloseable;
+import clearvolume.volume.Volume;
+import clearvolume.volume.sink.pipeline.SchedulerReference;
+import clearvolume.volume.sink.pipeline.SinkPipelineScheduler;
+
+/**
+ * Keeps {@link MIPThumbnail}s of the time points received by a
+ * {@link TimeShiftingSink}, independently of its voxel history: thumbnails stay
+ * available after their time point has been evicted, up to a maximal number of
+ * thumbnails per channel. Thumbnails are computed on the threads of a
+ * {@link SinkPipelineScheduler}.
+ */
+public class ThumbnailCache implements ClearVolumeCloseable
+{
+	private static final int cDefaultThumbnailSizeInPixels = 32;
+	private static final int cDefaultMaxNumberOfThumbnailsPerChannel = 4096;
+
+	private final int mThumbnailSizeInPixels;
+	private final int mMaxNumberOfThumbnailsPerChannel;
+	private final ConcurrentHashMap<Integer, ConcurrentSkipListMap<Long, MIPThumbnail>> mChannelToThumbnailsMap = new ConcurrentHashMap<>();
+	private final AtomicInteger mNumberOfPendingThumbnails = new AtomicInteger();
+	private final AtomicLong mNumberOfComputedThumbnails = new AtomicLong();
+	private final SchedulerReference mScheduler = new SchedulerReference();
+	private volatile boolean mIsClosed;
+
+	public ThumbnailCache()
+	{
+		this(	cDefaultThumbnailSizeInPixels,
+				cDefaultMaxNumberOfThumbnailsPerChannel);
+	}
+
+	public ThumbnailCache(	int pThumbnailSizeInPixels,
+							int pMaxNumberOfThumbnailsPerChannel)
+	{
+		super();
+		mThumbnailSizeInPixels = pThumbnailSizeInPixels;
+		mMaxNumberOfThumbnailsPerChannel = pMaxNumberOfThumbnailsPerChannel;
+	}
+
+	/**
+	 * Sets the scheduler computing the thumbnails, null for the shared
+	 * scheduler.
+	 *
+	 * @param pScheduler
+	 *            scheduler or null
+	 */
+	public void setScheduler(SinkPipelineScheduler pScheduler)
+	{
+		mScheduler.set(pScheduler);
+	}
+
+	/**
+	 * Schedules the computation of the thumbnail of a history entry. The
+	 * thumbnail is computed while holding the entry's monitor, so that its
+	 * volume cannot be recycled meanwhile, which is short since only a
+	 * subsample of the volume is read; entries that are no longer in memory by
+	 * then are skipped.
+	 *
+	 * @param pEntry
+	 *            history entry
+	 * @param pOnDone
+	 *            run once the thumbnail is computed or skipped, may be null
+	 */
+	void submit(final HistoryEntry pEntry, final Runnable pOnDone)
+	{
+		mNumberOfPendingThumbnails.incrementAndGet();
+		mScheduler.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					compute(pEntry);
+				}
+				finally
+				{
+					mNumberOfPendingThumbnails.decrementAndGet();
+					if (pOnDone != null)
+						pOnDone.run();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Computes the thumbnail of a history entry on the calling thread, used
+	 * when too many thumbnails are pending already.
+	 *
+	 * @param pEntry
+	 *            history entry
+	 */
+	void compute(HistoryEntry pEntry)
+	{
+		try
+		{
+			final MIPThumbnail lThumbnail;
+			synchronized (pEntry)
+			{
+				final Volume lVolume = pEntry.getVolume();
+				if (lVolume == null || mIsClosed)
+					return;
+				lThumbnail = MIPThumbnail.compute(lVolume, mThumbnailSizeInPixels);
+			}
+			if (lThumbnail != null)
+				put(lThumbnail);
+		}
+		catch (final Throwable e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Adds a thumbnail, replacing the one with the same channel and time index,
+	 * and drops the oldest thumbnails of the channel beyond the maximal number.
+	 *
+	 * @param pThumbnail
+	 *            thumbnail
+	 */
+	public void put(MIPThumbnail pThumbnail)
+	{
+		final ConcurrentSkipListMap<Long, MIPThumbnail> lThumbnails = getThumbnails(pThumbnail.getChannelID());
+		lThumbnails.put(pThumbnail.getTimeIndex(), pThumbnail);
+		mNumberOfComputedThumbnails.incrementAndGet();
+		while (lThumbnails.size() > mMaxNumberOfThumbnailsPerChannel)
+			lThumbnails.pollFirstEntry();
+	}
+
+	private ConcurrentSkipListMap<Long, MIPThumbnail> getThumbnails(int pChannelID)
+	{
+		ConcurrentSkipListMap<Long, MIPThumbnail> lThumbnails = mChannelToThumbnailsMap.get(pChannelID);
+		if (lThumbnails == null)
+		{
+			final ConcurrentSkipListMap<Long, MIPThumbnail> lNewThumbnails = new ConcurrentSkipListMap<>();
+			lThumbnails = mChannelToThumbnailsMap.putIfAbsent(	pChannelID,
+																lNewThumbnails);
+			if (lThumbnails == null)
+				lThumbnails = lNewThumbnails;
+		}
+		return lThumbnails;
+	}
+
+	/**
+	 * Returns the thumbnail at or just before the given time index, or the
+	 * first thumbnail of the channel if there is none before.
+	 *
+	 * @param pChannelID
+	 *            channel
+	 * @param pTimeIndex
+	 *            time index
+	 * @return thumbnail or null if the channel has none
+	 */
+	public MIPThumbnail getThumbnail(int pChannelID, long pTimeIndex)
+	{
+		final ConcurrentSkipListMap<Long, MIPThumbnail> lThumbnails = mChannelToThumbnailsMap.get(pChannelID);
+		if (lThumbnails == null)
+			return null;
+		Map.Entry<Long, MIPThumbnail> lEntry = lThumbnails.floorEntry(pTimeIndex);
+		if (lEntry == null)
+			lEntry = lThumbnails.firstEntry();
+		return lEntry == null ? null : lEntry.getValue();
+	}
+
+	/**
+	 * Returns the channels that have thumbnails, in increasing order.
+	 *
+	 * @return channels
+	 */
+	public int[] getChannels()
+	{
+		final int[] lChannels = new int[mChannelToThumbnailsMap.size()];
+		int i = 0;
+		for (final Integer lChannel : mChannelToThumbnailsMap.keySet())
+			if (i < lChannels.length)
+				lChannels[i++] = lChannel;
+		final int[] lResult = Arrays.copyOf(lChannels, i);
+		Arrays.sort(lResult);
+		return lResult;
+	}
+
+	public int getNumberOfThumbnails(int pChannelID)
+	{
+		final ConcurrentSkipListMap<Long, MIPThumbnail> lThumbnails = mChannelToThumbnailsMap.get(pChannelID);
+		return lThumbnails == null ? 0 : lThumbnails.size();
+	}
+
+	public int getNumberOfPendingThumbnails()
+	{
+		return mNumberOfPendingThumbnails.get();
+	}
+
+	public long getNumberOfComputedThumbnails()
+	{
+		return mNumberOfComputedThumbnails.get();
+	}
+
+	public int getThumbnailSizeInPixels()
+	{
+		return mThumbnailSizeInPixels;
+	}
+
+	@Override
+	public void close()
+	{
+		mIsClosed = true;
+		mChannelToThumbnailsMap.clear();
+	}
+
+}
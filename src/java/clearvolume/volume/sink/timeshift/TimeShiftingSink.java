@@ -1,79 +1,236 @@
 package clearvolume.volume.sink.timeshift;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
-import java.util.TreeSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import clearvolume.ClearVolumeCloseable;
+import clearvolume.utils.concurrent.SerialExecutor;
 import clearvolume.volume.Volume;
 import clearvolume.volume.VolumeManager;
+import clearvolume.volume.compression.DeltaBitPackingCodec;
+import clearvolume.volume.sink.pipeline.ScheduledSinkInterface;
+import clearvolume.volume.sink.pipeline.SchedulerReference;
+import clearvolume.volume.sink.pipeline.SinkPipelineScheduler;
 import clearvolume.volume.sink.relay.RelaySinkAdapter;
 import clearvolume.volume.sink.relay.RelaySinkInterface;
+import gnu.trove.map.hash.TIntObjectHashMap;
 
+/**
+ * Keeps a history of the volumes received and lets the relay sink look at the
+ * past by shifting in time. History memory is bounded by a byte budget with
+ * explicit LRU eviction: time points within the soft horizon of the present
+ * and the currently displayed time points are never evicted, time points past
+ * the hard horizon are always evicted. Evicted volumes are made available to
+ * their manager right away.
+ *
+ * If a {@link HistorySpillStore} is set, time points that fall out of memory are
+ * spilled to disk instead of being discarded, they are read back on demand and
+ * time shifting can reach back to the first time point of the session.
+ *
+ * If a compression hot window is set, time points that fall out of it are
+ * compressed in the background with a {@link DeltaBitPackingCodec}, the
+ * uncompressed volumes are given back to their manager and decompressed into
+ * pooled volumes on demand. Budget eviction first drops the uncompressed copy
+ * of time points that also have a compressed one.
+ *
+ * Each channel has its own {@link ChannelTimeline}, so ingesting on one channel
+ * does not block lookups on another. Locks are taken in the order: relay lock,
+ * history entry, cache lock.
+ *
+ * Seeks, compression, spilling, prefetching and thumbnails run on a
+ * {@link SinkPipelineScheduler}, seeks and compressions one at a time. Entries
+ * to spill stay pinned in memory until the spill writer has written them; when
+ * too many are waiting, the thread evicting entries writes the excess itself,
+ * without holding any entry monitor.
+ */
 public class TimeShiftingSink extends RelaySinkAdapter	implements
 														RelaySinkInterface,
+														ScheduledSinkInterface,
 														ClearVolumeCloseable
 {
-	private static final float cCleanUpRatio = 0.25f;
+	private static final int cDefaultPrefetchDepth = 8;
+	private static final int cMaxLookupAttempts = 4;
+	private static final int cMaxPinnedThumbnails = 16;
+	private static final int cMaxPendingSpills = 16;
 
-	private static final ExecutorService mSeekingExecutor = Executors.newSingleThreadExecutor();
-	private final SwitchableSoftReferenceManager<Volume> mSwitchableSoftReferenceManager;
+	private final SchedulerReference mScheduler = new SchedulerReference();
+	private final SerialExecutor mSeekingExecutor = new SerialExecutor(mScheduler);
+	private final SerialExecutor mCompressionExecutor = new SerialExecutor(mScheduler);
+	private final ConcurrentLinkedQueue<HistoryEntry> mSpillQueue = new ConcurrentLinkedQueue<HistoryEntry>();
+	private final AtomicInteger mNumberOfPendingSpills = new AtomicInteger();
 
-	private final Object mLock = new Object();
-	private HashMap<Integer, TreeMap<Long, SwitchableSoftReference<Volume>>> mChannelToVolumeListsMap = new HashMap<>();
-	private final TreeSet<Integer> mAvailableChannels = new TreeSet<>();
+	private final Object mChannelsLock = new Object();
+	private volatile TIntObjectHashMap<ChannelTimeline> mChannelToTimelineMap = new TIntObjectHashMap<ChannelTimeline>();
+	private volatile int[] mChannels = new int[0];
+
+	private final Object mRelayLock = new Object();
+	private final Object mCacheLock = new Object();
+	private final HistoryCache mHistoryCache;
+	private volatile HistorySpillStore mHistorySpillStore;
+	private final VolumeManager mMaterializationVolumeManager = new VolumeManager(16);
+	private volatile ThumbnailCache mThumbnailCache;
+	private final HistoryPrefetcher mHistoryPrefetcher;
+	private final HistoryPlayer mHistoryPlayer;
+	private final AtomicBoolean mSeekPending = new AtomicBoolean();
+	private volatile double mPendingTimeShiftNormalized;
+
+	private final Runnable mSpillRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			final HistoryEntry lEntry = mSpillQueue.poll();
+			if (lEntry != null)
+				spill(lEntry);
+		}
+	};
+
+	private final Runnable mSeekRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			mSeekPending.set(false);
+			final double lTimeShiftNormalized = mPendingTimeShiftNormalized;
+
+			// find the available data interval to evade invalid indices
+			final long lStartPosition = getOldestAvailableTimePointIndex();
+			final long lInterval = mHighestTimePointIndexSeen.get() - lStartPosition;
+
+			seekTo(mHighestTimePointIndexSeen.get() - Math.round(lInterval * lTimeShiftNormalized));
+		}
+	};
 
 	private volatile long mSoftMemoryHorizonInTimePointIndices;
 	private volatile long mHardMemoryHorizonInTimePointIndices;
-	private volatile long mCleanUpPeriodInTimePoints;
-	private volatile long mHighestTimePointIndexSeen = 0;
+	private final AtomicLong mHighestTimePointIndexSeen = new AtomicLong(0);
+	private final AtomicLong mLowestTimePointIndexSeen = new AtomicLong(Long.MAX_VALUE);
+	private volatile long mCompressionHotWindowInTimePointIndices = -1;
+	private final AtomicLong mNumberOfCompressedVolumes = new AtomicLong();
 	private volatile long mTimeShift = 0;
 	private volatile boolean mIsPlaying = true;
 
 	public TimeShiftingSink(long pSoftMemoryHoryzonInTimePointIndices,
 							long pHardMemoryHoryzonInTimePointIndices)
+	{
+		this(	pSoftMemoryHoryzonInTimePointIndices,
+				pHardMemoryHoryzonInTimePointIndices,
+				Runtime.getRuntime().maxMemory() / 2);
+	}
+
+	public TimeShiftingSink(long pSoftMemoryHoryzonInTimePointIndices,
+							long pHardMemoryHoryzonInTimePointIndices,
+							long pHistoryBudgetInBytes)
 	{
 		super();
-		mSwitchableSoftReferenceManager = new SwitchableSoftReferenceManager<>();
 		mSoftMemoryHorizonInTimePointIndices = Math.min(pSoftMemoryHoryzonInTimePointIndices,
 														pHardMemoryHoryzonInTimePointIndices);
 		mHardMemoryHorizonInTimePointIndices = Math.max(pHardMemoryHoryzonInTimePointIndices,
 														pSoftMemoryHoryzonInTimePointIndices);
-		mCleanUpPeriodInTimePoints = (long) (mSoftMemoryHorizonInTimePointIndices * cCleanUpRatio);
+		mHistoryCache = new HistoryCache(pHistoryBudgetInBytes);
+		mHistoryPrefetcher = new HistoryPrefetcher(	this,
+													cDefaultPrefetchDepth);
+		mHistoryPlayer = new HistoryPlayer(this);
 	}
 
+	/**
+	 * Sets the scheduler running seeks, compression, prefetching and the
+	 * thumbnails of the thumbnail cache.
+	 */
+	@Override
+	public void setScheduler(SinkPipelineScheduler pScheduler)
+	{
+		mScheduler.set(pScheduler);
+		mHistoryPrefetcher.setScheduler(pScheduler);
+		final ThumbnailCache lThumbnailCache = mThumbnailCache;
+		if (lThumbnailCache != null)
+			lThumbnailCache.setScheduler(pScheduler);
+	}
+
+	public SinkPipelineScheduler getScheduler()
+	{
+		return mScheduler.get();
+	}
+
+	/**
+	 * Shifts to a position between the present (0) and the oldest available time
+	 * point (1). Seeks are done asynchronously and coalesced: if several are
+	 * requested while one is in progress, only the last one is done.
+	 *
+	 * @param pTimeShiftNormalized
+	 *            normalized time shift
+	 */
 	public void setTimeShiftNormalized(final double pTimeShiftNormalized)
 	{
-		final Runnable lRunnable = new Runnable()
-		{
+		mPendingTimeShiftNormalized = pTimeShiftNormalized;
+		if (mSeekPending.compareAndSet(false, true))
+			mSeekingExecutor.execute(mSeekRunnable);
+	}
 
-			@Override
-			public void run()
-			{
-				synchronized (mLock)
-				{
-					final long lPreviousTimeShift = mTimeShift;
-
-					// find the available data interval to evade invalid indices
-					final long startPos = Math.max(	0,
-													mHighestTimePointIndexSeen - mHardMemoryHorizonInTimePointIndices);
-					final long interval = mHighestTimePointIndexSeen - startPos;
-
-					// System.err.println("interval=[" + startPos +","
-					// +interval+"]");
-					mTimeShift = -Math.round(interval * pTimeShiftNormalized);
-					if (lPreviousTimeShift != mTimeShift)
-						for (final int lChannel : mAvailableChannels)
-							sendVolumeInternal(lChannel);
-				}
-			}
-		};
+	/**
+	 * Displays the time point at or just before the given time index, for all
+	 * channels, and waits until it has been sent to the relay sink.
+	 *
+	 * @param pTimeIndex
+	 *            time index
+	 */
+	public void seekTo(long pTimeIndex)
+	{
+		final long lHighestTimePointIndexSeen = mHighestTimePointIndexSeen.get();
+		mTimeShift = Math.min(0, pTimeIndex - lHighestTimePointIndexSeen);
+		for (final int lChannel : mChannels)
+			sendVolumeInternal(lChannel);
+		mHistoryPrefetcher.notifySeek(lHighestTimePointIndexSeen + mTimeShift);
+	}
+
+	/**
+	 * Returns the oldest time index that can be shifted to: the first time point
+	 * of the session if there is a spill store, the hard horizon otherwise.
+	 *
+	 * @return oldest available time index
+	 */
+	public long getOldestAvailableTimePointIndex()
+	{
+		final long lHighestTimePointIndexSeen = mHighestTimePointIndexSeen.get();
+		final long lLowestTimePointIndexSeen = Math.min(mLowestTimePointIndexSeen.get(),
+														lHighestTimePointIndexSeen);
+		if (mHistorySpillStore != null)
+			return lLowestTimePointIndexSeen;
+		return Math.max(lLowestTimePointIndexSeen,
+						lHighestTimePointIndexSeen - mHardMemoryHorizonInTimePointIndices);
+	}
 
-		mSeekingExecutor.execute(lRunnable);
+	/**
+	 * Returns the mean acquisition interval between time points, estimated from
+	 * the time in seconds of the oldest and newest available time points.
+	 *
+	 * @return mean interval in seconds, or 0 if unknown
+	 */
+	public double getMeanTimePointIntervalInSeconds()
+	{
+		final int[] lChannels = mChannels;
+		if (lChannels.length == 0)
+			return 0;
+		final ChannelTimeline lChannelTimeline = mChannelToTimelineMap.get(lChannels[0]);
+		final HistoryEntry lOldest = lChannelTimeline.lookup(getOldestAvailableTimePointIndex());
+		final HistoryEntry lNewest = lChannelTimeline.lookup(mHighestTimePointIndexSeen.get());
+		if (lOldest == null || lNewest == null
+			|| lNewest.getTimeIndex() == lOldest.getTimeIndex())
+			return 0;
+		return Math.max(0, (lNewest.getTimeInSeconds() - lOldest.getTimeInSeconds()) / (lNewest.getTimeIndex() - lOldest.getTimeIndex()));
+	}
+
+	public HistoryPlayer getHistoryPlayer()
+	{
+		return mHistoryPlayer;
 	}
 
 	public void setTimeShift(long pTimeShift)
@@ -98,185 +255,839 @@ public class TimeShiftingSink extends RelaySinkAdapter	implements
 
 	public long getNumberOfTimepoints()
 	{
-		return mHighestTimePointIndexSeen;
+		return mHighestTimePointIndexSeen.get();
 	}
 
 	public int getNumberOfAvailableChannels()
 	{
-		return mAvailableChannels.size();
+		return mChannels.length;
 	}
 
 	public int getAvailableChannels()
 	{
-		return mAvailableChannels.size();
+		return mChannels.length;
+	}
+
+	/**
+	 * Sets the store used to spill time points that fall out of the in-memory
+	 * history. Pass null to discard them instead.
+	 *
+	 * @param pHistorySpillStore
+	 *            history spill store or null
+	 */
+	public void setHistorySpillStore(HistorySpillStore pHistorySpillStore)
+	{
+		synchronized (mChannelsLock)
+		{
+			mHistorySpillStore = pHistorySpillStore;
+			for (final int lChannel : mChannels)
+				mChannelToTimelineMap.get(lChannel)
+										.setMaximalSpan(getMaximalTimelineSpan());
+		}
+	}
+
+	/**
+	 * Timelines only need to span the hard horizon, unless spilled time points
+	 * reach back further.
+	 */
+	private long getMaximalTimelineSpan()
+	{
+		if (mHistorySpillStore != null
+			|| mHardMemoryHorizonInTimePointIndices == Long.MAX_VALUE)
+			return Long.MAX_VALUE;
+		return mHardMemoryHorizonInTimePointIndices + 1;
+	}
+
+	public HistorySpillStore getHistorySpillStore()
+	{
+		return mHistorySpillStore;
+	}
+
+	/**
+	 * Sets the number of most recent time points kept uncompressed, older time
+	 * points are compressed in the background. Pass a negative value to disable
+	 * compression, which is the default.
+	 *
+	 * @param pCompressionHotWindowInTimePointIndices
+	 *            hot window in time point indices, negative to disable
+	 */
+	public void setCompressionHotWindow(long pCompressionHotWindowInTimePointIndices)
+	{
+		mCompressionHotWindowInTimePointIndices = pCompressionHotWindowInTimePointIndices;
+	}
+
+	public long getCompressionHotWindow()
+	{
+		return mCompressionHotWindowInTimePointIndices;
+	}
+
+	public long getNumberOfCompressedVolumes()
+	{
+		return mNumberOfCompressedVolumes.get();
+	}
+
+	/**
+	 * Sets the cache in which thumbnails of incoming time points are computed
+	 * and kept, on the scheduler of this sink. Pass null to stop computing
+	 * thumbnails, which is the default.
+	 *
+	 * @param pThumbnailCache
+	 *            thumbnail cache or null
+	 */
+	public void setThumbnailCache(ThumbnailCache pThumbnailCache)
+	{
+		if (pThumbnailCache != null)
+			pThumbnailCache.setScheduler(mScheduler.get());
+		mThumbnailCache = pThumbnailCache;
+	}
+
+	public ThumbnailCache getThumbnailCache()
+	{
+		return mThumbnailCache;
+	}
+
+	public HistoryPrefetcher getHistoryPrefetcher()
+	{
+		return mHistoryPrefetcher;
+	}
+
+	public long getHistoryBudgetInBytes()
+	{
+		return mHistoryCache.getBudgetInBytes();
+	}
+
+	public void setHistoryBudgetInBytes(long pHistoryBudgetInBytes)
+	{
+		mHistoryCache.setBudgetInBytes(pHistoryBudgetInBytes);
+	}
+
+	public long getHistorySizeInBytes()
+	{
+		synchronized (mCacheLock)
+		{
+			return mHistoryCache.getSizeInBytes();
+		}
+	}
+
+	public int getNumberOfVolumesInHistory()
+	{
+		synchronized (mCacheLock)
+		{
+			return mHistoryCache.getNumberOfEntries();
+		}
+	}
+
+	public long getNumberOfEvictedVolumes()
+	{
+		synchronized (mCacheLock)
+		{
+			return mHistoryCache.getNumberOfEvictedEntries();
+		}
 	}
 
 	@Override
 	public void sendVolume(Volume pVolume)
 	{
-		synchronized (mLock)
+		final int lVolumeChannelID = pVolume.getChannelID();
+		final long lTimeIndex = pVolume.getTimeIndex();
+		final ChannelTimeline lChannelTimeline = getOrCreateTimeline(lVolumeChannelID);
+
+		final HistoryEntry lEntry = new HistoryEntry(pVolume);
+		final ArrayList<HistoryEntry> lDroppedEntries = new ArrayList<HistoryEntry>();
+		final HistoryEntry lReplacedEntry = lChannelTimeline.put(	lEntry,
+																	lDroppedEntries);
+		if (lReplacedEntry != null)
+			discard(lReplacedEntry);
+		// entries newer than the one put mean the time index was reset:
+		boolean lIsReset = false;
+		for (final HistoryEntry lDroppedEntry : lDroppedEntries)
 		{
-			final int lVolumeChannelID = pVolume.getChannelID();
-			mAvailableChannels.add(lVolumeChannelID);
-			TreeMap<Long, SwitchableSoftReference<Volume>> lTimePointIndexToVolumeMapReference = mChannelToVolumeListsMap.get(lVolumeChannelID);
+			lIsReset |= lDroppedEntry.getTimeIndex() > lTimeIndex;
+			discard(lDroppedEntry);
+		}
+		synchronized (mCacheLock)
+		{
+			mHistoryCache.add(lEntry);
+		}
 
-			if (lTimePointIndexToVolumeMapReference == null)
-			{
-				lTimePointIndexToVolumeMapReference = new TreeMap<>();
-				mChannelToVolumeListsMap.put(	lVolumeChannelID,
-												lTimePointIndexToVolumeMapReference);
-			}
+		if (lIsReset)
+		{
+			mHighestTimePointIndexSeen.set(lTimeIndex);
+			mLowestTimePointIndexSeen.set(lTimeIndex);
+		}
+		raise(mHighestTimePointIndexSeen, lTimeIndex);
+		lower(mLowestTimePointIndexSeen, lTimeIndex);
+		scheduleCompression(lChannelTimeline, lTimeIndex);
 
-			lTimePointIndexToVolumeMapReference.put(pVolume.getTimeIndex(),
-													wrapWithReference(pVolume));
+		if (mIsPlaying)
+		{
+			sendVolumeInternal(lVolumeChannelID);
+			if (mTimeShift != 0 && lVolumeChannelID == mChannels[0])
+				mHistoryPrefetcher.notifySeek(mHighestTimePointIndexSeen.get() + mTimeShift);
+		}
+
+		final ThumbnailCache lThumbnailCache = mThumbnailCache;
+		if (lThumbnailCache != null)
+			scheduleThumbnail(lThumbnailCache, lEntry);
+
+		cleanUpOldVolumes();
+	}
 
-			mHighestTimePointIndexSeen = Math.max(	mHighestTimePointIndexSeen,
-													pVolume.getTimeIndex());
+	private ChannelTimeline getOrCreateTimeline(int pChannelID)
+	{
+		ChannelTimeline lChannelTimeline = mChannelToTimelineMap.get(pChannelID);
+		if (lChannelTimeline != null)
+			return lChannelTimeline;
 
-			if (mIsPlaying)
-				sendVolumeInternal(lVolumeChannelID);
+		synchronized (mChannelsLock)
+		{
+			lChannelTimeline = mChannelToTimelineMap.get(pChannelID);
+			if (lChannelTimeline != null)
+				return lChannelTimeline;
 
-			cleanUpOldVolumes(	mHighestTimePointIndexSeen,
-								lVolumeChannelID);
+			lChannelTimeline = new ChannelTimeline(	pChannelID,
+													getMaximalTimelineSpan());
+			final TIntObjectHashMap<ChannelTimeline> lChannelToTimelineMap = new TIntObjectHashMap<ChannelTimeline>(mChannelToTimelineMap);
+			lChannelToTimelineMap.put(pChannelID, lChannelTimeline);
+			final int[] lChannels = lChannelToTimelineMap.keys();
+			Arrays.sort(lChannels);
+			mChannelToTimelineMap = lChannelToTimelineMap;
+			mChannels = lChannels;
+			return lChannelTimeline;
 		}
 	}
 
 	private void sendVolumeInternal(int lVolumeChannelID)
 	{
-		synchronized (mLock)
+		final ChannelTimeline lChannelTimeline = mChannelToTimelineMap.get(lVolumeChannelID);
+		if (lChannelTimeline == null)
+			return;
+
+		synchronized (mRelayLock)
 		{
-			final Volume lVolumeToSend = getVolumeToSend(lVolumeChannelID);
+			final HistoryEntry lEntryToSend = acquireEntryToSend(lChannelTimeline);
 
-			if (lVolumeToSend != null)
+			if (lEntryToSend != null)
 			{
-				getRelaySink().sendVolume(lVolumeToSend);
+				final HistoryEntry lPreviouslyDisplayedEntry = lChannelTimeline.mDisplayedEntry;
+				lChannelTimeline.mDisplayedEntry = lEntryToSend;
+				if (lPreviouslyDisplayedEntry != null)
+					unpin(lPreviouslyDisplayedEntry);
+
+				getRelaySink().sendVolume(lEntryToSend.getVolume());
 			}
 			else
 			{
 				System.err.println("Did not have any volume to send :(");
 			}
+		}
+	}
 
-			cleanUpOldVolumes(	mHighestTimePointIndexSeen,
-								lVolumeChannelID);
+	/**
+	 * Looks up the entry to display for a channel, brings it into memory if
+	 * needed and pins it.
+	 */
+	private HistoryEntry acquireEntryToSend(ChannelTimeline pChannelTimeline)
+	{
+		for (int i = 0; i < cMaxLookupAttempts; i++)
+		{
+			final HistoryEntry lEntry = pChannelTimeline.lookup(mHighestTimePointIndexSeen.get() + mTimeShift);
+			if (lEntry == null)
+				return null;
+
+			synchronized (lEntry)
+			{
+				// replaced or dropped since it was looked up:
+				if (lEntry.mIsDiscarded)
+					continue;
+				if (!lEntry.isInMemory() && !materialize(lEntry))
+					continue;
+				synchronized (mCacheLock)
+				{
+					mHistoryCache.pin(lEntry);
+					mHistoryCache.touch(lEntry);
+				}
+				return lEntry;
+			}
 		}
+		return null;
 	}
 
-	private SwitchableSoftReference<Volume> wrapWithReference(final Volume pVolume)
+	/**
+	 * Queues the computation of the thumbnail of a new entry. The entry is
+	 * pinned until its thumbnail is computed. When too many thumbnails are
+	 * pending already, the thumbnail is computed right away on the calling
+	 * thread instead, which bounds the number of pinned entries without losing
+	 * thumbnails when the scheduler is busy.
+	 */
+	private void scheduleThumbnail(	ThumbnailCache pThumbnailCache,
+									final HistoryEntry pEntry)
 	{
-		final Runnable lCleaningRunnable = new Runnable()
+		if (pThumbnailCache.getNumberOfPendingThumbnails() >= cMaxPinnedThumbnails)
+		{
+			pThumbnailCache.compute(pEntry);
+			return;
+		}
+
+		synchronized (pEntry)
+		{
+			synchronized (mCacheLock)
+			{
+				mHistoryCache.pin(pEntry);
+			}
+		}
+		pThumbnailCache.submit(pEntry, new Runnable()
 		{
 			@Override
 			public void run()
 			{
-				System.out.println("CLEANING!");
-				pVolume.makeAvailableToManager();
+				releaseThumbnailPin(pEntry);
 			}
-		};
-		return mSwitchableSoftReferenceManager.wrapReference(	pVolume,
-																lCleaningRunnable);
+		});
 	}
 
-	private Volume getVolumeToSend(int pVolumeChannelID)
+	private void releaseThumbnailPin(HistoryEntry pEntry)
 	{
-		synchronized (mLock)
+		synchronized (pEntry)
 		{
-			final TreeMap<Long, SwitchableSoftReference<Volume>> lTimePointIndexToVolumeMap = mChannelToVolumeListsMap.get(pVolumeChannelID);
+			if (releasePin(pEntry))
+				return;
+			synchronized (mCacheLock)
+			{
+				// evict entries that went past the hard horizon while pinned:
+				if (pEntry.isPinned() || pEntry.isSpilled()
+					|| pEntry.getTimeIndex() >= mHighestTimePointIndexSeen.get() - mHardMemoryHorizonInTimePointIndices)
+					return;
+				mHistoryCache.remove(pEntry);
+			}
+			evict(pEntry);
+		}
+	}
 
-			if (lTimePointIndexToVolumeMap.isEmpty())
-				return null;
+	/**
+	 * Queues for compression the entry that just left the hot window of a
+	 * channel, if any.
+	 */
+	private void scheduleCompression(	ChannelTimeline pChannelTimeline,
+										long pTimeIndex)
+	{
+		final long lCompressionHotWindow = mCompressionHotWindowInTimePointIndices;
+		if (lCompressionHotWindow < 0)
+			return;
 
-			Entry<Long, SwitchableSoftReference<Volume>> lIndexVolumeEntry = lTimePointIndexToVolumeMap.floorEntry(mHighestTimePointIndexSeen + mTimeShift);
-			if (lIndexVolumeEntry == null)
-				lIndexVolumeEntry = lTimePointIndexToVolumeMap.ceilingEntry(mHighestTimePointIndexSeen + mTimeShift);
+		final long lNewestColdTimeIndex = pTimeIndex - lCompressionHotWindow
+											- 1;
+		final HistoryEntry lEntry = pChannelTimeline.lookup(lNewestColdTimeIndex);
+		if (lEntry == null || lEntry.getTimeIndex() > lNewestColdTimeIndex)
+			return;
 
-			if (lIndexVolumeEntry == null)
-				return null;
+		synchronized (lEntry)
+		{
+			if (lEntry.mIsCompressionQueued || lEntry.isCompressed()
+				|| !isCompressible(lEntry.getVolume()))
+				return;
+			lEntry.mIsCompressionQueued = true;
+		}
 
-			final Volume lVolume = lIndexVolumeEntry.getValue().get();
-			if (lVolume == null)
+		mCompressionExecutor.execute(new Runnable()
+		{
+			@Override
+			public void run()
 			{
-				lTimePointIndexToVolumeMap.remove(lIndexVolumeEntry.getKey());
-				return getVolumeToSend(pVolumeChannelID);
+				compress(lEntry);
 			}
-			return lVolume;
+		});
+	}
+
+	private static boolean isCompressible(Volume pVolume)
+	{
+		if (pVolume == null)
+			return false;
+		switch (pVolume.getNativeType())
+		{
+		case Byte:
+		case UnsignedByte:
+		case Short:
+		case UnsignedShort:
+		case Int:
+		case UnsignedInt:
+			return true;
+		default:
+			return false;
 		}
 	}
 
-	private void cleanUpOldVolumes(	long pTimePointIndex,
-									int pChannelID)
+	/**
+	 * Compresses an entry and, unless it is displayed, gives its uncompressed
+	 * volume back to the manager. Entries evicted or discarded meanwhile are
+	 * left alone.
+	 */
+	private void compress(HistoryEntry pEntry)
 	{
-		synchronized (mLock)
+		synchronized (pEntry)
 		{
-			if (pTimePointIndex % mCleanUpPeriodInTimePoints != 0)
+			pEntry.mIsCompressionQueued = false;
+			final Volume lVolume = pEntry.getVolume();
+			if (lVolume == null || pEntry.isCompressed() || pEntry.mIsDiscarded)
 				return;
 
-			final TreeMap<Long, SwitchableSoftReference<Volume>> lTimePointIndexToVolumeMap = mChannelToVolumeListsMap.get(pChannelID);
-			if (lTimePointIndexToVolumeMap.isEmpty())
+			final byte[] lCompressedData;
+			try
 			{
-				mChannelToVolumeListsMap.remove(pChannelID);
+				final ByteBuffer lDataBuffer = lVolume.getDataBuffer()
+														.duplicate();
+				lDataBuffer.clear();
+				lDataBuffer.limit((int) lVolume.getDataSizeInBytes());
+				lCompressedData = DeltaBitPackingCodec.compress(	lDataBuffer,
+																lVolume.getBytesPerVoxel());
+			}
+			catch (final Throwable e)
+			{
+				e.printStackTrace();
 				return;
 			}
-			final Long lLastTimePoint = lTimePointIndexToVolumeMap.lastKey();
+			// incompressible data is kept as is:
+			if (lCompressedData.length >= lVolume.getDataSizeInBytes())
+				return;
 
-			Long lTimePoint = lLastTimePoint;
-			while (lTimePoint != null && lTimePoint > lLastTimePoint - mSoftMemoryHorizonInTimePointIndices)
+			final Volume lMetaData = new Volume();
+			lMetaData.copyMetaDataFrom(lVolume);
+			pEntry.setCompressedData(lCompressedData, lMetaData);
+			mNumberOfCompressedVolumes.incrementAndGet();
+
+			final boolean lIsPinned;
+			synchronized (mCacheLock)
+			{
+				lIsPinned = pEntry.isPinned();
+			}
+			if (!lIsPinned)
+				recycle(pEntry);
+			synchronized (mCacheLock)
 			{
-				lTimePoint = lTimePointIndexToVolumeMap.lowerKey(lTimePoint);
+				mHistoryCache.update(pEntry);
 			}
-			while (lTimePoint != null && lTimePoint > lLastTimePoint - mHardMemoryHorizonInTimePointIndices)
+		}
+	}
+
+	private void cleanUpOldVolumes()
+	{
+		// time points past the hard horizon are always evicted (or spilled):
+		final long lHighestTimePointIndexSeen = mHighestTimePointIndexSeen.get();
+		final long lOldestKeptTimePoint = lHighestTimePointIndexSeen - mHardMemoryHorizonInTimePointIndices;
+		final ArrayList<HistoryEntry> lEntries = new ArrayList<HistoryEntry>();
+		for (final int lChannel : mChannels)
+			mChannelToTimelineMap.get(lChannel)
+									.collectInMemoryBefore(	lOldestKeptTimePoint,
+															lEntries);
+
+		for (final HistoryEntry lEntry : lEntries)
+		{
+			synchronized (lEntry)
 			{
-				final SwitchableSoftReference<Volume> lSwitchableSoftReference = lTimePointIndexToVolumeMap.get(lTimePoint);
-				if (lSwitchableSoftReference.isGone())
+				synchronized (mCacheLock)
 				{
-					lTimePointIndexToVolumeMap.remove(lTimePoint);
+					// entries read back from the spill store are left to the LRU:
+					if (lEntry.isPinned() || lEntry.isSpilled())
+						continue;
+					mHistoryCache.remove(lEntry);
+				}
+				evict(lEntry);
+			}
+		}
+
+		// time points within the soft horizon are protected from budget
+		// eviction:
+		final long lOldestProtectedTimePoint = lHighestTimePointIndexSeen - mSoftMemoryHorizonInTimePointIndices;
+		final List<HistoryEntry> lEvictedEntries;
+		synchronized (mCacheLock)
+		{
+			lEvictedEntries = mHistoryCache.evictOverBudget(lOldestProtectedTimePoint);
+		}
+		for (final HistoryEntry lEntry : lEvictedEntries)
+		{
+			synchronized (lEntry)
+			{
+				synchronized (mCacheLock)
+				{
+					// pinned since it was picked for eviction:
+					if (lEntry.isPinned())
+					{
+						mHistoryCache.add(lEntry);
+						continue;
+					}
+				}
+				// only drop the uncompressed copy if there is a compressed one:
+				if (lEntry.isInMemory() && lEntry.isCompressed())
+				{
+					recycle(lEntry);
+					synchronized (mCacheLock)
+					{
+						mHistoryCache.add(lEntry);
+					}
 					continue;
 				}
-				lSwitchableSoftReference.soften();
-				lTimePoint = lTimePointIndexToVolumeMap.lowerKey(lTimePoint);
+				evict(lEntry);
+			}
+		}
+
+		// the spill writer is falling behind, write the excess on this thread:
+		while (mSpillQueue.size() > cMaxPendingSpills)
+		{
+			final HistoryEntry lEntry = mSpillQueue.poll();
+			if (lEntry != null)
+				spill(lEntry);
+		}
+	}
+
+	/**
+	 * Takes an entry that is no longer in the cache out of memory, uncompressed
+	 * and compressed. If there is a spill store and the entry was not spilled
+	 * before, it is pinned and queued for the spill writer instead, which
+	 * finishes the eviction once the entry is on disk. Entries that are not
+	 * spilled are removed from their timeline. Must be called while holding the
+	 * entry's monitor.
+	 */
+	private void evict(HistoryEntry pEntry)
+	{
+		if (!pEntry.isResident())
+			return;
+
+		if (mHistorySpillStore != null && !pEntry.isSpilled())
+		{
+			synchronized (mCacheLock)
+			{
+				mHistoryCache.pin(pEntry);
+			}
+			mNumberOfPendingSpills.incrementAndGet();
+			mSpillQueue.add(pEntry);
+			try
+			{
+				mScheduler.execute(mSpillRunnable);
+			}
+			catch (final RejectedExecutionException e)
+			{
+				// scheduler closed, written right away:
+				if (mSpillQueue.remove(pEntry))
+					spill(pEntry);
+			}
+			return;
+		}
+		recycle(pEntry);
+		pEntry.setCompressedData(null, null);
+		removeIfNotSpilled(pEntry);
+	}
+
+	private void removeIfNotSpilled(HistoryEntry pEntry)
+	{
+		if (mHistorySpillStore == null || !pEntry.isSpilled())
+		{
+			final ChannelTimeline lChannelTimeline = mChannelToTimelineMap.get(pEntry.getChannelID());
+			if (lChannelTimeline != null)
+				lChannelTimeline.remove(pEntry);
+		}
+	}
+
+	/**
+	 * Writes a queued entry to the spill store and finishes its eviction. The
+	 * entry stays pinned while its volume is written, which is done without
+	 * holding its monitor.
+	 */
+	private void spill(HistoryEntry pEntry)
+	{
+		try
+		{
+			final HistorySpillStore lHistorySpillStore = mHistorySpillStore;
+			final Volume lVolume;
+			synchronized (pEntry)
+			{
+				if (lHistorySpillStore == null || pEntry.mIsDiscarded
+					|| pEntry.isSpilled()
+					|| !pEntry.isResident())
+					return;
+				if (!pEntry.isInMemory())
+					decompress(pEntry);
+				lVolume = pEntry.getVolume();
+			}
+			final HistorySpillStore.SpillRecord lSpillRecord = lHistorySpillStore.write(lVolume);
+			synchronized (pEntry)
+			{
+				pEntry.setSpillRecord(lSpillRecord);
+			}
+		}
+		catch (final Throwable e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			finishSpill(pEntry);
+			mNumberOfPendingSpills.decrementAndGet();
+		}
+	}
+
+	private void finishSpill(HistoryEntry pEntry)
+	{
+		synchronized (pEntry)
+		{
+			if (releasePin(pEntry))
+				return;
+			synchronized (mCacheLock)
+			{
+				// displayed meanwhile, left to the LRU:
+				if (pEntry.isPinned())
+				{
+					mHistoryCache.add(pEntry);
+					return;
+				}
 			}
-			while (lTimePoint != null)
+			recycle(pEntry);
+			pEntry.setCompressedData(null, null);
+			removeIfNotSpilled(pEntry);
+		}
+	}
+
+	/**
+	 * Waits until all entries queued for the spill writer are on disk, writing
+	 * the queued ones on the calling thread.
+	 */
+	public void waitForSpills()
+	{
+		HistoryEntry lEntry;
+		while ((lEntry = mSpillQueue.poll()) != null)
+			spill(lEntry);
+		while (mNumberOfPendingSpills.get() > 0)
+			try
 			{
-				final SwitchableSoftReference<Volume> lSwitchableSoftReference = lTimePointIndexToVolumeMap.get(lTimePoint);
-				final Volume lVolume = lSwitchableSoftReference.get();
-				if (lVolume != null)
-					lVolume.makeAvailableToManager();
-				lTimePointIndexToVolumeMap.remove(lTimePoint);
-				lTimePoint = lTimePointIndexToVolumeMap.lowerKey(lTimePoint);
+				Thread.sleep(1);
 			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+	}
+
+	public int getNumberOfPendingSpills()
+	{
+		return mNumberOfPendingSpills.get();
+	}
+
+	/**
+	 * Brings a compressed or spilled entry back into memory, decompressing it if
+	 * possible and reading it from the spill store otherwise. Must be called
+	 * while holding the entry's monitor.
+	 */
+	private boolean materialize(HistoryEntry pEntry)
+	{
+		if (pEntry.isCompressed())
+			decompress(pEntry);
+		else
+		{
+			final HistorySpillStore lHistorySpillStore = mHistorySpillStore;
+			if (lHistorySpillStore == null || !pEntry.isSpilled())
+				return false;
+
+			final Volume lVolume = requestVolume(pEntry.getSpillRecord()
+														.getMetaData());
+			lHistorySpillStore.read(pEntry.getSpillRecord(), lVolume);
+			pEntry.setVolume(lVolume);
 		}
+
+		synchronized (mCacheLock)
+		{
+			mHistoryCache.add(pEntry);
+			mHistoryCache.update(pEntry);
+		}
+		return true;
+	}
+
+	/**
+	 * Decompresses a compressed entry into a pooled volume, keeping the
+	 * compressed data. Must be called while holding the entry's monitor.
+	 */
+	private void decompress(HistoryEntry pEntry)
+	{
+		final Volume lMetaData = pEntry.getCompressedMetaData();
+		final Volume lVolume = requestVolume(lMetaData);
+		lVolume.copyMetaDataFrom(lMetaData);
+		DeltaBitPackingCodec.decompress(pEntry.getCompressedData(),
+										lVolume.getDataBuffer());
+		lVolume.getDataBuffer().rewind();
+		pEntry.setVolume(lVolume);
+	}
+
+	private Volume requestVolume(Volume pMetaData)
+	{
+		VolumeManager lVolumeManager = getManager();
+		if (lVolumeManager == null)
+			lVolumeManager = mMaterializationVolumeManager;
+		return lVolumeManager.requestAndWaitForVolume(	0,
+														TimeUnit.MILLISECONDS,
+														pMetaData.getNativeType(),
+														pMetaData.getDimensionsInVoxels());
+	}
+
+	/**
+	 * Brings the time point that would be displayed for the given time index
+	 * into memory for all channels, and marks it as recently used.
+	 *
+	 * @param pTimeIndex
+	 *            time index
+	 * @return number of time points decompressed or read back from the spill
+	 *         store
+	 */
+	int prefetch(long pTimeIndex)
+	{
+		int lCount = 0;
+		for (final int lChannel : mChannels)
+		{
+			final HistoryEntry lEntry = mChannelToTimelineMap.get(lChannel)
+																.lookup(pTimeIndex);
+			if (lEntry == null)
+				continue;
+
+			synchronized (lEntry)
+			{
+				if (lEntry.mIsDiscarded)
+					continue;
+				if (lEntry.isInMemory())
+					synchronized (mCacheLock)
+					{
+						mHistoryCache.touch(lEntry);
+					}
+				else if (materialize(lEntry))
+					lCount++;
+			}
+		}
+		if (lCount > 0)
+			cleanUpOldVolumes();
+		return lCount;
+	}
+
+	/**
+	 * Takes an entry that was replaced or dropped from its timeline out of the
+	 * cache. Its memory is released right away, or when its last pin is
+	 * released if it is still displayed or waiting for its thumbnail.
+	 */
+	private void discard(HistoryEntry pEntry)
+	{
+		synchronized (pEntry)
+		{
+			pEntry.mIsDiscarded = true;
+			synchronized (mCacheLock)
+			{
+				mHistoryCache.remove(pEntry);
+				if (pEntry.isPinned())
+					return;
+			}
+			recycle(pEntry);
+			pEntry.setCompressedData(null, null);
+		}
+	}
+
+	private void unpin(HistoryEntry pEntry)
+	{
+		synchronized (pEntry)
+		{
+			releasePin(pEntry);
+		}
+	}
+
+	/**
+	 * Releases a pin, and the memory of the entry if it was discarded while
+	 * pinned and this was its last pin. Must be called while holding the
+	 * entry's monitor.
+	 *
+	 * @return true if the entry was discarded
+	 */
+	private boolean releasePin(HistoryEntry pEntry)
+	{
+		synchronized (mCacheLock)
+		{
+			mHistoryCache.unpin(pEntry);
+			if (!pEntry.mIsDiscarded || pEntry.isPinned())
+				return pEntry.mIsDiscarded;
+		}
+		recycle(pEntry);
+		pEntry.setCompressedData(null, null);
+		return true;
+	}
+
+	private void recycle(HistoryEntry pEntry)
+	{
+		final Volume lVolume = pEntry.getVolume();
+		pEntry.setVolume(null);
+		if (lVolume != null)
+			lVolume.makeAvailableToManager();
+	}
+
+	private static void raise(AtomicLong pAtomicLong, long pValue)
+	{
+		long lCurrent;
+		while ((lCurrent = pAtomicLong.get()) < pValue && !pAtomicLong.compareAndSet(	lCurrent,
+																						pValue))
+			;
+	}
+
+	private static void lower(AtomicLong pAtomicLong, long pValue)
+	{
+		long lCurrent;
+		while ((lCurrent = pAtomicLong.get()) > pValue && !pAtomicLong.compareAndSet(	lCurrent,
+																						pValue))
+			;
 	}
 
 	@Override
 	public VolumeManager getManager()
 	{
-		return getRelaySink().getManager();
+		if (getRelaySink() != null)
+			return getRelaySink().getManager();
+		return null;
 	}
 
 	@Override
 	public void close()
 	{
-		synchronized (mLock)
+		mHistoryPlayer.stop();
+		mHistoryPrefetcher.close();
+		// nothing left to spill for, queued entries are simply released:
+		HistoryEntry lQueuedEntry;
+		while ((lQueuedEntry = mSpillQueue.poll()) != null)
 		{
-			for (final Map.Entry<Integer, TreeMap<Long, SwitchableSoftReference<Volume>>> lTimeLineForChannelEntry : mChannelToVolumeListsMap.entrySet())
+			finishSpill(lQueuedEntry);
+			mNumberOfPendingSpills.decrementAndGet();
+		}
+		waitForSpills();
+		synchronized (mChannelsLock)
+		{
+			for (final int lChannel : mChannels)
 			{
-				final TreeMap<Long, SwitchableSoftReference<Volume>> lTimeLineTreeMap = lTimeLineForChannelEntry.getValue();
-
-				for (final Map.Entry<Long, SwitchableSoftReference<Volume>> lTimePointEntry : lTimeLineTreeMap.entrySet())
+				final ChannelTimeline lChannelTimeline = mChannelToTimelineMap.get(lChannel);
+				for (final HistoryEntry lEntry : lChannelTimeline.clear())
 				{
-					final SwitchableSoftReference<Volume> lVolumeSoftReference = lTimePointEntry.getValue();
-					final Volume lVolume = lVolumeSoftReference.get();
-					if (lVolume != null)
-						lVolume.close();
-					lVolumeSoftReference.soften();
+					synchronized (lEntry)
+					{
+						final Volume lVolume = lEntry.getVolume();
+						if (lVolume != null)
+							lVolume.close();
+						lEntry.setVolume(null);
+						lEntry.setCompressedData(null, null);
+					}
 				}
-
-				lTimeLineTreeMap.clear();
 			}
-			mChannelToVolumeListsMap.clear();
-			mChannelToVolumeListsMap = null;
+			mChannelToTimelineMap = new TIntObjectHashMap<ChannelTimeline>();
+			mChannels = new int[0];
 
-			mAvailableChannels.clear();
+			synchronized (mCacheLock)
+			{
+				mHistoryCache.clear();
+			}
+			if (mHistorySpillStore != null)
+				mHistorySpillStore.close();
+			if (mThumbnailCache != null)
+				mThumbnailCache.close();
 		}
+		mMaterializationVolumeManager.close();
 
 	}
 
@@ -290,4 +1101,9 @@ public class TimeShiftingSink extends RelaySinkAdapter	implements
 		mIsPlaying = true;
 	}
 
+	public boolean isPlaying()
+	{
+		return mIsPlaying;
+	}
+
 }
@@ -60,7 +60,7 @@ public class TimeShiftingSinkJFrame extends ClearVolumeJFrame
 		setResizable(false);
 		setBackground(Color.WHITE);
 		setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
-		setBounds(100, 100, 651, 159);
+		setBounds(100, 100, 651, 195);
 		mContentPane = new JPanel();
 		mContentPane.setBackground(Color.WHITE);
 		mContentPane.setBorder(null);
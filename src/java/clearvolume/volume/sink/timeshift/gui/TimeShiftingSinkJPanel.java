@@ -6,6 +6,8 @@ import java.awt.EventQueue;
 import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
@@ -19,6 +21,7 @@ import javax.swing.border.EmptyBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import clearvolume.volume.sink.timeshift.ThumbnailCache;
 import clearvolume.volume.sink.timeshift.TimeShiftingSink;
 import net.miginfocom.swing.MigLayout;
 
@@ -30,6 +33,7 @@ public class TimeShiftingSinkJPanel extends JPanel
 	private final Thread mGUIUpdateThread;
 	private final JLabel mPresentLabel;
 	private final JLabel mPastLabel;
+	private TimelineThumbnailStrip mThumbnailStrip;
 
 	public static final void createJFrame(final TimeShiftingSink pTimeShiftingSink)
 	{
@@ -71,7 +75,7 @@ public class TimeShiftingSinkJPanel extends JPanel
 		setBackground(Color.WHITE);
 		setLayout(new MigLayout("",
 								"[14.00,grow,fill][grow][grow,fill][grow,fill][grow][grow,fill]",
-								"[][26px:26px,center][grow]"));
+								"[][32px:32px][26px:26px,center][grow]"));
 
 		final JPanel lPastPresentPanel = new JPanel();
 		lPastPresentPanel.setBorder(new EmptyBorder(0, 0, 0, 0));
@@ -87,9 +91,36 @@ public class TimeShiftingSinkJPanel extends JPanel
 									+ "   ");
 		lPastPresentPanel.add(mPresentLabel, BorderLayout.EAST);
 
+		if (pTimeShiftingSink != null)
+		{
+			ThumbnailCache lThumbnailCache = pTimeShiftingSink.getThumbnailCache();
+			if (lThumbnailCache == null)
+			{
+				lThumbnailCache = new ThumbnailCache();
+				pTimeShiftingSink.setThumbnailCache(lThumbnailCache);
+			}
+			mThumbnailStrip = new TimelineThumbnailStrip(	pTimeShiftingSink,
+															lThumbnailCache);
+			mThumbnailStrip.addMouseListener(new MouseAdapter()
+			{
+				@Override
+				public void mouseClicked(MouseEvent e)
+				{
+					final long lOldest = pTimeShiftingSink.getOldestAvailableTimePointIndex();
+					final long lNewest = pTimeShiftingSink.getNumberOfTimepoints();
+					if (lNewest <= lOldest)
+						return;
+					final double lNormalizedTimeShift = (double) (lNewest - mThumbnailStrip.getTimeIndexAt(e.getX()))
+														/ (lNewest - lOldest);
+					mTimeShiftSlider.setValue((int) Math.round(Integer.MAX_VALUE * (1 - lNormalizedTimeShift)));
+				}
+			});
+			add(mThumbnailStrip, "cell 0 1 6 1,grow");
+		}
+
 		final JLayeredPane lJLayeredPane = new JLayeredPane();
 		lJLayeredPane.setBorder(new EmptyBorder(0, 0, 0, 0));
-		add(lJLayeredPane, "cell 0 1 6 1,grow");
+		add(lJLayeredPane, "cell 0 2 6 1,grow");
 		lJLayeredPane.setLayout(null);
 
 		mPlayBar = new JProgressBar();
@@ -126,7 +157,7 @@ public class TimeShiftingSinkJPanel extends JPanel
 		final JPanel lPlayPausePanel = new JPanel();
 		lPlayPausePanel.setBorder(new EmptyBorder(0, 0, 0, 0));
 		lPlayPausePanel.setBackground(Color.WHITE);
-		add(lPlayPausePanel, "cell 2 2 2 1,grow");
+		add(lPlayPausePanel, "cell 2 3 2 1,grow");
 		lPlayPausePanel.setLayout(new MigLayout("",
 												"[grow,center][grow,center][grow,center][grow,center]",
 												"[grow,fill]"));
@@ -0,0 +1,121 @@
+package clearvolume.volume.sink.timeshift.gui;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+import clearvolume.volume.sink.timeshift.MIPThumbnail;
+import clearvolume.volume.sink.timeshift.ThumbnailCache;
+import clearvolume.volume.sink.timeshift.TimeShiftingSink;
+
+/**
+ * Strip of MIP thumbnails laid out along the timeline of a
+ * {@link TimeShiftingSink}, from the oldest available time point on the left to
+ * the present on the right. Shows the first channel that has thumbnails and
+ * repaints periodically as new thumbnails come in.
+ */
+public class TimelineThumbnailStrip extends JComponent
+{
+	private static final long serialVersionUID = 1L;
+	private static final int cRepaintPeriodInMilliseconds = 500;
+
+	private final TimeShiftingSink mTimeShiftingSink;
+	private final ThumbnailCache mThumbnailCache;
+	private final Timer mRepaintTimer;
+
+	public TimelineThumbnailStrip(	TimeShiftingSink pTimeShiftingSink,
+									ThumbnailCache pThumbnailCache)
+	{
+		super();
+		mTimeShiftingSink = pTimeShiftingSink;
+		mThumbnailCache = pThumbnailCache;
+		setOpaque(true);
+		setBackground(Color.WHITE);
+
+		mRepaintTimer = new Timer(	cRepaintPeriodInMilliseconds,
+									new ActionListener()
+									{
+										@Override
+										public void actionPerformed(ActionEvent e)
+										{
+											repaint();
+										}
+									});
+		mRepaintTimer.start();
+	}
+
+	/**
+	 * Returns the time index shown at a horizontal position of the strip.
+	 *
+	 * @param pX
+	 *            horizontal position in pixels
+	 * @return time index
+	 */
+	public long getTimeIndexAt(int pX)
+	{
+		final long lOldest = mTimeShiftingSink.getOldestAvailableTimePointIndex();
+		final long lNewest = mTimeShiftingSink.getNumberOfTimepoints();
+		final double lPosition = Math.max(0, Math.min(1, (double) pX
+															/ Math.max(1, getWidth() - 1)));
+		return lOldest + Math.round(lPosition * (lNewest - lOldest));
+	}
+
+	@Override
+	protected void paintComponent(Graphics pGraphics)
+	{
+		final Graphics2D lGraphics = (Graphics2D) pGraphics;
+		lGraphics.setColor(getBackground());
+		lGraphics.fillRect(0, 0, getWidth(), getHeight());
+
+		final int[] lChannels = mThumbnailCache.getChannels();
+		final int lSlotSize = getHeight();
+		if (lChannels.length == 0 || lSlotSize <= 0)
+			return;
+		final int lChannel = lChannels[0];
+
+		lGraphics.setRenderingHint(	RenderingHints.KEY_INTERPOLATION,
+									RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		final int lNumberOfSlots = Math.max(1, getWidth() / lSlotSize);
+		final int lSlotWidth = getWidth() / lNumberOfSlots;
+		for (int i = 0; i < lNumberOfSlots; i++)
+		{
+			final int lX = i * lSlotWidth;
+			final MIPThumbnail lThumbnail = mThumbnailCache.getThumbnail(	lChannel,
+																			getTimeIndexAt(lX + lSlotWidth / 2));
+			if (lThumbnail == null)
+				continue;
+			lGraphics.drawImage(toImage(lThumbnail),
+								lX + 1,
+								0,
+								lSlotWidth - 2,
+								lSlotSize,
+								null);
+		}
+	}
+
+	private static BufferedImage toImage(MIPThumbnail pThumbnail)
+	{
+		final BufferedImage lImage = new BufferedImage(	pThumbnail.getWidth(),
+														pThumbnail.getHeight(),
+														BufferedImage.TYPE_BYTE_GRAY);
+		lImage.getRaster().setDataElements(0,
+											0,
+											pThumbnail.getWidth(),
+											pThumbnail.getHeight(),
+											pThumbnail.getPixels());
+		return lImage;
+	}
+
+	public void stop()
+	{
+		mRepaintTimer.stop();
+	}
+
+}
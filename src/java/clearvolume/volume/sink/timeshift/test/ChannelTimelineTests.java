@@ -0,0 +1,126 @@
+package clearvolume.volume.sink.timeshift.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.sink.timeshift.ChannelTimeline;
+import clearvolume.volume.sink.timeshift.HistoryEntry;
+import coremem.enums.NativeTypeEnum;
+
+public class ChannelTimelineTests
+{
+
+	@Test
+	public void test()
+	{
+		final ChannelTimeline lChannelTimeline = new ChannelTimeline(0);
+		assertNull(lChannelTimeline.lookup(0));
+
+		final ArrayList<HistoryEntry> lDroppedEntries = new ArrayList<HistoryEntry>();
+		final HistoryEntry[] lEntries = new HistoryEntry[1000];
+		for (int i = 0; i < lEntries.length; i++)
+		{
+			// leave gaps every tenth time point:
+			if (i % 10 == 5)
+				continue;
+			lEntries[i] = newEntry(1000 + i);
+			assertNull(lChannelTimeline.put(lEntries[i], lDroppedEntries));
+		}
+		assertEquals(900, lChannelTimeline.size());
+
+		assertSame(lEntries[0], lChannelTimeline.lookup(0));
+		assertSame(lEntries[4], lChannelTimeline.lookup(1005));
+		assertSame(lEntries[6], lChannelTimeline.lookup(1006));
+		assertSame(lEntries[999], lChannelTimeline.lookup(5000));
+
+		// removing the oldest entries moves the start of the timeline:
+		for (int i = 0; i < 500; i++)
+			if (lEntries[i] != null)
+				assertTrue(lChannelTimeline.remove(lEntries[i]));
+		assertSame(lEntries[500], lChannelTimeline.lookup(1200));
+
+		final HistoryEntry lReplacement = newEntry(1600);
+		assertSame(lEntries[600], lChannelTimeline.put(	lReplacement,
+															lDroppedEntries));
+		assertTrue(lDroppedEntries.isEmpty());
+		assertSame(lReplacement, lChannelTimeline.lookup(1600));
+
+		assertEquals(450, lChannelTimeline.clear().size());
+		assertNull(lChannelTimeline.lookup(1600));
+	}
+
+	@Test
+	public void testSparseTimeIndicesAndHoles()
+	{
+		final ChannelTimeline lChannelTimeline = new ChannelTimeline(0);
+		final ArrayList<HistoryEntry> lDroppedEntries = new ArrayList<HistoryEntry>();
+		final HistoryEntry[] lEntries = new HistoryEntry[100];
+		for (int i = 0; i < lEntries.length; i++)
+		{
+			lEntries[i] = newEntry(1000 * i);
+			lChannelTimeline.put(lEntries[i], lDroppedEntries);
+		}
+		assertSame(lEntries[41], lChannelTimeline.lookup(41999));
+		assertSame(lEntries[42], lChannelTimeline.lookup(42000));
+
+		// holes left in the middle of the history by eviction:
+		for (int i = 30; i < 60; i++)
+			lChannelTimeline.remove(lEntries[i]);
+		assertSame(lEntries[29], lChannelTimeline.lookup(45000));
+		assertSame(lEntries[60], lChannelTimeline.lookup(60000));
+		lChannelTimeline.remove(lEntries[99]);
+		assertSame(lEntries[98], lChannelTimeline.lookup(1000000));
+
+		final HistoryEntry lRefill = newEntry(45500);
+		lChannelTimeline.put(lRefill, lDroppedEntries);
+		assertSame(lRefill, lChannelTimeline.lookup(59999));
+		assertSame(lEntries[29], lChannelTimeline.lookup(45499));
+		assertTrue(lDroppedEntries.isEmpty());
+	}
+
+	@Test
+	public void testJumpsAndResets()
+	{
+		final ChannelTimeline lChannelTimeline = new ChannelTimeline(0, 100);
+		final ArrayList<HistoryEntry> lDroppedEntries = new ArrayList<HistoryEntry>();
+		for (int i = 0; i < 1000; i++)
+			lChannelTimeline.put(newEntry(i), lDroppedEntries);
+		// the span is capped, older entries are dropped as time goes on:
+		assertEquals(100, lChannelTimeline.size());
+		assertEquals(900, lDroppedEntries.size());
+		assertEquals(900, lChannelTimeline.lookup(0).getTimeIndex());
+		assertTrue(lChannelTimeline.capacity() <= 256);
+
+		// a jump far ahead drops everything before it and shrinks the ring:
+		lDroppedEntries.clear();
+		final HistoryEntry lJump = newEntry(Integer.MAX_VALUE * 10L);
+		lChannelTimeline.put(lJump, lDroppedEntries);
+		assertEquals(100, lDroppedEntries.size());
+		assertEquals(1, lChannelTimeline.size());
+		assertSame(lJump, lChannelTimeline.lookup(0));
+		assertEquals(64, lChannelTimeline.capacity());
+
+		// a reset of the time index drops the now newer entries:
+		lDroppedEntries.clear();
+		final HistoryEntry lReset = newEntry(0);
+		lChannelTimeline.put(lReset, lDroppedEntries);
+		assertEquals(1, lDroppedEntries.size());
+		assertSame(lJump, lDroppedEntries.get(0));
+		assertSame(lReset, lChannelTimeline.lookup(5));
+	}
+
+	private static HistoryEntry newEntry(long pTimeIndex)
+	{
+		final Volume lVolume = new Volume(NativeTypeEnum.UnsignedByte, 1, 1, 1, 1);
+		lVolume.setTimeIndex(pTimeIndex);
+		return new HistoryEntry(lVolume);
+	}
+
+}
@@ -0,0 +1,253 @@
+package clearvolume.volume.sink.timeshift.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.NullVolumeSink;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.timeshift.HistoryCache;
+import clearvolume.volume.sink.timeshift.HistoryEntry;
+import clearvolume.volume.sink.timeshift.HistoryPrefetcher;
+import clearvolume.volume.sink.timeshift.HistorySpillStore;
+import clearvolume.volume.sink.timeshift.TimeShiftingSink;
+import coremem.enums.NativeTypeEnum;
+
+public class HistoryCacheTests
+{
+
+	@Test
+	public void testLRUEviction()
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(10);
+		final HistoryCache lHistoryCache = new HistoryCache(3 * 1000);
+
+		final HistoryEntry[] lEntries = new HistoryEntry[5];
+		for (int i = 0; i < lEntries.length; i++)
+		{
+			final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedByte,
+																			1,
+																			10,
+																			10,
+																			10);
+			lVolume.setTimeIndex(i);
+			lEntries[i] = new HistoryEntry(lVolume);
+			lHistoryCache.add(lEntries[i]);
+		}
+		assertEquals(5000, lHistoryCache.getSizeInBytes());
+
+		// 0 is recently used, 1 is pinned, 4 is protected:
+		lHistoryCache.touch(lEntries[0]);
+		lHistoryCache.pin(lEntries[1]);
+
+		final List<HistoryEntry> lEvictedEntries = lHistoryCache.evictOverBudget(4);
+		assertEquals(2, lEvictedEntries.size());
+		assertEquals(2, lEvictedEntries.get(0).getTimeIndex());
+		assertEquals(3, lEvictedEntries.get(1).getTimeIndex());
+		assertEquals(3000, lHistoryCache.getSizeInBytes());
+		assertEquals(3, lHistoryCache.getNumberOfEntries());
+	}
+
+	@Test
+	public void testTimeShiftingSinkBudget()
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(200);
+		final TimeShiftingSink lTimeShiftingSink = new TimeShiftingSink(10,
+																		1000,
+																		50 * 1000);
+		lTimeShiftingSink.setRelaySink(new NullVolumeSink(lVolumeManager));
+
+		for (int i = 0; i < 200; i++)
+		{
+			final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedByte,
+																			1,
+																			10,
+																			10,
+																			10);
+			lVolume.setTimeIndex(i / 2);
+			lVolume.setChannelID(i % 2);
+			lTimeShiftingSink.sendVolume(lVolume);
+		}
+
+		assertTrue(lTimeShiftingSink.getHistorySizeInBytes() <= 50 * 1000);
+		assertEquals(50, lTimeShiftingSink.getNumberOfVolumesInHistory());
+		assertEquals(150, lTimeShiftingSink.getNumberOfEvictedVolumes());
+		lTimeShiftingSink.close();
+	}
+
+	@Test
+	public void testSpilling() throws IOException
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(200);
+		final ArrayList<Volume> lDisplayedVolumes = new ArrayList<>();
+		final TimeShiftingSink lTimeShiftingSink = new TimeShiftingSink(5,
+																		10,
+																		20 * 1000);
+		lTimeShiftingSink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				lDisplayedVolumes.add(pVolume);
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		});
+		final HistorySpillStore lHistorySpillStore = new HistorySpillStore(	Files.createTempDirectory("HistoryCacheTests")
+																					.toFile(),
+																			64 * 1000,
+																			true);
+		lTimeShiftingSink.setHistorySpillStore(lHistorySpillStore);
+
+		for (int i = 0; i < 100; i++)
+		{
+			final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedByte,
+																			1,
+																			10,
+																			10,
+																			10);
+			lVolume.setTimeIndex(i);
+			lVolume.getDataBuffer().put(0, (byte) i);
+			lTimeShiftingSink.sendVolume(lVolume);
+		}
+
+		lTimeShiftingSink.waitForSpills();
+		assertEquals(0, lTimeShiftingSink.getNumberOfPendingSpills());
+		assertTrue(lTimeShiftingSink.getNumberOfVolumesInHistory() <= 20);
+		assertEquals(89, lHistorySpillStore.getNumberOfRecords());
+
+		// far past the hard horizon, read back from disk:
+		lTimeShiftingSink.setTimeShift(-95);
+		lDisplayedVolumes.clear();
+
+		final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																		TimeUnit.MILLISECONDS,
+																		NativeTypeEnum.UnsignedByte,
+																		1,
+																		10,
+																		10,
+																		10);
+		lVolume.setTimeIndex(100);
+		lTimeShiftingSink.sendVolume(lVolume);
+		assertEquals(1, lDisplayedVolumes.size());
+		assertEquals(5, lDisplayedVolumes.get(0).getTimeIndex());
+		assertEquals(5, lDisplayedVolumes.get(0).getDataBuffer().get(0));
+
+		// scrubbing backwards in steps of two prefetches along the way:
+		final HistoryPrefetcher lHistoryPrefetcher = lTimeShiftingSink.getHistoryPrefetcher();
+		lHistoryPrefetcher.setPrefetchDepth(4);
+		for (long lTimeIndex = 40; lTimeIndex >= 30; lTimeIndex -= 2)
+			lHistoryPrefetcher.notifySeek(lTimeIndex);
+		lHistoryPrefetcher.waitForPrefetch();
+		assertTrue(lHistoryPrefetcher.getSpeedInTimePointsPerSecond() < 0);
+		assertTrue(lHistoryPrefetcher.getNumberOfPrefetchedTimePoints() >= 4);
+		// seeks this fast prefetch deeper than the minimal depth:
+		assertTrue(lHistoryPrefetcher.getCurrentPrefetchDepth() > 4);
+		assertTrue(lHistoryPrefetcher.getCurrentPrefetchDepth() <= 32);
+
+		lTimeShiftingSink.close();
+		assertFalse(lHistorySpillStore.getDirectory().exists());
+	}
+
+	@Test
+	public void testSpillStoreReopen() throws IOException
+	{
+		final File lDirectory = Files.createTempDirectory("HistoryCacheTests")
+										.toFile();
+		final HistorySpillStore lHistorySpillStore = new HistorySpillStore(	lDirectory,
+																			2500,
+																			false);
+		for (int i = 0; i < 5; i++)
+		{
+			final Volume lVolume = new Volume(	NativeTypeEnum.UnsignedShort,
+												1,
+												10,
+												10,
+												5);
+			lVolume.setChannelID(i % 2);
+			lVolume.setTimeIndex(i);
+			lVolume.setVoxelSizeInRealUnits("micron", 0.5, 0.5, 2);
+			lVolume.getDataBuffer().put(0, (byte) (10 + i));
+			lHistorySpillStore.write(lVolume);
+		}
+		lHistorySpillStore.close();
+
+		// a record cut short by a crash is dropped on reopen:
+		try (FileOutputStream lFileOutputStream = new FileOutputStream(	new File(	lDirectory,
+																					"history.index"),
+																		true))
+		{
+			lFileOutputStream.write(new byte[]
+			{ 0, 0, 0, 1, 0, 0 });
+		}
+
+		final HistorySpillStore lReopenedHistorySpillStore = new HistorySpillStore(	lDirectory,
+																					2500,
+																					true);
+		assertEquals(5, lReopenedHistorySpillStore.getNumberOfRecords());
+		assertEquals(5 * 1000, lReopenedHistorySpillStore.getSizeInBytes());
+		final List<HistorySpillStore.SpillRecord> lRecords = lReopenedHistorySpillStore.getRecords();
+		for (int i = 0; i < 5; i++)
+		{
+			final HistorySpillStore.SpillRecord lRecord = lRecords.get(i);
+			assertEquals(i % 2, lRecord.getChannelID());
+			assertEquals(i, lRecord.getTimeIndex());
+			final Volume lVolume = new Volume(	NativeTypeEnum.UnsignedShort,
+												1,
+												10,
+												10,
+												5);
+			lReopenedHistorySpillStore.read(lRecord, lVolume);
+			assertEquals(10 + i, lVolume.getDataBuffer().get(0));
+			assertEquals(2, lVolume.getVoxelDepthInRealUnits(), 0);
+			assertEquals("micron", lVolume.getRealUnitName());
+		}
+
+		// appending after the recovered records:
+		final Volume lVolume = new Volume(	NativeTypeEnum.UnsignedShort,
+											1,
+											10,
+											10,
+											5);
+		lVolume.setTimeIndex(5);
+		lVolume.getDataBuffer().put(0, (byte) 15);
+		lReopenedHistorySpillStore.write(lVolume);
+		final Volume lReadVolume = new Volume(	NativeTypeEnum.UnsignedShort,
+												1,
+												10,
+												10,
+												5);
+		lReopenedHistorySpillStore.read(lReopenedHistorySpillStore.getRecords()
+																	.get(5),
+										lReadVolume);
+		assertEquals(15, lReadVolume.getDataBuffer().get(0));
+		lReopenedHistorySpillStore.read(lRecords.get(4), lReadVolume);
+		assertEquals(14, lReadVolume.getDataBuffer().get(0));
+
+		lReopenedHistorySpillStore.close();
+		assertFalse(lDirectory.exists());
+	}
+
+}
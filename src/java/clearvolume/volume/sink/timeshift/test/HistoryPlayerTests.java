@@ -0,0 +1,116 @@
+package clearvolume.volume.sink.timeshift.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.VolumeSinkInterface;
+import clearvolume.volume.sink.timeshift.HistoryPlayer;
+import clearvolume.volume.sink.timeshift.TimeShiftingSink;
+import coremem.enums.NativeTypeEnum;
+
+public class HistoryPlayerTests
+{
+
+	@Test
+	public void test() throws InterruptedException
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(200);
+		final ArrayList<Long> lShownTimeIndices = new ArrayList<>();
+		final TimeShiftingSink lTimeShiftingSink = new TimeShiftingSink(100,
+																		100);
+		lTimeShiftingSink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				synchronized (lShownTimeIndices)
+				{
+					lShownTimeIndices.add(pVolume.getTimeIndex());
+				}
+				try
+				{
+					// slow downstream: at most ~100 volumes per second
+					Thread.sleep(10);
+				}
+				catch (final InterruptedException e)
+				{
+				}
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		});
+
+		lTimeShiftingSink.pause();
+		for (int i = 0; i < 100; i++)
+		{
+			final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedByte,
+																			1,
+																			4,
+																			4,
+																			4);
+			lVolume.setTimeIndex(i);
+			lVolume.setTimeInSeconds(0.5 * i);
+			lTimeShiftingSink.sendVolume(lVolume);
+		}
+		assertEquals(0.5,
+						lTimeShiftingSink.getMeanTimePointIntervalInSeconds(),
+						1e-9);
+
+		final HistoryPlayer lHistoryPlayer = lTimeShiftingSink.getHistoryPlayer();
+		lTimeShiftingSink.seekTo(0);
+		lShownTimeIndices.clear();
+
+		// twice as fast as the downstream can go, without looping:
+		lHistoryPlayer.setLoop(false);
+		lHistoryPlayer.setTargetRate(200);
+		assertTrue(lHistoryPlayer.start());
+		lHistoryPlayer.waitForStop();
+		assertFalse(lHistoryPlayer.isPlaying());
+		// live display was paused before playback and stays paused:
+		assertFalse(lTimeShiftingSink.isPlaying());
+
+		synchronized (lShownTimeIndices)
+		{
+			for (int i = 1; i < lShownTimeIndices.size(); i++)
+				assertTrue(lShownTimeIndices.get(i) > lShownTimeIndices.get(i - 1));
+			assertEquals(99, (long) lShownTimeIndices.get(lShownTimeIndices.size() - 1));
+		}
+		assertTrue(lHistoryPlayer.getNumberOfSkippedTimePoints() > 0);
+		assertEquals(100,
+						lHistoryPlayer.getNumberOfShownTimePoints() + lHistoryPlayer.getNumberOfSkippedTimePoints());
+		assertTrue(lHistoryPlayer.getAchievedRate() < 200);
+
+		// real-time playback at 100x is 200 time points per second:
+		lHistoryPlayer.setRealTimeScale(100);
+		assertEquals(200, lHistoryPlayer.getTargetRate(), 1e-6);
+
+		// live display is paused while playing and resumed once stopped:
+		lTimeShiftingSink.play();
+		lHistoryPlayer.setLoop(true);
+		assertTrue(lHistoryPlayer.start());
+		assertFalse(lHistoryPlayer.start());
+		assertFalse(lTimeShiftingSink.isPlaying());
+		Thread.sleep(50);
+		lHistoryPlayer.stop();
+		lHistoryPlayer.waitForStop();
+		assertFalse(lHistoryPlayer.isPlaying());
+		assertTrue(lTimeShiftingSink.isPlaying());
+
+		lTimeShiftingSink.close();
+	}
+
+}
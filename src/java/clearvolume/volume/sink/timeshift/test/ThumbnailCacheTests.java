@@ -0,0 +1,115 @@
+package clearvolume.volume.sink.timeshift.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.NullVolumeSink;
+import clearvolume.volume.sink.timeshift.MIPThumbnail;
+import clearvolume.volume.sink.timeshift.ThumbnailCache;
+import clearvolume.volume.sink.timeshift.TimeShiftingSink;
+import coremem.enums.NativeTypeEnum;
+
+public class ThumbnailCacheTests
+{
+
+	@Test
+	public void testMaximumProjection()
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(1);
+		final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																		TimeUnit.MILLISECONDS,
+																		NativeTypeEnum.UnsignedByte,
+																		1,
+																		64,
+																		64,
+																		4);
+		final ByteBuffer lDataBuffer = lVolume.getDataBuffer();
+		for (int i = 0; i < lVolume.getDataSizeInBytes(); i++)
+			lDataBuffer.put(i, (byte) 10);
+		lDataBuffer.put((3 * 64 + 10) * 64 + 40, (byte) 200);
+		lVolume.setTimeIndex(7);
+
+		final MIPThumbnail lThumbnail = MIPThumbnail.compute(lVolume, 32);
+		assertEquals(32, lThumbnail.getWidth());
+		assertEquals(32, lThumbnail.getHeight());
+		assertEquals(7, lThumbnail.getTimeIndex());
+		assertEquals(255, lThumbnail.getPixel(20, 5));
+		assertEquals(0, lThumbnail.getPixel(21, 5));
+		assertEquals(0, lThumbnail.getPixel(0, 0));
+		lVolumeManager.close();
+	}
+
+	@Test
+	public void testSubsampling()
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(1);
+		final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																		TimeUnit.MILLISECONDS,
+																		NativeTypeEnum.UnsignedShort,
+																		1,
+																		128,
+																		128,
+																		128);
+		final ByteBuffer lDataBuffer = lVolume.getDataBuffer()
+												.order(ByteOrder.nativeOrder());
+		for (int i = 0; i < lVolume.getDataSizeInBytes(); i += 2)
+			lDataBuffer.putShort(i, (short) 10);
+		// on a sampled voxel, every fourth one along x, y and z:
+		lDataBuffer.putShort(2 * ((8 * 128 + 12) * 128 + 40), (short) 1000);
+		// between sampled voxels:
+		lDataBuffer.putShort(2 * ((8 * 128 + 12) * 128 + 81), (short) 1000);
+
+		final MIPThumbnail lThumbnail = MIPThumbnail.compute(lVolume, 32);
+		assertEquals(32, lThumbnail.getWidth());
+		assertEquals(255, lThumbnail.getPixel(10, 3));
+		assertEquals(0, lThumbnail.getPixel(20, 3));
+		lVolumeManager.close();
+	}
+
+	@Test
+	public void testTimeShiftingSinkThumbnails() throws InterruptedException
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(20);
+		final TimeShiftingSink lTimeShiftingSink = new TimeShiftingSink(5, 10);
+		lTimeShiftingSink.setRelaySink(new NullVolumeSink());
+		final ThumbnailCache lThumbnailCache = new ThumbnailCache(8, 50);
+		lTimeShiftingSink.setThumbnailCache(lThumbnailCache);
+		assertNull(lThumbnailCache.getThumbnail(0, 0));
+
+		for (int t = 0; t < 100; t++)
+		{
+			final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedShort,
+																			1,
+																			16,
+																			16,
+																			16);
+			lVolume.setTimeIndex(t);
+			lTimeShiftingSink.sendVolume(lVolume);
+		}
+
+		final long lDeadline = System.currentTimeMillis() + 10000;
+		while (lThumbnailCache.getNumberOfPendingThumbnails() > 0 && System.currentTimeMillis() < lDeadline)
+			Thread.sleep(10);
+
+		// thumbnails outlive the voxel history but are bounded per channel:
+		assertEquals(50, lThumbnailCache.getNumberOfThumbnails(0));
+		final MIPThumbnail lThumbnail = lThumbnailCache.getThumbnail(0, 60);
+		assertNotNull(lThumbnail);
+		assertEquals(60, lThumbnail.getTimeIndex());
+		assertEquals(8, lThumbnail.getWidth());
+		assertEquals(50, lThumbnailCache.getThumbnail(0, 0).getTimeIndex());
+		lTimeShiftingSink.close();
+	}
+
+}
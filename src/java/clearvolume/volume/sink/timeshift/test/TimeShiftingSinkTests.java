@@ -1,6 +1,16 @@
 package clearvolume.volume.sink.timeshift.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -76,4 +86,227 @@ public class TimeShiftingSinkTests
 
 	}
 
+	@Test
+	public void testTimeIndexJumpsAndResets()
+	{
+		final AtomicLong lLastTimeIndexReceived = new AtomicLong(-1);
+		final VolumeManager lVolumeManager = new VolumeManager(400);
+		final TimeShiftingSink lTimeShiftingSink = new TimeShiftingSink(50,
+																		100);
+		lTimeShiftingSink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				lLastTimeIndexReceived.set(pVolume.getTimeIndex());
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		});
+
+		final long[] lTimeIndices = new long[]
+		{ 0, 1, 2, 1L << 40, (1L << 40) + 1, 0, 1 };
+		for (final long lTimeIndex : lTimeIndices)
+		{
+			final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedByte,
+																			1,
+																			10,
+																			10,
+																			10);
+			lVolume.setTimeIndex(lTimeIndex);
+			lTimeShiftingSink.sendVolume(lVolume);
+			assertEquals(lTimeIndex, lLastTimeIndexReceived.get());
+		}
+		assertEquals(1, lTimeShiftingSink.getNumberOfTimepoints());
+		assertEquals(2, lTimeShiftingSink.getNumberOfVolumesInHistory());
+		lTimeShiftingSink.close();
+	}
+
+	@Test
+	public void testReplacedDisplayedVolumeIsRecycled()
+	{
+		final ArrayList<Volume> lRecycledVolumes = new ArrayList<Volume>();
+		final VolumeManager lVolumeManager = new VolumeManager(4)
+		{
+			@Override
+			public <T> void makeAvailable(Volume pVolume)
+			{
+				lRecycledVolumes.add(pVolume);
+				super.makeAvailable(pVolume);
+			}
+		};
+		final TimeShiftingSink lTimeShiftingSink = new TimeShiftingSink(50,
+																		100);
+		// no relay sink yet, there is no manager to ask for:
+		assertNull(lTimeShiftingSink.getManager());
+		lTimeShiftingSink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		});
+
+		final Volume lFirst = new Volume(NativeTypeEnum.UnsignedByte, 1, 4, 4, 4);
+		lFirst.setManager(lVolumeManager);
+		lTimeShiftingSink.sendVolume(lFirst);
+		assertTrue(lRecycledVolumes.isEmpty());
+
+		// same time index: the displayed volume is replaced while pinned, and
+		// recycled once the replacement is displayed:
+		final Volume lSecond = new Volume(NativeTypeEnum.UnsignedByte, 1, 4, 4, 4);
+		lSecond.setManager(lVolumeManager);
+		lTimeShiftingSink.sendVolume(lSecond);
+		assertEquals(1, lRecycledVolumes.size());
+		assertSame(lFirst, lRecycledVolumes.get(0));
+		lTimeShiftingSink.close();
+	}
+
+	@Test
+	public void testConcurrentChannels() throws InterruptedException
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(400);
+		final AtomicLong lReceivedVolumes = new AtomicLong();
+		final TimeShiftingSink lTimeShiftingSink = new TimeShiftingSink(20,
+																		50,
+																		200 * 1000);
+		lTimeShiftingSink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				lReceivedVolumes.incrementAndGet();
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		});
+
+		final Thread[] lThreads = new Thread[3];
+		for (int c = 0; c < lThreads.length; c++)
+		{
+			final int lChannel = c;
+			lThreads[c] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < 500; i++)
+					{
+						final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																						TimeUnit.MILLISECONDS,
+																						NativeTypeEnum.UnsignedByte,
+																						1,
+																						10,
+																						10,
+																						10);
+						lVolume.setTimeIndex(i);
+						lVolume.setChannelID(lChannel);
+						lTimeShiftingSink.sendVolume(lVolume);
+						if (lChannel == 0 && i % 50 == 0)
+							lTimeShiftingSink.setTimeShiftNormalized((i % 100) / 100.0);
+					}
+				}
+			});
+			lThreads[c].start();
+		}
+		for (final Thread lThread : lThreads)
+			lThread.join();
+
+		assertEquals(3, lTimeShiftingSink.getNumberOfAvailableChannels());
+		assertEquals(1500, lReceivedVolumes.get(), 200);
+		assertTrue(lTimeShiftingSink.getHistorySizeInBytes() <= 200 * 1000);
+		lTimeShiftingSink.close();
+	}
+
+	@Test
+	public void testCompression() throws InterruptedException
+	{
+		final VolumeManager lVolumeManager = new VolumeManager(200);
+		final AtomicReference<String> lLastReceived = new AtomicReference<String>();
+		final TimeShiftingSink lTimeShiftingSink = new TimeShiftingSink(50,
+																		1000);
+		lTimeShiftingSink.setCompressionHotWindow(10);
+		lTimeShiftingSink.setRelaySink(new VolumeSinkInterface()
+		{
+			@Override
+			public void sendVolume(Volume pVolume)
+			{
+				lLastReceived.set(pVolume.getTimeIndex() + ":"
+									+ checkPattern(pVolume));
+			}
+
+			@Override
+			public VolumeManager getManager()
+			{
+				return lVolumeManager;
+			}
+		});
+
+		final int lNumberOfTimePoints = 100;
+		long lVolumeSizeInBytes = 0;
+		for (int t = 0; t < lNumberOfTimePoints; t++)
+		{
+			final Volume lVolume = lVolumeManager.requestAndWaitForVolume(	1,
+																			TimeUnit.MILLISECONDS,
+																			NativeTypeEnum.UnsignedShort,
+																			1,
+																			32,
+																			32,
+																			8);
+			final ByteBuffer lDataBuffer = lVolume.getDataBuffer()
+													.duplicate()
+													.order(ByteOrder.nativeOrder());
+			lDataBuffer.clear();
+			for (int i = 0; i < lVolume.getNumberOfVoxels(); i++)
+				lDataBuffer.putShort((short) (1000 + t + i % 32 + i / 32));
+			lVolume.setTimeIndex(t);
+			lVolumeSizeInBytes = lVolume.getDataSizeInBytes();
+			lTimeShiftingSink.sendVolume(lVolume);
+		}
+
+		final long lDeadline = System.currentTimeMillis() + 10000;
+		while (lTimeShiftingSink.getNumberOfCompressedVolumes() < lNumberOfTimePoints - 11
+				&& System.currentTimeMillis() < lDeadline)
+			Thread.sleep(10);
+		assertEquals(	lNumberOfTimePoints - 11,
+						lTimeShiftingSink.getNumberOfCompressedVolumes());
+		assertEquals(lNumberOfTimePoints,
+						lTimeShiftingSink.getNumberOfVolumesInHistory());
+		assertTrue(lTimeShiftingSink.getHistorySizeInBytes() < lNumberOfTimePoints * lVolumeSizeInBytes
+																/ 2);
+
+		lTimeShiftingSink.seekTo(5);
+		assertEquals("5:true", lLastReceived.get());
+		lTimeShiftingSink.close();
+	}
+
+	private static boolean checkPattern(Volume pVolume)
+	{
+		final ByteBuffer lDataBuffer = pVolume.getDataBuffer()
+												.duplicate()
+												.order(ByteOrder.nativeOrder());
+		lDataBuffer.clear();
+		for (int i = 0; i < pVolume.getNumberOfVoxels(); i++)
+			if (lDataBuffer.getShort() != (short) (1000 + pVolume.getTimeIndex()
+													+ i % 32 + i / 32))
+				return false;
+		return true;
+	}
+
 }
@@ -18,10 +18,16 @@ public class SourceToSinkBufferedAdapter implements
 
 	public SourceToSinkBufferedAdapter(	VolumeManager pVolumeManager,
 										int pMaxCapacity)
+	{
+		this(pVolumeManager, new ArrayBlockingQueue<Volume>(pMaxCapacity));
+	}
+
+	public SourceToSinkBufferedAdapter(	VolumeManager pVolumeManager,
+										BlockingQueue<Volume> pVolumeQueue)
 	{
 		super();
 		mVolumeManager = pVolumeManager;
-		mVolumeQueue = new ArrayBlockingQueue<Volume>(pMaxCapacity);
+		mVolumeQueue = pVolumeQueue;
 	}
 
 	@Override
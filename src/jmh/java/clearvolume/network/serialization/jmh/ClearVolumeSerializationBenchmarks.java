@@ -0,0 +1,115 @@
+package clearvolume.network.serialization.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clearvolume.network.serialization.ClearVolumeSerialization;
+import clearvolume.network.serialization.keyvalue.KeyValueMaps;
+import clearvolume.volume.Volume;
+import coremem.enums.NativeTypeEnum;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClearVolumeSerializationBenchmarks
+{
+	@Param(
+	{ "32", "128" })
+	public int mSize;
+
+	private Volume mVolume;
+	private Volume mDeserializedVolume;
+	private ByteBuffer mSerializationBuffer;
+	private ByteBuffer mSerializedVolume;
+
+	private String mHeaderString;
+	private Map<String, String> mHeaderMap;
+	private Map<String, String> mDestinationMap;
+	private StringBuilder mStringBuilder;
+
+	@Setup
+	public void setup()
+	{
+		mVolume = new Volume(	NativeTypeEnum.UnsignedShort,
+								1,
+								mSize,
+								mSize,
+								mSize);
+		mVolume.setTimeIndex(123);
+		mVolume.setTimeInSeconds(12.3);
+		mVolume.setChannelID(1);
+		mVolume.setChannelName("channel 1");
+		mVolume.setColor(1f, 0.5f, 0.25f, 1f);
+		mVolume.setVoxelSizeInRealUnits("um", 0.5, 0.5, 2);
+
+		mSerializedVolume = ClearVolumeSerialization.serialize(	mVolume,
+																null);
+		mDeserializedVolume = new Volume();
+		ClearVolumeSerialization.deserialize(	mSerializedVolume,
+												mDeserializedVolume);
+
+		mHeaderMap = new LinkedHashMap<String, String>();
+		mHeaderMap.put("index", "123");
+		mHeaderMap.put("time", "12.3");
+		mHeaderMap.put("channel", "1");
+		mHeaderMap.put("channelname", "channel 1");
+		mHeaderMap.put("color", "1.0 0.5 0.25 1.0");
+		mHeaderMap.put("dim", "3");
+		mHeaderMap.put("type", "UnsignedShort");
+		mHeaderMap.put("width", "" + mSize);
+		mHeaderMap.put("height", "" + mSize);
+		mHeaderMap.put("depth", "" + mSize);
+		mHeaderString = KeyValueMaps.writeStringFromMap(mHeaderMap,
+														null)
+									.toString();
+		mDestinationMap = new LinkedHashMap<String, String>();
+		mStringBuilder = new StringBuilder();
+	}
+
+	@Benchmark
+	public ByteBuffer serialize()
+	{
+		mSerializationBuffer = ClearVolumeSerialization.serialize(	mVolume,
+																	mSerializationBuffer);
+		return mSerializationBuffer;
+	}
+
+	@Benchmark
+	public Volume deserialize()
+	{
+		return ClearVolumeSerialization.deserialize(mSerializedVolume,
+													mDeserializedVolume);
+	}
+
+	@Benchmark
+	public Map<String, String> keyValueMapsRead()
+	{
+		return KeyValueMaps.readMapFromString(	mHeaderString,
+												mDestinationMap);
+	}
+
+	@Benchmark
+	public StringBuilder keyValueMapsWrite()
+	{
+		return KeyValueMaps.writeStringFromMap(	mHeaderMap,
+												mStringBuilder);
+	}
+
+}
@@ -0,0 +1,52 @@
+package clearvolume.transferf.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clearvolume.transferf.TransferFunction1D;
+import clearvolume.transferf.TransferFunctions;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferFunction1DBenchmarks
+{
+	private TransferFunction1D mGradient;
+	private TransferFunction1D mHot;
+
+	@Setup
+	public void setup()
+	{
+		mGradient = TransferFunctions.getGradientForColor(1f,
+															0.5f,
+															0.25f,
+															1f);
+		mHot = TransferFunctions.getHot();
+	}
+
+	@Benchmark
+	public float[] getArrayGradient()
+	{
+		return mGradient.getArray();
+	}
+
+	@Benchmark
+	public float[] getArrayHot()
+	{
+		return mHot.getArray();
+	}
+
+}
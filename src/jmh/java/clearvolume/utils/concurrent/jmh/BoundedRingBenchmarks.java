@@ -0,0 +1,78 @@
+package clearvolume.utils.concurrent.jmh;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clearvolume.utils.concurrent.BlockingWaitStrategy;
+import clearvolume.utils.concurrent.MultiProducerRing;
+import clearvolume.utils.concurrent.ParkingWaitStrategy;
+import clearvolume.utils.concurrent.SingleProducerSingleConsumerRing;
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoundedRingBenchmarks
+{
+	private static final Object cElement = new Object();
+
+	@Param(
+	{ "ArrayBlockingQueue",
+		"SingleProducerSingleConsumerRing",
+		"MultiProducerRing",
+		"MultiProducerRingParking" })
+	public String mQueueType;
+
+	private BlockingQueue<Object> mQueue;
+
+	@Setup
+	public void setup()
+	{
+		final int lCapacity = 64;
+		if (mQueueType.equals("ArrayBlockingQueue"))
+			mQueue = new ArrayBlockingQueue<Object>(lCapacity);
+		else if (mQueueType.equals("SingleProducerSingleConsumerRing"))
+			mQueue = new SingleProducerSingleConsumerRing<Object>(	lCapacity,
+																	new BlockingWaitStrategy());
+		else if (mQueueType.equals("MultiProducerRing"))
+			mQueue = new MultiProducerRing<Object>(	lCapacity,
+													new BlockingWaitStrategy());
+		else
+			mQueue = new MultiProducerRing<Object>(	lCapacity,
+													new ParkingWaitStrategy());
+	}
+
+	@Benchmark
+	@Group("handoff")
+	@GroupThreads(1)
+	public boolean offer()
+	{
+		return mQueue.offer(cElement);
+	}
+
+	@Benchmark
+	@Group("handoff")
+	@GroupThreads(1)
+	public Object poll()
+	{
+		return mQueue.poll();
+	}
+
+}
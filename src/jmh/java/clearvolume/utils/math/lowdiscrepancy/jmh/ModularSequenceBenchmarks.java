@@ -0,0 +1,36 @@
+package clearvolume.utils.math.lowdiscrepancy.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clearvolume.utils.math.lowdiscrepancy.ModularSequence;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModularSequenceBenchmarks
+{
+	@Param(
+	{ "13", "64" })
+	public int mN;
+
+	@Benchmark
+	public int findKWithBestGapScoreCached()
+	{
+		return ModularSequence.findKWithBestGapScoreCached(mN);
+	}
+
+}
@@ -0,0 +1,110 @@
+package clearvolume.volume.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import coremem.enums.NativeTypeEnum;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VolumeBenchmarks
+{
+
+	@State(Scope.Benchmark)
+	public static class SharedVolumeManager
+	{
+		@Param(
+		{ "8", "64" })
+		public int mPoolSize;
+
+		public VolumeManager mVolumeManager;
+
+		@Setup
+		public void setup()
+		{
+			mVolumeManager = new VolumeManager(mPoolSize);
+			for (int i = 0; i < mPoolSize; i++)
+				mVolumeManager.requestAndWaitForVolume(	0,
+														TimeUnit.MILLISECONDS,
+														NativeTypeEnum.UnsignedShort,
+														1,
+														32,
+														32,
+														32)
+								.makeAvailableToManager();
+		}
+
+		@TearDown
+		public void tearDown()
+		{
+			mVolumeManager.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class VolumePair
+	{
+		@Param(
+		{ "64", "256" })
+		public int mSize;
+
+		public Volume mSource;
+		public Volume mDestination;
+
+		@Setup
+		public void setup()
+		{
+			mSource = new Volume(	NativeTypeEnum.UnsignedShort,
+									1,
+									mSize,
+									mSize,
+									mSize);
+			mDestination = new Volume(	NativeTypeEnum.UnsignedShort,
+										1,
+										mSize,
+										mSize,
+										mSize);
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Volume requestAndWaitForVolumeContended(SharedVolumeManager pState)
+	{
+		final Volume lVolume = pState.mVolumeManager.requestAndWaitForVolume(	1,
+																				TimeUnit.MILLISECONDS,
+																				NativeTypeEnum.UnsignedShort,
+																				1,
+																				32,
+																				32,
+																				32);
+		lVolume.makeAvailableToManager();
+		return lVolume;
+	}
+
+	@Benchmark
+	public Volume copyDataFrom(VolumePair pState)
+	{
+		pState.mDestination.copyDataFrom(pState.mSource);
+		return pState.mDestination;
+	}
+
+}
@@ -0,0 +1,74 @@
+package clearvolume.volume.sink.timeshift.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clearvolume.volume.Volume;
+import clearvolume.volume.VolumeManager;
+import clearvolume.volume.sink.NullVolumeSink;
+import clearvolume.volume.sink.timeshift.TimeShiftingSink;
+import coremem.enums.NativeTypeEnum;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeShiftingSinkBenchmarks
+{
+	@Param(
+	{ "1", "4" })
+	public int mNumberOfChannels;
+
+	private VolumeManager mVolumeManager;
+	private TimeShiftingSink mTimeShiftingSink;
+	private long mCounter;
+
+	@Setup
+	public void setup()
+	{
+		mVolumeManager = new VolumeManager(256);
+		mTimeShiftingSink = new TimeShiftingSink(50, 100);
+		mTimeShiftingSink.setRelaySink(new NullVolumeSink());
+		mCounter = 0;
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		mTimeShiftingSink.close();
+		mVolumeManager.close();
+	}
+
+	@Benchmark
+	public TimeShiftingSink sendVolume()
+	{
+		final Volume lVolume = mVolumeManager.requestAndWaitForVolume(	0,
+																		TimeUnit.MILLISECONDS,
+																		NativeTypeEnum.UnsignedByte,
+																		1,
+																		16,
+																		16,
+																		16);
+		lVolume.setTimeIndex(mCounter / mNumberOfChannels);
+		lVolume.setChannelID((int) (mCounter % mNumberOfChannels));
+		mCounter++;
+
+		mTimeShiftingSink.sendVolume(lVolume);
+		return mTimeShiftingSink;
+	}
+
+}